@@ -0,0 +1,593 @@
+package com.javaranch.db ;
+
+import com.javaranch.common.* ;
+
+import java.util.* ;
+import java.sql.* ;
+import java.security.InvalidParameterException ;
+
+/** Like DBResults, but the data is kept a column at a time, and number columns are kept as numbers.
+ *
+ * DBResults turns every cell into a String, and then the code that uses it usually turns the String back into a
+ * number.  For a search that returns a lot of numbers, that's a lot of little objects and a lot of parsing.  Here,
+ * INTEGER/SMALLINT/TINYINT columns are kept in an int[], BIGINT in a long[], DOUBLE/FLOAT/REAL in a double[] and
+ * BIT/BOOLEAN in a BitSet.  Everything else (including DECIMAL, so no precision is lost) is kept as Strings.
+ *
+ * Use getInt(), getLong(), getDouble() and getBoolean() to get the numbers without any parsing.  The DBResults
+ * style methods (get(), getRow(), toIntArray(), toNameIDPairArray() ...) work too.  Note that the Strings for number
+ * columns are built from the number, so they might not look exactly like what the driver would have given you
+ * (i.e. "2.0" instead of "2").
+ *
+ * Example:
+ *
+ * <pre>
+ *
+ *      ColumnarResults r = facade.searchColumnar( q );
+ *      double total = 0 ;
+ *      for ( int i = 0 ; i < r.size() ; i++ )
+ *      {
+ *          total += r.getDouble( i , 1 );
+ *      }
+ *
+ * </pre>
+ */
+public class ColumnarResults
+{
+
+    // how each column is kept
+    private static final int STRING = 0 ;
+    private static final int INT = 1 ;
+    private static final int LONG = 2 ;
+    private static final int DOUBLE = 3 ;
+    private static final int BOOLEAN = 4 ;
+
+    private final int[] columnTypes ;
+    private final int[] kinds ;
+
+    // one for each column:  int[], long[], double[], BitSet or String[]
+    private final Object[] columns ;
+
+    // one for each column:  a bit is set if the value in that row is null
+    private final BitSet[] nulls ;
+
+    private int size = 0 ;
+    private int capacity = 0 ;
+
+    /**
+     * @param columnTypes The java.sql.Types of each column.
+     */
+    ColumnarResults( int[] columnTypes )
+    {
+        this.columnTypes = columnTypes ;
+        kinds = new int[ columnTypes.length ];
+        columns = new Object[ columnTypes.length ];
+        nulls = new BitSet[ columnTypes.length ];
+        for ( int i = 0 ; i < columnTypes.length ; i++ )
+        {
+            kinds[ i ] = getKind( columnTypes[ i ] );
+            nulls[ i ] = new BitSet();
+        }
+        grow( 16 );
+    }
+
+    private static int getKind( int columnType )
+    {
+        int returnVal = STRING ;
+        switch ( columnType )
+        {
+            case Types.INTEGER:
+            case Types.SMALLINT:
+            case Types.TINYINT:
+                returnVal = INT ;
+                break ;
+            case Types.BIGINT:
+                returnVal = LONG ;
+                break ;
+            case Types.DOUBLE:
+            case Types.FLOAT:
+            case Types.REAL:
+                returnVal = DOUBLE ;
+                break ;
+            case Types.BIT:
+            case Types.BOOLEAN:
+                returnVal = BOOLEAN ;
+                break ;
+        }
+        return returnVal ;
+    }
+
+    // make room for at least this many rows
+    private void grow( int minimum )
+    {
+        int newCapacity = Math.max( minimum , capacity * 2 );
+        for ( int i = 0 ; i < columns.length ; i++ )
+        {
+            switch ( kinds[ i ] )
+            {
+                case INT:
+                    int[] ints = new int[ newCapacity ];
+                    if ( columns[ i ] != null )
+                    {
+                        System.arraycopy( columns[ i ] , 0 , ints , 0 , size );
+                    }
+                    columns[ i ] = ints ;
+                    break ;
+                case LONG:
+                    long[] longs = new long[ newCapacity ];
+                    if ( columns[ i ] != null )
+                    {
+                        System.arraycopy( columns[ i ] , 0 , longs , 0 , size );
+                    }
+                    columns[ i ] = longs ;
+                    break ;
+                case DOUBLE:
+                    double[] doubles = new double[ newCapacity ];
+                    if ( columns[ i ] != null )
+                    {
+                        System.arraycopy( columns[ i ] , 0 , doubles , 0 , size );
+                    }
+                    columns[ i ] = doubles ;
+                    break ;
+                case BOOLEAN:
+                    if ( columns[ i ] == null )
+                    {
+                        columns[ i ] = new BitSet( newCapacity );
+                    }
+                    break ;
+                default:
+                    String[] strings = new String[ newCapacity ];
+                    if ( columns[ i ] != null )
+                    {
+                        System.arraycopy( columns[ i ] , 0 , strings , 0 , size );
+                    }
+                    columns[ i ] = strings ;
+                    break ;
+            }
+        }
+        capacity = newCapacity ;
+    }
+
+    /** Add the current row of the result set.
+     *
+     * @param facade Used to turn the String columns into Strings.
+     */
+    void addRow( ResultSet rs , DBFacade facade ) throws SQLException
+    {
+        if ( size == capacity )
+        {
+            grow( size + 1 );
+        }
+        for ( int i = 0 ; i < columns.length ; i++ )
+        {
+            int dbIndex = i + 1 ;
+            switch ( kinds[ i ] )
+            {
+                case INT:
+                    ((int[])columns[ i ])[ size ] = rs.getInt( dbIndex );
+                    break ;
+                case LONG:
+                    ((long[])columns[ i ])[ size ] = rs.getLong( dbIndex );
+                    break ;
+                case DOUBLE:
+                    ((double[])columns[ i ])[ size ] = rs.getDouble( dbIndex );
+                    break ;
+                case BOOLEAN:
+                    ((BitSet)columns[ i ]).set( size , rs.getBoolean( dbIndex ) );
+                    break ;
+                default:
+                    ((String[])columns[ i ])[ size ] = facade.readString( rs , dbIndex , columnTypes[ i ] );
+                    break ;
+            }
+            if ( rs.wasNull() )
+            {
+                nulls[ i ].set( size );
+            }
+        }
+        size++ ;
+    }
+
+    /** Add a copy of a row from other results with the same column types (the same search on another database). */
+    void addRow( ColumnarResults from , int row )
+    {
+        if ( ! Arrays.equals( columnTypes , from.columnTypes ) )
+        {
+            throw new InvalidParameterException( "the columns of the results don't match" );
+        }
+        from.check( row , 0 );
+        if ( size == capacity )
+        {
+            grow( size + 1 );
+        }
+        for ( int i = 0 ; i < columns.length ; i++ )
+        {
+            switch ( kinds[ i ] )
+            {
+                case INT:
+                    ((int[])columns[ i ])[ size ] = ((int[])from.columns[ i ])[ row ];
+                    break ;
+                case LONG:
+                    ((long[])columns[ i ])[ size ] = ((long[])from.columns[ i ])[ row ];
+                    break ;
+                case DOUBLE:
+                    ((double[])columns[ i ])[ size ] = ((double[])from.columns[ i ])[ row ];
+                    break ;
+                case BOOLEAN:
+                    ((BitSet)columns[ i ]).set( size , ((BitSet)from.columns[ i ]).get( row ) );
+                    break ;
+                default:
+                    ((String[])columns[ i ])[ size ] = ((String[])from.columns[ i ])[ row ];
+                    break ;
+            }
+            if ( from.nulls[ i ].get( row ) )
+            {
+                nulls[ i ].set( size );
+            }
+        }
+        size++ ;
+    }
+
+    /** Read everything in the result set. */
+    static ColumnarResults read( ResultSet rs , DBFacade facade ) throws SQLException
+    {
+        ColumnarResults results = new ColumnarResults( DBFacade.getColumnTypes( rs ) );
+        while ( rs.next() )
+        {
+            results.addRow( rs , facade );
+        }
+        return results ;
+    }
+
+    /** The number of rows. */
+    public int size()
+    {
+        return size ;
+    }
+
+    public int getColumnCount()
+    {
+        return columns.length ;
+    }
+
+    /** @return the java.sql.Types of the column. */
+    public int getColumnType( int column )
+    {
+        checkColumn( column );
+        return columnTypes[ column ];
+    }
+
+    private void checkColumn( int column )
+    {
+        if ( column < 0 )
+        {
+            throw new InvalidParameterException( "column must be zero or greater" );
+        }
+        if ( column >= columns.length )
+        {
+            throw new InvalidParameterException( "invalid value for column: there aren't that many columns!" );
+        }
+    }
+
+    private void check( int row , int column )
+    {
+        if ( row < 0 )
+        {
+            throw new InvalidParameterException( "row must be zero or greater" );
+        }
+        if ( row >= size )
+        {
+            throw new InvalidParameterException( "invalid value for row:  there aren't that many rows!" );
+        }
+        checkColumn( column );
+    }
+
+    public boolean isNull( int row , int column )
+    {
+        check( row , column );
+        return nulls[ column ].get( row );
+    }
+
+    /** @return zero if the value is null or if a String column does not hold a number. */
+    public int getInt( int row , int column )
+    {
+        int returnVal = 0 ;
+        if ( ! isNull( row , column ) )
+        {
+            switch ( kinds[ column ] )
+            {
+                case INT:
+                    returnVal = ((int[])columns[ column ])[ row ];
+                    break ;
+                case LONG:
+                    returnVal = (int)((long[])columns[ column ])[ row ];
+                    break ;
+                case DOUBLE:
+                    returnVal = (int)((double[])columns[ column ])[ row ];
+                    break ;
+                case BOOLEAN:
+                    returnVal = ((BitSet)columns[ column ]).get( row ) ? 1 : 0 ;
+                    break ;
+                default:
+                    returnVal = Str.toInt( ((String[])columns[ column ])[ row ] );
+                    break ;
+            }
+        }
+        return returnVal ;
+    }
+
+    /** @return zero if the value is null or if a String column does not hold a number. */
+    public long getLong( int row , int column )
+    {
+        long returnVal = 0 ;
+        if ( ! isNull( row , column ) )
+        {
+            switch ( kinds[ column ] )
+            {
+                case INT:
+                    returnVal = ((int[])columns[ column ])[ row ];
+                    break ;
+                case LONG:
+                    returnVal = ((long[])columns[ column ])[ row ];
+                    break ;
+                case DOUBLE:
+                    returnVal = (long)((double[])columns[ column ])[ row ];
+                    break ;
+                case BOOLEAN:
+                    returnVal = ((BitSet)columns[ column ]).get( row ) ? 1 : 0 ;
+                    break ;
+                default:
+                    returnVal = Str.toLong( ((String[])columns[ column ])[ row ] );
+                    break ;
+            }
+        }
+        return returnVal ;
+    }
+
+    /** @return zero if the value is null or if a String column does not hold a number. */
+    public double getDouble( int row , int column )
+    {
+        double returnVal = 0.0 ;
+        if ( ! isNull( row , column ) )
+        {
+            switch ( kinds[ column ] )
+            {
+                case INT:
+                    returnVal = ((int[])columns[ column ])[ row ];
+                    break ;
+                case LONG:
+                    returnVal = ((long[])columns[ column ])[ row ];
+                    break ;
+                case DOUBLE:
+                    returnVal = ((double[])columns[ column ])[ row ];
+                    break ;
+                case BOOLEAN:
+                    returnVal = ((BitSet)columns[ column ]).get( row ) ? 1 : 0 ;
+                    break ;
+                default:
+                    String s = ((String[])columns[ column ])[ row ];
+                    returnVal = ( s == null ) ? 0.0 : Str.toDouble( s );
+                    break ;
+            }
+        }
+        return returnVal ;
+    }
+
+    /** @return false if the value is null.  Numbers are true if they are not zero.  Strings use Str.toBoolean(). */
+    public boolean getBoolean( int row , int column )
+    {
+        boolean returnVal = false ;
+        if ( ! isNull( row , column ) )
+        {
+            switch ( kinds[ column ] )
+            {
+                case BOOLEAN:
+                    returnVal = ((BitSet)columns[ column ]).get( row );
+                    break ;
+                case STRING:
+                    returnVal = Str.toBoolean( ((String[])columns[ column ])[ row ] );
+                    break ;
+                default:
+                    returnVal = getDouble( row , column ) != 0.0 ;
+                    break ;
+            }
+        }
+        return returnVal ;
+    }
+
+    /**
+     * @return the data found in the cell as a string.  null if the value is null.
+     */
+    public String get( int row , int column )
+    {
+        String returnVal = null ;
+        if ( ! isNull( row , column ) )
+        {
+            switch ( kinds[ column ] )
+            {
+                case INT:
+                    returnVal = String.valueOf( ((int[])columns[ column ])[ row ] );
+                    break ;
+                case LONG:
+                    returnVal = String.valueOf( ((long[])columns[ column ])[ row ] );
+                    break ;
+                case DOUBLE:
+                    returnVal = String.valueOf( ((double[])columns[ column ])[ row ] );
+                    break ;
+                case BOOLEAN:
+                    returnVal = String.valueOf( ((BitSet)columns[ column ]).get( row ) );
+                    break ;
+                default:
+                    returnVal = ((String[])columns[ column ])[ row ];
+                    break ;
+            }
+        }
+        return returnVal ;
+    }
+
+    /** Will return null if there is no such row.
+     *
+     * The array is built each time you call this - it's better to use get() or one of the typed getters.
+     */
+    public String[] getRow( int row )
+    {
+        String[] returnVal = null ;
+        if ( ( row >= 0 ) && ( row < size ) )
+        {
+            returnVal = new String[ columns.length ];
+            for ( int i = 0 ; i < returnVal.length ; i++ )
+            {
+                returnVal[ i ] = get( row , i );
+            }
+        }
+        return returnVal ;
+    }
+
+    /** Extract the first column into a String array.
+     * @return an array of length zero if the results have a size of zero.
+     */
+    public String[] toStringArray()
+    {
+        String[] s = new String[ size ];
+        for ( int i = 0 ; i < s.length ; i++ )
+        {
+            s[ i ] = get( i , 0 );
+        }
+        return s ;
+    }
+
+    /** Extract the first column into an int array.
+     *
+     * @return an array of length zero if the results have a size of zero.
+     */
+    public int[] toIntArray()
+    {
+        return toIntArray( 0 );
+    }
+
+    /** Extract a column into an int array.
+     *
+     * Nulls become zero.
+     *
+     * @return an array of length zero if the results have a size of zero.
+     */
+    public int[] toIntArray( int column )
+    {
+        int[] a = new int[ size ];
+        if ( size > 0 )
+        {
+            checkColumn( column );
+            if ( kinds[ column ] == INT )
+            {
+                System.arraycopy( columns[ column ] , 0 , a , 0 , size );
+            }
+            else
+            {
+                for ( int i = 0 ; i < a.length ; i++ )
+                {
+                    a[ i ] = getInt( i , column );
+                }
+            }
+        }
+        return a ;
+    }
+
+    /** Extract a column into a long array.
+     *
+     * Nulls become zero.
+     *
+     * @return an array of length zero if the results have a size of zero.
+     */
+    public long[] toLongArray( int column )
+    {
+        long[] a = new long[ size ];
+        if ( size > 0 )
+        {
+            checkColumn( column );
+            if ( kinds[ column ] == LONG )
+            {
+                System.arraycopy( columns[ column ] , 0 , a , 0 , size );
+            }
+            else
+            {
+                for ( int i = 0 ; i < a.length ; i++ )
+                {
+                    a[ i ] = getLong( i , column );
+                }
+            }
+        }
+        return a ;
+    }
+
+    /** Extract a column into a double array.
+     *
+     * Nulls become zero.
+     *
+     * @return an array of length zero if the results have a size of zero.
+     */
+    public double[] toDoubleArray( int column )
+    {
+        double[] a = new double[ size ];
+        if ( size > 0 )
+        {
+            checkColumn( column );
+            if ( kinds[ column ] == DOUBLE )
+            {
+                System.arraycopy( columns[ column ] , 0 , a , 0 , size );
+            }
+            else
+            {
+                for ( int i = 0 ; i < a.length ; i++ )
+                {
+                    a[ i ] = getDouble( i , column );
+                }
+            }
+        }
+        return a ;
+    }
+
+    /** Same as DBResults.toNameIDPairArray().
+     *
+     * The columns must be in the order of "name" and then "id".  "firstname", "lastname" and then "id" would work too.
+     *
+     * @return an array of length zero if the results have a size of zero.
+     */
+    public NameIDPair[] toNameIDPairArray()
+    {
+        NameIDPair[] pairs = new NameIDPair[ size ];
+        int nameCount = getColumnCount() - 1 ;
+        for ( int i = 0 ; i < pairs.length ; i++ )
+        {
+            StringBuffer buffy = new StringBuffer();
+            for( int j = 0 ; j < nameCount ; j++ )
+            {
+                buffy.append( get( i , j ) );
+                buffy.append( ' ' );
+            }
+            String name = buffy.toString().trim();
+            pairs[ i ] = new NameIDPair( name , getInt( i , nameCount ) );
+        }
+        return pairs ;
+    }
+
+    /** Same as DBResults.toKeyValuePairArray(). */
+    public KeyValuePair[] toKeyValuePairArray()
+    {
+        KeyValuePair[] pairs = new KeyValuePair[ size ];
+        for ( int i = 0 ; i < pairs.length ; i++ )
+        {
+            pairs[ i ] = new KeyValuePair( get( i , 0 ) , get( i , 1 ) );
+        }
+        return pairs ;
+    }
+
+    /** Copy everything into a DBResults object, for code that needs one. */
+    public DBResults toDBResults()
+    {
+        DBResults r = new DBResults();
+        for ( int i = 0 ; i < size ; i++ )
+        {
+            r.add( getRow( i ) );
+        }
+        return r ;
+    }
+
+}
@@ -0,0 +1,664 @@
+package com.javaranch.db ;
+
+import java.util.* ;
+import java.sql.* ;
+import java.lang.reflect.Proxy ;
+import java.lang.reflect.InvocationHandler ;
+import java.lang.reflect.InvocationTargetException ;
+import java.lang.reflect.Method ;
+
+/** A small, bounded pool of database connections for DBFacade objects that were built with a driver and a URL.
+ *
+ * DBFacade creates one of these for you - you normally never create one yourself.  If you want to tune it, ask the
+ * facade for it:
+ *
+ * <pre>
+ *
+ *    ConnectionPool pool = SoupFacade.getInstance().getConnectionPool();
+ *    pool.setMaxSize( 40 );
+ *    pool.setPrefill( true );
+ *
+ * </pre>
+ *
+ * The connections handed out look and act like any other connection.  When you call close(), the connection goes
+ * back in the pool instead of being torn down.  So the usual rule still applies:  if you open it, you gotta close it!
+ *
+ * A connection is checked before it is handed out.  Connections that have been sitting idle too long, or that have
+ * been alive too long, are quietly thrown away and replaced with fresh ones.
+ */
+public class ConnectionPool
+{
+
+    private String databaseURL ;
+    private String databaseName ;
+    private String databasePassword ;
+
+    private int minSize = 0 ;
+    private int maxSize = 20 ;
+    private long maxWait = 30 * 1000 ;  // 30 seconds worth of milliseconds
+    private long idleTimeout = 10 * 60 * 1000 ;  // 10 minutes worth of milliseconds
+    private long maxLifetime = 30 * 60 * 1000 ;  // 30 minutes worth of milliseconds
+    private int validationTimeout = 5 ;  // seconds
+    private boolean prefill = false ;
+    private int statementCacheSize = 50 ;
+
+    // idle connections, most recently used at the front
+    private final LinkedList idle = new LinkedList();
+
+    // all physical connections currently open - idle or handed out.
+    private int openCount = 0 ;
+
+    private long lastEviction = System.currentTimeMillis();
+
+    // statistics
+    private long borrowCount = 0 ;
+    private long exhaustedCount = 0 ;
+    private long timeoutCount = 0 ;
+    private long createdCount = 0 ;
+    private long destroyedCount = 0 ;
+    private long totalBorrowWait = 0 ;  // nanoseconds
+    private long maxBorrowWait = 0 ;  // nanoseconds
+
+    /** Create a pool that will open connections with DriverManager.
+     *
+     * The JDBC driver must already be loaded.
+     *
+     * @param databaseURL Where the database can be found. i.e. "jdbc:mysql://localhost/soup"
+     * @param databaseName The user name that has access to the database.  Null if not needed.
+     * @param databasePassword The password for the user that has access to the database.
+     */
+    public ConnectionPool( String databaseURL , String databaseName , String databasePassword )
+    {
+        this.databaseURL = databaseURL ;
+        this.databaseName = databaseName ;
+        this.databasePassword = databasePassword ;
+    }
+
+    /** Exposed for unit testing purposes only! */
+    ConnectionPool(){}
+
+    /** The number of connections to keep open even when nothing is going on.  Defaults to zero. */
+    public synchronized void setMinSize( int minSize )
+    {
+        if ( minSize < 0 )
+        {
+            throw new IllegalArgumentException( "minSize must be zero or greater" );
+        }
+        this.minSize = minSize ;
+    }
+
+    public synchronized int getMinSize()
+    {
+        return minSize ;
+    }
+
+    /** The most connections that will ever be open at once.  Defaults to 20. */
+    public synchronized void setMaxSize( int maxSize )
+    {
+        if ( maxSize < 1 )
+        {
+            throw new IllegalArgumentException( "maxSize must be one or greater" );
+        }
+        this.maxSize = maxSize ;
+        notifyAll();
+    }
+
+    public synchronized int getMaxSize()
+    {
+        return maxSize ;
+    }
+
+    /** How long, in milliseconds, to wait for a connection when all of them are in use.  Defaults to 30 seconds. */
+    public synchronized void setMaxWait( long maxWait )
+    {
+        this.maxWait = maxWait ;
+    }
+
+    /** How long, in milliseconds, an unused connection may sit in the pool before it is closed.  Defaults to 10
+     *  minutes.  Zero means forever.
+     */
+    public synchronized void setIdleTimeout( long idleTimeout )
+    {
+        this.idleTimeout = idleTimeout ;
+    }
+
+    /** How long, in milliseconds, a connection may live before it is retired.  Defaults to 30 minutes.  Zero means
+     *  forever.
+     */
+    public synchronized void setMaxLifetime( long maxLifetime )
+    {
+        this.maxLifetime = maxLifetime ;
+    }
+
+    /** How many seconds the driver gets to prove that a connection still works before it is handed out. */
+    public synchronized void setValidationTimeout( int validationTimeout )
+    {
+        this.validationTimeout = validationTimeout ;
+    }
+
+    /** If true, DBFacade.testConnection() will open minSize connections right away. */
+    public synchronized void setPrefill( boolean prefill )
+    {
+        this.prefill = prefill ;
+    }
+
+    public synchronized boolean isPrefill()
+    {
+        return prefill ;
+    }
+
+    /** How many PreparedStatements each connection keeps ready for reuse.  Defaults to 50.  Zero turns the statement
+     *  cache off.
+     */
+    public synchronized void setStatementCacheSize( int statementCacheSize )
+    {
+        this.statementCacheSize = statementCacheSize ;
+    }
+
+    public synchronized int getStatementCacheSize()
+    {
+        return statementCacheSize ;
+    }
+
+    /** For use by DBFacade.
+     *
+     * @return the statement cache that goes with this connection, or null if the connection did not come from a
+     *         ConnectionPool.
+     */
+    static StatementCache getStatementCache( Connection con )
+    {
+        StatementCache returnVal = null ;
+        con = ReadReplica.unwrap( TransactionConnection.unwrap( con ) );
+        if ( ( con != null ) && Proxy.isProxyClass( con.getClass() ) )
+        {
+            InvocationHandler handler = Proxy.getInvocationHandler( con );
+            if ( handler instanceof Handler )
+            {
+                returnVal = ( (Handler)handler ).getStatementCache();
+            }
+        }
+        return returnVal ;
+    }
+
+    /** Exposed for unit testing purposes only!  Open a brand new physical connection. */
+    Connection openConnection() throws SQLException
+    {
+        Connection con ;
+        if ( databaseName == null )
+        {
+            con = DriverManager.getConnection( databaseURL );
+        }
+        else
+        {
+            con = DriverManager.getConnection( databaseURL , databaseName , databasePassword );
+        }
+        return con ;
+    }
+
+    // one physical connection
+    private static class Entry
+    {
+        private Connection con ;
+        private long created ;
+        private long lastUsed ;
+        private StatementCache statements = null ;
+
+        Entry( Connection con )
+        {
+            this.con = con ;
+            created = System.currentTimeMillis();
+            lastUsed = created ;
+        }
+    }
+
+    private Entry createEntry() throws SQLException
+    {
+        Connection con = openConnection();
+        synchronized ( this )
+        {
+            createdCount++ ;
+        }
+        return new Entry( con );
+    }
+
+    private void destroy( Entry entry )
+    {
+        if ( entry.statements != null )
+        {
+            entry.statements.clear();
+        }
+        try
+        {
+            entry.con.close();
+        }
+        catch ( Exception e )
+        {
+            // it's going away anyway
+        }
+        synchronized ( this )
+        {
+            destroyedCount++ ;
+        }
+    }
+
+    private synchronized boolean expired( Entry entry , long now )
+    {
+        boolean returnVal = false ;
+        if ( ( maxLifetime > 0 ) && ( now - entry.created >= maxLifetime ) )
+        {
+            returnVal = true ;
+        }
+        return returnVal ;
+    }
+
+    private boolean valid( Entry entry )
+    {
+        boolean returnVal = false ;
+        try
+        {
+            returnVal = entry.con.isValid( validationTimeout );
+        }
+        catch ( AbstractMethodError e )
+        {
+            // pre JDBC 4 driver
+            try
+            {
+                returnVal = ! entry.con.isClosed();
+            }
+            catch ( SQLException e2 )
+            {
+                returnVal = false ;
+            }
+        }
+        catch ( SQLException e )
+        {
+            returnVal = false ;
+        }
+        return returnVal ;
+    }
+
+    /** Get a connection out of the pool.  Close it to put it back. */
+    public Connection getConnection() throws SQLException
+    {
+        long start = System.nanoTime();
+        Entry entry = null ;
+        while ( entry == null )
+        {
+            boolean create = false ;
+            destroy( removeStaleIfDue() );
+            synchronized ( this )
+            {
+                boolean waited = false ;
+                long deadline = System.currentTimeMillis() + maxWait ;
+                while ( idle.isEmpty() && ( openCount >= maxSize ) )
+                {
+                    if ( ! waited )
+                    {
+                        exhaustedCount++ ;
+                        waited = true ;
+                    }
+                    long remaining = deadline - System.currentTimeMillis();
+                    if ( remaining <= 0 )
+                    {
+                        timeoutCount++ ;
+                        throw new SQLException( "connection pool exhausted: all " + maxSize + " connections in use for " + maxWait + "ms" );
+                    }
+                    try
+                    {
+                        wait( remaining );
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException( "interrupted while waiting for a pooled connection" );
+                    }
+                }
+                if ( idle.isEmpty() )
+                {
+                    openCount++ ;
+                    create = true ;
+                }
+                else
+                {
+                    entry = (Entry)idle.removeFirst();
+                }
+            }
+
+            if ( create )
+            {
+                try
+                {
+                    entry = createEntry();
+                }
+                catch ( SQLException e )
+                {
+                    release();
+                    throw e ;
+                }
+            }
+            else if ( expired( entry , System.currentTimeMillis() ) || ! valid( entry ) )
+            {
+                destroy( entry );
+                release();
+                entry = null ;
+            }
+        }
+
+        long waitTime = System.nanoTime() - start ;
+        synchronized ( this )
+        {
+            borrowCount++ ;
+            totalBorrowWait += waitTime ;
+            if ( waitTime > maxBorrowWait )
+            {
+                maxBorrowWait = waitTime ;
+            }
+        }
+        return wrap( entry );
+    }
+
+    // a physical connection is gone - make room for another.
+    private synchronized void release()
+    {
+        openCount-- ;
+        notifyAll();
+    }
+
+    // called by the connection handler when the user closes a pooled connection.
+    private void giveBack( Entry entry )
+    {
+        boolean keep = true ;
+        try
+        {
+            if ( entry.con.isClosed() )
+            {
+                keep = false ;
+            }
+            else if ( ! entry.con.getAutoCommit() )
+            {
+                // don't let an abandoned transaction leak into the next user's work
+                entry.con.rollback();
+                entry.con.setAutoCommit( true );
+            }
+        }
+        catch ( SQLException e )
+        {
+            keep = false ;
+        }
+        long now = System.currentTimeMillis();
+        if ( keep && expired( entry , now ) )
+        {
+            keep = false ;
+        }
+        if ( keep )
+        {
+            synchronized ( this )
+            {
+                entry.lastUsed = now ;
+                idle.addFirst( entry );
+                notifyAll();
+            }
+        }
+        else
+        {
+            destroy( entry );
+            release();
+        }
+    }
+
+    // Take stale idle connections out of the pool, but not more than once every few seconds.  They are closed by the
+    // caller after the lock is let go, so nobody waits on a slow close.
+    private synchronized List removeStaleIfDue()
+    {
+        List returnVal = Collections.EMPTY_LIST ;
+        long now = System.currentTimeMillis();
+        if ( now - lastEviction >= 5000 )
+        {
+            lastEviction = now ;
+            returnVal = removeStale( now );
+        }
+        return returnVal ;
+    }
+
+    private void destroy( List entries )
+    {
+        for ( int i = 0 ; i < entries.size() ; i++ )
+        {
+            destroy( (Entry)entries.get( i ) );
+        }
+    }
+
+    private synchronized List removeStale( long now )
+    {
+        List stale = new ArrayList();
+        // the least recently used connections are at the end of the list
+        ListIterator it = idle.listIterator( idle.size() );
+        while ( it.hasPrevious() )
+        {
+            Entry entry = (Entry)it.previous();
+            boolean tooOld = expired( entry , now );
+            boolean tooIdle = ( idleTimeout > 0 ) && ( now - entry.lastUsed >= idleTimeout ) && ( openCount > minSize );
+            if ( tooOld || tooIdle )
+            {
+                it.remove();
+                openCount-- ;
+                stale.add( entry );
+            }
+        }
+        if ( stale.size() > 0 )
+        {
+            notifyAll();
+        }
+        return stale ;
+    }
+
+    /** Close idle connections that have been sitting around too long or have lived too long.
+     *
+     * This happens automatically as connections are borrowed, but you can call it from a timer if you like.
+     */
+    public void evict()
+    {
+        destroy( removeStale( System.currentTimeMillis() ) );
+    }
+
+    /** Open connections until there are at least minSize of them. */
+    public void fill() throws SQLException
+    {
+        boolean done = false ;
+        while ( ! done )
+        {
+            synchronized ( this )
+            {
+                if ( openCount >= minSize )
+                {
+                    done = true ;
+                }
+                else
+                {
+                    openCount++ ;
+                }
+            }
+            if ( ! done )
+            {
+                Entry entry ;
+                try
+                {
+                    entry = createEntry();
+                }
+                catch ( SQLException e )
+                {
+                    release();
+                    throw e ;
+                }
+                synchronized ( this )
+                {
+                    idle.addLast( entry );
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /** Close all idle connections.  Connections that are in use will be closed when they are given back. */
+    public void closeIdle()
+    {
+        List all ;
+        synchronized ( this )
+        {
+            all = new ArrayList( idle );
+            idle.clear();
+            openCount -= all.size();
+            notifyAll();
+        }
+        destroy( all );
+    }
+
+    public synchronized int getOpenCount()
+    {
+        return openCount ;
+    }
+
+    public synchronized int getIdleCount()
+    {
+        return idle.size();
+    }
+
+    public synchronized int getActiveCount()
+    {
+        return openCount - idle.size();
+    }
+
+    /** The number of times a connection has been handed out. */
+    public synchronized long getBorrowCount()
+    {
+        return borrowCount ;
+    }
+
+    /** The number of times somebody asked for a connection and had to wait because all of them were in use. */
+    public synchronized long getExhaustedCount()
+    {
+        return exhaustedCount ;
+    }
+
+    /** The number of times somebody gave up waiting for a connection. */
+    public synchronized long getTimeoutCount()
+    {
+        return timeoutCount ;
+    }
+
+    public synchronized long getCreatedCount()
+    {
+        return createdCount ;
+    }
+
+    public synchronized long getDestroyedCount()
+    {
+        return destroyedCount ;
+    }
+
+    /** Total time spent inside getConnection(), in milliseconds. */
+    public synchronized double getTotalBorrowWaitMillis()
+    {
+        return totalBorrowWait / 1000000.0 ;
+    }
+
+    /** Average time spent inside getConnection(), in milliseconds. */
+    public synchronized double getAverageBorrowWaitMillis()
+    {
+        return borrowCount == 0 ? 0.0 : ( totalBorrowWait / 1000000.0 ) / borrowCount ;
+    }
+
+    /** The longest anybody has spent inside getConnection(), in milliseconds. */
+    public synchronized double getMaxBorrowWaitMillis()
+    {
+        return maxBorrowWait / 1000000.0 ;
+    }
+
+    public synchronized String toString()
+    {
+        return "open=" + openCount + "|idle=" + idle.size() + "|max=" + maxSize + "|borrowed=" + borrowCount
+               + "|exhausted=" + exhaustedCount + "|timeouts=" + timeoutCount
+               + "|avgWaitMs=" + getAverageBorrowWaitMillis() + "|maxWaitMs=" + getMaxBorrowWaitMillis();
+    }
+
+    // Hands everything to the physical connection except close(), which puts the connection back in the pool.
+    private class Handler implements InvocationHandler
+    {
+        private Entry entry ;
+        private boolean closed = false ;
+
+        Handler( Entry entry )
+        {
+            this.entry = entry ;
+        }
+
+        StatementCache getStatementCache()
+        {
+            StatementCache returnVal = null ;
+            if ( ! closed )
+            {
+                synchronized ( entry )
+                {
+                    if ( entry.statements == null )
+                    {
+                        entry.statements = new StatementCache( getStatementCacheSize() );
+                    }
+                    returnVal = entry.statements ;
+                }
+            }
+            return returnVal ;
+        }
+
+        public Object invoke( Object proxy , Method method , Object[] args ) throws Throwable
+        {
+            String name = method.getName();
+            Object returnVal = null ;
+            if ( name.equals( "close" ) && ( method.getParameterTypes().length == 0 ) )
+            {
+                if ( ! closed )
+                {
+                    closed = true ;
+                    giveBack( entry );
+                }
+            }
+            else if ( name.equals( "isClosed" ) && ( method.getParameterTypes().length == 0 ) )
+            {
+                returnVal = closed ? Boolean.TRUE : method.invoke( entry.con , args );
+            }
+            else if ( name.equals( "equals" ) && ( args != null ) && ( args.length == 1 ) )
+            {
+                returnVal = proxy == args[ 0 ] ? Boolean.TRUE : Boolean.FALSE ;
+            }
+            else if ( name.equals( "hashCode" ) && ( args == null ) )
+            {
+                returnVal = new Integer( System.identityHashCode( proxy ) );
+            }
+            else if ( name.equals( "toString" ) && ( args == null ) )
+            {
+                returnVal = "pooled:" + entry.con ;
+            }
+            else
+            {
+                if ( closed )
+                {
+                    throw new SQLException( "connection has already been returned to the pool" );
+                }
+                try
+                {
+                    returnVal = method.invoke( entry.con , args );
+                }
+                catch ( InvocationTargetException e )
+                {
+                    throw e.getTargetException();
+                }
+            }
+            return returnVal ;
+        }
+    }
+
+    private Connection wrap( Entry entry )
+    {
+        return (Connection)Proxy.newProxyInstance( Connection.class.getClassLoader() , new Class[]{ Connection.class } , new Handler( entry ) );
+    }
+
+}
@@ -0,0 +1,325 @@
+package com.javaranch.db ;
+
+import java.util.* ;
+import java.sql.* ;
+
+/** Walks through the results of a search one row at a time without loading them all into memory.
+ *
+ * Each call to next() returns a String[] just like the rows in a DBResults object.  The rows are fetched from the
+ * database a few at a time (see DBFacade.setFetchSize()), so a search that finds millions of rows takes no more memory
+ * than a search that finds a hundred.
+ *
+ * A cursor holds on to a statement and a result set, and sometimes a connection, until it is closed.  It closes itself
+ * when it runs out of rows, but if you stop early you MUST close it:
+ *
+ * <pre>
+ *
+ *    DBCursor cursor = facade.openCursor( q );
+ *    try
+ *    {
+ *        while ( cursor.hasNext() )
+ *        {
+ *            String[] row = (String[])cursor.next();
+ *            ...
+ *        }
+ *    }
+ *    finally
+ *    {
+ *        cursor.close();
+ *    }
+ *
+ * </pre>
+ *
+ * Since an Iterator can't throw a SQLException, hasNext() and next() wrap them in a RuntimeException.  If you would
+ * rather get the SQLException, use process() with a RowProcessor.
+ */
+public class DBCursor implements Iterator
+{
+
+    private DBFacade facade = null ;
+    private Connection con = null ;
+    private String sql = null ;
+    private Statement statement = null ;
+    private ResultSet rs = null ;
+    private int[] columnTypes = null ;
+
+    // only set if the connection was opened for this cursor and needs to be closed with it
+    private boolean closeConnection = false ;
+    private boolean restoreAutoCommit = false ;
+
+    // only set if the rows are already in memory
+    private Iterator rows = null ;
+
+    private String[] nextRow = null ;
+    private boolean closed = false ;
+    private boolean reusable = false ;  // false if something went wrong with the statement
+    private int rowCount = 0 ;
+    private DBStatistics.Timer timer = DBStatistics.NOT_TIMING ;  // counted when the cursor is closed
+
+    /** Open a cursor on this connection.
+     *
+     * @param parameters If not null, a PreparedStatement is used and these are the values for each '?'.
+     * @param closeConnection true if the connection should be closed when the cursor is closed.
+     */
+    DBCursor( DBFacade facade , Connection con , String sql , Object[] parameters , boolean closeConnection ) throws SQLException
+    {
+        this.facade = facade ;
+        this.con = con ;
+        this.sql = sql ;
+        this.closeConnection = closeConnection ;
+        timer = facade.startTimer( sql );
+        try
+        {
+            if ( closeConnection && con.getAutoCommit() )
+            {
+                // some drivers (i.e. Postgres) ignore the fetch size and read everything unless there is a transaction
+                con.setAutoCommit( false );
+                restoreAutoCommit = true ;
+            }
+            if ( parameters == null )
+            {
+                statement = con.createStatement();
+                statement.setFetchSize( facade.getFetchSize() );
+                rs = statement.executeQuery( sql );
+            }
+            else
+            {
+                PreparedStatement preparedStatement = facade.prepareStatement( con , sql );
+                statement = preparedStatement ;
+                preparedStatement.setFetchSize( facade.getFetchSize() );
+                DBFacade.setParameters( preparedStatement , 1 , parameters );
+                rs = preparedStatement.executeQuery();
+            }
+            timer.executed();
+            columnTypes = DBFacade.getColumnTypes( rs );
+            reusable = true ;
+        }
+        catch ( Exception e )
+        {
+            closeQuietly();
+            throw new SQLException( "openCursor() execute fail [" + sql + "]: " + e );
+        }
+    }
+
+    /** A cursor over rows that are already in memory.
+     *
+     * Handy for mocks and unit tests.
+     */
+    public DBCursor( DBResults results )
+    {
+        rows = results.iterator();
+    }
+
+    // Read the next row into nextRow.  Closes everything when there are no more rows.
+    private void fetch() throws SQLException
+    {
+        if ( ( nextRow == null ) && ! closed )
+        {
+            if ( rows != null )
+            {
+                if ( rows.hasNext() )
+                {
+                    nextRow = (String[])rows.next();
+                }
+            }
+            else
+            {
+                try
+                {
+                    if ( rs.next() )
+                    {
+                        nextRow = facade.readRow( rs , columnTypes );
+                    }
+                }
+                catch ( SQLException e )
+                {
+                    closeQuietly();
+                    throw e ;
+                }
+            }
+            if ( nextRow == null )
+            {
+                close();
+            }
+        }
+    }
+
+    public boolean hasNext()
+    {
+        try
+        {
+            fetch();
+        }
+        catch ( SQLException e )
+        {
+            throw new RuntimeException( "cursor read fail [" + sql + "]: " + e , e );
+        }
+        return nextRow != null ;
+    }
+
+    /** @return a String[] with the data for the next row. */
+    public Object next()
+    {
+        if ( ! hasNext() )
+        {
+            throw new NoSuchElementException( "no more rows" );
+        }
+        String[] returnVal = nextRow ;
+        nextRow = null ;
+        rowCount++ ;
+        return returnVal ;
+    }
+
+    public void remove()
+    {
+        throw new UnsupportedOperationException( "rows cannot be removed through a cursor" );
+    }
+
+    /** Hand every row that is left to the processor, then close the cursor.
+     *
+     * Stops early if the processor returns false.
+     */
+    public void process( RowProcessor processor ) throws SQLException
+    {
+        try
+        {
+            boolean keepGoing = true ;
+            while ( keepGoing )
+            {
+                fetch();
+                if ( nextRow == null )
+                {
+                    keepGoing = false ;
+                }
+                else
+                {
+                    String[] row = nextRow ;
+                    nextRow = null ;
+                    rowCount++ ;
+                    keepGoing = processor.processRow( row );
+                }
+            }
+        }
+        catch ( SQLException e )
+        {
+            throw e ;  // this is to avoid the exception message below
+        }
+        catch ( Exception e )
+        {
+            throw new SQLException( "row processor fail: " + e );
+        }
+        finally
+        {
+            close();
+        }
+    }
+
+    /** How many rows have been handed out so far. */
+    public int getRowCount()
+    {
+        return rowCount ;
+    }
+
+    public boolean isClosed()
+    {
+        return closed ;
+    }
+
+    /** Let go of the result set, the statement and (if the cursor opened it) the connection.
+     *
+     * It's okay to call this more than once.
+     */
+    public void close() throws SQLException
+    {
+        if ( ! closed )
+        {
+            closed = true ;
+            nextRow = null ;
+            if ( reusable )
+            {
+                timer.finished( rowCount );
+            }
+            else
+            {
+                timer.failed();
+            }
+            SQLException problem = null ;
+            if ( rs != null )
+            {
+                try
+                {
+                    rs.close();
+                }
+                catch ( SQLException e )
+                {
+                    problem = e ;
+                    reusable = false ;
+                }
+            }
+            if ( statement instanceof PreparedStatement )
+            {
+                try
+                {
+                    if ( reusable )
+                    {
+                        statement.setFetchSize( 0 );
+                    }
+                    facade.releaseStatement( con , sql , (PreparedStatement)statement , reusable );
+                }
+                catch ( SQLException e )
+                {
+                    problem = ( problem == null ) ? e : problem ;
+                }
+            }
+            else if ( statement != null )
+            {
+                try
+                {
+                    statement.close();
+                }
+                catch ( SQLException e )
+                {
+                    problem = ( problem == null ) ? e : problem ;
+                }
+            }
+            if ( closeConnection )
+            {
+                try
+                {
+                    if ( restoreAutoCommit )
+                    {
+                        con.rollback();
+                        con.setAutoCommit( true );
+                    }
+                }
+                catch ( SQLException e )
+                {
+                    problem = ( problem == null ) ? e : problem ;
+                }
+                finally
+                {
+                    con.close();
+                }
+            }
+            if ( problem != null )
+            {
+                throw problem ;
+            }
+        }
+    }
+
+    // close without hiding the exception that got us here
+    private void closeQuietly()
+    {
+        reusable = false ;
+        try
+        {
+            close();
+        }
+        catch ( SQLException e )
+        {
+            // the first problem is the one worth reporting
+        }
+    }
+
+}
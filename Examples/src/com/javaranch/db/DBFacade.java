@@ -3,7 +3,11 @@ package com.javaranch.db ;
 import com.javaranch.common.*;
 
 import java.util.* ;
+import java.util.concurrent.* ;
+import java.util.concurrent.atomic.AtomicInteger ;
+import java.util.concurrent.atomic.AtomicLong ;
 import java.io.* ;
+import java.math.BigDecimal ;
 import java.security.InvalidParameterException;
 import java.sql.*;
 import javax.naming.* ;
@@ -37,8 +41,34 @@ import javax.sql.DataSource;
 public class DBFacade
 {
 
+    /** How a DBQuery with a limit (see DBQuery.page()) asks for only so many rows:  "... LIMIT n".  MySQL,
+     *  PostgreSQL, H2, HSQLDB and SQLite.  The default. */
+    public static final String LIMIT = "LIMIT" ;
+
+    /** "... FETCH FIRST n ROWS ONLY":  the SQL standard.  DB2, Derby and Oracle 12c and later. */
+    public static final String FETCH_FIRST = "FETCH FIRST" ;
+
+    /** "SELECT TOP n ...":  SQL Server and Sybase. */
+    public static final String TOP = "TOP" ;
+
+    /** "SELECT * FROM ( ... ) WHERE ROWNUM <= n":  any Oracle.  The default for OracleFacade. */
+    public static final String ROWNUM = "ROWNUM" ;
+
     private boolean initialized = false ;
     private boolean useHighLowPattern = true ;
+    private volatile boolean usePool = true ;
+    private boolean useParameters = false ;
+    private boolean useArrayParameters = false ;
+    private String inListTable = null ;
+    private Dialect dialect = Dialect.GENERIC ;
+    private String limitStyle = LIMIT ;
+    private int fetchSize = 1000 ;
+    private int batchSize = 500 ;
+    private double idPrefetchWatermark = 0.5 ;
+    private volatile ErrorLog errorLog = new ErrorLog();
+    private IDStrategy idStrategy = null ;
+    private volatile QueryCache queryCache = null ;
+    private volatile DBStatistics statistics = null ;
 
     // Used for when JNDI was provided in the constructor.  Null if not being used.
     private String jndiLookup = null ;
@@ -50,6 +80,34 @@ public class DBFacade
     private String databaseName = null ;
     private String databasePassword = null ;
 
+    // Used for when a Driver and URL was provided in the constructor and pooling has not been turned off.
+    private volatile ConnectionPool pool = null ;
+
+    // Where reads can go instead of here - see addReadReplica().  ReadReplica objects.
+    private final List replicas = new CopyOnWriteArrayList();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private long readYourWritesMillis = 1000 ;
+
+    // Tables kept in memory that read from here - see ReplicatedTable.  Told when their table changes.
+    private final List replicatedTables = new CopyOnWriteArrayList();
+
+    // When this thread last changed something (a Long), so its reads can stay here for a little while.
+    private final ThreadLocal lastWrite = new ThreadLocal();
+
+    // The connection this thread is using for inTransaction() (from TransactionConnection), or null.
+    private final ThreadLocal transaction = new ThreadLocal();
+
+    // The tables this thread's transaction changed (a Set, with null meaning it can't be told which), so they are
+    // only thrown out of the caches once it commits.  Null when there is no transaction.
+    private final ThreadLocal pendingChanges = new ThreadLocal();
+
+    // INSERT and UPDATE statements already built for the columns they change
+    private final StatementTemplates templates = new StatementTemplates();
+
+    // Where searchAsync() and friends run - see getAsyncLimit().  Made when first needed.
+    private ExecutorService asyncExecutor = null ;
+    private int asyncLimit = 0 ;
+
     /** Instantiate a DBFacade object where all database connections will be based on a JNDI lookup.
      *
      * For a variety of architectural reasons, exceptions occurring here will be cached and regurgitated when you try to
@@ -72,6 +130,8 @@ public class DBFacade
      * For a variety of architectural reasons, exceptions occurring here will be cached and regurgitated when you try to
      * get a connection.  If you want to test to see if the exception happened here, use the getStartupException() method.
      *
+     * Connections are kept in a ConnectionPool.  See getConnectionPool() and doNotUsePool().
+     *
      * @param databaseDriver The name of a class that will be loaded. i.e. "com.mysql.jdbc.Driver" or "com.inet.tds.TdsDriver"
      * @param databaseURL Where the database can be found. i.e. "jdbc:databaseDriver://hostname/databasename" or "jdbc:mysql://localhost/soup"
      */
@@ -107,7 +167,7 @@ public class DBFacade
         this.databasePassword = databasePassword ;
     }
 
-    /** Exposed for unit testing purposes only! */
+    /** Exposed for unit testing purposes only!  And for ShardedDBFacade, which gets its connections from its shards. */
     DBFacade(){}
 
     private void initialize() throws Exception
@@ -146,842 +206,3870 @@ public class DBFacade
         useHighLowPattern = false ;
     }
 
-    protected boolean useNoLockHint()
+    /** Use something other than the high/low pattern to make new ID's - see IDStrategy.
+     *
+     * This takes the place of both the high/low pattern and doNotUseHighLowPattern().  Call it before the first
+     * database access.
+     *
+     * @param idStrategy null to go back to the high/low pattern (or whatever doNotUseHighLowPattern() says).
+     */
+    public void setIDStrategy( IDStrategy idStrategy )
     {
-        return false ;
+        this.idStrategy = idStrategy ;
     }
 
-    /** Return a database connection.
+    public IDStrategy getIDStrategy()
+    {
+        return idStrategy ;
+    }
+
+    /** Keep search results in memory - see QueryCache.
      *
-     *  Gets a connection from the same place all of the methods here get a connection if
-     *  you don't provide one.  Of course, if you open it, you gotta close it!
+     * @param queryCache null to stop caching.
      */
-    public Connection getConnection() throws Exception
+    public void setQueryCache( QueryCache queryCache )
     {
-        initialize();
-        Connection con = null ;
-        if ( dataSource == null )
-        {
-            if ( databaseURL != null )
-            {
-                if ( databaseName == null )
-                {
-                    con = DriverManager.getConnection( databaseURL );
-                }
-                else
-                {
-                    con = DriverManager.getConnection( databaseURL , databaseName , databasePassword );
-                }
-            }
-        }
-        else
-        {
-            con = dataSource.getConnection();
-        }
-        return con ;
+        this.queryCache = queryCache ;
     }
 
-    /** Establish a connection to the database to see if any exceptions might be generated.
-     *
-     * Call this method in your startup code to see if everything is configured and working correctly.
+    public QueryCache getQueryCache()
+    {
+        return queryCache ;
+    }
+
+    /** Time every statement and every wait for a connection - see DBStatistics.
      *
-     * @throws Exception The types of exceptions thrown here can change depending the type of database access.
+     * @param statistics null to stop timing.
      */
-    public void testConnection() throws Exception
+    public void setStatistics( DBStatistics statistics )
     {
-        Connection con = getConnection();
-        if ( con != null )
-        {
-            con.close();
-        }
+        this.statistics = statistics ;
     }
 
-    /** Sometimes you just gotta do it in SQL.
+    public DBStatistics getStatistics()
+    {
+        return statistics ;
+    }
+
+    /** For use by DBCursor and the ID strategies:  start timing a statement.  Does nothing if there are no statistics. */
+    DBStatistics.Timer startTimer( String sql )
+    {
+        DBStatistics s = statistics ;
+        return ( s == null ) ? DBStatistics.NOT_TIMING : s.start( sql );
+    }
+
+    /** Throw away anything the query cache has from these tables, and read from here instead of the read replicas for
+     *  a little while (see setReadYourWritesMillis()).
      *
-     * This method will at least handle the statements and result sets for you.
+     * A ReplicatedTable of one of these tables reads the whole table again before its next search.
      *
-     * @param con A database connection.
-     * @param sql A complete SQL statement
-     * @return contains zero objects if none are found.
+     * Inside inTransaction(), this waits until the transaction commits (and is forgotten if it rolls back).  Until
+     * then, nobody else can see the change anyway, and another thread could put the old rows right back in the cache.
+     *
+     * Everything in here that changes a table calls this.  If you change a table some other way, you might want to
+     * call it too.
+     *
+     * @param table null if any table might have changed.
      */
-    public DBResults executeQuery( Connection con , String sql ) throws SQLException
+    public void tableChanged( String table )
     {
-        if ( con == null )
+        Set pending = (Set)pendingChanges.get();
+        if ( pending == null )
         {
-            throw new InvalidParameterException( "parameter con is not allowed to be null" );
+            changed( table );
         }
-        if ( ! Str.usable( sql ) )
+        else
         {
-            throw new InvalidParameterException( "parameter sql must contain usable SQL!" );
+            pending.add( table );
         }
-        DBResults data = new DBResults();
-        Statement statement = con.createStatement();
-        try
+    }
+
+    // Throw the table out of the caches now.  A null table means any table might have changed.
+    private void changed( String table )
+    {
+        wrote();
+        if ( table == null )
         {
-            ResultSet rs = statement.executeQuery( sql );
-            int numberOfColumns = rs.getMetaData().getColumnCount();
-            while ( rs.next() )
+            QueryCache cache = queryCache ;
+            if ( cache != null )
             {
-                String[] s = new String[ numberOfColumns ];
-                for ( int i = 0 ; i < s.length ; i++ )
-                {
-                    s[ i ] = rs.getString( i + 1 );  // todo spatial stuff happens here
-                }
-                data.add( s );
+                cache.clear();
+            }
+            Iterator it = replicatedTables.iterator();
+            while ( it.hasNext() )
+            {
+                ( (ReplicatedTable)it.next() ).changed();
             }
         }
-        catch ( Exception e )
-        {
-            throw new SQLException( "executeQuery() execute fail [" + sql + "]: " + e );
-        }
-        finally
+        else
         {
-            statement.close();
+            invalidate( table );
         }
-        return data ;
     }
 
-    /** Sometimes you just gotta do it in SQL.
-     *
-     * This method will at least handle the statements and result sets for you.
-     *
-     * @param sql A complete SQL statement
-     * @return contains zero objects if none are found.
-     */
-    public DBResults executeQuery( String sql ) throws SQLException
+    // throw out what the query cache and the replicated tables have from these tables
+    private void invalidate( String table )
     {
-        DBResults data = new DBResults();
-        try
+        QueryCache cache = queryCache ;
+        String[] tables = QueryCache.getTables( table );
+        for ( int i = 0 ; i < tables.length ; i++ )
         {
-            Connection con = getConnection();
-            try
-            {
-                data = executeQuery( con , sql );
-            }
-            catch ( SQLException e )
-            {
-                throw e ;  // this is to avoid the exception message below
-            }
-            catch ( Exception e )
+            if ( cache != null )
             {
-                throw new SQLException( "executeQuery() fail: " + e );
+                cache.invalidate( tables[ i ] );
             }
-            finally
+            Iterator it = replicatedTables.iterator();
+            while ( it.hasNext() )
             {
-                con.close();
+                ReplicatedTable replicated = (ReplicatedTable)it.next();
+                if ( replicated.getTable().equalsIgnoreCase( tables[ i ] ) )
+                {
+                    replicated.changed();
+                }
             }
         }
-        catch ( SQLException e )
-        {
-            throw e ;  // this is to avoid the exception message below
-        }
-        catch( Exception e )
+    }
+
+    /** For use by ReplicatedTable:  tell it when its table changes through here. */
+    void addReplicatedTable( ReplicatedTable replicated )
+    {
+        if ( ! replicatedTables.contains( replicated ) )
         {
-            throw new SQLException( "executeQuery() connection fail: " + e );
+            replicatedTables.add( replicated );
         }
-        return data ;
     }
 
+    /** Calling this method will make sure that search values and data are sent to the database as parameters of a
+     *  PreparedStatement instead of being pasted into the SQL.
+     *
+     * The SQL for a search is then the same no matter what is being searched for, so the database can parse it once.
+     * When the connections come from a ConnectionPool, each connection also keeps its PreparedStatements around for
+     * reuse (see ConnectionPool.setStatementCacheSize()).
+     *
+     * Row and Map data is all Strings, and Strings are sent with setString().  Most databases turn them into whatever
+     * the column is, but PostgreSQL won't put a VARCHAR parameter in a number or time column unless the URL has
+     * "stringtype=unspecified" on it.
+     *
+     * Call it before the first database access.
+     */
+    public void useParameters()
+    {
+        useParameters = true ;
+    }
 
-    /** Sometimes you just gotta do it in SQL.
+    /** True if useParameters() has been called. */
+    public boolean isUsingParameters()
+    {
+        return useParameters ;
+    }
+
+    /** Calling this method will make a parameterized search on a list of values (DBQuery.setSearch( column , int[] )
+     *  and friends) send the whole list as one array parameter:  "column = ANY(?)".
      *
-     * This method will at least handle the statements for you.
+     * The SQL is then the same however many values there are.  Only for databases that can take an array parameter
+     * (PostgreSQL, H2).  Does nothing unless useParameters() has been called too.
+     */
+    public void useArrayParameters()
+    {
+        useArrayParameters = true ;
+    }
+
+    /** True if useArrayParameters() has been called. */
+    public boolean isUsingArrayParameters()
+    {
+        return useArrayParameters ;
+    }
+
+    /** A table for parameterized searches on more than getMaxInListSize() values.
      *
-     * @param con A database connection.
-     * @param sql A complete SQL statement
+     * The values are put in this table just before the search and the search becomes
+     * "column IN (SELECT NUM_VALUE FROM table WHERE LIST_ID = ?)".  Without it (the default), a long list is broken
+     * into several IN lists joined with OR.  Not used when useArrayParameters() has been called.  <p>
+     *
+     * The table must have a LIST_ID INTEGER column, a NUM_VALUE column for number searches and a TEXT_VALUE VARCHAR
+     * column for string searches.  It MUST be a temporary table that each connection sees only its own rows of, and
+     * that keeps its rows through a commit - every search that uses it starts by deleting everything in it.  On Oracle
+     * that's a GLOBAL TEMPORARY TABLE ... ON COMMIT PRESERVE ROWS.  Since the values are written, a search that uses
+     * it always runs on the primary database, never on a read replica (see addReadReplica()).
+     *
+     * @param inListTable null to not use one.
      */
-    public void executeUpdate( Connection con , String sql ) throws SQLException
+    public void setInListTable( String inListTable )
     {
-        if ( con == null )
+        this.inListTable = inListTable ;
+    }
+
+    public String getInListTable()
+    {
+        return inListTable ;
+    }
+
+    /** The SQL that is different for this brand of database - see Dialect.  This sets the limit style too.
+     *
+     * @param dialect null for Dialect.GENERIC, the default.
+     */
+    public void setDialect( Dialect dialect )
+    {
+        this.dialect = ( dialect == null ) ? Dialect.GENERIC : dialect ;
+        setLimitStyle( this.dialect.getLimitStyle() );
+    }
+
+    public Dialect getDialect()
+    {
+        return dialect ;
+    }
+
+    /** How this database is asked for only the first so many rows of a search - see DBQuery.page().
+     *
+     * @param limitStyle LIMIT (the default), FETCH_FIRST, TOP or ROWNUM.
+     */
+    public void setLimitStyle( String limitStyle )
+    {
+        if ( LIMIT.equals( limitStyle ) )
         {
-            throw new InvalidParameterException( "parameter con is not allowed to be null" );
+            this.limitStyle = LIMIT ;
         }
-        if ( ! Str.usable( sql ) )
+        else if ( FETCH_FIRST.equals( limitStyle ) )
         {
-            throw new InvalidParameterException( "parameter sql must contain usable SQL!" );
+            this.limitStyle = FETCH_FIRST ;
         }
-        Statement statement = con.createStatement();
-        try
+        else if ( TOP.equals( limitStyle ) )
         {
-            statement.executeUpdate( sql );
+            this.limitStyle = TOP ;
         }
-        catch ( Exception e )
+        else if ( ROWNUM.equals( limitStyle ) )
         {
-            throw new SQLException( "executeQuery() execute fail [" + sql + "]: " + e );
+            this.limitStyle = ROWNUM ;
         }
-        finally
+        else
         {
-            statement.close();
+            throw new InvalidParameterException( "unknown limit style: " + limitStyle );
         }
     }
 
-    /** Sometimes you just gotta do it in SQL.
+    public String getLimitStyle()
+    {
+        return limitStyle ;
+    }
+
+    /** How many rows a DBCursor asks the database for at a time.
      *
-     * This method will at least handle the statements for you.
+     * Bigger is faster, smaller takes less memory.  Zero lets the driver decide (which for some drivers means reading
+     * everything).  The default is 1000.  MySQL only streams with Integer.MIN_VALUE or with "useCursorFetch=true" on
+     * the URL.
+     */
+    public void setFetchSize( int fetchSize )
+    {
+        this.fetchSize = fetchSize ;
+    }
+
+    public int getFetchSize()
+    {
+        return fetchSize ;
+    }
+
+    /** How many rows insertBatch() sends to the database at a time.
      *
-     * @param sql A complete SQL statement
+     * Bigger means fewer round trips, but the driver has to hold on to more.  The default is 500.
      */
-    public void executeUpdate( String sql ) throws SQLException
+    public void setBatchSize( int batchSize )
     {
-        try
+        if ( batchSize < 1 )
         {
-            Connection con = getConnection();
-            try
-            {
-                executeUpdate( con , sql );
-            }
-            catch ( SQLException e )
-            {
-                throw e ;  // this is to avoid the exception message below
-            }
-            catch ( Exception e )
-            {
-                throw new SQLException( "executeUpdate() fail: " + e );
-            }
-            finally
-            {
-                con.close();
-            }
+            throw new InvalidParameterException( "batchSize must be at least one" );
         }
-        catch ( SQLException e )
+        this.batchSize = batchSize ;
+    }
+
+    public int getBatchSize()
+    {
+        return batchSize ;
+    }
+
+    /** How much of a block of high/low ID's gets used before the next block is fetched in the background.
+     *
+     * 0.5 (the default) means that when half of the ID's in a block have been handed out, another thread goes to the
+     * "TableIDCounters" table for the next block, so nobody has to wait for it.  1.0 or more turns this off:  the next
+     * block is fetched when it is needed.
+     */
+    public void setIDPrefetchWatermark( double idPrefetchWatermark )
+    {
+        if ( idPrefetchWatermark < 0 )
         {
-            throw e ;  // this is to avoid the exception message below
+            throw new InvalidParameterException( "idPrefetchWatermark can't be negative" );
         }
-        catch( Exception e )
+        this.idPrefetchWatermark = idPrefetchWatermark ;
+    }
+
+    public double getIDPrefetchWatermark()
+    {
+        return idPrefetchWatermark ;
+    }
+
+    /** Where problems that nobody is waiting to hear about are written, like a failed ID prefetch.  The default is a
+     *  new ErrorLog, which writes to System.err.
+     */
+    public void setErrorLog( ErrorLog errorLog )
+    {
+        if ( errorLog == null )
         {
-            throw new SQLException( "executeUpdate() connection fail: " + e );
+            throw new InvalidParameterException( "parameter errorLog is not allowed to be null" );
         }
+        this.errorLog = errorLog ;
     }
 
-    /** Use the DBQuery object to do a search.
-     *
-     *   @param con A database connection. <p>
-     *   @param q A predescribed query - see DBQuery for details. <p>
-     *   @return contains zero objects if none are found.
-     */
-    public DBResults search( Connection con , DBQuery q ) throws SQLException
+    public ErrorLog getErrorLog()
     {
-        String sql = q.getSQL();
-        return executeQuery( con , sql );
+        return errorLog ;
     }
 
-    /** Find all the data in a table that matches up to this SQL where clause.
-     *
-     *  NOTE!  Use this method only if there is no alternative!  The purpose of these classes
-     *  is to provide a non-SQL facade to the relational database because some databases
-     *  are different than others.  If your whereClause SQL fragment uses any SQL that is
-     *  proprietary to the database you are currently using, there is a good chance that it
-     *  will not work when the software is ported! <p>
+    /** Calling this method will make sure that every connection is a brand new connection from the DriverManager that is
+     *  really closed when you close it.
      *
-     *  @param whereClause The SQL to use in selecting the rows - do not say "WHERE". <p>
-     *  @param dataColumns The column names that have the data you want. <p>
-     *  @return contains zero objects if none are found.
+     * Only matters if a driver and URL were given to the constructor.  Call it before the first database access.
      */
-    public DBResults search( Connection con , String table , String whereClause , String[] dataColumns ) throws SQLException
+    public synchronized void doNotUsePool()
     {
-        DBQuery q = new DBQuery( this , table );
-        q.setWhereClause( whereClause );
-        q.setDataColumns( dataColumns );
-        return search( con , q );
+        usePool = false ;
+        if ( pool != null )
+        {
+            pool.closeIdle();
+            pool = null ;
+        }
     }
 
-    /** Find all the data in a table that matches up to this SQL where clause.
+    /** The pool that connections come from when a driver and URL were given to the constructor.
      *
-     *  NOTE!  Use this method only if there is no alternative!  The purpose of these classes
-     *  is to provide a non-SQL facade to the relational database because some databases
-     *  are different than others.  If your whereClause SQL fragment uses any SQL that is
-     *  proprietary to the database you are currently using, there is a good chance that it
-     *  will not work when the software is ported! <p>
+     * Use this to tune the pool or to look at its statistics.
      *
-     *  @param whereClause The SQL to use in selecting the rows - do not say "WHERE". <p>
-     *  @param dataColumns The column names that have the data you want. <p>
-     *  @return contains zero objects if none are found.
+     * @return null if connections come from JNDI or if doNotUsePool() was called.
      */
-    public DBResults search( String table , String whereClause , String[] dataColumns ) throws SQLException
+    public ConnectionPool getConnectionPool()
     {
-        DBResults data = new DBResults();
-        try
+        // every getConnection() comes through here, so only lock the first time
+        ConnectionPool returnVal = pool ;
+        if ( ( returnVal == null ) && usePool && ( databaseURL != null ) )
         {
-            Connection con = getConnection();
-            try
-            {
-                data = search( con , table , whereClause , dataColumns );
-            }
-            catch ( SQLException e )
-            {
-                throw e ;  // this is to avoid the exception message below
-            }
-            catch ( Exception e )
-            {
-                throw new SQLException( "search() create fail: " + e );
-            }
-            finally
+            synchronized ( this )
             {
-                con.close();
+                if ( usePool && ( pool == null ) )
+                {
+                    pool = new ConnectionPool( databaseURL , databaseName , databasePassword );
+                }
+                returnVal = pool ;
             }
         }
-        catch ( SQLException e )
-        {
-            throw e ;  // this is to avoid the exception message below
-        }
-        catch( Exception e )
-        {
-            throw new SQLException( "search() connection fail: " + e );
-        }
-        return data ;
+        return returnVal ;
     }
 
-
-    /** Find all the data in a table where the text in a column exactly matches a string. <p>
+    /** Send reads to another copy of the database - usually a replica that the database keeps up to date.
      *
-     * @param dataColumns The searchColumn names that have the data you want. <p>
-     * @return contains zero objects if none are found.
+     * Anything that only reads and isn't given a connection (search(), executeQuery(), openCursor() ...) gets its
+     * connection from the replica with the fewest connections out.  Everything else stays here:  all changes, all
+     * ID's, anything given a connection and anything run in a transaction.  Reads also stay here for a little while
+     * after the same thread changes something (see setReadYourWritesMillis()), so a thread always sees what it just
+     * wrote.
+     *
+     * If a replica can't give a connection, it is left alone for a few seconds and the read goes to another replica,
+     * or here.
+     *
+     * Call it before the first database access.
+     *
+     * @param replica Only used for its connections.
      */
-    public DBResults search( Connection con , String table , String searchColumn , String searchText , String[] dataColumns ) throws SQLException
+    public void addReadReplica( DBFacade replica )
     {
-        DBQuery q = new DBQuery( this , table , searchColumn , searchText , dataColumns );
-
-        return search( con , q );
+        if ( replica == null )
+        {
+            throw new InvalidParameterException( "parameter replica is not allowed to be null" );
+        }
+        replicas.add( new ReadReplica( replica ) );
     }
 
-    /** Find all the data in a table where the text in a column exactly matches one of these strings. <p>
+    /** Send reads to another database URL, using the same driver, user name and password as this facade.
      *
-     * @param dataColumns The searchColumn names that have the data you want. <p>
-     * @return contains zero objects if none are found.
+     * See addReadReplica( DBFacade ).
      */
-    public DBResults search( Connection con , String table , String searchColumn , String[] searchText , String[] dataColumns ) throws SQLException
+    public void addReadReplica( String databaseURL )
     {
-        DBQuery q = new DBQuery( this , table , searchColumn , searchText , dataColumns );
+        if ( databaseDriver == null )
+        {
+            throw new InvalidParameterException( "this facade has no driver - use addReadReplica( DBFacade )" );
+        }
+        addReadReplica( new DBFacade( databaseDriver , databaseURL , databaseName , databasePassword ) );
+    }
 
-        return search( con , q );
+    /** The facades given to addReadReplica(). */
+    public DBFacade[] getReadReplicas()
+    {
+        Object[] list = replicas.toArray();
+        DBFacade[] returnVal = new DBFacade[ list.length ];
+        for ( int i = 0 ; i < list.length ; i++ )
+        {
+            returnVal[ i ] = ( (ReadReplica)list[ i ] ).getFacade();
+        }
+        return returnVal ;
     }
 
-    /** Find all the data in a table where the text in a column exactly matches a string. <p>
+    /** After a thread changes something, its reads come here instead of a read replica for this long.
      *
-     * @param dataColumns The searchColumn names that have the data you want. <p>
-     * @return contains zero objects if none are found.
+     * It should be longer than it takes the replicas to catch up.  The default is one second.
      */
-    public DBResults search( Connection con , String table , String searchColumn , int searchValue , String[] dataColumns ) throws SQLException
+    public void setReadYourWritesMillis( long readYourWritesMillis )
     {
-        DBQuery q = new DBQuery( this , table , searchColumn , searchValue , dataColumns );
+        this.readYourWritesMillis = readYourWritesMillis ;
+    }
 
-        return search( con , q );
+    public long getReadYourWritesMillis()
+    {
+        return readYourWritesMillis ;
     }
 
-    /** Find all the data in a table where the text in a column exactly matches one of these strings. <p>
-     *
-     * @param dataColumns The searchColumn names that have the data you want. <p>
-     * @return contains zero objects if none are found.
-     */
-    public DBResults search( Connection con , String table , String searchColumn , int[] searchValues , String[] dataColumns ) throws SQLException
+    // remember that this thread changed something - only matters with replicas
+    private void wrote()
     {
-        DBQuery q = new DBQuery( this , table , searchColumn , searchValues , dataColumns );
+        if ( ! replicas.isEmpty() )
+        {
+            lastWrite.set( new Long( System.currentTimeMillis() ) );
+        }
+    }
 
-        return search( con , q );
+    private boolean wroteRecently()
+    {
+        Long when = (Long)lastWrite.get();
+        return ( when != null ) && ( System.currentTimeMillis() - when.longValue() < readYourWritesMillis );
     }
 
-    /** Use the DBQuery object to do a search.
+    /** Return a database connection for reading only.
      *
-     * @return contains zero objects if none are found.
+     * Comes from the least busy read replica if there are any (see addReadReplica()), otherwise it's the same as
+     * getConnection().  Inside inTransaction() it is always the transaction's connection, so you see your own
+     * changes.  Of course, if you open it, you gotta close it!
      */
-    public DBResults search( DBQuery q ) throws SQLException
+    public Connection getReadConnection() throws Exception
     {
-        if ( q == null )
+        Connection con = null ;
+        if ( ! replicas.isEmpty() && ( transaction.get() == null ) && ! wroteRecently() )
         {
-            throw new InvalidParameterException( "parameter q is not allowed to be null" );
+            long start = System.nanoTime();
+            con = getReplicaConnection();
+            DBStatistics s = statistics ;
+            if ( ( s != null ) && ( con != null ) )
+            {
+                s.connectionAcquired( System.nanoTime() - start );
+            }
         }
-        DBResults data = new DBResults();
-        try
+        if ( con == null )
         {
-            Connection con = getConnection();
-            try
+            con = getConnection();
+        }
+        return con ;
+    }
+
+    // The connection for a search with these parameters.  A long list that goes through the in-list table is
+    // written to that table first, which a read replica may not allow - so that search always goes to the primary.
+    private Connection getReadConnection( Object[] parameters ) throws Exception
+    {
+        boolean writes = false ;
+        for ( int i = 0 ; ( parameters != null ) && ( i < parameters.length ) ; i++ )
+        {
+            if ( parameters[ i ] instanceof InListData )
             {
-                data = search( con , q );
+                writes = true ;
             }
-            catch ( SQLException e )
+        }
+        return writes ? getConnection() : getReadConnection();
+    }
+
+    // Try the replicas that are up, the least busy first.  Null if none of them will give a connection.
+    private Connection getReplicaConnection()
+    {
+        Object[] list = replicas.toArray();
+        boolean[] tried = new boolean[ list.length ];
+        Connection con = null ;
+        int start = ( nextReplica.getAndIncrement() & Integer.MAX_VALUE ) % list.length ;  // so ties take turns
+        boolean looking = true ;
+        while ( looking )
+        {
+            ReadReplica best = null ;
+            int bestIndex = -1 ;
+            for ( int i = 0 ; i < list.length ; i++ )
             {
-                throw e ;  // this is to avoid the exception message below
+                int index = ( start + i ) % list.length ;
+                ReadReplica replica = (ReadReplica)list[ index ];
+                if ( ! tried[ index ] && replica.isUp() && ( ( best == null ) || ( replica.getOutstanding() < best.getOutstanding() ) ) )
+                {
+                    best = replica ;
+                    bestIndex = index ;
+                }
             }
-            catch ( Exception e )
+            if ( best == null )
             {
-                throw new SQLException( "search() create fail: " + e );
+                looking = false ;
             }
-            finally
+            else
             {
-                con.close();
+                tried[ bestIndex ] = true ;
+                con = best.getConnection();
+                looking = ( con == null );
             }
         }
-        catch ( SQLException e )
+        return con ;
+    }
+
+    /** How many async calls (searchAsync(), insertAsync() ...) can use the database at once.  The rest wait their turn.
+     *
+     * Call it before the first async call.
+     */
+    public synchronized void setAsyncLimit( int asyncLimit )
+    {
+        if ( asyncLimit < 1 )
         {
-            throw e ;  // this is to avoid the exception message below
+            throw new InvalidParameterException( "asyncLimit must be at least one" );
         }
-        catch( Exception e )
+        this.asyncLimit = asyncLimit ;
+    }
+
+    /** Unless setAsyncLimit() was called, this is the most connections the pool will hand out (see
+     *  ConnectionPool.setMaxSize()), or 10 if there is no pool.  More than that would only wait for a connection.
+     */
+    public synchronized int getAsyncLimit()
+    {
+        int returnVal = asyncLimit ;
+        if ( returnVal == 0 )
         {
-            throw new SQLException( "search() connection fail: " + e );
+            ConnectionPool connectionPool = getConnectionPool();
+            returnVal = ( connectionPool == null ) ? 10 : connectionPool.getMaxSize();
         }
-        return data ;
+        return returnVal ;
     }
 
-
-    /** Find all the data in a table where the text in a column exactly matches a string.
+    /** Run the async calls on your own threads instead.
      *
-     * @param dataColumns The searchColumn names that have the data you want. <p>
-     * @return contains zero objects if none are found.
+     * Call it before the first async call.
      */
-    public DBResults search( String table , String searchColumn , String searchText , String[] dataColumns ) throws SQLException
+    public synchronized void setAsyncExecutor( ExecutorService asyncExecutor )
     {
-        DBQuery q = new DBQuery( this , table , searchColumn , searchText , dataColumns );
-        DBResults r = search( q );
-        return r ;
+        this.asyncExecutor = asyncExecutor ;
+    }
 
-        //return search( new DBQuery( table , searchColumn , searchText , dataColumns ) );
+    private synchronized ExecutorService getAsyncExecutor()
+    {
+        if ( asyncExecutor == null )
+        {
+            int limit = getAsyncLimit();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor( limit , limit , 60 , TimeUnit.SECONDS , new LinkedBlockingQueue() , new ThreadFactory()
+            {
+                public Thread newThread( Runnable r )
+                {
+                    Thread t = new Thread( r , "DBFacade async" );
+                    t.setDaemon( true );
+                    return t ;
+                }
+            });
+            executor.allowCoreThreadTimeOut( true );
+            asyncExecutor = executor ;
+        }
+        return asyncExecutor ;
     }
 
-    /** Find all the data in a table where the text in a column exactly matches one of these strings.
+    /** Do some database work on another thread, so you can do other things (like more database work) while you wait.
      *
-     * @param dataColumns The searchColumn names that have the data you want. <p>
-     * @return contains zero objects if none are found.
-    */
-    public DBResults search( String table , String searchColumn , String[] searchText , String[] dataColumns ) throws SQLException
+     * The work waits its turn if getAsyncLimit() calls are already running.  Call get() on the Future for the result.
+     * If the work threw an exception, get() throws an ExecutionException with that exception as its cause.
+     *
+     * <pre>
+     *
+     *    Future animals = facade.searchAsync( animalQuery );
+     *    Future farms = facade.searchAsync( farmQuery );
+     *    DBResults animalResults = (DBResults)animals.get();
+     *    DBResults farmResults = (DBResults)farms.get();
+     *
+     * </pre>
+     *
+     * The work gets its own connection, so it is never part of your transaction.
+     */
+    public Future submit( Callable work )
     {
-        return search( new DBQuery( this , table , searchColumn , searchText , dataColumns ) );
+        return getAsyncExecutor().submit( work );
     }
 
-    /** Find all the data in a table where the text in a column exactly matches a string.
+    /** Like search( DBQuery ), but on another thread - see submit().
      *
-     * @param dataColumns The searchColumn names that have the data you want. <p>
-     * @return contains zero objects if none are found.
+     * @return a Future for the DBResults.
      */
-    public DBResults search( String table , String searchColumn , int searchValue , String[] dataColumns ) throws SQLException
+    public Future searchAsync( final DBQuery q )
     {
-        DBQuery q = new DBQuery( this , table , searchColumn , searchValue , dataColumns );
-        return search( q );
-
-        //return search( new DBQuery( table , searchColumn , searchText , dataColumns ) );
+        if ( q == null )
+        {
+            throw new InvalidParameterException( "parameter q is not allowed to be null" );
+        }
+        return submit( new Callable()
+        {
+            public Object call() throws Exception
+            {
+                return search( q );
+            }
+        });
     }
 
-    /** Find all the data in a table where the text in a column exactly matches one of these strings.
+    /** Like search( table , whereClause , dataColumns ), but on another thread - see submit().
      *
-     * @param dataColumns The searchColumn names that have the data you want. <p>
-     * @return contains zero objects if none are found.
-    */
-    public DBResults search( String table , String searchColumn , int[] searchValues , String[] dataColumns ) throws SQLException
+     * @return a Future for the DBResults.
+     */
+    public Future searchAsync( final String table , final String whereClause , final String[] dataColumns )
     {
-        return search( new DBQuery( this , table , searchColumn , searchValues , dataColumns ) );
+        return submit( new Callable()
+        {
+            public Object call() throws Exception
+            {
+                return search( table , whereClause , dataColumns );
+            }
+        });
     }
 
-    /** Update all rows where the searchText matches the text found in column.
+    /** Like executeQuery( sql ), but on another thread - see submit().
      *
-     * @param data A key-value collection of searchColumn names (key) and data (value). If a searchColumn name starts with ">", that searchColumn will be processed as a stream (good for big Strings). <p>
+     * @return a Future for the DBResults.
      */
-    public void update( String table , String searchColumn , String searchText , Map data ) throws SQLException
+    public Future executeQueryAsync( final String sql )
     {
-        update( table , searchColumn + '=' + normalizeSearchText( searchText ) , data );
+        return submit( new Callable()
+        {
+            public Object call() throws Exception
+            {
+                return executeQuery( sql );
+            }
+        });
     }
 
-    /** Update all rows where the searchText matches the text found in searchColumn.
+    /** Like executeQuery( sql , parameters ), but on another thread - see submit().
      *
-     * @param data A key-value collection of searchColumn names (key) and data (value). If a searchColumn name starts with ">", that searchColumn will be processed as a stream (good for big Strings). <p>
+     * @return a Future for the DBResults.
      */
-    public void update( Connection con , String table , String searchColumn , String searchText , Map data ) throws SQLException
+    public Future executeQueryAsync( final String sql , final Object[] parameters )
     {
-        update( con , table , searchColumn + '=' + normalizeSearchText( searchText ) , data );
+        return submit( new Callable()
+        {
+            public Object call() throws Exception
+            {
+                return executeQuery( sql , parameters );
+            }
+        });
     }
 
-    /** Update all rows where the text in a searchColumn exactly matches one of these strings. <p>
+    /** Like insert( table , data ), but on another thread - see submit().
      *
-     * @param data A key-value collection of searchColumn names (key) and data (value). If a searchColumn name starts with ">", that searchColumn will be processed as a stream (good for big Strings). <p>
+     * @return a Future that gives null when the row is in.
      */
-    public void update( String table , String searchColumn , String[] searchText , Map data ) throws SQLException
+    public Future insertAsync( final String table , final Map data )
     {
-        update( table , DBQuery.buildWhereClause( searchColumn , searchText ) , data );
+        return submit( new Callable()
+        {
+            public Object call() throws Exception
+            {
+                insert( table , data );
+                return null ;
+            }
+        });
     }
 
-    /** Update all rows where the text in a searchColumn exactly matches one of these strings. <p>
+    /** Like insertAndGetID( table , data ), but on another thread - see submit().
      *
-     * @param data A key-value collection of searchColumn names (key) and data (value). If a searchColumn name starts with ">", that searchColumn will be processed as a stream (good for big Strings). <p>
+     * @return a Future for the new ID as a Long.
      */
-    public void update( Connection con , String table , String searchColumn , String[] searchText , Map data ) throws SQLException
+    public Future insertAndGetIDAsync( final String table , final Map data )
+    {
+        return submit( new Callable()
+        {
+            public Object call() throws Exception
+            {
+                return new Long( insertAndGetID( table , data ) );
+            }
+        });
+    }
+
+    protected boolean useNoLockHint()
     {
-        update( con , table , DBQuery.buildWhereClause( searchColumn , searchText ) , data );
+        return false ;
     }
 
-    /** Update all rows matching this where clause.
+    /** Return a database connection.
      *
-     *  NOTE!  Use this method only if there is no alternative!  The purpose of these classes
-     *  is to provide a non-SQL facade to the relational database because some databases
-     *  are different than others.  If your whereClause SQL fragment uses any SQL that is
-     *  proprietary to the database you are currently using, there is a good chance that it
-     *  will not work when the software is ported! <p>
+     *  Gets a connection from the same place all of the methods here get a connection if
+     *  you don't provide one.  Of course, if you open it, you gotta close it!
      *
-     * @param whereClause The SQL to use in selecting the rows - do not say "WHERE".
-     * @param data A key-value collection of searchColumn names (key) and data (value). If a searchColumn name starts with ">", that searchColumn will be processed as a stream (good for big Strings). <p>
+     *  Inside inTransaction() this is the transaction's connection, and closing it does nothing.
      */
-    public void update( String table , String whereClause , Map data ) throws SQLException
+    public Connection getConnection() throws Exception
     {
-        try
+        Connection con = (Connection)transaction.get();
+        if ( con == null )
         {
-            Connection con = getConnection();
-            try
-            {
-                update( con , table , whereClause , data );
-            }
-            catch ( SQLException e )
-            {
-                throw e ;  // this is to avoid the exception message below
-            }
-            catch ( Exception e )
+            con = openConnection();
+        }
+        return con ;
+    }
+
+    /** A connection of its own, even inside inTransaction().  getConnection() uses this when there is no transaction. */
+    protected Connection openConnection() throws Exception
+    {
+        long start = System.nanoTime();
+        initialize();
+        Connection con = null ;
+        if ( dataSource == null )
+        {
+            ConnectionPool connectionPool = getConnectionPool();
+            if ( connectionPool != null )
             {
-                throw new SQLException( "update() create fail: " + e );
+                con = connectionPool.getConnection();
             }
-            finally
+            else if ( databaseURL != null )
             {
-                con.close();
+                con = openDriverConnection();
             }
         }
-        catch ( SQLException e )
+        else
         {
-            throw e ;  // this is to avoid the exception message below
+            con = dataSource.getConnection();
         }
-        catch( Exception e )
+        DBStatistics s = statistics ;
+        if ( s != null )
+        {
+            s.connectionAcquired( System.nanoTime() - start );
+        }
+        return con ;
+    }
+
+    // a brand new connection straight from the driver, never from the ConnectionPool
+    private Connection openDriverConnection() throws SQLException
+    {
+        Connection con = null ;
+        if ( databaseName == null )
+        {
+            con = DriverManager.getConnection( databaseURL );
+        }
+        else
+        {
+            con = DriverManager.getConnection( databaseURL , databaseName , databasePassword );
+        }
+        return con ;
+    }
+
+    // The connection for reserving a block of ID's from tableIDCounters.  It doesn't come from the ConnectionPool:
+    // a unit of work in inTransaction() holds a pooled connection while it waits for its ID's, and if every pooled
+    // connection is held that way, nobody would ever get one to reserve with.  A reservation is one short transaction
+    // every few blocks, so a connection of its own each time is cheap enough.
+    private Connection openIDConnection() throws Exception
+    {
+        Connection con = null ;
+        if ( ( dataSource == null ) && ( getConnectionPool() != null ) )
+        {
+            initialize();
+            con = openDriverConnection();
+        }
+        else
+        {
+            con = openConnection();
+        }
+        return con ;
+    }
+
+    /** Establish a connection to the database to see if any exceptions might be generated.
+     *
+     * Call this method in your startup code to see if everything is configured and working correctly.
+     *
+     * If the connection pool is set to prefill, this is when it fills up.
+     *
+     * @throws Exception The types of exceptions thrown here can change depending the type of database access.
+     */
+    public void testConnection() throws Exception
+    {
+        Connection con = getConnection();
+        if ( con != null )
+        {
+            con.close();
+        }
+        ConnectionPool connectionPool = getConnectionPool();
+        if ( ( connectionPool != null ) && connectionPool.isPrefill() )
+        {
+            connectionPool.fill();
+        }
+    }
+
+    /** Sometimes you just gotta do it in SQL.
+     *
+     * This method will at least handle the statements and result sets for you.
+     *
+     * @param con A database connection.
+     * @param sql A complete SQL statement
+     * @return contains zero objects if none are found.
+     */
+    public DBResults executeQuery( Connection con , String sql ) throws SQLException
+    {
+        if ( con == null )
+        {
+            throw new InvalidParameterException( "parameter con is not allowed to be null" );
+        }
+        if ( ! Str.usable( sql ) )
+        {
+            throw new InvalidParameterException( "parameter sql must contain usable SQL!" );
+        }
+        DBResults data = new DBResults();
+        Statement statement = con.createStatement();
+        DBStatistics.Timer timer = startTimer( sql );
+        try
+        {
+            ResultSet rs = statement.executeQuery( sql );
+            timer.executed();
+            data = readResults( rs );
+            timer.finished( data.size() );
+        }
+        catch ( Exception e )
+        {
+            timer.failed();
+            throw new SQLException( "executeQuery() execute fail [" + sql + "]: " + e );
+        }
+        finally
+        {
+            statement.close();
+        }
+        return data ;
+    }
+
+    /** Sometimes you just gotta do it in SQL - but the values still don't have to be in the SQL.
+     *
+     * This method will at least handle the statements and result sets for you.
+     *
+     * @param con A database connection.
+     * @param sql A complete SQL statement with a '?' for each parameter.
+     * @param parameters The values for each '?', in order.  Strings are set as strings, null is set as NULL and
+     *                   everything else is left to the driver.
+     * @return contains zero objects if none are found.
+     */
+    public DBResults executeQuery( Connection con , String sql , Object[] parameters ) throws SQLException
+    {
+        if ( con == null )
+        {
+            throw new InvalidParameterException( "parameter con is not allowed to be null" );
+        }
+        if ( ! Str.usable( sql ) )
+        {
+            throw new InvalidParameterException( "parameter sql must contain usable SQL!" );
+        }
+        DBResults data = new DBResults();
+        PreparedStatement statement = prepareStatement( con , sql );
+        boolean reusable = false ;
+        DBStatistics.Timer timer = startTimer( sql );
+        try
+        {
+            setParameters( statement , 1 , parameters );
+            ResultSet rs = statement.executeQuery();
+            timer.executed();
+            data = readResults( rs );
+            timer.finished( data.size() );
+            reusable = true ;
+        }
+        catch ( Exception e )
+        {
+            timer.failed();
+            throw new SQLException( "executeQuery() execute fail [" + sql + "]: " + e );
+        }
+        finally
+        {
+            releaseStatement( con , sql , statement , reusable );
+        }
+        return data ;
+    }
+
+    /** Copy everything in the result set into a DBResults object.
+     */
+    protected DBResults readResults( ResultSet rs ) throws SQLException
+    {
+        DBResults data = new DBResults();
+        int[] columnTypes = getColumnTypes( rs );
+        data.setColumnTypes( columnTypes );
+        while ( rs.next() )
+        {
+            data.add( readRow( rs , columnTypes ) );
+        }
+        return data ;
+    }
+
+    /** Turn the current row of the result set into strings.
+     *
+     * @param columnTypes The java.sql.Types of each column.
+     */
+    protected String[] readRow( ResultSet rs , int[] columnTypes ) throws SQLException
+    {
+        String[] s = new String[ columnTypes.length ];
+        for ( int i = 0 ; i < s.length ; i++ )
+        {
+            s[ i ] = readString( rs , i + 1 , columnTypes[ i ] );
+        }
+        return s ;
+    }
+
+    /** Turn one column of the current row of the result set into a string.
+     *
+     * Override this if some columns need special handling to become strings.
+     *
+     * @param column Starts at 1, just like JDBC.
+     * @param columnType The java.sql.Types of the column.
+     */
+    protected String readString( ResultSet rs , int column , int columnType ) throws SQLException
+    {
+        return rs.getString( column );
+    }
+
+    // the java.sql.Types of each column in the result set
+    static int[] getColumnTypes( ResultSet rs ) throws SQLException
+    {
+        ResultSetMetaData meta = rs.getMetaData();
+        int[] columnTypes = new int[ meta.getColumnCount() ];
+        for ( int i = 0 ; i < columnTypes.length ; i++ )
+        {
+            columnTypes[ i ] = meta.getColumnType( i + 1 );
+        }
+        return columnTypes ;
+    }
+
+    /** Get a PreparedStatement for this SQL.
+     *
+     * If the connection came from a ConnectionPool, the statement might be one that was used before on the same
+     * connection.  Either way, hand it to releaseStatement() when you are done with it.
+     */
+    protected PreparedStatement prepareStatement( Connection con , String sql ) throws SQLException
+    {
+        return prepareStatement( con , sql , null );
+    }
+
+    /** Get a PreparedStatement for this SQL that will hand back the new value of keyColumn from getGeneratedKeys().
+     *
+     * Hand it to releaseStatement() with the same sql and keyColumn when you are done with it.
+     *
+     * @param keyColumn null for a plain statement.
+     */
+    protected PreparedStatement prepareStatement( Connection con , String sql , String keyColumn ) throws SQLException
+    {
+        PreparedStatement returnVal = null ;
+        StatementCache cache = ConnectionPool.getStatementCache( con );
+        if ( cache != null )
+        {
+            returnVal = cache.take( con , sql , keyColumn );
+        }
+        else if ( keyColumn == null )
+        {
+            returnVal = con.prepareStatement( sql );
+        }
+        else
+        {
+            returnVal = con.prepareStatement( sql , new String[]{ keyColumn } );
+        }
+        return returnVal ;
+    }
+
+    /** Done with a statement from prepareStatement().
+     *
+     * @param reusable false if something went wrong and the statement should not be used again.
+     */
+    protected void releaseStatement( Connection con , String sql , PreparedStatement statement , boolean reusable ) throws SQLException
+    {
+        releaseStatement( con , sql , null , statement , reusable );
+    }
+
+    /** Done with a statement from prepareStatement( con , sql , keyColumn ).
+     *
+     * @param reusable false if something went wrong and the statement should not be used again.
+     */
+    protected void releaseStatement( Connection con , String sql , String keyColumn , PreparedStatement statement , boolean reusable ) throws SQLException
+    {
+        StatementCache cache = ConnectionPool.getStatementCache( con );
+        if ( reusable && ( cache != null ) )
+        {
+            try
+            {
+                statement.clearParameters();
+            }
+            catch ( SQLException e )
+            {
+                statement.close();
+                throw e ;
+            }
+            cache.put( sql , keyColumn , statement );
+        }
+        else
+        {
+            statement.close();
+        }
+    }
+
+    /** Feed values to the '?'s of a statement.
+     *
+     * Strings go in with setString() and numbers, times and booleans with setObject(), so the driver sends their own
+     * type.  A null goes in as the type the driver says the '?' is, if it can say.
+     *
+     * @param first The index of the first '?' to set (they start at 1).
+     * @return The index of the next '?'.
+     */
+    static int setParameters( PreparedStatement statement , int first , Object[] parameters ) throws SQLException
+    {
+        int index = first ;
+        if ( parameters != null )
+        {
+            int listID = 0 ; // for each InListData
+            for ( int i = 0 ; i < parameters.length ; i++ )
+            {
+                Object value = parameters[ i ];
+                if ( value == null )
+                {
+                    setNull( statement , index );
+                }
+                else if ( value instanceof ArrayData )
+                {
+                    statement.setArray( index , ( (ArrayData)value ).toArray( statement.getConnection() ) );
+                }
+                else if ( value instanceof InListData )
+                {
+                    listID++ ;
+                    ( (InListData)value ).fill( statement.getConnection() , listID );
+                    statement.setInt( index , listID );
+                }
+                else if ( value instanceof String )
+                {
+                    statement.setString( index , (String)value );
+                }
+                else
+                {
+                    statement.setObject( index , value );
+                }
+                index++ ;
+            }
+        }
+        return index ;
+    }
+
+    /** Sometimes you just gotta do it in SQL.
+     *
+     * This method will at least handle the statements and result sets for you.
+     *
+     * @param sql A complete SQL statement
+     * @return contains zero objects if none are found.
+     */
+    public DBResults executeQuery( String sql ) throws SQLException
+    {
+        DBResults data = new DBResults();
+        try
+        {
+            Connection con = getReadConnection();
+            try
+            {
+                data = executeQuery( con , sql );
+            }
+            catch ( SQLException e )
+            {
+                throw e ;  // this is to avoid the exception message below
+            }
+            catch ( Exception e )
+            {
+                throw new SQLException( "executeQuery() fail: " + e );
+            }
+            finally
+            {
+                con.close();
+            }
+        }
+        catch ( SQLException e )
+        {
+            throw e ;  // this is to avoid the exception message below
+        }
+        catch( Exception e )
+        {
+            throw new SQLException( "executeQuery() connection fail: " + e );
+        }
+        return data ;
+    }
+
+    /** Sometimes you just gotta do it in SQL - but the values still don't have to be in the SQL.
+     *
+     * This method will at least handle the statements and result sets for you.
+     *
+     * @param sql A complete SQL statement with a '?' for each parameter.
+     * @param parameters The values for each '?', in order.
+     * @return contains zero objects if none are found.
+     */
+    public DBResults executeQuery( String sql , Object[] parameters ) throws SQLException
+    {
+        DBResults data = new DBResults();
+        try
+        {
+            Connection con = getReadConnection( parameters );
+            try
+            {
+                data = executeQuery( con , sql , parameters );
+            }
+            catch ( SQLException e )
+            {
+                throw e ;  // this is to avoid the exception message below
+            }
+            catch ( Exception e )
+            {
+                throw new SQLException( "executeQuery() fail: " + e );
+            }
+            finally
+            {
+                con.close();
+            }
+        }
+        catch ( SQLException e )
+        {
+            throw e ;  // this is to avoid the exception message below
+        }
+        catch( Exception e )
+        {
+            throw new SQLException( "executeQuery() connection fail: " + e );
+        }
+        return data ;
+    }
+
+
+    /** Sometimes you just gotta do it in SQL.
+     *
+     * This method will at least handle the statements for you.
+     *
+     * @param con A database connection.
+     * @param sql A complete SQL statement
+     */
+    public void executeUpdate( Connection con , String sql ) throws SQLException
+    {
+        if ( con == null )
+        {
+            throw new InvalidParameterException( "parameter con is not allowed to be null" );
+        }
+        if ( ! Str.usable( sql ) )
+        {
+            throw new InvalidParameterException( "parameter sql must contain usable SQL!" );
+        }
+        Statement statement = con.createStatement();
+        DBStatistics.Timer timer = startTimer( sql );
+        try
+        {
+            timer.finished( statement.executeUpdate( sql ) );
+        }
+        catch ( Exception e )
+        {
+            timer.failed();
+            throw new SQLException( "executeQuery() execute fail [" + sql + "]: " + e );
+        }
+        finally
+        {
+            statement.close();
+            // null if the table can't be told from the SQL - then it's everything
+            tableChanged( QueryCache.getChangedTable( sql ) );
+        }
+    }
+
+    /** Sometimes you just gotta do it in SQL.
+     *
+     * This method will at least handle the statements for you.
+     *
+     * @param sql A complete SQL statement
+     */
+    public void executeUpdate( String sql ) throws SQLException
+    {
+        try
+        {
+            Connection con = getConnection();
+            try
+            {
+                executeUpdate( con , sql );
+            }
+            catch ( SQLException e )
+            {
+                throw e ;  // this is to avoid the exception message below
+            }
+            catch ( Exception e )
+            {
+                throw new SQLException( "executeUpdate() fail: " + e );
+            }
+            finally
+            {
+                con.close();
+            }
+        }
+        catch ( SQLException e )
+        {
+            throw e ;  // this is to avoid the exception message below
+        }
+        catch( Exception e )
+        {
+            throw new SQLException( "executeUpdate() connection fail: " + e );
+        }
+    }
+
+    /** Like executeQuery(), but the rows are read one at a time as you need them.
+     *
+     * Close the cursor when you are done with it.  The connection is left open.
+     *
+     * @param con A database connection.
+     * @param sql A complete SQL statement
+     * @param parameters The values for each '?' in the SQL, or null if there are none.
+     */
+    public DBCursor openCursor( Connection con , String sql , Object[] parameters ) throws SQLException
+    {
+        if ( con == null )
+        {
+            throw new InvalidParameterException( "parameter con is not allowed to be null" );
+        }
+        if ( ! Str.usable( sql ) )
+        {
+            throw new InvalidParameterException( "parameter sql must contain usable SQL!" );
+        }
+        return new DBCursor( this , con , sql , parameters , false );
+    }
+
+    /** Like executeQuery(), but the rows are read one at a time as you need them.
+     *
+     * The cursor gets its own connection, which is closed when the cursor is closed - so be sure to close it!
+     *
+     * @param sql A complete SQL statement
+     * @param parameters The values for each '?' in the SQL, or null if there are none.
+     */
+    public DBCursor openCursor( String sql , Object[] parameters ) throws SQLException
+    {
+        if ( ! Str.usable( sql ) )
+        {
+            throw new InvalidParameterException( "parameter sql must contain usable SQL!" );
+        }
+        Connection con = null ;
+        try
+        {
+            con = getReadConnection( parameters );
+        }
+        catch( Exception e )
+        {
+            throw new SQLException( "openCursor() connection fail: " + e );
+        }
+        return new DBCursor( this , con , sql , parameters , true );  // the cursor closes the connection, even if it fails
+    }
+
+    /** Use the DBQuery object to do a search, reading the rows one at a time as you need them.
+     *
+     * Close the cursor when you are done with it.  The connection is left open.
+     */
+    public DBCursor openCursor( Connection con , DBQuery q ) throws SQLException
+    {
+        return openCursor( con , q.getSQL() , getParameters( q ) );
+    }
+
+    /** Use the DBQuery object to do a search, reading the rows one at a time as you need them.
+     *
+     * The cursor gets its own connection, which is closed when the cursor is closed - so be sure to close it!
+     */
+    public DBCursor openCursor( DBQuery q ) throws SQLException
+    {
+        if ( q == null )
+        {
+            throw new InvalidParameterException( "parameter q is not allowed to be null" );
+        }
+        return openCursor( q.getSQL() , getParameters( q ) );
+    }
+
+    // null if the query should use a plain Statement
+    private static Object[] getParameters( DBQuery q )
+    {
+        Object[] parameters = q.getParameters();
+        if ( ! q.isParameterized() && ( parameters.length == 0 ) )
+        {
+            parameters = null ;
+        }
+        return parameters ;
+    }
+
+    /** Sometimes you just gotta do it in SQL - and sometimes there are too many rows to keep in memory.
+     *
+     * Each row is handed to the processor as it is read.
+     *
+     * @param con A database connection.
+     * @param sql A complete SQL statement
+     * @param parameters The values for each '?' in the SQL, or null if there are none.
+     */
+    public void executeQuery( Connection con , String sql , Object[] parameters , RowProcessor processor ) throws SQLException
+    {
+        openCursor( con , sql , parameters ).process( processor );
+    }
+
+    /** Sometimes you just gotta do it in SQL - and sometimes there are too many rows to keep in memory.
+     *
+     * Each row is handed to the processor as it is read.
+     *
+     * @param sql A complete SQL statement
+     * @param parameters The values for each '?' in the SQL, or null if there are none.
+     */
+    public void executeQuery( String sql , Object[] parameters , RowProcessor processor ) throws SQLException
+    {
+        openCursor( sql , parameters ).process( processor );
+    }
+
+    /** Use the DBQuery object to do a search, handing each row to the processor as it is read.
+     *
+     * Use this instead of search( q ) when there are too many rows to keep in memory.
+     */
+    public void search( Connection con , DBQuery q , RowProcessor processor ) throws SQLException
+    {
+        openCursor( con , q ).process( processor );
+    }
+
+    /** Use the DBQuery object to do a search, handing each row to the processor as it is read.
+     *
+     * Use this instead of search( q ) when there are too many rows to keep in memory.
+     */
+    public void search( DBQuery q , RowProcessor processor ) throws SQLException
+    {
+        openCursor( q ).process( processor );
+    }
+
+    /** Use the DBQuery object to do a search, turning each row into an object with the mapper.
+     *
+     * The values go straight from the ResultSet to the mapper, without a String[] in between.  If the results are in
+     * the QueryCache, the mapper gets the cached strings instead.
+     *
+     * @return a List of whatever the mapper made, one for each row.
+     */
+    public List search( Connection con , DBQuery q , RowMapper mapper ) throws SQLException
+    {
+        if ( con == null )
+        {
+            throw new InvalidParameterException( "parameter con is not allowed to be null" );
+        }
+        List returnVal = null ;
+        if ( getQueryCache( con , q ) != null )
+        {
+            DBResults results = search( con , q );
+            returnVal = new ArrayList( results.size() );
+            for ( int i = 0 ; i < results.size() ; i++ )
+            {
+                returnVal.add( mapper.map( results.getRow( i ) ) );
+            }
+        }
+        else
+        {
+            returnVal = executeQuery( con , q.getSQL() , getParameters( q ) , mapper );
+        }
+        return returnVal ;
+    }
+
+    /** Use the DBQuery object to do a search, turning each row into an object with the mapper.
+     *
+     * @return a List of whatever the mapper made, one for each row.
+     */
+    public List search( DBQuery q , RowMapper mapper ) throws SQLException
+    {
+        if ( q == null )
+        {
+            throw new InvalidParameterException( "parameter q is not allowed to be null" );
+        }
+        List returnVal = null ;
+        try
+        {
+            Connection con = getReadConnection( q.getParameters() );
+            try
+            {
+                returnVal = search( con , q , mapper );
+            }
+            catch ( SQLException e )
+            {
+                throw e ;  // this is to avoid the exception message below
+            }
+            catch ( Exception e )
+            {
+                throw new SQLException( "search() create fail: " + e );
+            }
+            finally
+            {
+                con.close();
+            }
+        }
+        catch ( SQLException e )
+        {
+            throw e ;  // this is to avoid the exception message below
+        }
+        catch( Exception e )
+        {
+            throw new SQLException( "search() connection fail: " + e );
+        }
+        return returnVal ;
+    }
+
+    /** Find the rows where the number in column is one of the ids, turning each row into an object with the mapper.
+     *
+     * Each id is looked up once, however many times it is in the array.  The ids go in IN lists of getMaxInListSize(),
+     * one after the other on this connection.
+     *
+     * @return a List of whatever the mapper made, in no particular order.
+     */
+    public List search( Connection con , String table , String column , long[] ids , String[] dataColumns , RowMapper mapper ) throws SQLException
+    {
+        DBQuery[] queries = getIDQueries( table , column , ids , dataColumns );
+        List returnVal = new ArrayList( ids.length );
+        for ( int i = 0 ; i < queries.length ; i++ )
+        {
+            returnVal.addAll( search( con , queries[ i ] , mapper ) );
+        }
+        return returnVal ;
+    }
+
+    /** Find the rows where the number in column is one of the ids, turning each row into an object with the mapper.
+     *
+     * Use this instead of looking up one id at a time.  Each id is looked up once, however many times it is in the
+     * array.  The ids go in IN lists of getMaxInListSize().  When there is more than one list, they are searched at the
+     * same time, each on a connection of its own (on the async threads - see submit()).  Inside inTransaction() they
+     * are all searched on the transaction's connection instead.
+     *
+     * @return a List of whatever the mapper made, in no particular order.
+     */
+    public List search( String table , String column , long[] ids , String[] dataColumns , final RowMapper mapper ) throws SQLException
+    {
+        DBQuery[] queries = getIDQueries( table , column , ids , dataColumns );
+        List returnVal = new ArrayList( ids.length );
+        if ( ( queries.length < 2 ) || isInTransaction() )
+        {
+            for ( int i = 0 ; i < queries.length ; i++ )
+            {
+                returnVal.addAll( search( queries[ i ] , mapper ) );
+            }
+        }
+        else
+        {
+            Callable[] work = new Callable[ queries.length ];
+            for ( int i = 0 ; i < queries.length ; i++ )
+            {
+                final DBQuery q = queries[ i ];
+                work[ i ] = new Callable()
+                {
+                    public Object call() throws Exception
+                    {
+                        return search( q , mapper );
+                    }
+                };
+            }
+            Object[] lists = runAtOnce( work , "search()" );
+            for ( int i = 0 ; i < lists.length ; i++ )
+            {
+                returnVal.addAll( (List)lists[ i ] );
+            }
+        }
+        return returnVal ;
+    }
+
+    // Run all of the work at the same time:  the first on this thread, the rest on the async threads.  Returns what each
+    // one returned, in the same order.
+    Object[] runAtOnce( Callable[] work , String methodName ) throws SQLException
+    {
+        FutureTask[] tasks = new FutureTask[ work.length ];
+        for ( int i = 0 ; i < work.length ; i++ )
+        {
+            tasks[ i ] = new FutureTask( work[ i ] );
+            if ( i > 0 )
+            {
+                getAsyncExecutor().execute( tasks[ i ] );
+            }
+        }
+        Object[] returnVal = new Object[ tasks.length ];
+        for ( int i = 0 ; i < tasks.length ; i++ )
+        {
+            // if no async thread has started it yet, do it here instead of waiting - run() does nothing otherwise
+            tasks[ i ].run();
+            try
+            {
+                returnVal[ i ] = tasks[ i ].get();
+            }
+            catch ( ExecutionException e )
+            {
+                if ( e.getCause() instanceof SQLException )
+                {
+                    throw (SQLException)e.getCause();
+                }
+                throw new SQLException( methodName + " fail: " + e.getCause() );
+            }
+            catch ( InterruptedException e )
+            {
+                throw new SQLException( methodName + " interrupted: " + e );
+            }
+        }
+        return returnVal ;
+    }
+
+    // A query for each IN list of ids, sorted with the duplicates taken out.  The full lists all have the same SQL.
+    DBQuery[] getIDQueries( String table , String column , long[] ids , String[] dataColumns )
+    {
+        if ( ids == null )
+        {
+            throw new InvalidParameterException( "parameter ids is not allowed to be null" );
+        }
+        long[] sorted = ids.clone();
+        Arrays.sort( sorted );
+        int unique = 0 ;
+        for ( int i = 0 ; i < sorted.length ; i++ )
+        {
+            if ( ( i == 0 ) || ( sorted[ i ] != sorted[ i - 1 ] ) )
+            {
+                sorted[ unique ] = sorted[ i ];
+                unique++ ;
+            }
+        }
+        int chunkSize = getMaxInListSize();
+        DBQuery[] queries = new DBQuery[ ( unique + chunkSize - 1 ) / chunkSize ];
+        for ( int i = 0 ; i < queries.length ; i++ )
+        {
+            int start = i * chunkSize ;
+            int count = Math.min( chunkSize , unique - start );
+            Str where = new Str( column.length() + ( count * 2 ) + 10 );
+            where.append( column );
+            where.append( " IN (" );
+            Object[] parameters = new Object[ count ];
+            for ( int j = 0 ; j < count ; j++ )
+            {
+                where.append( "?," );
+                parameters[ j ] = new Long( sorted[ start + j ] );
+            }
+            where.deleteLast( 1 );
+            where.append( ')' );
+            queries[ i ] = new DBQuery( this , table );
+            queries[ i ].setWhereClause( where.toString() , parameters );
+            queries[ i ].setDataColumns( dataColumns );
+        }
+        return queries ;
+    }
+
+    // Run the query and hand each row to the mapper.  Parameters of null means a plain Statement.
+    private List executeQuery( Connection con , String sql , Object[] parameters , RowMapper mapper ) throws SQLException
+    {
+        List returnVal = new ArrayList();
+        Statement statement = ( parameters == null ) ? con.createStatement() : prepareStatement( con , sql );
+        boolean reusable = false ;
+        DBStatistics.Timer timer = startTimer( sql );
+        try
+        {
+            ResultSet rs ;
+            if ( parameters == null )
+            {
+                rs = statement.executeQuery( sql );
+            }
+            else
+            {
+                setParameters( (PreparedStatement)statement , 1 , parameters );
+                rs = ( (PreparedStatement)statement ).executeQuery();
+            }
+            timer.executed();
+            while ( rs.next() )
+            {
+                returnVal.add( mapper.map( rs ) );
+            }
+            timer.finished( returnVal.size() );
+            reusable = ( parameters != null );
+        }
+        catch ( Exception e )
+        {
+            timer.failed();
+            throw new SQLException( "search() execute fail [" + sql + "]: " + e );
+        }
+        finally
+        {
+            if ( parameters == null )
+            {
+                statement.close();
+            }
+            else
+            {
+                releaseStatement( con , sql , (PreparedStatement)statement , reusable );
+            }
+        }
+        return returnVal ;
+    }
+
+    // The query cache, if results for this query on this connection can come out of it and go in it.  Not inside a
+    // transaction:  the connection can see changes that nobody else can yet, and that might be rolled back.
+    private QueryCache getQueryCache( Connection con , DBQuery q ) throws SQLException
+    {
+        QueryCache returnVal = queryCache ;
+        if ( ( returnVal != null ) && ( ! returnVal.isCacheable( q ) || isInTransaction() || ! con.getAutoCommit() ) )
+        {
+            returnVal = null ;
+        }
+        return returnVal ;
+    }
+
+    /** Use the DBQuery object to do a search.
+     *
+     *   @param con A database connection. <p>
+     *   @param q A predescribed query - see DBQuery for details. <p>
+     *   @return contains zero objects if none are found.
+     */
+    public DBResults search( Connection con , DBQuery q ) throws SQLException
+    {
+        DBResults returnVal = null ;
+        QueryCache cache = getQueryCache( con , q );
+        if ( cache != null )
+        {
+            returnVal = cache.get( q );
+            if ( returnVal == null )
+            {
+                long changeCount = cache.getChangeCount( q );
+                returnVal = searchDatabase( con , q );
+                cache.put( q , returnVal , changeCount );
+            }
+        }
+        else
+        {
+            returnVal = searchDatabase( con , q );
+        }
+        return returnVal ;
+    }
+
+    private DBResults searchDatabase( Connection con , DBQuery q ) throws SQLException
+    {
+        String sql = q.getSQL();
+        DBResults returnVal = null ;
+        if ( q.isParameterized() || ( q.getParameters().length > 0 ) )
+        {
+            returnVal = executeQuery( con , sql , q.getParameters() );
+        }
+        else
+        {
+            returnVal = executeQuery( con , sql );
+        }
+        return returnVal ;
+    }
+
+    /** Like executeQuery(), but number columns are kept as numbers - see ColumnarResults.
+     *
+     * @param con A database connection.
+     * @param sql A complete SQL statement
+     * @param parameters The values for each '?' in the SQL, or null if there are none.
+     * @return contains zero rows if none are found.
+     */
+    public ColumnarResults executeColumnarQuery( Connection con , String sql , Object[] parameters ) throws SQLException
+    {
+        if ( con == null )
+        {
+            throw new InvalidParameterException( "parameter con is not allowed to be null" );
+        }
+        if ( ! Str.usable( sql ) )
+        {
+            throw new InvalidParameterException( "parameter sql must contain usable SQL!" );
+        }
+        ColumnarResults data = null ;
+        if ( parameters == null )
+        {
+            Statement statement = con.createStatement();
+            DBStatistics.Timer timer = startTimer( sql );
+            try
+            {
+                ResultSet rs = statement.executeQuery( sql );
+                timer.executed();
+                data = ColumnarResults.read( rs , this );
+                timer.finished( data.size() );
+            }
+            catch ( Exception e )
+            {
+                timer.failed();
+                throw new SQLException( "executeColumnarQuery() execute fail [" + sql + "]: " + e );
+            }
+            finally
+            {
+                statement.close();
+            }
+        }
+        else
+        {
+            PreparedStatement statement = prepareStatement( con , sql );
+            boolean reusable = false ;
+            DBStatistics.Timer timer = startTimer( sql );
+            try
+            {
+                setParameters( statement , 1 , parameters );
+                ResultSet rs = statement.executeQuery();
+                timer.executed();
+                data = ColumnarResults.read( rs , this );
+                timer.finished( data.size() );
+                reusable = true ;
+            }
+            catch ( Exception e )
+            {
+                timer.failed();
+                throw new SQLException( "executeColumnarQuery() execute fail [" + sql + "]: " + e );
+            }
+            finally
+            {
+                releaseStatement( con , sql , statement , reusable );
+            }
+        }
+        return data ;
+    }
+
+    /** Like executeQuery(), but number columns are kept as numbers - see ColumnarResults.
+     *
+     * @param sql A complete SQL statement
+     * @param parameters The values for each '?' in the SQL, or null if there are none.
+     * @return contains zero rows if none are found.
+     */
+    public ColumnarResults executeColumnarQuery( String sql , Object[] parameters ) throws SQLException
+    {
+        ColumnarResults data = null ;
+        try
+        {
+            Connection con = getReadConnection( parameters );
+            try
+            {
+                data = executeColumnarQuery( con , sql , parameters );
+            }
+            catch ( SQLException e )
+            {
+                throw e ;  // this is to avoid the exception message below
+            }
+            catch ( Exception e )
+            {
+                throw new SQLException( "executeColumnarQuery() fail: " + e );
+            }
+            finally
+            {
+                con.close();
+            }
+        }
+        catch ( SQLException e )
+        {
+            throw e ;  // this is to avoid the exception message below
+        }
+        catch( Exception e )
+        {
+            throw new SQLException( "executeColumnarQuery() connection fail: " + e );
+        }
+        return data ;
+    }
+
+    /** Use the DBQuery object to do a search, keeping number columns as numbers - see ColumnarResults.
+     *
+     * Use this instead of search( q ) when there are a lot of rows full of numbers.
+     */
+    public ColumnarResults searchColumnar( Connection con , DBQuery q ) throws SQLException
+    {
+        return executeColumnarQuery( con , q.getSQL() , getParameters( q ) );
+    }
+
+    /** Use the DBQuery object to do a search, keeping number columns as numbers - see ColumnarResults.
+     *
+     * Use this instead of search( q ) when there are a lot of rows full of numbers.
+     */
+    public ColumnarResults searchColumnar( DBQuery q ) throws SQLException
+    {
+        if ( q == null )
+        {
+            throw new InvalidParameterException( "parameter q is not allowed to be null" );
+        }
+        return executeColumnarQuery( q.getSQL() , getParameters( q ) );
+    }
+
+    /** How many rows the query finds.  The database counts them ("SELECT COUNT(*)"), so the rows never come back.
+     *
+     * The data columns, order and limit of the query don't matter.
+     */
+    public long count( Connection con , DBQuery q ) throws SQLException
+    {
+        return toLong( aggregate( con , "COUNT(*)" , q ) );
+    }
+
+    /** How many rows the query finds.  The database counts them ("SELECT COUNT(*)"), so the rows never come back. */
+    public long count( DBQuery q ) throws SQLException
+    {
+        return toLong( aggregate( "COUNT(*)" , q ) );
+    }
+
+    /** True if the query finds any rows.  The database stops looking at the first one. */
+    public boolean exists( Connection con , DBQuery q ) throws SQLException
+    {
+        return search( con , existsQuery( q ) ).size() > 0 ;
+    }
+
+    /** True if the query finds any rows.  The database stops looking at the first one. */
+    public boolean exists( DBQuery q ) throws SQLException
+    {
+        return search( existsQuery( q ) ).size() > 0 ;
+    }
+
+    /** The total of a number column for the rows the query finds ("SELECT SUM(column)").  Zero if there aren't any. */
+    public double sum( Connection con , String column , DBQuery q ) throws SQLException
+    {
+        return toDouble( aggregate( con , "SUM(" + column + ")" , q ) );
+    }
+
+    /** The total of a number column for the rows the query finds ("SELECT SUM(column)").  Zero if there aren't any. */
+    public double sum( String column , DBQuery q ) throws SQLException
+    {
+        return toDouble( aggregate( "SUM(" + column + ")" , q ) );
+    }
+
+    /** The total of a whole number column for the rows the query finds ("SELECT SUM(column)").  Zero if there aren't
+     * any.
+     *
+     * Unlike sum(), no precision is lost on the way through a double - every digit of a total up to Long.MAX_VALUE
+     * is kept.
+     */
+    public long sumLong( Connection con , String column , DBQuery q ) throws SQLException
+    {
+        return toLong( aggregate( con , "SUM(" + column + ")" , q ) );
+    }
+
+    /** The total of a whole number column for the rows the query finds ("SELECT SUM(column)").  Zero if there aren't
+     * any.  Unlike sum(), no precision is lost on the way through a double.
+     */
+    public long sumLong( String column , DBQuery q ) throws SQLException
+    {
+        return toLong( aggregate( "SUM(" + column + ")" , q ) );
+    }
+
+    /** The smallest value in the column for the rows the query finds.  Null if there aren't any. */
+    public String min( Connection con , String column , DBQuery q ) throws SQLException
+    {
+        return aggregate( con , "MIN(" + column + ")" , q );
+    }
+
+    /** The smallest value in the column for the rows the query finds.  Null if there aren't any. */
+    public String min( String column , DBQuery q ) throws SQLException
+    {
+        return aggregate( "MIN(" + column + ")" , q );
+    }
+
+    /** The biggest value in the column for the rows the query finds.  Null if there aren't any. */
+    public String max( Connection con , String column , DBQuery q ) throws SQLException
+    {
+        return aggregate( con , "MAX(" + column + ")" , q );
+    }
+
+    /** The biggest value in the column for the rows the query finds.  Null if there aren't any. */
+    public String max( String column , DBQuery q ) throws SQLException
+    {
+        return aggregate( "MAX(" + column + ")" , q );
+    }
+
+    /** Work out one value from all of the rows the query finds.
+     *
+     * @param aggregate The SQL for it, like "AVG(price)" or "COUNT(DISTINCT city)".
+     * @return the value, or null if it's NULL.
+     */
+    public String aggregate( Connection con , String aggregate , DBQuery q ) throws SQLException
+    {
+        return firstValue( search( con , aggregateQuery( aggregate , q ) ) );
+    }
+
+    /** Work out one value from all of the rows the query finds.
+     *
+     * @param aggregate The SQL for it, like "AVG(price)" or "COUNT(DISTINCT city)".
+     * @return the value, or null if it's NULL.
+     */
+    public String aggregate( String aggregate , DBQuery q ) throws SQLException
+    {
+        return firstValue( search( aggregateQuery( aggregate , q ) ) );
+    }
+
+    /** Work out values for each group of rows the query finds, in one trip to the database.
+     *
+     * <pre>
+     *
+     *    // how many of each species, and how many animals altogether
+     *    ColumnarResults r = facade.groupBy( new String[]{ "species" } , new String[]{ "COUNT(*)" , "SUM(quantity)" } , q );
+     *
+     * </pre>
+     *
+     * The order of the query is kept (it can sort by an aggregate, like "COUNT(*) DESC").
+     *
+     * @param groupColumns The columns that make up a group.
+     * @param aggregates The SQL for each value, like "COUNT(*)" or "MAX(born)".
+     * @return one row for each group:  the group columns and then the aggregates, with numbers kept as numbers.
+     */
+    public ColumnarResults groupBy( Connection con , String[] groupColumns , String[] aggregates , DBQuery q ) throws SQLException
+    {
+        return searchColumnar( con , groupByQuery( groupColumns , aggregates , q ) );
+    }
+
+    /** Work out values for each group of rows the query finds, in one trip to the database - see the other groupBy().
+     *
+     * @return one row for each group:  the group columns and then the aggregates, with numbers kept as numbers.
+     */
+    public ColumnarResults groupBy( String[] groupColumns , String[] aggregates , DBQuery q ) throws SQLException
+    {
+        return searchColumnar( groupByQuery( groupColumns , aggregates , q ) );
+    }
+
+    private static DBQuery aggregateQuery( String aggregate , DBQuery q )
+    {
+        if ( q == null )
+        {
+            throw new InvalidParameterException( "parameter q is not allowed to be null" );
+        }
+        if ( ! Str.usable( aggregate ) )
+        {
+            throw new InvalidParameterException( "aggregate must be specified" );
+        }
+        return q.aggregate( new String[]{ aggregate } );
+    }
+
+    private static DBQuery existsQuery( DBQuery q )
+    {
+        DBQuery returnVal = aggregateQuery( "1" , q );
+        returnVal.setLimit( 1 );
+        return returnVal ;
+    }
+
+    private static DBQuery groupByQuery( String[] groupColumns , String[] aggregates , DBQuery q )
+    {
+        if ( ( groupColumns == null ) || ( groupColumns.length == 0 ) || ( aggregates == null ) )
+        {
+            throw new InvalidParameterException( "groupBy needs group columns and aggregates" );
+        }
+        String[] columns = new String[ groupColumns.length + aggregates.length ];
+        System.arraycopy( groupColumns , 0 , columns , 0 , groupColumns.length );
+        System.arraycopy( aggregates , 0 , columns , groupColumns.length , aggregates.length );
+        DBQuery returnVal = aggregateQuery( "1" , q );
+        returnVal.setDataColumns( columns );
+        Str groups = new Str();
+        for ( int i = 0 ; i < groupColumns.length ; i++ )
+        {
+            if ( i > 0 )
+            {
+                groups.append( " , " );
+            }
+            groups.append( groupColumns[ i ] );
+        }
+        returnVal.setGroupByClause( groups.toString() );
+        String order = q.getOrderByClause();
+        if ( order.length() > 0 )
+        {
+            returnVal.setOrderByClause( order.substring( " ORDER BY ".length() ) );
+        }
+        return returnVal ;
+    }
+
+    // the first column of the first row, or null if there isn't one
+    private static String firstValue( DBResults r )
+    {
+        return ( r.size() == 0 ) ? null : r.getRow( 0 )[ 0 ];
+    }
+
+    // Some databases give back a count as "12.0" or "12.00" - that's still 12.  Null is zero.
+    private static long toLong( String s )
+    {
+        return ( s == null ) ? 0 : new BigDecimal( s.trim() ).longValue();
+    }
+
+    private static double toDouble( String s )
+    {
+        return ( s == null ) ? 0.0 : Double.parseDouble( s.trim() );
+    }
+
+    /** Find all the data in a table that matches up to this SQL where clause.
+     *
+     *  NOTE!  Use this method only if there is no alternative!  The purpose of these classes
+     *  is to provide a non-SQL facade to the relational database because some databases
+     *  are different than others.  If your whereClause SQL fragment uses any SQL that is
+     *  proprietary to the database you are currently using, there is a good chance that it
+     *  will not work when the software is ported! <p>
+     *
+     *  @param whereClause The SQL to use in selecting the rows - do not say "WHERE". <p>
+     *  @param dataColumns The column names that have the data you want. <p>
+     *  @return contains zero objects if none are found.
+     */
+    public DBResults search( Connection con , String table , String whereClause , String[] dataColumns ) throws SQLException
+    {
+        DBQuery q = new DBQuery( this , table );
+        q.setWhereClause( whereClause );
+        q.setDataColumns( dataColumns );
+        return search( con , q );
+    }
+
+    /** Find all the data in a table that matches up to this SQL where clause.
+     *
+     *  NOTE!  Use this method only if there is no alternative!  The purpose of these classes
+     *  is to provide a non-SQL facade to the relational database because some databases
+     *  are different than others.  If your whereClause SQL fragment uses any SQL that is
+     *  proprietary to the database you are currently using, there is a good chance that it
+     *  will not work when the software is ported! <p>
+     *
+     *  @param whereClause The SQL to use in selecting the rows - do not say "WHERE". <p>
+     *  @param dataColumns The column names that have the data you want. <p>
+     *  @return contains zero objects if none are found.
+     */
+    public DBResults search( String table , String whereClause , String[] dataColumns ) throws SQLException
+    {
+        DBResults data = new DBResults();
+        try
+        {
+            Connection con = getReadConnection();
+            try
+            {
+                data = search( con , table , whereClause , dataColumns );
+            }
+            catch ( SQLException e )
+            {
+                throw e ;  // this is to avoid the exception message below
+            }
+            catch ( Exception e )
+            {
+                throw new SQLException( "search() create fail: " + e );
+            }
+            finally
+            {
+                con.close();
+            }
+        }
+        catch ( SQLException e )
+        {
+            throw e ;  // this is to avoid the exception message below
+        }
+        catch( Exception e )
+        {
+            throw new SQLException( "search() connection fail: " + e );
+        }
+        return data ;
+    }
+
+
+    /** Find all the data in a table where the text in a column exactly matches a string. <p>
+     *
+     * @param dataColumns The searchColumn names that have the data you want. <p>
+     * @return contains zero objects if none are found.
+     */
+    public DBResults search( Connection con , String table , String searchColumn , String searchText , String[] dataColumns ) throws SQLException
+    {
+        DBQuery q = new DBQuery( this , table , searchColumn , searchText , dataColumns );
+
+        return search( con , q );
+    }
+
+    /** Find all the data in a table where the text in a column exactly matches one of these strings. <p>
+     *
+     * @param dataColumns The searchColumn names that have the data you want. <p>
+     * @return contains zero objects if none are found.
+     */
+    public DBResults search( Connection con , String table , String searchColumn , String[] searchText , String[] dataColumns ) throws SQLException
+    {
+        DBQuery q = new DBQuery( this , table , searchColumn , searchText , dataColumns );
+
+        return search( con , q );
+    }
+
+    /** Find all the data in a table where the text in a column exactly matches a string. <p>
+     *
+     * @param dataColumns The searchColumn names that have the data you want. <p>
+     * @return contains zero objects if none are found.
+     */
+    public DBResults search( Connection con , String table , String searchColumn , int searchValue , String[] dataColumns ) throws SQLException
+    {
+        DBQuery q = new DBQuery( this , table , searchColumn , searchValue , dataColumns );
+
+        return search( con , q );
+    }
+
+    /** Find all the data in a table where the text in a column exactly matches one of these strings. <p>
+     *
+     * @param dataColumns The searchColumn names that have the data you want. <p>
+     * @return contains zero objects if none are found.
+     */
+    public DBResults search( Connection con , String table , String searchColumn , int[] searchValues , String[] dataColumns ) throws SQLException
+    {
+        DBQuery q = new DBQuery( this , table , searchColumn , searchValues , dataColumns );
+
+        return search( con , q );
+    }
+
+    /** Use the DBQuery object to do a search.
+     *
+     * @return contains zero objects if none are found.
+     */
+    public DBResults search( DBQuery q ) throws SQLException
+    {
+        if ( q == null )
+        {
+            throw new InvalidParameterException( "parameter q is not allowed to be null" );
+        }
+        DBResults data = new DBResults();
+        try
+        {
+            Connection con = getReadConnection( q.getParameters() );
+            try
+            {
+                data = search( con , q );
+            }
+            catch ( SQLException e )
+            {
+                throw e ;  // this is to avoid the exception message below
+            }
+            catch ( Exception e )
+            {
+                throw new SQLException( "search() create fail: " + e );
+            }
+            finally
+            {
+                con.close();
+            }
+        }
+        catch ( SQLException e )
+        {
+            throw e ;  // this is to avoid the exception message below
+        }
+        catch( Exception e )
+        {
+            throw new SQLException( "search() connection fail: " + e );
+        }
+        return data ;
+    }
+
+    /** Do several searches in one trip to the database.
+     *
+     * If useQueryBatches() says so, all of the SQL goes to the database as one statement and each search comes back as
+     * a result set of its own.  Otherwise they are searched one after the other on this connection.  Searches that are
+     * in the QueryCache don't go to the database at all.
+     *
+     * @return the results for each query, in the same order.
+     */
+    public DBResults[] searchAll( Connection con , DBQuery[] queries ) throws SQLException
+    {
+        checkQueries( queries );
+        DBResults[] returnVal = new DBResults[ queries.length ];
+        QueryCache[] caches = new QueryCache[ queries.length ];
+        long[] changeCounts = new long[ queries.length ];
+        List missing = new ArrayList( queries.length );
+        for ( int i = 0 ; i < queries.length ; i++ )
+        {
+            caches[ i ] = getQueryCache( con , queries[ i ] );
+            if ( caches[ i ] != null )
+            {
+                changeCounts[ i ] = caches[ i ].getChangeCount( queries[ i ] );
+                returnVal[ i ] = caches[ i ].get( queries[ i ] );
+            }
+            if ( returnVal[ i ] == null )
+            {
+                missing.add( new Integer( i ) );
+            }
+        }
+        if ( missing.size() > 0 )
+        {
+            DBQuery[] toSearch = new DBQuery[ missing.size() ];
+            for ( int i = 0 ; i < toSearch.length ; i++ )
+            {
+                toSearch[ i ] = queries[ ( (Integer)missing.get( i ) ).intValue() ];
+            }
+            DBResults[] found = null ;
+            if ( ( toSearch.length > 1 ) && useQueryBatches() )
+            {
+                found = searchInOneTrip( con , toSearch );
+            }
+            else
+            {
+                found = new DBResults[ toSearch.length ];
+                for ( int i = 0 ; i < toSearch.length ; i++ )
+                {
+                    found[ i ] = searchDatabase( con , toSearch[ i ] );
+                }
+            }
+            for ( int i = 0 ; i < toSearch.length ; i++ )
+            {
+                int index = ( (Integer)missing.get( i ) ).intValue();
+                returnVal[ index ] = found[ i ];
+                if ( caches[ index ] != null )
+                {
+                    caches[ index ].put( toSearch[ i ] , found[ i ] , changeCounts[ index ] );
+                }
+            }
+        }
+        return returnVal ;
+    }
+
+    /** Do several searches at once.
+     *
+     * If useQueryBatches() says so, they go to the database together as one statement (see searchAll( Connection ,
+     * DBQuery[] )).  Otherwise each search gets a connection of its own and they all run at the same time (on the async
+     * threads - see submit()), so the whole thing takes about as long as the slowest search.  Inside inTransaction()
+     * they are all searched on the transaction's connection instead.
+     *
+     * <pre>
+     *
+     *    DBResults[] results = facade.searchAll( new DBQuery[]{ animalQuery , farmQuery } );
+     *
+     * </pre>
+     *
+     * @return the results for each query, in the same order.
+     */
+    public DBResults[] searchAll( DBQuery[] queries ) throws SQLException
+    {
+        checkQueries( queries );
+        DBResults[] returnVal = null ;
+        if ( ( queries.length < 2 ) || useQueryBatches() || isInTransaction() )
+        {
+            try
+            {
+                List parameters = new ArrayList();
+                for ( int i = 0 ; i < queries.length ; i++ )
+                {
+                    parameters.addAll( Arrays.asList( queries[ i ].getParameters() ) );
+                }
+                Connection con = getReadConnection( parameters.toArray() );
+                try
+                {
+                    returnVal = searchAll( con , queries );
+                }
+                finally
+                {
+                    con.close();
+                }
+            }
+            catch ( SQLException e )
+            {
+                throw e ;  // this is to avoid the exception message below
+            }
+            catch( Exception e )
+            {
+                throw new SQLException( "searchAll() connection fail: " + e );
+            }
+        }
+        else
+        {
+            Callable[] work = new Callable[ queries.length ];
+            for ( int i = 0 ; i < queries.length ; i++ )
+            {
+                final DBQuery q = queries[ i ];
+                work[ i ] = new Callable()
+                {
+                    public Object call() throws Exception
+                    {
+                        return search( q );
+                    }
+                };
+            }
+            Object[] results = runAtOnce( work , "searchAll()" );
+            returnVal = new DBResults[ results.length ];
+            System.arraycopy( results , 0 , returnVal , 0 , results.length );
+        }
+        return returnVal ;
+    }
+
+    /** True if searchAll() can send several SELECTs to the database as one statement.
+     *
+     * This is what the Dialect says (see Dialect.canBatchQueries()).  Override it for MySQL with "allowMultiQueries=true"
+     * on the URL, or to turn it off for a driver that can't do it.
+     */
+    protected boolean useQueryBatches()
+    {
+        return dialect.canBatchQueries();
+    }
+
+    private static void checkQueries( DBQuery[] queries )
+    {
+        if ( ( queries == null ) || ( queries.length == 0 ) )
+        {
+            throw new InvalidParameterException( "parameter queries must have at least one query" );
+        }
+        for ( int i = 0 ; i < queries.length ; i++ )
+        {
+            if ( queries[ i ] == null )
+            {
+                throw new InvalidParameterException( "parameter queries is not allowed to have a null query" );
+            }
+        }
+    }
+
+    // All of the SQL as one statement, separated by semicolons, with one result set coming back for each query.
+    private DBResults[] searchInOneTrip( Connection con , DBQuery[] queries ) throws SQLException
+    {
+        Str sql = new Str( 200 * queries.length );
+        List parameters = new ArrayList();
+        for ( int i = 0 ; i < queries.length ; i++ )
+        {
+            if ( i > 0 )
+            {
+                sql.append( ";\n" );
+            }
+            sql.append( queries[ i ].getSQL() );
+            Object[] p = getParameters( queries[ i ] );
+            if ( p != null )
+            {
+                parameters.addAll( Arrays.asList( p ) );
+            }
+        }
+        String s = sql.toString();
+        DBResults[] returnVal = new DBResults[ queries.length ];
+        PreparedStatement statement = prepareStatement( con , s );
+        boolean reusable = false ;
+        DBStatistics.Timer timer = startTimer( s );
+        try
+        {
+            setParameters( statement , 1 , parameters.toArray() );
+            boolean isResultSet = statement.execute();
+            timer.executed();
+            int found = 0 ;
+            int rows = 0 ;
+            // an update count is -1 when there are no more results
+            while ( ( found < returnVal.length ) && ( isResultSet || ( statement.getUpdateCount() != -1 ) ) )
+            {
+                if ( isResultSet )
+                {
+                    returnVal[ found ] = readResults( statement.getResultSet() );
+                    rows += returnVal[ found ].size();
+                    found++ ;
+                }
+                isResultSet = statement.getMoreResults();
+            }
+            if ( found < returnVal.length )
+            {
+                throw new SQLException( "only " + found + " result sets came back for " + returnVal.length + " queries" );
+            }
+            timer.finished( rows );
+            reusable = true ;
+        }
+        catch ( Exception e )
+        {
+            timer.failed();
+            throw new SQLException( "searchAll() execute fail [" + s + "]: " + e );
+        }
+        finally
+        {
+            releaseStatement( con , s , statement , reusable );
+        }
+        return returnVal ;
+    }
+
+
+    /** Find all the data in a table where the text in a column exactly matches a string.
+     *
+     * @param dataColumns The searchColumn names that have the data you want. <p>
+     * @return contains zero objects if none are found.
+     */
+    public DBResults search( String table , String searchColumn , String searchText , String[] dataColumns ) throws SQLException
+    {
+        DBQuery q = new DBQuery( this , table , searchColumn , searchText , dataColumns );
+        DBResults r = search( q );
+        return r ;
+
+        //return search( new DBQuery( table , searchColumn , searchText , dataColumns ) );
+    }
+
+    /** Find all the data in a table where the text in a column exactly matches one of these strings.
+     *
+     * @param dataColumns The searchColumn names that have the data you want. <p>
+     * @return contains zero objects if none are found.
+    */
+    public DBResults search( String table , String searchColumn , String[] searchText , String[] dataColumns ) throws SQLException
+    {
+        return search( new DBQuery( this , table , searchColumn , searchText , dataColumns ) );
+    }
+
+    /** Find all the data in a table where the text in a column exactly matches a string.
+     *
+     * @param dataColumns The searchColumn names that have the data you want. <p>
+     * @return contains zero objects if none are found.
+     */
+    public DBResults search( String table , String searchColumn , int searchValue , String[] dataColumns ) throws SQLException
+    {
+        DBQuery q = new DBQuery( this , table , searchColumn , searchValue , dataColumns );
+        return search( q );
+
+        //return search( new DBQuery( table , searchColumn , searchText , dataColumns ) );
+    }
+
+    /** Find all the data in a table where the text in a column exactly matches one of these strings.
+     *
+     * @param dataColumns The searchColumn names that have the data you want. <p>
+     * @return contains zero objects if none are found.
+    */
+    public DBResults search( String table , String searchColumn , int[] searchValues , String[] dataColumns ) throws SQLException
+    {
+        return search( new DBQuery( this , table , searchColumn , searchValues , dataColumns ) );
+    }
+
+    /** Update all rows where the searchText matches the text found in column.
+     *
+     * @param data A key-value collection of searchColumn names (key) and data (value). If a searchColumn name starts with ">", that searchColumn will be processed as a stream (good for big Strings). <p>
+     */
+    public void update( String table , String searchColumn , String searchText , Map data ) throws SQLException
+    {
+        if ( useParameters )
+        {
+            update( new DBQuery( this , table , searchColumn , searchText ) , data );
+        }
+        else
+        {
+            update( table , searchColumn + '=' + normalizeSearchText( searchText ) , data );
+        }
+    }
+
+    /** Update all rows where the searchText matches the text found in searchColumn.
+     *
+     * @param data A key-value collection of searchColumn names (key) and data (value). If a searchColumn name starts with ">", that searchColumn will be processed as a stream (good for big Strings). <p>
+     */
+    public void update( Connection con , String table , String searchColumn , String searchText , Map data ) throws SQLException
+    {
+        if ( useParameters )
+        {
+            update( con , new DBQuery( this , table , searchColumn , searchText ) , data );
+        }
+        else
+        {
+            update( con , table , searchColumn + '=' + normalizeSearchText( searchText ) , data );
+        }
+    }
+
+    /** Update all rows where the text in a searchColumn exactly matches one of these strings. <p>
+     *
+     * More than getMaxInListSize() strings are broken into several IN lists and sent as one JDBC batch. <p>
+     *
+     * @param data A key-value collection of searchColumn names (key) and data (value). If a searchColumn name starts with ">", that searchColumn will be processed as a stream (good for big Strings). <p>
+     */
+    public void update( final String table , final String searchColumn , final String[] searchText , final Map data ) throws SQLException
+    {
+        if ( searchText.length > getMaxInListSize() )
+        {
+            runInTransaction( "update" , new Work()
+            {
+                public void run( Connection con ) throws SQLException
+                {
+                    update( con , table , searchColumn , (Object[])searchText , data );
+                }
+            });
+        }
+        else if ( useParameters )
+        {
+            update( new DBQuery( this , table , searchColumn , searchText ) , data );
+        }
+        else
+        {
+            update( table , DBQuery.buildWhereClause( searchColumn , searchText ) , data );
+        }
+    }
+
+    /** Update all rows where the text in a searchColumn exactly matches one of these strings. <p>
+     *
+     * More than getMaxInListSize() strings are broken into several IN lists and sent as one JDBC batch. <p>
+     *
+     * @param data A key-value collection of searchColumn names (key) and data (value). If a searchColumn name starts with ">", that searchColumn will be processed as a stream (good for big Strings). <p>
+     */
+    public void update( Connection con , String table , String searchColumn , String[] searchText , Map data ) throws SQLException
+    {
+        if ( searchText.length > getMaxInListSize() )
+        {
+            update( con , table , searchColumn , (Object[])searchText , data );
+        }
+        else if ( useParameters )
+        {
+            update( con , new DBQuery( this , table , searchColumn , searchText ) , data );
+        }
+        else
+        {
+            update( con , table , DBQuery.buildWhereClause( searchColumn , searchText ) , data );
+        }
+    }
+
+    /** Update all rows matching this where clause.
+     *
+     *  NOTE!  Use this method only if there is no alternative!  The purpose of these classes
+     *  is to provide a non-SQL facade to the relational database because some databases
+     *  are different than others.  If your whereClause SQL fragment uses any SQL that is
+     *  proprietary to the database you are currently using, there is a good chance that it
+     *  will not work when the software is ported! <p>
+     *
+     * @param whereClause The SQL to use in selecting the rows - do not say "WHERE".
+     * @param data A key-value collection of searchColumn names (key) and data (value). If a searchColumn name starts with ">", that searchColumn will be processed as a stream (good for big Strings). <p>
+     */
+    public void update( String table , String whereClause , Map data ) throws SQLException
+    {
+        DBQuery q = new DBQuery( this , table );
+        q.setWhereClause( whereClause );
+        update( q , data );
+    }
+
+    /** Update all rows matching this where clause.
+     *
+     *  NOTE!  Use this method only if there is no alternative!  The purpose of these classes
+     *  is to provide a non-SQL facade to the relational database because some databases
+     *  are different than others.  If your whereClause SQL fragment uses any SQL that is
+     *  proprietary to the database you are currently using, there is a good chance that it
+     *  will not work when the software is ported! <p>
+     *
+     * @param whereClause The SQL to use in selecting the rows - do not say "WHERE".
+     * @param data A key-value collection of searchColumn names (key) and data (value). If a searchColumn name starts with ">", that searchColumn will be processed as a stream (good for big Strings). <p>
+     */
+    public void update( Connection con , String table , String whereClause , Map data ) throws SQLException
+    {
+        DBQuery q = new DBQuery( this , table );
+        q.setWhereClause( whereClause );
+        update( con , q , data );
+    }
+
+    /** Update all rows matching the search portion of the DBQuery object.
+     *
+     * @param data A key-value collection of searchColumn names (key) and data (value). If a searchColumn name starts with ">", that searchColumn will be processed as a stream (good for big Strings). <p>
+     */
+    public void update( DBQuery q , Map data ) throws SQLException
+    {
+        try
+        {
+            Connection con = getConnection();
+            try
+            {
+                update( con , q , data );
+            }
+            catch ( SQLException e )
+            {
+                throw e ;  // this is to avoid the exception message below
+            }
+            catch ( Exception e )
+            {
+                throw new SQLException( "update() create fail: " + e );
+            }
+            finally
+            {
+                con.close();
+            }
+        }
+        catch ( SQLException e )
+        {
+            throw e ;  // this is to avoid the exception message below
+        }
+        catch( Exception e )
         {
             throw new SQLException( "update() connection fail: " + e );
         }
     }
 
-    /** Update all rows matching this where clause.
+    /** Update all rows matching the search portion of the DBQuery object.
+     *
+     * All of the other update methods end up here.
+     *
+     * @param data A key-value collection of searchColumn names (key) and data (value). If a searchColumn name starts with ">", that searchColumn will be processed as a stream (good for big Strings). <p>
+     */
+    public void update( Connection con , DBQuery q , Map data ) throws SQLException
+    {
+        List bindData = new ArrayList();
+        Str sql = new Str( buildUpdate( q.getTable() , data , bindData , false ) );
+        sql.append( " WHERE " );
+        sql.append( q.getWhere() );
+
+        // the SQL only repeats itself when the values are parameters, so that's the only time it's worth keeping
+        boolean cacheable = useParameters || q.isParameterized() || ( q.getParameters().length > 0 );
+        PreparedStatement statement = cacheable ? prepareStatement( con , sql.toString() ) : con.prepareStatement( sql.toString() );
+        boolean reusable = false ;
+        DBStatistics.Timer timer = startTimer( sql.toString() );
+        try
+        {
+            int index = setBindData( statement , bindData );
+            setParameters( statement , index , q.getParameters() );
+            timer.finished( statement.executeUpdate() );
+            reusable = cacheable ;
+        }
+        catch ( Exception e )
+        {
+            timer.failed();
+            throw new SQLException( "update() execute fail (" + sql + "): " + e );
+        }
+        finally
+        {
+            releaseStatement( con , sql.toString() , statement , reusable );
+            tableChanged( q.getTable() );
+        }
+    }
+
+    // "UPDATE table SET column=value,column=value" - add the WHERE clause.  Anything that has to be fed to a '?' is
+    // added to bindData.  For a batch, or with useParameters(), all of the data (even null) goes in as '?' so that rows
+    // with the same columns have the same SQL, which is only built once (see StatementTemplates).
+    private String buildUpdate( String table , Map data , List bindData , boolean batch )
+    {
+        String returnVal ;
+        if ( useParameters || batch )
+        {
+            returnVal = templates.getSQL( StatementTemplates.UPDATE , table , data , bindData );
+        }
+        else
+        {
+            returnVal = buildUpdateWithValues( table , data , bindData );
+        }
+        return returnVal ;
+    }
+
+    // The same, with the values right in the SQL (except for streams).
+    private String buildUpdateWithValues( String table , Map data , List bindData )
+    {
+        Str sql = new Str( "UPDATE " + table + " SET " );
+        Iterator it = data.entrySet().iterator();
+        while (it.hasNext())
+        {
+            Map.Entry entry = (Map.Entry)it.next();
+            String dataColumn = (String)entry.getKey();
+            Object obj = entry.getValue();
+            String dataValue = null ;
+            if ( obj != null )
+            {
+                dataValue = obj.toString();
+            }
+            if ( dataColumn.charAt( 0 ) == '>' )
+            {
+                // insert data via a stream
+                dataColumn = dataColumn.substring( 1 , dataColumn.length() ); // delete first char
+                sql.append( dataColumn );
+                sql.append( "=?," );
+                bindData.add( new StreamData( dataValue ) );
+            }
+            else if ( dataColumn.charAt( 0 ) == '+' )
+            {
+                // insert data without normalizing it
+                dataColumn = dataColumn.substring( 1 , dataColumn.length() ); // delete first char
+                sql.append( dataColumn );
+                sql.append( "=" );
+                sql.append( dataValue );
+                sql.append( "," );
+            }
+            else
+            {
+                // this data can be placed directly in the SQL
+                sql.append( dataColumn );
+                sql.append( "=" );
+                sql.append( normalizeSearchText( dataValue ) );
+                sql.append( "," );
+            }
+        }
+
+        sql.deleteLast( 1 );
+        return sql.toString();
+    }
+
+    // data for a '?' that has to go in as a stream.
+    static class StreamData
+    {
+        final String s ;
+
+        StreamData( String s )
+        {
+            this.s = s ;
+        }
+    }
+
+    // A list of search values that goes in as one array parameter - see useArrayParameters().
+    static class ArrayData
+    {
+        final Object[] values ;
+
+        ArrayData( Object[] values )
+        {
+            this.values = values ;
+        }
+
+        // the SQL type of the values:  whatever the first one that isn't null is
+        String getTypeName()
+        {
+            String returnVal = "varchar" ;
+            boolean found = false ;
+            for ( int i = 0 ; ( i < values.length ) && ! found ; i++ )
+            {
+                if ( values[ i ] != null )
+                {
+                    found = true ;
+                    if ( values[ i ] instanceof Integer )
+                    {
+                        returnVal = "integer" ;
+                    }
+                    else if ( values[ i ] instanceof Long )
+                    {
+                        returnVal = "bigint" ;
+                    }
+                }
+            }
+            return returnVal ;
+        }
+
+        Array toArray( Connection con ) throws SQLException
+        {
+            return con.createArrayOf( getTypeName() , values );
+        }
+
+        public boolean equals( Object obj )
+        {
+            return ( obj instanceof ArrayData ) && Arrays.equals( values , ( (ArrayData)obj ).values );
+        }
+
+        public int hashCode()
+        {
+            return Arrays.hashCode( values );
+        }
+
+        public String toString()
+        {
+            return Arrays.asList( values ).toString();
+        }
+    }
+
+    // A list of search values that goes in the in-list table just before the search - see setInListTable().
+    static class InListData
+    {
+        final String table ;
+        final Object[] values ;
+
+        InListData( String table , Object[] values )
+        {
+            this.table = table ;
+            this.values = values ;
+        }
+
+        // NUM_VALUE or TEXT_VALUE
+        String getValueColumn()
+        {
+            String returnVal = "TEXT_VALUE" ;
+            for ( int i = 0 ; i < values.length ; i++ )
+            {
+                if ( values[ i ] instanceof Number )
+                {
+                    returnVal = "NUM_VALUE" ;
+                }
+            }
+            return returnVal ;
+        }
+
+        /** Put the values in the table as list number listID.  The first list of a search clears out the table. */
+        void fill( Connection con , int listID ) throws SQLException
+        {
+            Statement delete = null ;
+            PreparedStatement insert = null ;
+            try
+            {
+                if ( listID == 1 )
+                {
+                    delete = con.createStatement();
+                    delete.executeUpdate( "DELETE FROM " + table );
+                }
+                insert = con.prepareStatement( "INSERT INTO " + table + " (LIST_ID," + getValueColumn() + ") VALUES (?,?)" );
+                int count = 0 ;
+                for ( int i = 0 ; i < values.length ; i++ )
+                {
+                    if ( values[ i ] != null )
+                    {
+                        insert.setInt( 1 , listID );
+                        insert.setObject( 2 , values[ i ] );
+                        insert.addBatch();
+                        count++ ;
+                        if ( count % 1000 == 0 )
+                        {
+                            insert.executeBatch();
+                        }
+                    }
+                }
+                if ( count % 1000 != 0 )
+                {
+                    insert.executeBatch();
+                }
+            }
+            finally
+            {
+                if ( delete != null )
+                {
+                    delete.close();
+                }
+                if ( insert != null )
+                {
+                    insert.close();
+                }
+            }
+        }
+
+        public boolean equals( Object obj )
+        {
+            boolean returnVal = false ;
+            if ( obj instanceof InListData )
+            {
+                InListData other = (InListData)obj ;
+                returnVal = table.equals( other.table ) && Arrays.equals( values , other.values );
+            }
+            return returnVal ;
+        }
+
+        public int hashCode()
+        {
+            return Arrays.hashCode( values );
+        }
+
+        public String toString()
+        {
+            return table + Arrays.asList( values );
+        }
+    }
+
+    // NULL as the type the database expects for this '?' if the driver can tell, otherwise VARCHAR (which most
+    // databases will take for any column).
+    private static void setNull( PreparedStatement statement , int index ) throws SQLException
+    {
+        int type = Types.VARCHAR ;
+        try
+        {
+            type = statement.getParameterMetaData().getParameterType( index );
+        }
+        catch ( SQLException e )
+        {
+            // the driver can't tell
+        }
+        catch ( AbstractMethodError e )
+        {
+            // pre JDBC 3 driver
+        }
+        statement.setNull( index , type );
+    }
+
+    // Feed the data collected while building an insert or update to the '?'s, starting at the first one.
+    // Returns the index of the next '?'.
+    static int setBindData( PreparedStatement statement , List bindData ) throws SQLException
+    {
+        int index = 1 ;
+        for( int i = 0 ; i < bindData.size() ; i++ )
+        {
+            Object obj = bindData.get( i );
+            if ( obj instanceof StreamData )
+            {
+                String s = ((StreamData)obj).s ;
+                // todo - see if there is a solution for the deprecated code
+                // yes, this is deprecated, but at the time this was put in other solutions did not work
+                // because the only drivers for weblogic/oracle combinations would only work this way.
+                statement.setAsciiStream( index , new StringBufferInputStream( s ) , s.length() );
+            }
+            else if ( obj == null )
+            {
+                setNull( statement , index );
+            }
+            else if ( obj instanceof String )
+            {
+                statement.setString( index , (String)obj );
+            }
+            else
+            {
+                statement.setObject( index , obj );
+            }
+            index++ ;
+        }
+        return index ;
+    }
+
+    /** Converts a string to be used for SQL.
+     *
+     * If the string is null, "NULL" is returned.  Otherwise, single quotes are slapped on both ends of the string.
+     *
+     * If the string contains any single quotes, they are escaped.
+     *
+     */
+    public static String normalizeSearchText( String searchText )
+    {
+        String returnVal = "NULL";
+        if ( searchText != null )
+        {
+            Str s = new Str( searchText );
+            s.replace( '\'' , "''" );
+            returnVal = "'" + s.toString() + "'" ;
+        }
+        return returnVal ;
+    }
+
+    /** Delete all rows matching the search portion of the DBQuery object.
+     */
+    public void delete( Connection con , DBQuery q ) throws SQLException
+    {
+        try
+        {
+            deleteFromDatabase( con , q );
+        }
+        finally
+        {
+            tableChanged( q.getTable() );
+        }
+    }
+
+    private void deleteFromDatabase( Connection con , DBQuery q ) throws SQLException
+    {
+        String sql = "DELETE FROM " + q.getTable() + q.getWhereClause() ;
+        if ( q.isParameterized() || ( q.getParameters().length > 0 ) )
+        {
+            PreparedStatement statement = prepareStatement( con , sql );
+            boolean reusable = false ;
+            DBStatistics.Timer timer = startTimer( sql );
+            try
+            {
+                setParameters( statement , 1 , q.getParameters() );
+                timer.finished( statement.executeUpdate() );
+                reusable = true ;
+            }
+            catch( Exception e )
+            {
+                timer.failed();
+                throw new SQLException( "delete() execute fail: " + e );
+            }
+            finally
+            {
+                releaseStatement( con , sql , statement , reusable );
+            }
+        }
+        else
+        {
+            Statement statement = con.createStatement();
+            DBStatistics.Timer timer = startTimer( sql );
+            try
+            {
+                timer.finished( statement.executeUpdate( sql ) );
+            }
+            catch( Exception e )
+            {
+                timer.failed();
+                throw new SQLException( "delete() execute fail: " + e );
+            }
+            finally
+            {
+                statement.close();
+            }
+        }
+    }
+
+    public void delete( DBQuery q ) throws SQLException
+    {
+        try
+        {
+            Connection con = getConnection();
+            try
+            {
+                delete( con , q );
+            }
+            catch ( SQLException e )
+            {
+                throw e ;  // this is to avoid the exception message below
+            }
+            catch ( Exception e )
+            {
+                throw new SQLException( "delete() create fail: " + e );
+            }
+            finally
+            {
+                con.close();
+            }
+        }
+        catch ( SQLException e )
+        {
+            throw e ;  // this is to avoid the exception message below
+        }
+        catch( Exception e )
+        {
+            throw new SQLException( "delete() connection fail: " + e );
+        }
+    }
+
+    /** Delete all rows where the searchText matches the text found in column.
+     */
+    public void delete( Connection con , String table , String searchColumn , String searchText ) throws SQLException
+    {
+        delete( con , new DBQuery( this , table , searchColumn , searchText ) );
+    }
+
+    /** Delete all rows where the searchText matches the text found in column.
+     */
+    public void delete( String table , String searchColumn , String searchText ) throws SQLException
+    {
+        delete( new DBQuery( this , table , searchColumn , searchText ) );
+    }
+
+    /** The most values that go in one "IN ( ... )" list when working through a big list of keys.
+     *
+     * This is what the Dialect says (see Dialect.getMaxInListSize()).  Override it for a database that needs something
+     * else.
+     */
+    protected int getMaxInListSize()
+    {
+        return dialect.getMaxInListSize();
+    }
+
+    // Break the keys into IN lists of getMaxInListSize() and add a statement to the batches for each.  All of the
+    // full lists share the same SQL, so there are at most two different statements.
+    private void addKeysToBatch( Map batches , String sqlStart , List bindData , String column , Object[] keys )
+    {
+        int chunkSize = getMaxInListSize();
+        for ( int start = 0 ; start < keys.length ; start += chunkSize )
+        {
+            int count = Math.min( chunkSize , keys.length - start );
+            Str sql = new Str( sqlStart.length() + column.length() + ( count * 2 ) + 20 );
+            sql.append( sqlStart );
+            sql.append( " WHERE " );
+            sql.append( column );
+            sql.append( " IN (" );
+            List chunkData = new ArrayList( bindData );
+            for ( int i = 0 ; i < count ; i++ )
+            {
+                sql.append( "?," );
+                chunkData.add( keys[ start + i ] );
+            }
+            sql.deleteLast( 1 );
+            sql.append( ')' );
+            addToBatch( batches , sql.toString() , chunkData );
+        }
+    }
+
+    private static Object[] toObjects( long[] ids )
+    {
+        Object[] keys = new Object[ ids.length ];
+        for ( int i = 0 ; i < ids.length ; i++ )
+        {
+            keys[ i ] = new Long( ids[ i ] );
+        }
+        return keys ;
+    }
+
+    private void update( Connection con , String table , String column , Object[] keys , Map data ) throws SQLException
+    {
+        if ( con == null )
+        {
+            throw new InvalidParameterException( "parameter con is not allowed to be null" );
+        }
+        List bindData = new ArrayList();
+        String sqlStart = buildUpdate( table , data , bindData , true );
+        Map batches = new LinkedHashMap();
+        addKeysToBatch( batches , sqlStart , bindData , column , keys );
+        executeBatches( con , table , batches , "update" );
+    }
+
+    private void delete( Connection con , String table , String column , Object[] keys ) throws SQLException
+    {
+        if ( con == null )
+        {
+            throw new InvalidParameterException( "parameter con is not allowed to be null" );
+        }
+        Map batches = new LinkedHashMap();
+        addKeysToBatch( batches , "DELETE FROM " + table , new ArrayList() , column , keys );
+        executeBatches( con , table , batches , "delete" );
+    }
+
+    /** Update all rows where the number in column matches one of the ids.
+     *
+     * However many ids there are, they are broken into IN lists of getMaxInListSize() and sent as one JDBC batch.
+     *
+     * @param data A key-value collection of column names (key) and data (value), the same for every row.
+     */
+    public void update( Connection con , String table , String column , long[] ids , Map data ) throws SQLException
+    {
+        update( con , table , column , toObjects( ids ) , data );
+    }
+
+    /** Update all rows where the number in column matches one of the ids.
+     *
+     * However many ids there are, they are broken into IN lists of getMaxInListSize() and sent as one JDBC batch, all
+     * in one transaction.
+     *
+     * @param data A key-value collection of column names (key) and data (value), the same for every row.
+     */
+    public void update( final String table , final String column , final long[] ids , final Map data ) throws SQLException
+    {
+        runInTransaction( "update" , new Work()
+        {
+            public void run( Connection con ) throws SQLException
+            {
+                update( con , table , column , ids , data );
+            }
+        });
+    }
+
+    /** Delete all rows where the number in column matches one of the ids.
+     *
+     * However many ids there are, they are broken into IN lists of getMaxInListSize() and sent as one JDBC batch.
+     */
+    public void delete( Connection con , String table , String column , long[] ids ) throws SQLException
+    {
+        delete( con , table , column , toObjects( ids ) );
+    }
+
+    /** Delete all rows where the number in column matches one of the ids.
+     *
+     * However many ids there are, they are broken into IN lists of getMaxInListSize() and sent as one JDBC batch, all
+     * in one transaction.
+     */
+    public void delete( final String table , final String column , final long[] ids ) throws SQLException
+    {
+        runInTransaction( "delete" , new Work()
+        {
+            public void run( Connection con ) throws SQLException
+            {
+                delete( con , table , column , ids );
+            }
+        });
+    }
+
+    /** Delete all rows where the text in column exactly matches one of these strings.
+     *
+     * However many there are, they are broken into IN lists of getMaxInListSize() and sent as one JDBC batch.
+     */
+    public void delete( Connection con , String table , String column , String[] searchText ) throws SQLException
+    {
+        delete( con , table , column , (Object[])searchText );
+    }
+
+    /** Delete all rows where the text in column exactly matches one of these strings.
+     *
+     * However many there are, they are broken into IN lists of getMaxInListSize() and sent as one JDBC batch, all in
+     * one transaction.
+     */
+    public void delete( final String table , final String column , final String[] searchText ) throws SQLException
+    {
+        runInTransaction( "delete" , new Work()
+        {
+            public void run( Connection con ) throws SQLException
+            {
+                delete( con , table , column , searchText );
+            }
+        });
+    }
+
+    /** Give each row its own data.
+     *
+     * Each row is found by its key.  Rows that change the same columns share one UPDATE statement, and are sent to the
+     * database getBatchSize() at a time.
+     *
+     * @param keyColumn The column that identifies a row, usually the ID.
+     * @param rows A Map where each key is the value to find in keyColumn and each value is a Map of the new data for
+     *             that row (just like the Map given to update()).
+     */
+    public void updateBatch( Connection con , String table , String keyColumn , Map rows ) throws SQLException
+    {
+        if ( con == null )
+        {
+            throw new InvalidParameterException( "parameter con is not allowed to be null" );
+        }
+        Map batches = new LinkedHashMap();
+        Iterator it = rows.entrySet().iterator();
+        while ( it.hasNext() )
+        {
+            Map.Entry entry = (Map.Entry)it.next();
+            List bindData = new ArrayList();
+            String sql = buildUpdate( table , (Map)entry.getValue() , bindData , true ) + " WHERE " + keyColumn + "=?" ;
+            bindData.add( entry.getKey() );
+            addToBatch( batches , sql , bindData );
+        }
+        executeBatches( con , table , batches , "updateBatch" );
+    }
+
+    /** Give each row its own data, all in one transaction.
+     *
+     * @param keyColumn The column that identifies a row, usually the ID.
+     * @param rows A Map where each key is the value to find in keyColumn and each value is a Map of the new data for
+     *             that row (just like the Map given to update()).
+     */
+    public void updateBatch( final String table , final String keyColumn , final Map rows ) throws SQLException
+    {
+        runInTransaction( "updateBatch" , new Work()
+        {
+            public void run( Connection con ) throws SQLException
+            {
+                updateBatch( con , table , keyColumn , rows );
+            }
+        });
+    }
+
+    /** Override this method if you need to provide a database dependent way of providing unique ID's.
+     *
+     * If you override this method, you would most likely want to override the processPreparedStatementForInsert() also.
+     *
+     * For Oracle, you would want to add to the sql and return a CallableStatement.
+     *
+     * @param sql The insert statement that will be used.
+     */
+    protected PreparedStatement getPreparedStatementForInsert( Connection con , String sql , String idColumnName ) throws Exception
+    {
+        return con.prepareStatement( sql );
+
+        // for Oracle:
+        // return con.prepareCall( "BEGIN " + sql + " returning " + idColumnName + " INTO ?; END;" );
+    }
+
+    /** Override this method if you need to provide a database dependent way of providing unique ID's.
+     *
+     * If you override this method, you would most likely want to override the processPreparedStatementForInsert() also.
+     *
+     * @param statement The statement object from getPreparedStatementForInsert(), ready to perform executeUpdate();
+     * @param streamDataCount The number of '?' values (streams and, with useParameters(), plain data) that have
+     *                        been fed into the statement
+     * @return the ID
+     */
+    protected String processPreparedStatementForInsert( PreparedStatement statement , int streamDataCount ) throws Exception
+    {
+        statement.executeUpdate();
+        return null ;
+
+        // for Oracle:
+        //      CallableStatement callableStatement = (CallableStatement)statement ;
+        //      int outParameterNumber = streamDataCount + 1 ;
+        //      callableStatement.registerOutParameter( outParameterNumber , Types.INTEGER );
+        //      statement.executeUpdate();
+        //      return callableStatement.getString( outParameterNumber );
+    }
+
+    // The INSERT statement for one row.  Anything that has to be fed to a '?' is added to bindData.
+    // For a batch, or with useParameters(), all of the data (even null) goes in as '?' so that rows with the same columns
+    // have the same SQL, which is only built once (see StatementTemplates).
+    String buildInsert( String table , Map data , List bindData , boolean batch )
+    {
+        String returnVal ;
+        if ( useParameters || batch )
+        {
+            returnVal = templates.getSQL( StatementTemplates.INSERT , table , data , bindData );
+        }
+        else
+        {
+            returnVal = buildInsertWithValues( table , data , bindData );
+        }
+        return returnVal ;
+    }
+
+    // The same, with the values right in the SQL (except for streams).
+    private String buildInsertWithValues( String table , Map data , List bindData )
+    {
+        Str columns = new Str( 200 );
+        Str values = new Str( 200 );
+        Iterator it = data.entrySet().iterator();
+        while (it.hasNext())
+        {
+            Map.Entry entry = (Map.Entry)it.next();
+            String dataColumn = (String)entry.getKey();
+            Object obj = entry.getValue();
+            String dataValue = null;
+            if ( obj != null )
+            {
+                dataValue = obj.toString();
+            }
+            if ( dataColumn.charAt( 0 ) == '>' )
+            {
+                // we need to mash this data in via a stream
+                dataColumn = dataColumn.substring( 1 , dataColumn.length() );
+                values.append( "?," );
+                bindData.add( new StreamData( dataValue ) );
+            }
+            else if ( dataColumn.charAt(0) == '+' )
+            {
+                dataColumn = dataColumn.substring( 1 , dataColumn.length() );
+                values.append( dataValue );
+                values.append( "," );
+            }
+            else
+            {
+                // this data can be placed directly in the SQL
+                values.append( normalizeSearchText( dataValue ) );
+                values.append( "," );
+            }
+            columns.append( dataColumn );
+            columns.append( ',' );
+        }
+
+        columns.deleteLast( 1 );
+        values.deleteLast( 1 );
+
+        return "INSERT INTO " + table + " (" + columns + ") VALUES (" + values + ")" ;
+    }
+
+    /** For internal use only. */
+    protected String insertAndPossiblyGetNewID( Connection con , String table , Map data , String idColumnName ) throws SQLException
+    {
+        // If idColumnName is null, a preprared statement is used and a simple insert is performed.
+        // Otherwise, the getPreparedStatementForInsert() and processPreparedStatementForInsert() methods are used
+        // to do a database specific way of doing an insert and get the new ID back.
+        String returnVal = null ;
+        try
+        {
+            List bindData = new ArrayList();
+            String sql = buildInsert( table , data , bindData , false );
+            boolean processReturnClause = Str.usable( idColumnName );
+            PreparedStatement statement ;
+            if ( processReturnClause )
+            {
+                statement = getPreparedStatementForInsert( con , sql , idColumnName );
+            }
+            else if ( useParameters )
+            {
+                statement = prepareStatement( con , sql );
+            }
+            else
+            {
+                statement = con.prepareStatement( sql );
+            }
+            boolean reusable = false ;
+            DBStatistics.Timer timer = startTimer( sql );
+            try
+            {
+                setBindData( statement , bindData );
+                if ( processReturnClause )
+                {
+                    returnVal = processPreparedStatementForInsert( statement , bindData.size() );
+                }
+                else
+                {
+                    statement.executeUpdate();
+                    reusable = useParameters ;
+                }
+                timer.finished( 1 );
+            }
+            catch ( Exception e )
+            {
+                timer.failed();
+                System.out.println( "\nSQL=" + sql );
+                e.printStackTrace();
+                throw new SQLException( "insert() insert fail: " + e );
+            }
+            finally
+            {
+                releaseStatement( con , sql , statement , reusable );
+                tableChanged( table );
+            }
+        }
+        catch ( SQLException e )
+        {
+            throw e ;  // this is to avoid the exception message below
+        }
+        catch ( Exception e )
+        {
+            e.printStackTrace();
+            throw new SQLException( "insert() create fail: " + e );
+        }
+        return returnVal ;
+    }
+
+    private String insertAndPossiblyGetNewID( String table , Map data , String idColumnName ) throws SQLException
+    {
+        String returnVal = null ;
+        try
+        {
+            Connection con = getConnection();
+            try
+            {
+                returnVal = insertAndPossiblyGetNewID( con , table , data , idColumnName );
+            }
+            finally
+            {
+                con.close();
+            }
+        }
+        catch ( SQLException e )
+        {
+            throw e ;  // this is to avoid the exception message below
+        }
+        catch( Exception e )
+        {
+            throw new SQLException( "insert() connection fail: " + e );
+        }
+        return returnVal ;
+    }
+
+    /** Create a new row in the table and populate the fields with the provided data.
+     *
+     * @param data A key-value collection of searchColumn names (key) and data (value). If a searchColumn name starts with ">", that searchColumn will be processed as a stream (good for big Strings). <p>
+     */
+    public void insert( Connection con , String table , Map data ) throws SQLException
+    {
+        insertAndPossiblyGetNewID( con , table , data , null );
+    }
+
+    /** Create a new row in the table and populate the fields with the provided data.
+     *
+     * @param data A key-value collection of searchColumn names (key) and data (value). If a searchColumn name starts with ">", that searchColumn will be processed as a stream (good for big Strings). <p>
+     */
+    public void insert( String table , Map data ) throws SQLException
+    {
+        insertAndPossiblyGetNewID( table , data , null );
+    }
+
+    /** Insert a row, or update the row that already has the same key - see Dialect.
+     *
+     * With a dialect that has a one statement upsert (MERGE, ON CONFLICT, ON DUPLICATE KEY), that's one trip to the
+     * database and nobody can sneak a row in between.  Otherwise it's an UPDATE and then an INSERT if nothing was
+     * updated.  The data always goes to the database as parameters, even if useParameters() has not been called.
+     *
+     * @param keyColumns The columns that find the row, usually the ID.  They must be in data, and there must be a
+     *                   primary key or unique index on them.
+     * @param data A key-value collection of column names (key) and data (value), just like insert().
+     */
+    public void upsert( Connection con , String table , String[] keyColumns , Map data ) throws SQLException
+    {
+        if ( con == null )
+        {
+            throw new InvalidParameterException( "parameter con is not allowed to be null" );
+        }
+        List bindData = new ArrayList();
+        String sql = buildUpsert( table , keyColumns , data , bindData );
+        try
+        {
+            if ( sql == null )
+            {
+                updateOrInsert( con , table , keyColumns , data );
+            }
+            else
+            {
+                executeWrite( con , sql , bindData , "upsert" );
+            }
+        }
+        finally
+        {
+            tableChanged( table );
+        }
+    }
+
+    /** Insert a row, or update the row that already has the same key, in one transaction.
      *
-     *  NOTE!  Use this method only if there is no alternative!  The purpose of these classes
-     *  is to provide a non-SQL facade to the relational database because some databases
-     *  are different than others.  If your whereClause SQL fragment uses any SQL that is
-     *  proprietary to the database you are currently using, there is a good chance that it
-     *  will not work when the software is ported! <p>
+     * @param keyColumns The columns that find the row, usually the ID.  They must be in data.
+     * @param data A key-value collection of column names (key) and data (value), just like insert().
+     */
+    public void upsert( final String table , final String[] keyColumns , final Map data ) throws SQLException
+    {
+        runInTransaction( "upsert" , new Work()
+        {
+            public void run( Connection con ) throws SQLException
+            {
+                upsert( con , table , keyColumns , data );
+            }
+        });
+    }
+
+    /** Upsert many rows at once.
      *
-     * @param whereClause The SQL to use in selecting the rows - do not say "WHERE".
-     * @param data A key-value collection of searchColumn names (key) and data (value). If a searchColumn name starts with ">", that searchColumn will be processed as a stream (good for big Strings). <p>
+     * With a one statement upsert, rows with the same columns are sent to the database together as a JDBC batch of
+     * getBatchSize() rows.  Otherwise each row is an UPDATE and maybe an INSERT.
+     *
+     * @param keyColumns The columns that find each row, usually the ID.  They must be in every Map.
+     * @param data A List of Map objects, one for each row.  Each is just like the Map given to insert().
      */
-    public void update( Connection con , String table , String whereClause , Map data ) throws SQLException
+    public void upsertBatch( Connection con , String table , String[] keyColumns , List data ) throws SQLException
     {
-        Str sql = new Str( "UPDATE " + table + " SET " );
-        List streamData = new ArrayList();
+        if ( con == null )
+        {
+            throw new InvalidParameterException( "parameter con is not allowed to be null" );
+        }
+        Map batches = new LinkedHashMap();
+        for ( int i = 0 ; i < data.size() ; i++ )
+        {
+            List bindData = new ArrayList();
+            String sql = buildUpsert( table , keyColumns , (Map)data.get( i ) , bindData );
+            if ( sql == null )
+            {
+                updateOrInsert( con , table , keyColumns , (Map)data.get( i ) );
+            }
+            else
+            {
+                addToBatch( batches , sql , bindData );
+            }
+        }
+        executeBatches( con , table , batches , "upsertBatch" );
+    }
+
+    /** Upsert many rows at once, all in one transaction.
+     *
+     * @param keyColumns The columns that find each row, usually the ID.  They must be in every Map.
+     * @param data A List of Map objects, one for each row.  Each is just like the Map given to insert().
+     */
+    public void upsertBatch( final String table , final String[] keyColumns , final List data ) throws SQLException
+    {
+        runInTransaction( "upsertBatch" , new Work()
+        {
+            public void run( Connection con ) throws SQLException
+            {
+                upsertBatch( con , table , keyColumns , data );
+            }
+        });
+    }
+
+    // The dialect's upsert statement for one row, or null if it doesn't have one.  Everything but raw values goes in as
+    // '?' and is added to bindData.
+    private String buildUpsert( String table , String[] keyColumns , Map data , List bindData )
+    {
+        if ( ( keyColumns == null ) || ( keyColumns.length == 0 ) )
+        {
+            throw new InvalidParameterException( "upsert needs at least one key column" );
+        }
+        String[] columns = new String[ data.size() ];
+        String[] values = new String[ data.size() ];
+        int i = 0 ;
         Iterator it = data.entrySet().iterator();
-        while (it.hasNext())
+        while ( it.hasNext() )
         {
             Map.Entry entry = (Map.Entry)it.next();
             String dataColumn = (String)entry.getKey();
             Object obj = entry.getValue();
-            String dataValue = null ;
-            if ( obj != null )
-            {
-                dataValue = obj.toString();
-            }
+            String dataValue = ( obj == null ) ? null : obj.toString();
+            values[ i ] = "?" ;
             if ( dataColumn.charAt( 0 ) == '>' )
             {
-                // insert data via a stream
-                dataColumn = dataColumn.substring( 1 , dataColumn.length() ); // delete first char
-                sql.append( dataColumn );
-                sql.append( "=?," );
-                streamData.add( dataValue );
+                dataColumn = dataColumn.substring( 1 );
+                bindData.add( new StreamData( dataValue ) );
             }
             else if ( dataColumn.charAt( 0 ) == '+' )
             {
-                // insert data without normalizing it
-                dataColumn = dataColumn.substring( 1 , dataColumn.length() ); // delete first char
-                sql.append( dataColumn );
-                sql.append( "=" );
-                sql.append( dataValue );
-                sql.append( "," );
+                dataColumn = dataColumn.substring( 1 );
+                values[ i ] = dataValue ;
             }
             else
             {
-                // this data can be placed directly in the SQL
-                sql.append( dataColumn );
-                sql.append( "=" );
-                if ( dataValue == null )
-                {
-                    sql.append( "NULL" );
-                }
-                else
+                bindData.add( dataValue );
+            }
+            columns[ i ] = dataColumn ;
+            i++ ;
+        }
+        for ( i = 0 ; i < keyColumns.length ; i++ )
+        {
+            if ( ! Dialect.isKey( columns , keyColumns[ i ] ) )
+            {
+                throw new InvalidParameterException( "key column " + keyColumns[ i ] + " is not in the data" );
+            }
+        }
+        return dialect.getUpsertSQL( table , keyColumns , columns , values );
+    }
+
+    // An upsert without a one statement upsert:  UPDATE the row with the same key, and if there isn't one, INSERT it.
+    private void updateOrInsert( Connection con , String table , String[] keyColumns , Map data ) throws SQLException
+    {
+        Map changes = new LinkedHashMap();
+        Object[] keyValues = new Object[ keyColumns.length ];
+        Iterator it = data.entrySet().iterator();
+        while ( it.hasNext() )
+        {
+            Map.Entry entry = (Map.Entry)it.next();
+            String dataColumn = (String)entry.getKey();
+            String column = ( ( dataColumn.charAt( 0 ) == '>' ) || ( dataColumn.charAt( 0 ) == '+' ) ) ? dataColumn.substring( 1 ) : dataColumn ;
+            boolean key = false ;
+            for ( int i = 0 ; i < keyColumns.length ; i++ )
+            {
+                if ( keyColumns[ i ].equalsIgnoreCase( column ) )
                 {
-                    sql.append( normalizeSearchText( dataValue ) );
+                    keyValues[ i ] = ( entry.getValue() == null ) ? null : entry.getValue().toString();
+                    key = true ;
                 }
-                sql.append( "," );
+            }
+            if ( ! key )
+            {
+                changes.put( dataColumn , entry.getValue() );
             }
         }
-
-        sql.deleteLast( 1 );
-
+        if ( changes.isEmpty() )
+        {
+            // nothing to change but the key, so just see if the row is there
+            changes.put( keyColumns[ 0 ] , keyValues[ 0 ] );
+        }
+        List bindData = new ArrayList();
+        Str sql = new Str( templates.getSQL( StatementTemplates.UPDATE , table , changes , bindData ) );
         sql.append( " WHERE " );
-        sql.append( whereClause );
-
-        PreparedStatement statement = con.prepareStatement( sql.toString() );
-
-        for( int i = 0 ; i < streamData.size() ; i++ )
+        for ( int i = 0 ; i < keyColumns.length ; i++ )
+        {
+            if ( i > 0 )
+            {
+                sql.append( " AND " );
+            }
+            sql.append( keyColumns[ i ] + "=?" );
+            bindData.add( keyValues[ i ] );
+        }
+        if ( executeWrite( con , sql.toString() , bindData , "upsert" ) == 0 )
         {
-            String s = (String)streamData.get( i );
-            // todo - see if there is a solution for the deprecated code
-            // yes, this is deprecated, but at the time this was put in other solutions did not work
-            // because the only drivers for weblogic/oracle combinations would only work this way.
-            statement.setAsciiStream( i + 1 , new StringBufferInputStream( s ) , s.length() );
+            insert( con , table , data );
         }
+    }
+
+    // Run one statement that changes rows, with its data as '?'.  Returns how many rows changed.
+    private int executeWrite( Connection con , String sql , List bindData , String methodName ) throws SQLException
+    {
+        int returnVal = 0 ;
+        PreparedStatement statement = prepareStatement( con , sql );
+        boolean reusable = false ;
+        DBStatistics.Timer timer = startTimer( sql );
         try
         {
-            statement.executeUpdate();
+            setBindData( statement , bindData );
+            returnVal = statement.executeUpdate();
+            timer.finished( returnVal );
+            reusable = true ;
         }
         catch ( Exception e )
         {
-            throw new SQLException( "update() execute fail (" + sql + "): " + e );
+            timer.failed();
+            throw new SQLException( methodName + "() execute fail (" + sql + "): " + e );
         }
         finally
         {
-            statement.close();
+            releaseStatement( con , sql , statement , reusable );
         }
+        return returnVal ;
     }
 
-    /** Converts a string to be used for SQL.
+    /** Create many new rows at once.
      *
-     * If the string is null, "NULL" is returned.  Otherwise, single quotes are slapped on both ends of the string.
+     * Rows with the same columns are sent to the database together as a JDBC batch of getBatchSize() rows, so a big
+     * load takes a handful of round trips instead of one per row.  Because rows are grouped by their columns, they
+     * might not be inserted in the same order as the list.
      *
-     * If the string contains any single quotes, they are escaped.
+     * The data always goes to the database as parameters, even if useParameters() has not been called.
      *
+     * @param data A List of Map objects, one for each row.  Each is just like the Map given to insert().
      */
-    public static String normalizeSearchText( String searchText )
+    public void insertBatch( Connection con , String table , List data ) throws SQLException
     {
-        String returnVal = "NULL";
-        if ( searchText != null )
+        if ( con == null )
         {
-            Str s = new Str( searchText );
-            s.replace( '\'' , "''" );
-            returnVal = "'" + s.toString() + "'" ;
+            throw new InvalidParameterException( "parameter con is not allowed to be null" );
         }
-        return returnVal ;
+
+        Map batches = new LinkedHashMap();
+        for ( int i = 0 ; i < data.size() ; i++ )
+        {
+            List bindData = new ArrayList();
+            String sql = buildInsert( table , (Map)data.get( i ) , bindData , true );
+            addToBatch( batches , sql , bindData );
+        }
+        executeBatches( con , table , batches , "insertBatch" );
     }
 
-    /** Delete all rows matching the search portion of the DBQuery object.
-     */
-    public void delete( Connection con , DBQuery q ) throws SQLException
+    // batches is a map of SQL to a List of bindData (one for each time the SQL is to be run) in the order the SQL was
+    // first seen.
+    private static void addToBatch( Map batches , String sql , List bindData )
     {
-        Statement statement = con.createStatement();
-        String sql = "DELETE FROM " + q.getTable() + q.getWhereClause() ;
-        try
+        List rows = (List)batches.get( sql );
+        if ( rows == null )
         {
-            statement.executeUpdate( sql );
+            rows = new ArrayList();
+            batches.put( sql , rows );
         }
-        catch( Exception e )
+        rows.add( bindData );
+    }
+
+    // Run each SQL statement with each of its bindData, getBatchSize() at a time.  They all change table.
+    private void executeBatches( Connection con , String table , Map batches , String methodName ) throws SQLException
+    {
+        try
         {
-            throw new SQLException( "delete() execute fail: " + e );
+            Iterator it = batches.entrySet().iterator();
+            while ( it.hasNext() )
+            {
+                Map.Entry entry = (Map.Entry)it.next();
+                executeBatch( con , (String)entry.getKey() , (List)entry.getValue() , methodName );
+            }
         }
         finally
         {
-            statement.close();
+            tableChanged( table );
         }
     }
 
-    public void delete( DBQuery q ) throws SQLException
+    private void executeBatch( Connection con , String sql , List rows , String methodName ) throws SQLException
     {
+        PreparedStatement statement = prepareStatement( con , sql );
+        boolean reusable = false ;
+        DBStatistics.Timer timer = startTimer( sql );
         try
         {
-            Connection con = getConnection();
-            try
-            {
-                delete( con , q );
-            }
-            catch ( SQLException e )
-            {
-                throw e ;  // this is to avoid the exception message below
-            }
-            catch ( Exception e )
-            {
-                throw new SQLException( "delete() create fail: " + e );
-            }
-            finally
+            for ( int i = 0 ; i < rows.size() ; i++ )
             {
-                con.close();
+                setBindData( statement , (List)rows.get( i ) );
+                statement.addBatch();
+                if ( ( ( i + 1 ) % batchSize == 0 ) || ( i == rows.size() - 1 ) )
+                {
+                    statement.executeBatch();
+                }
             }
+            timer.finished( rows.size() );
+            reusable = true ;
         }
-        catch ( SQLException e )
+        catch ( Exception e )
         {
-            throw e ;  // this is to avoid the exception message below
+            timer.failed();
+            throw new SQLException( methodName + "() execute fail (" + sql + "): " + e );
         }
-        catch( Exception e )
+        finally
         {
-            throw new SQLException( "delete() connection fail: " + e );
+            releaseStatement( con , sql , statement , reusable );
         }
     }
 
-    /** Delete all rows where the searchText matches the text found in column.
+    /** Create many new rows at once.
+     *
+     * All of the rows go in on one connection in one transaction:  if one row fails, none of them are inserted.
+     *
+     * @param data A List of Map objects, one for each row.  Each is just like the Map given to insert().
      */
-    public void delete( Connection con , String table , String searchColumn , String searchText ) throws SQLException
+    public void insertBatch( final String table , final List data ) throws SQLException
     {
-        delete( con , new DBQuery( this , table , searchColumn , searchText ) );
+        runInTransaction( "insertBatch" , new Work()
+        {
+            public void run( Connection con ) throws SQLException
+            {
+                insertBatch( con , table , data );
+            }
+        });
     }
 
-    /** Delete all rows where the searchText matches the text found in column.
-     */
-    public void delete( String table , String searchColumn , String searchText ) throws SQLException
+    // Something to do on one connection in one transaction.
+    private interface Work
     {
-        delete( new DBQuery( this , table , searchColumn , searchText ) );
+        void run( Connection con ) throws SQLException ;
     }
 
-    /** Override this method if you need to provide a database dependent way of providing unique ID's.
+    /** Do several things on one connection, in one transaction.  If anything goes wrong, nothing is committed.
      *
-     * If you override this method, you would most likely want to override the processPreparedStatementForInsert() also.
+     * While the work runs, every method here that doesn't take a connection uses the transaction's connection instead
+     * of getting its own - on this thread, anyway.  So generated code like Animal.Row.update() and insert() is part of
+     * the transaction too.
      *
-     * For Oracle, you would want to add to the sql and return a CallableStatement.
+     * <pre>
      *
-     * @param sql The insert statement that will be used.
-     */
-    protected PreparedStatement getPreparedStatementForInsert( Connection con , String sql , String idColumnName ) throws Exception
-    {
-        return con.prepareStatement( sql );
-
-        // for Oracle:
-        // return con.prepareCall( "BEGIN " + sql + " returning " + idColumnName + " INTO ?; END;" );
-    }
-
-    /** Override this method if you need to provide a database dependent way of providing unique ID's.
+     *    facade.inTransaction( new UnitOfWork()
+     *    {
+     *        public void run( Connection con ) throws Exception
+     *        {
+     *            farm.update();
+     *            animal.insert();
+     *        }
+     *    });
      *
-     * If you override this method, you would most likely want to override the processPreparedStatementForInsert() also.
+     * </pre>
      *
-     * @param statement The statement object from getPreparedStatementForInsert(), ready to perform executeUpdate();
-     * @param streamDataCount The number of stream objects that have been fed into the statement
-     * @return the ID
+     * There is one commit, after the work is done.  The work must not commit or close the connection; calling
+     * rollback() on it means everything is rolled back at the end instead of committed.  If inTransaction() is called
+     * again inside the work, that is part of the same transaction.
+     *
+     * Some things still get their own connection:  async calls (they run on other threads), and reserving a block of
+     * unique ID's from tableIDCounters (so the block is never rolled back after other threads may have used it).
+     * That one comes straight from the driver, not the ConnectionPool, so units of work holding every pooled
+     * connection can still get their ID's.
      */
-    protected String processPreparedStatementForInsert( PreparedStatement statement , int streamDataCount ) throws Exception
-    {
-        statement.executeUpdate();
-        return null ;
-
-        // for Oracle:
-        //      CallableStatement callableStatement = (CallableStatement)statement ;
-        //      int outParameterNumber = streamDataCount + 1 ;
-        //      callableStatement.registerOutParameter( outParameterNumber , Types.INTEGER );
-        //      statement.executeUpdate();
-        //      return callableStatement.getString( outParameterNumber );
-    }
-
-    /** For internal use only. */
-    protected String insertAndPossiblyGetNewID( Connection con , String table , Map data , String idColumnName ) throws SQLException
+    public void inTransaction( final UnitOfWork work ) throws SQLException
     {
-        // If idColumnName is null, a preprared statement is used and a simple insert is performed.
-        // Otherwise, the getPreparedStatementForInsert() and processPreparedStatementForInsert() methods are used
-        // to do a database specific way of doing an insert and get the new ID back.
-        String returnVal = null ;
-        try
+        if ( work == null )
         {
-            Str columns = new Str( 200 );
-            Str values = new Str( 200 );
-            List streamData = new ArrayList();
-            Iterator it = data.entrySet().iterator();
-            while (it.hasNext())
-            {
-                Map.Entry entry = (Map.Entry)it.next();
-                String dataColumn = (String)entry.getKey();
-                Object obj = entry.getValue();
-                String dataValue = null;
-                if ( obj != null )
-                {
-                    dataValue = obj.toString();
-                }
-                if ( dataColumn.charAt( 0 ) == '>' )
-                {
-                    // we need to mash this data in via a stream
-                    dataColumn = dataColumn.substring( 1 , dataColumn.length() );
-                    values.append( "?," );
-                    streamData.add( dataValue );
-                }
-                else if ( dataColumn.charAt(0) == '+' )
-                {
-                    dataColumn = dataColumn.substring( 1 , dataColumn.length() );
-                    values.append( dataValue );
-                    values.append( "," );
-                }
-                else
-                {
-                    // this data can be placed directly in the SQL
-                    if ( dataValue == null )
-                    {
-                        values.append( "NULL" );
-                    }
-                    else
-                    {
-                        values.append( normalizeSearchText( dataValue ) );
-                    }
-                    values.append( "," );
-                }
-                columns.append( dataColumn );
-                columns.append( ',' );
-            }
-
-            columns.deleteLast( 1 );
-            values.deleteLast( 1 );
-
-            String sql = "INSERT INTO " + table + " (" + columns + ") VALUES (" + values + ")" ;
-            boolean processReturnClause = Str.usable( idColumnName );
-            PreparedStatement statement ;
-            if ( processReturnClause )
-            {
-                statement = getPreparedStatementForInsert( con , sql , idColumnName );
-            }
-            else
-            {
-                statement = con.prepareStatement( sql );
-            }
-            for( int i = 0 ; i < streamData.size() ; i++ )
-            {
-                String s = (String)streamData.get( i );
-                // todo - can we get away with something other than deprecated code now?
-                // yes, this is deprecated, but at the time this was put in other solutions did not work
-                // because the only drivers for weblogic/oracle combinations would only work this way.
-                statement.setAsciiStream( i + 1 , new StringBufferInputStream( s ) , s.length() );
-            }
-            try
-            {
-                if ( processReturnClause )
-                {
-                    returnVal = processPreparedStatementForInsert( statement , streamData.size() );
-                }
-                else
-                {
-                    statement.executeUpdate();
-                }
-            }
-            catch ( Exception e )
-            {
-                System.out.println( "\nSQL=" + sql );
-                e.printStackTrace();
-                throw new SQLException( "insert() insert fail: " + e );
-            }
-            finally
+            throw new InvalidParameterException( "parameter work is not allowed to be null" );
+        }
+        runInTransaction( "inTransaction" , new Work()
+        {
+            public void run( Connection con ) throws SQLException
             {
-                statement.close();
+                try
+                {
+                    work.run( con );
+                }
+                catch ( SQLException e )
+                {
+                    throw e ;  // this is to avoid the exception message below
+                }
+                catch ( Exception e )
+                {
+                    throw new SQLException( "inTransaction() fail: " + e );
+                }
             }
+        });
+    }
+
+    /** True if this thread is inside inTransaction(). */
+    public boolean isInTransaction()
+    {
+        return transaction.get() != null ;
+    }
+
+    // Do the work as part of this thread's transaction, or in a new one if there isn't one.
+    private void runInTransaction( String methodName , Work work ) throws SQLException
+    {
+        Connection con = (Connection)transaction.get();
+        if ( con == null )
+        {
+            runInNewTransaction( methodName , work , true );
+        }
+        else
+        {
+            work.run( con );
+        }
+    }
+
+    // Get a connection, do the work and commit.  If anything goes wrong, nothing is committed.  If bind is true, the
+    // connection-less methods on this thread use the same connection until the work is done.
+    private void runInNewTransaction( String methodName , Work work , boolean bind ) throws SQLException
+    {
+        Connection con = null ;
+        try
+        {
+            // getConnection() would give this thread's transaction, if there is one
+            con = ( transaction.get() == null ) ? getConnection() : openConnection();
         }
         catch ( SQLException e )
         {
             throw e ;  // this is to avoid the exception message below
         }
-        catch ( Exception e )
+        catch( Exception e )
         {
-            e.printStackTrace();
-            throw new SQLException( "insert() create fail: " + e );
+            throw new SQLException( methodName + "() connection fail: " + e );
         }
-        return returnVal ;
+        runInNewTransaction( methodName , con , work , bind );
     }
 
-    private String insertAndPossiblyGetNewID( String table , Map data , String idColumnName ) throws SQLException
+    // Like the other runInNewTransaction(), on this connection.  It is closed when the work is done.
+    private void runInNewTransaction( String methodName , Connection con , Work work , boolean bind ) throws SQLException
     {
-        String returnVal = null ;
         try
         {
-            Connection con = getConnection();
+            boolean autoCommit = con.getAutoCommit();
+            boolean committed = false ;
             try
             {
-                returnVal = insertAndPossiblyGetNewID( con , table , data , idColumnName );
+                con.setAutoCommit( false );
+                Set pending = null ;
+                if ( bind )
+                {
+                    Connection shared = TransactionConnection.wrap( con );
+                    pending = new HashSet();
+                    transaction.set( shared );
+                    pendingChanges.set( pending );
+                    try
+                    {
+                        work.run( shared );
+                    }
+                    finally
+                    {
+                        transaction.set( null );
+                        pendingChanges.set( null );
+                    }
+                    if ( TransactionConnection.isRollbackOnly( shared ) )
+                    {
+                        throw new SQLException( methodName + "() rolled back" );
+                    }
+                }
+                else
+                {
+                    work.run( con );
+                }
+                con.commit();
+                committed = true ;
+                if ( pending != null )
+                {
+                    Iterator it = pending.iterator();
+                    while ( it.hasNext() )
+                    {
+                        changed( (String)it.next() );
+                    }
+                }
+            }
+            catch ( SQLException e )
+            {
+                throw e ;  // this is to avoid the exception message below
+            }
+            catch ( Exception e )
+            {
+                throw new SQLException( methodName + "() fail: " + e );
             }
             finally
             {
-                con.close();
+                try
+                {
+                    if ( ! committed )
+                    {
+                        con.rollback();
+                    }
+                    con.setAutoCommit( autoCommit );
+                }
+                finally
+                {
+                    con.close();
+                }
             }
         }
         catch ( SQLException e )
@@ -990,27 +4078,8 @@ public class DBFacade
         }
         catch( Exception e )
         {
-            throw new SQLException( "insert() connection fail: " + e );
+            throw new SQLException( methodName + "() connection fail: " + e );
         }
-        return returnVal ;
-    }
-
-    /** Create a new row in the table and populate the fields with the provided data.
-     *
-     * @param data A key-value collection of searchColumn names (key) and data (value). If a searchColumn name starts with ">", that searchColumn will be processed as a stream (good for big Strings). <p>
-     */
-    public void insert( Connection con , String table , Map data ) throws SQLException
-    {
-        insertAndPossiblyGetNewID( con , table , data , null );
-    }
-
-    /** Create a new row in the table and populate the fields with the provided data.
-     *
-     * @param data A key-value collection of searchColumn names (key) and data (value). If a searchColumn name starts with ">", that searchColumn will be processed as a stream (good for big Strings). <p>
-     */
-    public void insert( String table , Map data ) throws SQLException
-    {
-        insertAndPossiblyGetNewID( table , data , null );
     }
 
 
@@ -1036,111 +4105,251 @@ public class DBFacade
     //
     //
 
-    private class Counter
+    // A range of ID's from the database:  first up to (but not including) end.  Handed out without any locking.
+    private static class Block
     {
 
-        private String tableName ;
-        private long skip ;
-        private long high ;
-        private long low ;
+        final long first ;
+        final long end ;
+        final long prefetchAt ;  // when this ID is handed out, it's time to get the next block
+        final AtomicLong next ;
 
-        Counter( String tableName ) throws SQLException
+        Block( long first , long end , double watermark )
         {
-            this.tableName = tableName ;
-            getHigh();
-            low = 0 ;
+            this.first = first ;
+            this.end = end ;
+            prefetchAt = first + (long)( ( end - first ) * watermark );
+            next = new AtomicLong( first );
+        }
+
+        long size()
+        {
+            return end - first ;
         }
 
-        private final String[] columns = { "counter" , "skip" };
+    }
 
-        private void getHigh() throws SQLException
+    // Threads that get the next block of ID's before the current one runs out.
+    private static final ExecutorService idPrefetcher = Executors.newCachedThreadPool( new ThreadFactory()
+    {
+        public Thread newThread( Runnable r )
         {
-            try
-            {
-                Connection con = getConnection();
-                try
-                {
-                    // read current counter
+            Thread t = new Thread( r , "DBFacade ID prefetch" );
+            t.setDaemon( true );
+            return t ;
+        }
+    });
+
+    private class Counter
+    {
 
-                    // todo - test for no table.  If no table, create table
-                    // CREATE TABLE IF NOT EXISTS tbl_name [(create_definition,...)] [table_options]
-                    // An error occurs if there is no current database or if the table already exists.
+        private final String tableName ;
 
-                    // todo - test for no row.  If no row, create row
-                    // SELECT COUNT(*) FROM tbl_name;
-                    // if COUNT == 0; INSERT ...
+        // the skip found the last time the database was asked - zero until then
+        private volatile long skip = 0 ;
 
-                    String[] rowData = search( con , "tableIDCounters" , "tableName" , tableName , columns ).getRow(0);
-                    long tempHigh = Long.parseLong( rowData[0] );
-                    tempHigh++ ;
-                    long tempSkip = Long.parseLong( rowData[1] );
+        // starts empty so that the first request goes to the database
+        private volatile Block current = new Block( 0 , 0 , 1.0 );
 
-                    // write updated counter
-                    Map map = new HashMap();
-                    map.put( "counter" , String.valueOf( tempHigh ) );
-                    update( con , "tableIDCounters" , "tableName" , tableName , map );
+        // the next block, on its way from the database.  Guarded by "this".
+        private FutureTask prefetch = null ;
 
-                    // if we reached this point, there were no exceptions
+        Counter( String tableName )
+        {
+            this.tableName = tableName ;
+        }
 
-                    high = tempHigh * tempSkip ;
-                    skip = tempSkip ;
+        // Reserve enough high values to cover this many ID's.  The counter is bumped before it is read, in one
+        // transaction, so no other server can get the same high value.  If the skip has changed since last time,
+        // there might be fewer ID's than asked for.
+        private Block reserve( long idCount ) throws SQLException
+        {
+            final long blocks = ( skip == 0 ) ? 1 : ( idCount + skip - 1 ) / skip ;
+            final long[] counterAndSkip = new long[ 2 ];
+            Connection con = null ;
+            try
+            {
+                con = openIDConnection();
+            }
+            catch ( SQLException e )
+            {
+                throw e ;  // this is to avoid the exception message below
+            }
+            catch ( Exception e )
+            {
+                throw new SQLException( "getNextID() connection fail: " + e );
+            }
+            runInNewTransaction( "getNextID" , con , new Work()
+            {
+                public void run( Connection con ) throws SQLException
+                {
+                    String sql = "UPDATE tableIDCounters SET counter = counter + ? WHERE tableName = ?" ;
+                    PreparedStatement statement = prepareStatement( con , sql );
+                    boolean reusable = false ;
+                    try
+                    {
+                        statement.setLong( 1 , blocks );
+                        statement.setString( 2 , tableName );
+                        if ( statement.executeUpdate() != 1 )
+                        {
+                            throw new SQLException( "unique identifier algorithm could not find the tableIDCounters row for " + tableName );
+                        }
+                        reusable = true ;
+                    }
+                    finally
+                    {
+                        releaseStatement( con , sql , statement , reusable );
+                    }
+                    String[] rowData = executeQuery( con , "SELECT counter , skip FROM tableIDCounters WHERE tableName = ?" , new Object[]{ tableName } ).getRow( 0 );
+                    counterAndSkip[ 0 ] = Long.parseLong( rowData[ 0 ] );
+                    counterAndSkip[ 1 ] = Long.parseLong( rowData[ 1 ] );
                 }
-                catch ( Exception e )
+            } , false );
+            long tempSkip = counterAndSkip[ 1 ];
+            skip = tempSkip ;
+            return new Block( ( counterAndSkip[ 0 ] - blocks + 1 ) * tempSkip , ( counterAndSkip[ 0 ] + 1 ) * tempSkip , idPrefetchWatermark );
+        }
+
+        private synchronized void startPrefetch()
+        {
+            if ( prefetch == null )
+            {
+                prefetch = new FutureTask( new Callable()
+                {
+                    public Object call() throws Exception
+                    {
+                        return reserve( 1 );
+                    }
+                });
+                idPrefetcher.execute( prefetch );
+            }
+        }
+
+        // The block has run out.  Move on to the prefetched block, or get one now if there isn't one.
+        private synchronized void nextBlock( Block exhausted ) throws SQLException
+        {
+            if ( current == exhausted )
+            {
+                Block block = null ;
+                if ( prefetch != null )
                 {
-                    throw new SQLException( "unique identifier algorithm could not retrieve/update counter: " + e );
+                    try
+                    {
+                        block = (Block)prefetch.get();
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                    catch ( ExecutionException e )
+                    {
+                        // try again below - if the database really is unhappy, this thread will hear about it
+                        errorLog.add( "ID prefetch for " + tableName + " failed: " + e.getCause() );
+                    }
+                    prefetch = null ;
                 }
-                finally
+                if ( block == null )
                 {
-                    con.close();
+                    block = reserve( 1 );
                 }
+                current = block ;
             }
-            catch ( SQLException e )
+        }
+
+        // A big reservation is done and this is what's left of it.  If the current block is the one that ran out, the
+        // leftover takes its place, so those ID's aren't thrown away.
+        private synchronized void useLeftover( Block exhausted , Block leftover )
+        {
+            if ( ( current == exhausted ) && ( leftover.size() > 0 ) )
             {
-                throw e ;  // this is to avoid the exception message below
+                current = leftover ;
             }
-            catch( Exception e )
+        }
+
+        // put the ID's from first up to stop into ids, starting at i.  Returns the new i.
+        private int take( long first , long stop , long[] ids , int i )
+        {
+            for ( long id = first ; id < stop ; id++ )
             {
-                throw new SQLException( "unique identifier algorithm connection fail: " + e );
+                ids[ i ] = id ;
+                i++ ;
             }
+            return i ;
+        }
+
+        long getNextID() throws SQLException
+        {
+            return getNextIDs( 1 )[ 0 ];
         }
 
-        synchronized long getNextID() throws SQLException
+        // Lots of threads can take from the same block at the same time.  Only a thread that finds the block empty
+        // has to wait, and usually the next block is already here.
+        long[] getNextIDs( int count ) throws SQLException
         {
-            if ( low >= skip )
+            long[] ids = new long[ count ];
+            int i = 0 ;
+            while ( i < count )
             {
-                getHigh();
-                low = 0 ;
+                Block block = current ;
+                int want = count - i ;
+                long first = block.next.getAndAdd( want );
+                long stop = Math.min( first + want , block.end );
+                if ( first < stop )
+                {
+                    i = take( first , stop , ids , i );
+                    if ( ( block.prefetchAt >= first ) && ( block.prefetchAt < stop ) )
+                    {
+                        // exactly one thread gets the ID at the watermark
+                        startPrefetch();
+                    }
+                }
+                want = count - i ;
+                if ( ( want > 0 ) && ( block.size() > 0 ) && ( want > block.size() ) )
+                {
+                    // more than a whole block to go - get them straight from the database, and what isn't needed
+                    // becomes the current block
+                    Block big = reserve( want );
+                    long taken = Math.min( want , big.size() );
+                    i = take( big.first , big.first + taken , ids , i );
+                    useLeftover( block , new Block( big.first + taken , big.end , idPrefetchWatermark ) );
+                }
+                else if ( want > 0 )
+                {
+                    nextBlock( block );
+                }
             }
-            long returnVal = high + low ;
-            low++ ;
-            return returnVal ;
+            return ids ;
         }
 
     }
 
 
-    private final Map counters = new HashMap();
-
-    private final Object mutex = new Object();
+    private final ConcurrentMap counters = new ConcurrentHashMap();
 
     private long getNextID( String tableName ) throws SQLException
     {
-        Counter c = null;
-        c = (Counter) counters.get( tableName );
+        return getCounter( tableName ).getNextID();
+    }
+
+    private long[] getNextIDs( String tableName , int count ) throws SQLException
+    {
+        return getCounter( tableName ).getNextIDs( count );
+    }
+
+    private Counter getCounter( String tableName )
+    {
+        Counter c = (Counter)counters.get( tableName );
         if ( c == null )
         {
-            // this block of code needs to be synchronized so that I don't accidentally try
-            // to create two of the same thing at the same time.
-            synchronized ( mutex )
+            // a Counter doesn't touch the database until it's used, so it's okay if two threads both make one
+            Counter newCounter = new Counter( tableName );
+            c = (Counter)counters.putIfAbsent( tableName , newCounter );
+            if ( c == null )
             {
-                if ( c == null )
-                {
-                    c = new Counter( tableName );
-                    counters.put( tableName , c );
-                }
+                c = newCounter ;
             }
         }
-        return c.getNextID();
+        return c ;
     }
 
     //
@@ -1188,7 +4397,30 @@ public class DBFacade
     public long insertAndGetID( String table , Map data , String idColumnName ) throws SQLException
     {
         long id = 0 ;
-        if ( useHighLowPattern )
+        if ( idStrategy != null )
+        {
+            try
+            {
+                Connection con = getConnection();
+                try
+                {
+                    id = idStrategy.insertAndGetID( this , con , table , data , idColumnName );
+                }
+                finally
+                {
+                    con.close();
+                }
+            }
+            catch ( SQLException e )
+            {
+                throw e ;  // this is to avoid the exception message below
+            }
+            catch( Exception e )
+            {
+                throw new SQLException( "insertAndGetID() connection fail: " + e );
+            }
+        }
+        else if ( useHighLowPattern )
         {
             id = getNextID( table );
             data.put( idColumnName , String.valueOf( id ) );
@@ -1207,7 +4439,11 @@ public class DBFacade
     public long insertAndGetID( Connection con , String table , Map data , String idColumnName ) throws SQLException
     {
         long id = 0 ;
-        if ( useHighLowPattern )
+        if ( idStrategy != null )
+        {
+            id = idStrategy.insertAndGetID( this , con , table , data , idColumnName );
+        }
+        else if ( useHighLowPattern )
         {
             id = getNextID( table );
             data.put( idColumnName , String.valueOf( id ) );
@@ -1223,6 +4459,110 @@ public class DBFacade
         return id ;
     }
 
+    /** Create many new rows at once, each with a unique ID.
+     *
+     * With an IDStrategy (see setIDStrategy()), the strategy does the work.  With the high/low pattern (see
+     * insertAndGetID()), the ID's for the whole batch are reserved with one trip to the "TableIDCounters" table and the
+     * rows are inserted with insertBatch().  Otherwise the database makes the ID's, so the rows are inserted one at a
+     * time on the same connection.
+     *
+     * @param data A List of Map objects, one for each row.  Each Map gets its new ID.
+     * @return The new ID's, in the same order as the list.
+     */
+    public long[] insertBatchAndGetIDs( Connection con , String table , List data , String idColumnName ) throws SQLException
+    {
+        long[] ids = null ;
+        if ( idStrategy != null )
+        {
+            ids = idStrategy.insertBatchAndGetIDs( this , con , table , data , idColumnName );
+        }
+        else if ( useHighLowPattern )
+        {
+            ids = getNextIDs( table , data.size() );
+            putIDs( data , idColumnName , ids );
+            insertBatch( con , table , data );
+        }
+        else
+        {
+            ids = new long[ data.size() ];
+            for ( int i = 0 ; i < ids.length ; i++ )
+            {
+                ids[ i ] = insertAndGetID( con , table , (Map)data.get( i ) , idColumnName );
+            }
+        }
+        return ids ;
+    }
+
+    /** Create many new rows at once, each with a unique ID.
+     *
+     * @param data A List of Map objects, one for each row.  Each Map gets its new ID.
+     * @return The new ID's, in the same order as the list.
+     */
+    public long[] insertBatchAndGetIDs( final String table , final List data , final String idColumnName ) throws SQLException
+    {
+        long[] ids = null ;
+        if ( idStrategy != null )
+        {
+            final long[][] newIDs = new long[ 1 ][];
+            runInTransaction( "insertBatchAndGetIDs" , new Work()
+            {
+                public void run( Connection con ) throws SQLException
+                {
+                    newIDs[ 0 ] = idStrategy.insertBatchAndGetIDs( DBFacade.this , con , table , data , idColumnName );
+                }
+            });
+            ids = newIDs[ 0 ];
+        }
+        else if ( useHighLowPattern )
+        {
+            ids = getNextIDs( table , data.size() );
+            putIDs( data , idColumnName , ids );
+            insertBatch( table , data );
+        }
+        else
+        {
+            try
+            {
+                Connection con = getConnection();
+                try
+                {
+                    ids = insertBatchAndGetIDs( con , table , data , idColumnName );
+                }
+                finally
+                {
+                    con.close();
+                }
+            }
+            catch ( SQLException e )
+            {
+                throw e ;  // this is to avoid the exception message below
+            }
+            catch( Exception e )
+            {
+                throw new SQLException( "insertBatchAndGetIDs() connection fail: " + e );
+            }
+        }
+        return ids ;
+    }
+
+    public long[] insertBatchAndGetIDs( Connection con , String table , List data ) throws SQLException
+    {
+        return insertBatchAndGetIDs( con , table , data , "ID" );
+    }
+
+    public long[] insertBatchAndGetIDs( String table , List data ) throws SQLException
+    {
+        return insertBatchAndGetIDs( table , data , "ID" );
+    }
+
+    private static void putIDs( List data , String idColumnName , long[] ids )
+    {
+        for ( int i = 0 ; i < ids.length ; i++ )
+        {
+            ((Map)data.get( i )).put( idColumnName , String.valueOf( ids[ i ] ) );
+        }
+    }
+
 
 }
 
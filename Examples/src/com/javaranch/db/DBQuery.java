@@ -2,6 +2,7 @@ package com.javaranch.db;
 
 import com.javaranch.common.*;
 
+import java.util.*;
 import java.security.InvalidParameterException;
 
 // todo - write javadoc
@@ -15,45 +16,58 @@ public class DBQuery
     private String table;
     private String where = null;
     private String orderBy = null;
+    private String groupBy = null ;
+
+    // set by page():  the ORDER BY columns, the key of the last row of the page before (null for the first page) and
+    // the most rows to get.  A limit of zero means there is no limit.
+    private String[] pageColumns = null ;
+    private Object[] afterKey = null ;
+    private int limit = 0 ;
+
+    // When parameterized, the where clause holds a '?' for each search value and the values are kept here in order.
+    private boolean parameterized ;
+    private List parameters = new ArrayList();
+
+    // Set by setSearch() for one value, so ShardedDBFacade can tell which shard has the rows.  Only good while where is
+    // still the where clause that setSearch() made.
+    private String keyColumn = null ;
+    private String keyValue = null ;
+    private String keyWhere = null ;
 
     public DBQuery( DBFacade facade , String table )
     {
         this.facade = facade ;
         this.table = table;
+        parameterized = ( facade != null ) && facade.isUsingParameters();
     }
 
     public DBQuery( DBFacade facade , String table , String column , String searchText )
     {
-        this.facade = facade ;
-        this.table = table;
+        this( facade , table );
         setSearch( column , searchText );
     }
 
     public DBQuery( DBFacade facade , String table , String column , int searchValue )
     {
-        this.facade = facade ;
-        this.table = table;
+        this( facade , table );
         setSearch( column , searchValue );
     }
 
     public DBQuery( DBFacade facade , String table , String column , int[] searchValues )
     {
-        this.facade = facade ;
-        this.table = table;
+        this( facade , table );
         setSearch( column , searchValues );
     }
 
     public DBQuery( DBFacade facade , String table , String column , String[] searchText )
     {
-        this.facade = facade ;
-        this.table = table;
+        this( facade , table );
         setSearch( column , searchText );
     }
 
     public DBQuery( DBFacade facade , String table , String column , String searchText , String[] dataColumns )
     {
-        this.facade = facade ;
-        this.table = table;
+        this( facade , table );
         setSearch( column , searchText );
         this.dataColumns = dataColumns;
     }
@@ -63,16 +77,14 @@ public class DBQuery
      */
     public DBQuery( DBFacade facade , String table , String column , String[] searchText , String[] dataColumns )
     {
-        this.facade = facade ;
-        this.table = table;
+        this( facade , table );
         setSearch( column , searchText );
         this.dataColumns = dataColumns;
     }
 
     public DBQuery( DBFacade facade , String table , String column , int searchValue , String[] dataColumns )
     {
-        this.facade = facade ;
-        this.table = table;
+        this( facade , table );
         setSearch( column , searchValue );
         this.dataColumns = dataColumns;
     }
@@ -82,12 +94,40 @@ public class DBQuery
      */
     public DBQuery( DBFacade facade , String table , String column , int[] searchValues , String[] dataColumns )
     {
-        this.facade = facade ;
-        this.table = table;
+        this( facade , table );
         setSearch( column , searchValues );
         this.dataColumns = dataColumns;
     }
 
+    /** Keep search values out of the SQL text.
+     *
+     * Each search value becomes a '?' in the SQL and is handed to the database separately, so the same query with
+     * different values is the same SQL to the database.  By default, a DBQuery is parameterized if its DBFacade
+     * uses parameters.  Changing this clears the current search.
+     */
+    public void setParameterized( boolean parameterized )
+    {
+        this.parameterized = parameterized ;
+        where = null ;
+        parameters.clear();
+    }
+
+    public boolean isParameterized()
+    {
+        return parameterized ;
+    }
+
+    /** For use by DBFacade.
+     *
+     * The values for each '?' in the where clause, in order.  Zero length if there are none.
+     */
+    public Object[] getParameters()
+    {
+        List returnVal = new ArrayList( parameters );
+        buildSeek( returnVal );
+        return returnVal.toArray();
+    }
+
 //    public void useNolockHint()
 //    {
 //        useNolock = true ;
@@ -102,6 +142,148 @@ public class DBQuery
         this.orderBy = orderBy;
     }
 
+    /** Put the rows that have the same values in these columns together, for aggregates like "COUNT(*)" in the data
+     *  columns - see DBFacade.groupBy().
+
+     @param groupBy Pass in null for no grouping, otherwise pass in the SQL that would normally follow "GROUP BY". <p>
+     */
+    public void setGroupByClause( String groupBy )
+    {
+        this.groupBy = groupBy ;
+    }
+
+    /** Get one page of rows at a time, by where they are in the order instead of by how many rows come before them.
+     *
+     * The rows are sorted by orderColumns, and only the ones that come after afterKey are found.  So page 10,000 costs
+     * the same as page 1, as long as there is an index on the order columns.  To get the next page, pass in the values
+     * of the order columns from the last row of this page.  <p>
+     *
+     * The order columns must add up to something unique (end with the ID column) or rows that tie will be skipped.
+     * They can't be NULL.  A column can be followed by " DESC" to go backwards.  <p>
+     *
+     * How the number of rows is limited depends on the database - see DBFacade.setLimitStyle().  Anything set with
+     * setOrderByClause() is replaced.
+     *
+     * @param orderColumns The columns to sort by, most important first.
+     * @param afterKey The values of orderColumns for the last row of the page before, or null for the first page.
+     * @param limit The most rows on a page.
+     */
+    public void page( String[] orderColumns , Object[] afterKey , int limit )
+    {
+        if ( ( orderColumns == null ) || ( orderColumns.length == 0 ) )
+        {
+            throw new InvalidParameterException( "a page needs at least one order column" );
+        }
+        if ( ( afterKey != null ) && ( afterKey.length != orderColumns.length ) )
+        {
+            throw new InvalidParameterException( "afterKey needs a value for each order column" );
+        }
+        if ( limit < 1 )
+        {
+            throw new InvalidParameterException( "limit must be at least one" );
+        }
+        Str order = new Str();
+        for ( int i = 0 ; i < orderColumns.length ; i++ )
+        {
+            testColumn( orderColumns[ i ] );
+            if ( ( afterKey != null ) && ( afterKey[ i ] == null ) )
+            {
+                throw new InvalidParameterException( "afterKey can't have nulls" );
+            }
+            if ( i > 0 )
+            {
+                order.append( " , " );
+            }
+            order.append( orderColumns[ i ] );
+        }
+        this.orderBy = order.toString();
+        this.pageColumns = orderColumns.clone();
+        this.afterKey = ( afterKey == null ) ? null : afterKey.clone();
+        this.limit = limit ;
+    }
+
+    /** The most rows this query will find, or zero if there's no limit - see page(). */
+    public int getLimit()
+    {
+        return limit ;
+    }
+
+    // A copy of this query that gets these columns instead, for DBFacade's aggregates (count(), sum() ...).  It finds
+    // the same rows, but doesn't sort them, group them or stop at a limit.
+    DBQuery aggregate( String[] columns )
+    {
+        DBQuery q = copy();
+        q.dataColumns = columns ;
+        q.orderBy = null ;
+        q.groupBy = null ;
+        q.limit = 0 ;
+        return q ;
+    }
+
+    // Stop after this many rows, without sorting them.  Zero for no limit.
+    void setLimit( int limit )
+    {
+        this.limit = limit ;
+    }
+
+    // The search for the rows after afterKey, with the values it needs added to seekParameters.  Null if there's no
+    // afterKey.  For columns a, b and c:  ( a > ? ) OR ( a=? AND b > ? ) OR ( a=? AND b=? AND c > ? )
+    private String buildSeek( List seekParameters )
+    {
+        String returnVal = null ;
+        if ( afterKey != null )
+        {
+            Str s = new Str();
+            for ( int i = 0 ; i < pageColumns.length ; i++ )
+            {
+                if ( i > 0 )
+                {
+                    s.append( " OR " );
+                }
+                s.append( "( " );
+                for ( int j = 0 ; j < i ; j++ )
+                {
+                    s.append( getSeekColumn( j ) + "=" + getSeekValue( j , seekParameters ) + " AND " );
+                }
+                String operator = isDescending( i ) ? " < " : " > " ;
+                s.append( getSeekColumn( i ) + operator + getSeekValue( i , seekParameters ) + " )" );
+            }
+            returnVal = s.toString();
+        }
+        return returnVal ;
+    }
+
+    private boolean isDescending( int i )
+    {
+        return pageColumns[ i ].trim().toUpperCase().endsWith( " DESC" );
+    }
+
+    // the order column without any ASC or DESC
+    private String getSeekColumn( int i )
+    {
+        String returnVal = pageColumns[ i ].trim();
+        String upper = returnVal.toUpperCase();
+        if ( upper.endsWith( " DESC" ) || upper.endsWith( " ASC" ) )
+        {
+            returnVal = returnVal.substring( 0 , returnVal.lastIndexOf( ' ' ) ).trim();
+        }
+        return returnVal ;
+    }
+
+    private String getSeekValue( int i , List seekParameters )
+    {
+        String returnVal = "?" ;
+        if ( parameterized )
+        {
+            seekParameters.add( afterKey[ i ] );
+        }
+        else
+        {
+            returnVal = DBFacade.normalizeSearchText( afterKey[ i ].toString() );
+        }
+        return returnVal ;
+    }
+
     private String buildSearch( String column , String searchText )
     {
         String returnVal = null;
@@ -109,6 +291,11 @@ public class DBQuery
         {
             returnVal = column + " IS NULL" ;
         }
+        else if ( parameterized )
+        {
+            returnVal = column + "=?" ;
+            parameters.add( searchText );
+        }
         else
         {
             returnVal = column + '=' + DBFacade.normalizeSearchText( searchText ) ;
@@ -116,6 +303,21 @@ public class DBQuery
         return returnVal;
     }
 
+    private String buildSearch( String column , int searchValue )
+    {
+        String returnVal = null;
+        if ( parameterized )
+        {
+            returnVal = column + "=?" ;
+            parameters.add( new Integer( searchValue ) );
+        }
+        else
+        {
+            returnVal = buildSearch( column , String.valueOf( searchValue ) );
+        }
+        return returnVal;
+    }
+
     protected void testColumn( String column )
     {
         if ( ! Str.usable( column ) )
@@ -129,7 +331,28 @@ public class DBQuery
     public void setSearch( String column , String searchText )
     {
         testColumn( column );
+        parameters.clear();
         where = buildSearch( column , searchText );
+        setKey( column , searchText );
+    }
+
+    private void setKey( String column , String value )
+    {
+        keyColumn = column ;
+        keyValue = value ;
+        keyWhere = where ;
+    }
+
+    // The value this query searches for in the column, if the whole search is one setSearch() on that column.
+    // Otherwise null.
+    String getKey( String column )
+    {
+        String returnVal = null ;
+        if ( ( keyWhere != null ) && ( where == keyWhere ) && column.equalsIgnoreCase( keyColumn ) )
+        {
+            returnVal = keyValue ;
+        }
+        return returnVal ;
     }
 
     private void prepAdd()
@@ -158,12 +381,17 @@ public class DBQuery
 
     public void setSearch( String column , int searchValue )
     {
-        setSearch( column , String.valueOf( searchValue ) );
+        testColumn( column );
+        parameters.clear();
+        where = buildSearch( column , searchValue );
+        setKey( column , String.valueOf( searchValue ) );
     }
 
     public void addSearch( String column , int searchValue )
     {
-        addSearch( column , String.valueOf( searchValue ) );
+        testColumn( column );
+        prepAdd();
+        where += buildSearch( column , searchValue );
     }
 
 
@@ -173,13 +401,21 @@ public class DBQuery
         String returnVal = null;
         if ( substring != null )
         {
-            Str s = new Str( DBFacade.normalizeSearchText( substring ) );
-            if ( ! startsWith )
+            if ( parameterized )
+            {
+                parameters.add( ( startsWith ? "" : "%" ) + substring + '%' );
+                returnVal = column + " LIKE ?" ;
+            }
+            else
             {
-                s.insert( '%' , 1 );
+                Str s = new Str( DBFacade.normalizeSearchText( substring ) );
+                if ( ! startsWith )
+                {
+                    s.insert( '%' , 1 );
+                }
+                s.insert( '%' , s.length() - 1 );
+                returnVal = column + " LIKE " + s ;
             }
-            s.insert( '%' , s.length() - 1 );
-            returnVal = column + " LIKE " + s ;
         }
         return returnVal;
     }
@@ -193,6 +429,7 @@ public class DBQuery
     public void setSubstringSearch( String column , String substring )
     {
         testColumn( column );
+        parameters.clear();
         where = buildSubstringSearch( column , substring , false );
     }
 
@@ -221,6 +458,7 @@ public class DBQuery
     public void setStartsWithSearch( String column , String substring )
     {
         testColumn( column );
+        parameters.clear();
         where = buildSubstringSearch( column , substring , true );
     }
 
@@ -269,13 +507,110 @@ public class DBQuery
         return returnVal;
     }
 
+    // The search for a list of values.  How that's done depends on how many there are and what the facade can do:
+    //
+    //     "column IN (...)" with a '?' for each value when parameterized, if there are no more than
+    //     getMaxInListSize() - or however many there are, if the facade can't do any better.
+    //
+    //     "column = ANY(?)" with all of the values in one array parameter, if the facade uses array parameters.
+    //
+    //     "column IN (SELECT ... FROM inListTable WHERE LIST_ID = ?)" if there are too many for one IN list and the
+    //     facade has an in-list table.  The values go in the table just before the search.
+    //
+    //     "( column IN (...) OR column IN (...) )" otherwise, getMaxInListSize() values at a time.
+    private String buildInSearch( String column , Object[] values )
+    {
+        String returnVal = null;
+        if ( Str.usable( column ) && ( values.length > 0 ) )
+        {
+            int max = getMaxInListSize();
+            if ( parameterized && ( values.length > 1 ) && ( facade != null ) && facade.isUsingArrayParameters() )
+            {
+                returnVal = column + " = ANY(?)" ;
+                parameters.add( new DBFacade.ArrayData( values ) );
+            }
+            else if ( values.length <= max )
+            {
+                returnVal = buildInList( column , values , 0 , values.length );
+            }
+            else if ( parameterized && ( facade != null ) && ( facade.getInListTable() != null ) )
+            {
+                DBFacade.InListData data = new DBFacade.InListData( facade.getInListTable() , values );
+                returnVal = column + " IN (SELECT " + data.getValueColumn() + " FROM " + data.table + " WHERE LIST_ID = ?)" ;
+                parameters.add( data );
+            }
+            else
+            {
+                Str s = new Str();
+                s.append( "( " );
+                for ( int start = 0 ; start < values.length ; start += max )
+                {
+                    if ( start > 0 )
+                    {
+                        s.append( " OR " );
+                    }
+                    s.append( buildInList( column , values , start , Math.min( max , values.length - start ) ) );
+                }
+                s.append( " )" );
+                returnVal = s.toString();
+            }
+        }
+        return returnVal;
+    }
+
+    private int getMaxInListSize()
+    {
+        return ( facade == null ) ? Dialect.GENERIC.getMaxInListSize() : facade.getMaxInListSize();
+    }
+
+    // "column IN (...)" for count values, starting at start - with a '?' for each value when parameterized.
+    private String buildInList( String column , Object[] values , int start , int count )
+    {
+        Str s = new Str();
+        s.append( column + " IN (" );
+        for ( int i = start ; i < start + count ; i++ )
+        {
+            if ( i > start )
+            {
+                s.append( " , " );
+            }
+            if ( values[ i ] == null )
+            {
+                s.append( "NULL" );
+            }
+            else if ( parameterized )
+            {
+                s.append( '?' );
+                parameters.add( values[ i ] );
+            }
+            else
+            {
+                s.append( DBFacade.normalizeSearchText( values[ i ].toString() ) );
+            }
+        }
+        s.append( ")" );
+        return s.toString();
+    }
+
+    private static Object[] toObjects( int[] values )
+    {
+        Object[] returnVal = new Object[ values.length ];
+        for ( int i = 0 ; i < values.length ; i++ )
+        {
+            returnVal[ i ] = new Integer( values[ i ] );
+        }
+        return returnVal ;
+    }
+
     /**
-     * @param searchText The array of strings will be used to build a SQL "IN" statement.
+     * @param searchText The array of strings will be used to build a SQL "IN" statement.  However long it is - see
+     *                   DBFacade.useArrayParameters() and DBFacade.setInListTable() for what happens to long ones.
      */
     public void setSearch( String column , String[] searchText )
     {
         testColumn( column );
-        where = buildWhereClause( column , searchText );
+        parameters.clear();
+        where = searchText == null ? null : buildInSearch( column , searchText );
     }
 
     /** Add search parameters to the existing search using 'AND'.
@@ -288,17 +623,19 @@ public class DBQuery
         if ( ( searchText != null ) && ( searchText.length > 0 ) )
         {
             prepAdd();
-            where += buildWhereClause( column , searchText );
+            where += buildInSearch( column , searchText );
         }
     }
 
     /**
-     * @param searchValues The array of strings will be used to build a SQL "IN" statement.
+     * @param searchValues The array of strings will be used to build a SQL "IN" statement.  However long it is - see
+     *                     DBFacade.useArrayParameters() and DBFacade.setInListTable() for what happens to long ones.
      */
     public void setSearch( String column , int[] searchValues )
     {
         testColumn( column );
-        where = buildWhereClause( column , Str.toStringArray( searchValues ) );
+        parameters.clear();
+        where = searchValues == null ? null : buildInSearch( column , toObjects( searchValues ) );
     }
 
     /** Add search parameters to the existing search using 'AND'.
@@ -311,7 +648,7 @@ public class DBQuery
         if ( ( searchValues != null ) && ( searchValues.length > 0 ) )
         {
             prepAdd();
-            where += buildWhereClause( column , Str.toStringArray( searchValues ) );
+            where += buildInSearch( column , toObjects( searchValues ) );
         }
     }
 
@@ -319,9 +656,21 @@ public class DBQuery
      */
     public void setWhereClause( String whereClause )
     {
+        parameters.clear();
         where = whereClause;
     }
 
+    /** Like setWhereClause(), but with a value for each '?' found in the where clause.
+     */
+    public void setWhereClause( String whereClause , Object[] parameters )
+    {
+        setWhereClause( whereClause );
+        if ( parameters != null )
+        {
+            this.parameters.addAll( Arrays.asList( parameters ) );
+        }
+    }
+
     /** Specify the columns you want to get back from the query.
      */
     public void setDataColumns( String[] dataColumns )
@@ -354,9 +703,36 @@ public class DBQuery
     public String getWhereClause()
     {
         String returnVal = "";
-        if ( where != null )
+        String search = getWhere();
+        if ( search != null )
+        {
+            returnVal = " WHERE " + search ;
+        }
+        return returnVal;
+    }
+
+    // the where clause without the "WHERE" - null if there is no search.  Includes the search for the next page.
+    String getWhere()
+    {
+        String returnVal = where ;
+        String seek = buildSeek( new ArrayList() );
+        if ( seek != null )
+        {
+            returnVal = Str.usable( where ) ? "( " + where + " ) AND ( " + seek + " )" : seek ;
+        }
+        return returnVal ;
+    }
+
+    /** For use by DBFacade.
+     *
+     * Made public for use by unit tests.
+     */
+    public String getGroupByClause()
+    {
+        String returnVal = "";
+        if ( groupBy != null )
         {
-            returnVal = " WHERE " + where;
+            returnVal = " GROUP BY " + groupBy ;
         }
         return returnVal;
     }
@@ -380,9 +756,45 @@ public class DBQuery
         return facade ;
     }
 
+    // must agree with equals() - and a query with no where clause is fine
     public int hashCode()
     {
-        return where.hashCode();
+        int returnVal = parameters.hashCode();
+        if ( table != null )
+        {
+            returnVal = returnVal * 31 + table.hashCode();
+        }
+        if ( where != null )
+        {
+            returnVal = returnVal * 31 + where.hashCode();
+        }
+        if ( afterKey != null )
+        {
+            returnVal = returnVal * 31 + Arrays.asList( afterKey ).hashCode();
+        }
+        return returnVal * 31 + limit ;
+    }
+
+    // A copy that won't change when this one does.  Used by QueryCache for its keys.
+    DBQuery copy()
+    {
+        DBQuery q = new DBQuery( facade , table );
+        q.parameterized = parameterized ;
+        q.where = where ;
+        q.orderBy = orderBy ;
+        q.groupBy = groupBy ;
+        if ( dataColumns != null )
+        {
+            q.dataColumns = dataColumns.clone();
+        }
+        q.parameters.addAll( parameters );
+        q.pageColumns = pageColumns ;  // page() never changes these arrays, it makes new ones
+        q.afterKey = afterKey ;
+        q.limit = limit ;
+        q.keyColumn = keyColumn ;
+        q.keyValue = keyValue ;
+        q.keyWhere = keyWhere ;
+        return q ;
     }
 
     public boolean equals( Object obj )
@@ -391,9 +803,12 @@ public class DBQuery
         if ( ( obj != null ) && ( obj instanceof DBQuery ) )
         {
             DBQuery q = (DBQuery) obj;
-            if ( Str.equal( table , q.table ) && Str.equal( where , q.where ) && Str.equal( orderBy , q.orderBy ) )
+            if ( Str.equal( table , q.table ) && Str.equal( where , q.where ) && Str.equal( orderBy , q.orderBy ) &&
+                 Str.equal( groupBy , q.groupBy ) )
             {
-                returnVal = Str.equal( dataColumns , q.dataColumns );
+                returnVal = Str.equal( dataColumns , q.dataColumns ) && parameters.equals( q.parameters ) &&
+                            Str.equal( pageColumns , q.pageColumns ) && Arrays.equals( afterKey , q.afterKey ) &&
+                            ( limit == q.limit );
             }
         }
         return returnVal;
@@ -405,6 +820,22 @@ public class DBQuery
         buffy.append( "table=" + table );
         buffy.append( "|where=" + where );
         buffy.append( "|orderBy=" + orderBy );
+        if ( groupBy != null )
+        {
+            buffy.append( "|groupBy=" + groupBy );
+        }
+        if ( parameters.size() > 0 )
+        {
+            buffy.append( "|parameters=" + parameters );
+        }
+        if ( afterKey != null )
+        {
+            buffy.append( "|afterKey=" + Arrays.asList( afterKey ) );
+        }
+        if ( limit > 0 )
+        {
+            buffy.append( "|limit=" + limit );
+        }
         buffy.append( "|dataColumns=" );
         for ( int i = 0 ; i < dataColumns.length ; i++ )
         {
@@ -422,7 +853,12 @@ public class DBQuery
         String returnVal = "";
         if ( dataColumns != null )
         {
+            String limitStyle = ( limit > 0 ) ? facade.getLimitStyle() : null ;
             Str sql = new Str( "SELECT " );
+            if ( limitStyle == DBFacade.TOP )
+            {
+                sql.append( "TOP " + limit + ' ' );
+            }
             for( int i = 0 ; i < dataColumns.length ; i++ )
             {
                 sql.append( dataColumns[ i ] );
@@ -436,8 +872,21 @@ public class DBQuery
                 sql.append( " (NOLOCK) " ); // for SQL SERVER
             }
             sql.append( getWhereClause() );
+            sql.append( getGroupByClause() );
             sql.append( getOrderByClause() );
+            if ( limitStyle == DBFacade.LIMIT )
+            {
+                sql.append( " LIMIT " + limit );
+            }
+            else if ( limitStyle == DBFacade.FETCH_FIRST )
+            {
+                sql.append( " FETCH FIRST " + limit + " ROWS ONLY" );
+            }
             returnVal = sql.toString();
+            if ( limitStyle == DBFacade.ROWNUM )
+            {
+                returnVal = "SELECT * FROM (" + returnVal + ") WHERE ROWNUM <= " + limit ;
+            }
         }
         return returnVal ;
     }
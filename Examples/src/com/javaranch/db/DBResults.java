@@ -35,6 +35,19 @@ import java.security.InvalidParameterException;
 public class DBResults extends ArrayList
 {
 
+    // the java.sql.Types of each column, or null if the rows didn't come straight from a result set
+    private int[] columnTypes ;
+
+    void setColumnTypes( int[] columnTypes )
+    {
+        this.columnTypes = columnTypes ;
+    }
+
+    int[] getColumnTypes()
+    {
+        return columnTypes ;
+    }
+
     /** Will return null if there is no such row. <p>
      */
     public String[] getRow( int row )
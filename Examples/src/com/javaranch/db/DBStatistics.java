@@ -0,0 +1,426 @@
+package com.javaranch.db ;
+
+import com.javaranch.common.* ;
+
+import java.io.PrintWriter ;
+import java.util.* ;
+import java.util.concurrent.* ;
+import java.util.concurrent.atomic.AtomicLong ;
+import java.util.regex.Pattern ;
+import java.lang.management.ManagementFactory ;
+import javax.management.JMException ;
+import javax.management.ObjectName ;
+import java.security.InvalidParameterException ;
+
+/** Where the database time goes.
+ *
+ * Give one of these to a DBFacade and every statement it runs is timed:  how long the database took to run it, how
+ * long it took to read the rows back and how many rows there were.  Statements are grouped by their SQL with the
+ * values taken out, so "WHERE ID=12" and "WHERE ID=13" count as the same statement.  How long it takes to get a
+ * connection is timed too.
+ *
+ * <pre>
+ *
+ *    DBStatistics statistics = new DBStatistics();
+ *    statistics.setSlowQueryMillis( 500 );
+ *    SoupFacade.getInstance().setStatistics( statistics );
+ *    statistics.register( "soup" );   // if you want to see it in jconsole
+ *
+ * </pre>
+ *
+ * Statements that take at least getSlowQueryMillis() are written to an ErrorLog (by default one that goes to
+ * System.err).
+ *
+ * To see it all on the status page of a LogServlet:
+ *
+ * <pre>
+ *
+ *    public void debugReport( PrintWriter out )
+ *    {
+ *        SoupFacade.getInstance().getStatistics().report( out );
+ *    }
+ *
+ * </pre>
+ *
+ * A cursor is counted when it is closed, so its fetch time includes whatever was done between rows.
+ */
+public class DBStatistics implements DBStatisticsMBean
+{
+
+    // where statements go once there are too many different ones (usually SQL with values that weren't recognized)
+    private static final String OTHER = "(other)" ;
+
+    private static final Pattern STRING = Pattern.compile( "'([^']|'')*'" );
+    private static final Pattern NUMBER = Pattern.compile( "(?<![\\w.])-?\\d+(\\.\\d+)?" );
+    private static final Pattern LIST = Pattern.compile( "\\(\\s*\\?(\\s*,\\s*\\?)*\\s*\\)" );
+    private static final Pattern SPACE = Pattern.compile( "\\s+" );
+
+    /** For use by DBFacade:  times nothing. */
+    static final Timer NOT_TIMING = new Timer( null , null );
+
+    // SQL template -> SQLStatistics
+    private final ConcurrentMap statements = new ConcurrentHashMap();
+
+    // SQL as it was run -> SQLStatistics, so the same SQL only has to be made into a template once.  With parameters
+    // the SQL is usually the same every time.  Holds up to four times maxStatements.
+    private final ConcurrentMap bySQL = new ConcurrentHashMap();
+
+    private final LatencyHistogram connectionWait = new LatencyHistogram();
+    private final AtomicLong slowQueries = new AtomicLong();
+
+    private volatile long slowQueryMillis = 1000 ;
+    private volatile ErrorLog slowQueryLog = new ErrorLog();
+    private volatile int maxStatements = 500 ;
+
+    /** The numbers for one kind of statement. */
+    public static class SQLStatistics
+    {
+        private final String sql ;
+        private final LatencyHistogram executeTimes = new LatencyHistogram();
+        private final LatencyHistogram fetchTimes = new LatencyHistogram();
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+
+        SQLStatistics( String sql )
+        {
+            this.sql = sql ;
+        }
+
+        /** The SQL with a '?' where each value was. */
+        public String getSQL()
+        {
+            return sql ;
+        }
+
+        /** How long the database took to run the statement, up to the first row being ready. */
+        public LatencyHistogram getExecuteTimes()
+        {
+            return executeTimes ;
+        }
+
+        /** How long it took to read the rows, for statements that have rows. */
+        public LatencyHistogram getFetchTimes()
+        {
+            return fetchTimes ;
+        }
+
+        public long getCalls()
+        {
+            return executeTimes.getCount();
+        }
+
+        /** Rows read, or rows changed. */
+        public long getRows()
+        {
+            return rows.get();
+        }
+
+        public long getErrors()
+        {
+            return errors.get();
+        }
+
+        public long getTotalMicros()
+        {
+            return executeTimes.getTotalMicros() + fetchTimes.getTotalMicros();
+        }
+
+        public String toString()
+        {
+            return "calls=" + getCalls() + "|errors=" + getErrors() + "|rows=" + getRows()
+                   + "|totalMs=" + ( getTotalMicros() / 1000 ) + "|avgMs=" + executeTimes.getAverageMillis()
+                   + "|p95Ms=" + executeTimes.getPercentileMillis( 0.95 ) + "|maxMs=" + ( executeTimes.getMaxMicros() / 1000.0 )
+                   + "|fetchAvgMs=" + fetchTimes.getAverageMillis() + "|sql=" + sql ;
+        }
+    }
+
+    /** For use by DBFacade:  times one statement.  Get one from start(). */
+    static class Timer
+    {
+        private final DBStatistics statistics ;
+        private final String sql ;
+        private final long start ;
+        private long executed = 0 ;
+
+        Timer( DBStatistics statistics , String sql )
+        {
+            this.statistics = statistics ;
+            this.sql = sql ;
+            start = ( statistics == null ) ? 0 : System.nanoTime();
+        }
+
+        /** The statement has run and the rows are about to be read. */
+        void executed()
+        {
+            if ( statistics != null )
+            {
+                executed = System.nanoTime();
+            }
+        }
+
+        void finished( long rows )
+        {
+            if ( statistics != null )
+            {
+                statistics.record( sql , start , executed , System.nanoTime() , rows , false );
+            }
+        }
+
+        void failed()
+        {
+            if ( statistics != null )
+            {
+                statistics.record( sql , start , executed , System.nanoTime() , 0 , true );
+            }
+        }
+    }
+
+    /** For use by DBFacade. */
+    Timer start( String sql )
+    {
+        return new Timer( this , sql );
+    }
+
+    /** For use by DBFacade. */
+    void connectionAcquired( long nanos )
+    {
+        connectionWait.record( nanos );
+    }
+
+    private void record( String sql , long start , long executed , long end , long rows , boolean failed )
+    {
+        SQLStatistics s = getSQLStatistics( sql );
+        if ( executed == 0 )
+        {
+            s.executeTimes.record( end - start );
+        }
+        else
+        {
+            s.executeTimes.record( executed - start );
+            s.fetchTimes.record( end - executed );
+        }
+        s.rows.addAndGet( rows );
+        if ( failed )
+        {
+            s.errors.incrementAndGet();
+        }
+        long millis = ( end - start ) / 1000000 ;
+        if ( millis >= slowQueryMillis )
+        {
+            slowQueries.incrementAndGet();
+            slowQueryLog.add( "slow SQL (" + millis + " ms, " + rows + " rows" + ( failed ? ", failed" : "" ) + "): " + sql );
+        }
+    }
+
+    private SQLStatistics getSQLStatistics( String sql )
+    {
+        SQLStatistics returnVal = (SQLStatistics)bySQL.get( sql );
+        if ( returnVal == null )
+        {
+            String template = getTemplate( sql );
+            returnVal = (SQLStatistics)statements.get( template );
+            if ( returnVal == null )
+            {
+                returnVal = getOrAdd( ( statements.size() >= maxStatements ) ? OTHER : template );
+            }
+            if ( bySQL.size() < maxStatements * 4 )
+            {
+                bySQL.put( sql , returnVal );
+            }
+        }
+        return returnVal ;
+    }
+
+    private SQLStatistics getOrAdd( String template )
+    {
+        SQLStatistics returnVal = (SQLStatistics)statements.get( template );
+        if ( returnVal == null )
+        {
+            returnVal = new SQLStatistics( template );
+            SQLStatistics existing = (SQLStatistics)statements.putIfAbsent( template , returnVal );
+            if ( existing != null )
+            {
+                returnVal = existing ;
+            }
+        }
+        return returnVal ;
+    }
+
+    /** The SQL with each quoted string and number replaced by '?' and each list of values by "(?...)". */
+    static String getTemplate( String sql )
+    {
+        String returnVal = STRING.matcher( sql ).replaceAll( "?" );
+        returnVal = NUMBER.matcher( returnVal ).replaceAll( "?" );
+        returnVal = LIST.matcher( returnVal ).replaceAll( "(?...)" );
+        return SPACE.matcher( returnVal ).replaceAll( " " ).trim();
+    }
+
+    /** Statements that take at least this long are written to the slow query log.  The default is one second. */
+    public void setSlowQueryMillis( long slowQueryMillis )
+    {
+        this.slowQueryMillis = slowQueryMillis ;
+    }
+
+    public long getSlowQueryMillis()
+    {
+        return slowQueryMillis ;
+    }
+
+    /** Where slow statements are written.  The default is a new ErrorLog, which writes to System.err. */
+    public void setSlowQueryLog( ErrorLog slowQueryLog )
+    {
+        if ( slowQueryLog == null )
+        {
+            throw new InvalidParameterException( "parameter slowQueryLog is not allowed to be null" );
+        }
+        this.slowQueryLog = slowQueryLog ;
+    }
+
+    public ErrorLog getSlowQueryLog()
+    {
+        return slowQueryLog ;
+    }
+
+    /** After this many different statements, the rest are counted together as "(other)".  The default is 500. */
+    public void setMaxStatements( int maxStatements )
+    {
+        this.maxStatements = maxStatements ;
+    }
+
+    public LatencyHistogram getConnectionWait()
+    {
+        return connectionWait ;
+    }
+
+    /** The numbers for each kind of statement, the most total time first. */
+    public SQLStatistics[] getSQLStatistics()
+    {
+        SQLStatistics[] returnVal = (SQLStatistics[])statements.values().toArray( new SQLStatistics[ 0 ] );
+        Arrays.sort( returnVal , new Comparator()
+        {
+            public int compare( Object o1 , Object o2 )
+            {
+                long t1 = ( (SQLStatistics)o1 ).getTotalMicros();
+                long t2 = ( (SQLStatistics)o2 ).getTotalMicros();
+                return ( t1 > t2 ) ? -1 : ( ( t1 < t2 ) ? 1 : 0 );
+            }
+        });
+        return returnVal ;
+    }
+
+    public long getStatementCount()
+    {
+        long returnVal = 0 ;
+        Iterator it = statements.values().iterator();
+        while ( it.hasNext() )
+        {
+            returnVal += ( (SQLStatistics)it.next() ).getCalls();
+        }
+        return returnVal ;
+    }
+
+    public long getErrorCount()
+    {
+        long returnVal = 0 ;
+        Iterator it = statements.values().iterator();
+        while ( it.hasNext() )
+        {
+            returnVal += ( (SQLStatistics)it.next() ).getErrors();
+        }
+        return returnVal ;
+    }
+
+    public long getSlowQueryCount()
+    {
+        return slowQueries.get();
+    }
+
+    public double getAverageConnectionWaitMillis()
+    {
+        return connectionWait.getAverageMillis();
+    }
+
+    public double getMaxConnectionWaitMillis()
+    {
+        return connectionWait.getMaxMicros() / 1000.0 ;
+    }
+
+    public String[] getStatements()
+    {
+        SQLStatistics[] all = getSQLStatistics();
+        String[] returnVal = new String[ all.length ];
+        for ( int i = 0 ; i < all.length ; i++ )
+        {
+            returnVal[ i ] = all[ i ].toString();
+        }
+        return returnVal ;
+    }
+
+    public void reset()
+    {
+        statements.clear();
+        bySQL.clear();
+        connectionWait.reset();
+        slowQueries.set( 0 );
+    }
+
+    /** Make these numbers visible through JMX (jconsole and friends) as com.javaranch.db:type=DBStatistics,name=...
+     *
+     * @param name Something to tell this facade from others, like "soup".
+     */
+    public ObjectName register( String name ) throws JMException
+    {
+        ObjectName objectName = new ObjectName( "com.javaranch.db:type=DBStatistics,name=" + ObjectName.quote( name ) );
+        ManagementFactory.getPlatformMBeanServer().registerMBean( this , objectName );
+        return objectName ;
+    }
+
+    /** Write it all out as HTML - made for LogServlet.debugReport(). */
+    public void report( PrintWriter out )
+    {
+        out.println( "<h3>database statistics</h3>" );
+        out.println( "statements = " + getStatementCount() + " . . . errors = " + getErrorCount()
+                     + " . . . slow (at least " + slowQueryMillis + " ms) = " + getSlowQueryCount() + "<p>" );
+        out.println( "getting a connection: " + connectionWait + "<p>" );
+        out.println( "<table border=1>" );
+        out.println( "<tr><th>SQL</th><th>calls</th><th>errors</th><th>rows</th><th>total ms</th><th>avg ms</th>"
+                     + "<th>p50 ms</th><th>p95 ms</th><th>p99 ms</th><th>max ms</th><th>fetch avg ms</th></tr>" );
+        SQLStatistics[] all = getSQLStatistics();
+        for ( int i = 0 ; i < all.length ; i++ )
+        {
+            LatencyHistogram times = all[ i ].getExecuteTimes();
+            out.println( "<tr><td>" + toHTML( all[ i ].getSQL() ) + "</td><td>" + all[ i ].getCalls() + "</td><td>"
+                         + all[ i ].getErrors() + "</td><td>" + all[ i ].getRows() + "</td><td>"
+                         + ( all[ i ].getTotalMicros() / 1000 ) + "</td><td>" + times.getAverageMillis() + "</td><td>"
+                         + times.getPercentileMillis( 0.5 ) + "</td><td>" + times.getPercentileMillis( 0.95 ) + "</td><td>"
+                         + times.getPercentileMillis( 0.99 ) + "</td><td>" + ( times.getMaxMicros() / 1000.0 ) + "</td><td>"
+                         + all[ i ].getFetchTimes().getAverageMillis() + "</td></tr>" );
+        }
+        out.println( "</table><p>" );
+    }
+
+    private static String toHTML( String s )
+    {
+        Str html = new Str( s );
+        html.replace( "&" , "&amp;" );
+        html.replace( "<" , "&lt;" );
+        html.replace( ">" , "&gt;" );
+        return html.toString();
+    }
+
+    /** Everything, one statement per line. */
+    public String toString()
+    {
+        StringBuffer buffy = new StringBuffer();
+        buffy.append( "statements=" + getStatementCount() + "|errors=" + getErrorCount() + "|slow=" + getSlowQueryCount() );
+        buffy.append( "\nconnection: " + connectionWait );
+        String[] lines = getStatements();
+        for ( int i = 0 ; i < lines.length ; i++ )
+        {
+            buffy.append( '\n' );
+            buffy.append( lines[ i ] );
+        }
+        return buffy.toString();
+    }
+
+}
@@ -0,0 +1,31 @@
+package com.javaranch.db ;
+
+/** What DBStatistics shows through JMX - see DBStatistics.register().
+ */
+public interface DBStatisticsMBean
+{
+
+    /** How many statements have been run. */
+    long getStatementCount();
+
+    /** How many statements failed. */
+    long getErrorCount();
+
+    /** How many statements took at least getSlowQueryMillis(). */
+    long getSlowQueryCount();
+
+    long getSlowQueryMillis();
+
+    void setSlowQueryMillis( long slowQueryMillis );
+
+    double getAverageConnectionWaitMillis();
+
+    double getMaxConnectionWaitMillis();
+
+    /** One line for each kind of statement, the most total time first. */
+    String[] getStatements();
+
+    /** Start counting all over again. */
+    void reset();
+
+}
@@ -0,0 +1,293 @@
+package com.javaranch.db ;
+
+import com.javaranch.common.Str ;
+
+/** The SQL that is different from one brand of database to the next.
+ *
+ * Give DBFacade.setDialect() one of these (OracleFacade uses ORACLE), or let Jenny pick one from the Brand property.
+ * The dialect decides:
+ *
+ * <pre>
+ *
+ *    upsert         how to insert a row, or update it if there is already a row with the same key, in one statement
+ *    limit style    how to ask for only the first so many rows (see DBQuery.page())
+ *    query batches  whether several searches can go to the database at once (see DBFacade.searchAll())
+ *    IN lists       how many values go in one "IN ( ... )" (see DBFacade.getMaxInListSize())
+ *
+ * </pre>
+ *
+ * GENERIC (the default) has no one-statement upsert, so DBFacade.upsert() does an UPDATE and then an INSERT if nothing
+ * was updated.  That takes two trips to the database, and two threads doing it at once for the same new key can both
+ * try the INSERT.
+ */
+public class Dialect
+{
+
+    /** Any database:  upsert is an UPDATE and then maybe an INSERT.  "LIMIT n". */
+    public static final Dialect GENERIC = new Dialect( "Generic" , DBFacade.LIMIT );
+
+    /** "MERGE INTO ... USING ( SELECT ... FROM DUAL )".  "WHERE ROWNUM <= n". */
+    public static final Dialect ORACLE = new Dialect( "Oracle" , DBFacade.ROWNUM )
+    {
+        public String getUpsertSQL( String table , String[] keyColumns , String[] columns , String[] values )
+        {
+            Str source = new Str( "SELECT " );
+            for ( int i = 0 ; i < columns.length ; i++ )
+            {
+                source.append( values[ i ] + ' ' + columns[ i ] + ',' );
+            }
+            source.deleteLast( 1 );
+            source.append( " FROM DUAL" );
+            return merge( table + " t" , source.toString() , keyColumns , columns );
+        }
+    };
+
+    /** "MERGE INTO ... WITH (HOLDLOCK)" (without the lock, two at once can both insert).  "SELECT TOP n". */
+    public static final Dialect SQL_SERVER = new Dialect( "SqlServer" , DBFacade.TOP , true )
+    {
+        public String getUpsertSQL( String table , String[] keyColumns , String[] columns , String[] values )
+        {
+            Str source = new Str( "SELECT " );
+            for ( int i = 0 ; i < columns.length ; i++ )
+            {
+                source.append( values[ i ] + " AS " + columns[ i ] + ',' );
+            }
+            source.deleteLast( 1 );
+            return merge( table + " WITH (HOLDLOCK) AS t" , source.toString() , keyColumns , columns ) + ';' ;
+        }
+
+        // a statement can have 2100 parameters, and an update needs some for its data
+        public int getMaxInListSize()
+        {
+            return 2000 ;
+        }
+    };
+
+    /** Upsert is an UPDATE and then maybe an INSERT.  "SELECT TOP n". */
+    public static final Dialect SYBASE = new Dialect( "Sybase" , DBFacade.TOP , true );
+
+    /** "INSERT ... ON CONFLICT ( key ) DO UPDATE" (PostgreSQL 9.5 and later).  "LIMIT n".  With
+     *  DBFacade.useParameters(), the URL needs "stringtype=unspecified". */
+    public static final Dialect POSTGRES = new Dialect( "Postgres" , DBFacade.LIMIT , true )
+    {
+        public String getUpsertSQL( String table , String[] keyColumns , String[] columns , String[] values )
+        {
+            Str sql = new Str( insert( table , columns , values ) );
+            sql.append( " ON CONFLICT (" + join( keyColumns ) + ") DO " );
+            Str set = new Str();
+            for ( int i = 0 ; i < columns.length ; i++ )
+            {
+                if ( ! isKey( keyColumns , columns[ i ] ) )
+                {
+                    set.append( columns[ i ] + "=EXCLUDED." + columns[ i ] + ',' );
+                }
+            }
+            if ( set.length() == 0 )
+            {
+                sql.append( "NOTHING" );
+            }
+            else
+            {
+                set.deleteLast( 1 );
+                sql.append( "UPDATE SET " + set );
+            }
+            return sql.toString();
+        }
+
+        public int getMaxInListSize()
+        {
+            return 10000 ;
+        }
+    };
+
+    /** "INSERT ... ON DUPLICATE KEY UPDATE".  The key is whatever primary key or unique index the new row runs into,
+     *  no matter what keyColumns says.  "LIMIT n". */
+    public static final Dialect MYSQL = new Dialect( "MySQL" , DBFacade.LIMIT )
+    {
+        public String getUpsertSQL( String table , String[] keyColumns , String[] columns , String[] values )
+        {
+            Str set = new Str();
+            for ( int i = 0 ; i < columns.length ; i++ )
+            {
+                if ( ! isKey( keyColumns , columns[ i ] ) )
+                {
+                    set.append( columns[ i ] + "=VALUES(" + columns[ i ] + ")," );
+                }
+            }
+            if ( set.length() == 0 )
+            {
+                // nothing to change, but MySQL has no DO NOTHING
+                set.append( keyColumns[ 0 ] + '=' + keyColumns[ 0 ] + ',' );
+            }
+            set.deleteLast( 1 );
+            return insert( table , columns , values ) + " ON DUPLICATE KEY UPDATE " + set ;
+        }
+
+        public int getMaxInListSize()
+        {
+            return 10000 ;
+        }
+    };
+
+    /** "MERGE INTO ... KEY ( key ) VALUES".  "LIMIT n". */
+    public static final Dialect H2 = new Dialect( "H2" , DBFacade.LIMIT )
+    {
+        public String getUpsertSQL( String table , String[] keyColumns , String[] columns , String[] values )
+        {
+            return "MERGE INTO " + table + " (" + join( columns ) + ") KEY (" + join( keyColumns ) + ") VALUES (" + join( values ) + ")" ;
+        }
+
+        public int getMaxInListSize()
+        {
+            return 10000 ;
+        }
+    };
+
+    private static final Dialect[] dialects = { GENERIC , ORACLE , SQL_SERVER , SYBASE , POSTGRES , MYSQL , H2 };
+
+    private final String name ;
+    private final String limitStyle ;
+    private final boolean batchQueries ;
+
+    /** For a database that isn't covered here:  override getUpsertSQL().
+     *
+     * @param limitStyle DBFacade.LIMIT, FETCH_FIRST, TOP or ROWNUM.
+     */
+    protected Dialect( String name , String limitStyle )
+    {
+        this( name , limitStyle , false );
+    }
+
+    /** @param batchQueries true if several SELECTs can go to the database as one statement - see canBatchQueries(). */
+    protected Dialect( String name , String limitStyle , boolean batchQueries )
+    {
+        this.name = name ;
+        this.limitStyle = limitStyle ;
+        this.batchQueries = batchQueries ;
+    }
+
+    /** The dialect for a Jenny Brand:  Oracle, SqlServer, Sybase, Postgres, MySQL or H2.  Anything else is GENERIC. */
+    public static Dialect forBrand( String brand )
+    {
+        Dialect returnVal = GENERIC ;
+        for ( int i = 0 ; i < dialects.length ; i++ )
+        {
+            if ( dialects[ i ].name.equalsIgnoreCase( brand ) )
+            {
+                returnVal = dialects[ i ];
+            }
+        }
+        return returnVal ;
+    }
+
+    public String getName()
+    {
+        return name ;
+    }
+
+    /** How to ask for only the first so many rows:  DBFacade.LIMIT, FETCH_FIRST, TOP or ROWNUM. */
+    public String getLimitStyle()
+    {
+        return limitStyle ;
+    }
+
+    /** True if several SELECTs can be sent as one statement, separated by semicolons, and come back as one result set
+     *  each.  SqlServer, Sybase and Postgres can.  MySQL can only with "allowMultiQueries=true" on the URL, so it
+     *  says no - see DBFacade.useQueryBatches().
+     */
+    public boolean canBatchQueries()
+    {
+        return batchQueries ;
+    }
+
+    /** The most values that go in one "IN ( ... )" list when working through a big list of keys.
+     *
+     * 1000, because Oracle won't take any more.  SqlServer takes 2000, and Postgres, MySQL and H2 take 10000.
+     */
+    public int getMaxInListSize()
+    {
+        return 1000 ;
+    }
+
+    /** One statement that inserts a row, or updates the row that has the same keyColumns.
+     *
+     * @param keyColumns The columns that find the row.  They are always some of the columns.
+     * @param columns Every column the row gets a value for.
+     * @param values What goes in each column:  "?" or SQL (like "CURRENT_TIMESTAMP").
+     * @return null if there is no such statement - then DBFacade does an UPDATE and then an INSERT if it has to.
+     */
+    public String getUpsertSQL( String table , String[] keyColumns , String[] columns , String[] values )
+    {
+        return null ;
+    }
+
+    public String toString()
+    {
+        return name ;
+    }
+
+    // "INSERT INTO table (columns) VALUES (values)"
+    private static String insert( String table , String[] columns , String[] values )
+    {
+        return "INSERT INTO " + table + " (" + join( columns ) + ") VALUES (" + join( values ) + ")" ;
+    }
+
+    // The standard MERGE with the new row as "s" and the table as "t":  update everything but the key if it's found,
+    // insert it if it isn't.
+    private static String merge( String target , String source , String[] keyColumns , String[] columns )
+    {
+        Str on = new Str();
+        Str set = new Str();
+        Str sourceColumns = new Str();
+        for ( int i = 0 ; i < columns.length ; i++ )
+        {
+            if ( isKey( keyColumns , columns[ i ] ) )
+            {
+                on.append( "t." + columns[ i ] + "=s." + columns[ i ] + " AND " );
+            }
+            else
+            {
+                set.append( "t." + columns[ i ] + "=s." + columns[ i ] + ',' );
+            }
+            sourceColumns.append( "s." + columns[ i ] + ',' );
+        }
+        on.deleteLast( 5 );
+        sourceColumns.deleteLast( 1 );
+        Str sql = new Str( "MERGE INTO " + target + " USING (" + source + ") s ON (" + on + ")" );
+        if ( set.length() > 0 )
+        {
+            set.deleteLast( 1 );
+            sql.append( " WHEN MATCHED THEN UPDATE SET " + set );
+        }
+        sql.append( " WHEN NOT MATCHED THEN INSERT (" + join( columns ) + ") VALUES (" + sourceColumns + ")" );
+        return sql.toString();
+    }
+
+    static boolean isKey( String[] keyColumns , String column )
+    {
+        boolean returnVal = false ;
+        for ( int i = 0 ; i < keyColumns.length ; i++ )
+        {
+            if ( keyColumns[ i ].equalsIgnoreCase( column ) )
+            {
+                returnVal = true ;
+            }
+        }
+        return returnVal ;
+    }
+
+    private static String join( String[] s )
+    {
+        Str returnVal = new Str();
+        for ( int i = 0 ; i < s.length ; i++ )
+        {
+            if ( i > 0 )
+            {
+                returnVal.append( ',' );
+            }
+            returnVal.append( s[ i ] );
+        }
+        return returnVal.toString();
+    }
+
+}
@@ -0,0 +1,169 @@
+package com.javaranch.db ;
+
+import java.util.* ;
+import java.sql.* ;
+
+/** Let the database make the ID (IDENTITY, AUTO_INCREMENT, SERIAL ...) and read it back with getGeneratedKeys().
+ *
+ * The ID comes back with the insert, so there is no extra trip to the database.  Anything in the data for the ID column
+ * is ignored.
+ *
+ * Batches use getGeneratedKeys() after executeBatch(), which most current drivers (H2, MySQL, PostgreSQL, Oracle 12c
+ * and up) support.  If the driver doesn't hand back a key for every row, insertBatchAndGetIDs() fails - use
+ * SequenceBlockIDStrategy for those databases.
+ *
+ * <pre>
+ *
+ *    facade.setIDStrategy( new GeneratedKeysIDStrategy() );
+ *
+ * </pre>
+ */
+public class GeneratedKeysIDStrategy implements IDStrategy
+{
+
+    public long insertAndGetID( DBFacade facade , Connection con , String table , Map data , String idColumnName ) throws SQLException
+    {
+        data.remove( idColumnName );
+        data.remove( '+' + idColumnName );
+        List bindData = new ArrayList();
+        String sql = facade.buildInsert( table , data , bindData , true );
+        PreparedStatement statement = facade.prepareStatement( con , sql , idColumnName );
+        boolean reusable = false ;
+        long returnVal = 0 ;
+        DBStatistics.Timer timer = facade.startTimer( sql );
+        try
+        {
+            DBFacade.setBindData( statement , bindData );
+            statement.executeUpdate();
+            long[] ids = readKeys( statement , 1 , sql );
+            returnVal = ids[ 0 ];
+            timer.finished( 1 );
+            reusable = true ;
+        }
+        catch ( SQLException e )
+        {
+            timer.failed();
+            throw e ;  // this is to avoid the exception message below
+        }
+        catch ( Exception e )
+        {
+            timer.failed();
+            throw new SQLException( "insertAndGetID() insert fail (" + sql + "): " + e );
+        }
+        finally
+        {
+            facade.releaseStatement( con , sql , idColumnName , statement , reusable );
+            facade.tableChanged( table );
+        }
+        return returnVal ;
+    }
+
+    public long[] insertBatchAndGetIDs( DBFacade facade , Connection con , String table , List data , String idColumnName ) throws SQLException
+    {
+        long[] ids = new long[ data.size() ];
+
+        // rows with the same SQL go in together.  sql -> List of row numbers
+        Map batches = new LinkedHashMap();
+        List bindData = new ArrayList();
+        for ( int i = 0 ; i < ids.length ; i++ )
+        {
+            Map row = (Map)data.get( i );
+            row.remove( idColumnName );
+            row.remove( '+' + idColumnName );
+            List rowData = new ArrayList();
+            String sql = facade.buildInsert( table , row , rowData , true );
+            List rowNumbers = (List)batches.get( sql );
+            if ( rowNumbers == null )
+            {
+                rowNumbers = new ArrayList();
+                batches.put( sql , rowNumbers );
+            }
+            rowNumbers.add( new Integer( i ) );
+            bindData.add( rowData );
+        }
+
+        try
+        {
+            Iterator it = batches.entrySet().iterator();
+            while ( it.hasNext() )
+            {
+                Map.Entry entry = (Map.Entry)it.next();
+                executeBatch( facade , con , (String)entry.getKey() , idColumnName , (List)entry.getValue() , bindData , ids );
+            }
+        }
+        finally
+        {
+            facade.tableChanged( table );
+        }
+        return ids ;
+    }
+
+    // Insert the rows getBatchSize() at a time and put the new keys in ids.
+    private void executeBatch( DBFacade facade , Connection con , String sql , String idColumnName , List rowNumbers ,
+                               List bindData , long[] ids ) throws SQLException
+    {
+        PreparedStatement statement = facade.prepareStatement( con , sql , idColumnName );
+        boolean reusable = false ;
+        DBStatistics.Timer timer = facade.startTimer( sql );
+        try
+        {
+            int batchStart = 0 ;
+            for ( int i = 0 ; i < rowNumbers.size() ; i++ )
+            {
+                int rowNumber = ((Integer)rowNumbers.get( i )).intValue();
+                DBFacade.setBindData( statement , (List)bindData.get( rowNumber ) );
+                statement.addBatch();
+                if ( ( ( i + 1 ) % facade.getBatchSize() == 0 ) || ( i == rowNumbers.size() - 1 ) )
+                {
+                    statement.executeBatch();
+                    long[] keys = readKeys( statement , i + 1 - batchStart , sql );
+                    for ( int j = 0 ; j < keys.length ; j++ )
+                    {
+                        ids[ ((Integer)rowNumbers.get( batchStart + j )).intValue() ] = keys[ j ];
+                    }
+                    batchStart = i + 1 ;
+                }
+            }
+            timer.finished( rowNumbers.size() );
+            reusable = true ;
+        }
+        catch ( SQLException e )
+        {
+            timer.failed();
+            throw e ;  // this is to avoid the exception message below
+        }
+        catch ( Exception e )
+        {
+            timer.failed();
+            throw new SQLException( "insertBatchAndGetIDs() insert fail (" + sql + "): " + e );
+        }
+        finally
+        {
+            facade.releaseStatement( con , sql , idColumnName , statement , reusable );
+        }
+    }
+
+    // read exactly count keys
+    private static long[] readKeys( Statement statement , int count , String sql ) throws SQLException
+    {
+        long[] keys = new long[ count ];
+        ResultSet rs = statement.getGeneratedKeys();
+        try
+        {
+            for ( int i = 0 ; i < count ; i++ )
+            {
+                if ( ! rs.next() )
+                {
+                    throw new SQLException( "the driver handed back " + i + " generated keys for " + count + " rows (" + sql + ")" );
+                }
+                keys[ i ] = rs.getLong( 1 );
+            }
+        }
+        finally
+        {
+            rs.close();
+        }
+        return keys ;
+    }
+
+}
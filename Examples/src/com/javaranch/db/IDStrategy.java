@@ -0,0 +1,34 @@
+package com.javaranch.db ;
+
+import java.util.* ;
+import java.sql.* ;
+
+/** A way of giving new rows a unique ID.
+ *
+ * By default, DBFacade uses the high/low pattern (see DBFacade.insertAndGetID()).  Give DBFacade.setIDStrategy() one
+ * of these to do it some other way:
+ *
+ * <pre>
+ *
+ *    GeneratedKeysIDStrategy       the database fills in the ID (IDENTITY, AUTO_INCREMENT, SERIAL ...)
+ *    SequenceBlockIDStrategy       the ID's come from a sequence, many at a time
+ *
+ * </pre>
+ */
+public interface IDStrategy
+{
+
+    /** Create a new row and return its new ID.
+     *
+     * @param data A key-value collection of column names (key) and data (value), just like DBFacade.insert().
+     */
+    long insertAndGetID( DBFacade facade , Connection con , String table , Map data , String idColumnName ) throws SQLException ;
+
+    /** Create many new rows at once.
+     *
+     * @param data A List of Map objects, one for each row.
+     * @return The new ID's, in the same order as the list.
+     */
+    long[] insertBatchAndGetIDs( DBFacade facade , Connection con , String table , List data , String idColumnName ) throws SQLException ;
+
+}
@@ -6,6 +6,14 @@ import java.sql.* ;
 import java.util.* ;
 import java.io.* ;
 import java.security.* ;
+import java.util.concurrent.ArrayBlockingQueue ;
+import java.util.concurrent.BlockingQueue ;
+import java.util.concurrent.Callable ;
+import java.util.concurrent.ExecutionException ;
+import java.util.concurrent.ExecutorService ;
+import java.util.concurrent.Executors ;
+import java.util.concurrent.Future ;
+import java.util.concurrent.TimeUnit ;
 
 /** Jenny the db code generator.
  *
@@ -85,10 +93,17 @@ import java.security.* ;
  *   DBResults search( String column , String searchText , String[] dataColumns )
  *   Row[] getRow( String column , String searchText )
  *   Row[] getAllRows()
+ *   Row[] getPage( String whereClause , String[] orderColumns , Object[] afterKey , int limit )
+ *   long count( String whereClause )
+ *   boolean exists( String whereClause )
+ *   long sumQuantity( String whereClause )      (for each number column)
+ *   int minQuantity( String whereClause )       (and maxQuantity(), for each number column)
+ *   Cursor getCursor( String whereClause )
  *   DBResults getAllRows( String[] dataColumns )
  *   void update( String column , String searchText , Map data )
  *   void delete( String column , String searchText )
  *   void insert( Map data )
+ *   void insert( Row[] rows )
  *
  * </pre>
  *
@@ -97,6 +112,10 @@ import java.security.* ;
  * <pre>
  *
  *   Row getRow( long id )
+ *   Row[] getRows( long[] ids )
+ *   Map getRowMap( long[] ids )
+ *   Future getRowAsync( long id )
+ *   Row[] getPage( long afterID , int limit )
  *   void delete( long id )
  *
  * </pre>
@@ -109,6 +128,7 @@ import java.security.* ;
  *    void update()
  *    void delete()
  *    void insert()
+ *    void upsert()
  *
  * </pre>
  *
@@ -124,6 +144,16 @@ import java.security.* ;
  *
  * </pre>
  *
+ * A Row reads every column.  If you only want a few columns of a wide table, declare a projection in the properties
+ * (Employee.Projection.Name=EmployeeID,LastName) and Jenny will add a NameRow class with just those columns, and
+ * methods like getNameRow( long id ), getNameRows( String whereClause ) and getAllNameRows() that only ask the
+ * database for those columns.
+ *
+ * A small table that is read all the time can be kept in memory instead (Country.Replicated=Changed, where Changed is a
+ * column set to the time whenever a row changes - not the ID, which isn't committed in order - or "true" if there
+ * isn't one).  Then getRow(), getRows( column , text ) and getAllRows() don't go to the database at all - see
+ * ReplicatedTable.
+ *
  * Here's a sample of a business logic method that uses a Jenny generated class.
  *
  * <pre>
@@ -197,6 +227,19 @@ public class Jenny
     private boolean usingOracle = false ;
     private boolean usingSqlServer = false ;
 
+    // Bump this whenever the generated code changes, so the next run regenerates every table instead of skipping the
+    // ones whose metadata hasn't changed.
+    private static final String generatorVersion = "9" ;
+
+    // kept in the destination directory:  the class name of each generated file and the fingerprint of what it was
+    // generated from
+    private static final String fingerprintFile = "jenny.fingerprints" ;
+
+    private String settingsFingerprint = "" ; // everything besides the table metadata that changes the generated code
+    private Properties oldFingerprints = new Properties(); // from the last run.  Empty to regenerate everything.
+    private Properties newFingerprints = new Properties();
+    private int unchangedTables = 0 ;
+
     // exposed for testing purposes only
     Jenny() throws Exception
     {
@@ -349,7 +392,11 @@ public class Jenny
 
         // we now have all of the required info
 
-        Files.deleteAllFilesInDir( destinationDirectory );
+        boolean incremental = loadFingerprints();
+        if ( ! incremental )
+        {
+            Files.deleteAllFilesInDir( destinationDirectory );
+        }
 
         String userName = properties.getProperty( "UserName" );
         String password = properties.getProperty( "Password" );
@@ -359,6 +406,14 @@ public class Jenny
         usingOracle = "Oracle".equals( brand );
         usingSqlServer = "SqlServer".equals( brand );
         boolean doNotUseHighLowPattern = "false".equals( properties.getProperty( "UseHighLowPattern" ) );
+        boolean useParameters = "true".equals( properties.getProperty( "UseParameters" ) );
+        String replicaURLs = properties.getProperty( "FacadeReplicaURLs" );
+        String replicaJNDI = properties.getProperty( "FacadeReplicaJNDI" );
+        String inListTable = properties.getProperty( "FacadeInListTable" );
+        if ( Str.usable( facadeJNDI ) && Str.usable( replicaURLs ) )
+        {
+            throw new InvalidParameterException( "FacadeReplicaURLs needs a driver, but the facade uses JNDI - use FacadeReplicaJNDI" );
+        }
 
         String facadeParameter ;
 
@@ -428,6 +483,12 @@ public class Jenny
             {
                 out.println( "            doNotUseHighLowPattern();" );
             }
+            if ( useParameters )
+            {
+                out.println( "            useParameters();" );
+            }
+            printBrandSettings( out , brand , inListTable );
+            printReadReplicas( out , replicaURLs , replicaJNDI );
             out.println( "        }" );
             out.println( "" );
             out.println( oracleSpatialCode );
@@ -456,6 +517,12 @@ public class Jenny
             {
                 out.println( "            doNotUseHighLowPattern();" );
             }
+            if ( useParameters )
+            {
+                out.println( "            useParameters();" );
+            }
+            printBrandSettings( out , brand , inListTable );
+            printReadReplicas( out , replicaURLs , replicaJNDI );
             out.println( "        }" );
             out.println( "" );
             out.println( "    }" );
@@ -508,7 +575,10 @@ public class Jenny
 
             if ( file.exists() && file.isDirectory() )  //todo - now done in Files
             {
-                Files.deleteAllFilesInDir( mockDirectory );
+                if ( ! incremental )
+                {
+                    Files.deleteAllFilesInDir( mockDirectory );
+                }
             }
             else
             {
@@ -516,19 +586,16 @@ public class Jenny
             }
         }
 
-        Connection con ;
-        if ( Str.usable( userName ) )
-        {
-            con = DriverManager.getConnection( url , userName , password );
-        }
-        else
-        {
-            con = DriverManager.getConnection( url );
-        }
+        settingsFingerprint = generatorVersion + ' ' + packageLine + ' ' + facadeName + ' ' + usingSpatial + ' ' +
+                              usingOracle + ' ' + usingSqlServer + ' ' + Str.usable( mockDirectory );
+        newFingerprints.setProperty( facadeName , "facade" );
+
+        Connection con = openConnection( url , userName , password );
 
         boolean filterBySchema = usingOracle && Str.usable( userName );  //todo - postgres schema
 
         Set tableNames = new HashSet();
+        List tables = new ArrayList(); // String[]{ table name , suffix }
         DatabaseMetaData metaData = con.getMetaData();
         ResultSet results = metaData.getTables( null , null , "%" , new String[]{"TABLE"} );
         while ( results.next() )
@@ -545,7 +612,7 @@ public class Jenny
 
                 if ( goodTable )
                 {
-                    processTable( metaData , tableName , "Table" , properties );
+                    tables.add( new String[]{ tableName , "Table" } );
                 }
             }
         }
@@ -567,11 +634,204 @@ public class Jenny
                 if ( goodView )
                 {
                     //System.out.println( tableName );
-                    processTable( metaData , tableName , "View" , properties );
+                    tables.add( new String[]{ tableName , "View" } );
+                }
+            }
+        }
+
+        int threads = getThreads( properties );
+        if ( threads > tables.size() )
+        {
+            threads = Math.max( tables.size() , 1 );
+        }
+        BlockingQueue connections = new ArrayBlockingQueue( threads );
+        connections.add( con );
+        try
+        {
+            for ( int i = 1 ; i < threads ; i++ )
+            {
+                connections.add( openConnection( url , userName , password ) );
+            }
+            processTables( tables , connections , properties );
+        }
+        finally
+        {
+            Iterator it = connections.iterator();
+            while ( it.hasNext() )
+            {
+                ( (Connection)it.next() ).close();
+            }
+        }
+
+        deleteStaleFiles();
+        saveFingerprints();
+        System.out.println( tables.size() + " tables and views, " + unchangedTables + " unchanged" );
+    }
+
+    private static Connection openConnection( String url , String userName , String password ) throws SQLException
+    {
+        Connection returnVal ;
+        if ( Str.usable( userName ) )
+        {
+            returnVal = DriverManager.getConnection( url , userName , password );
+        }
+        else
+        {
+            returnVal = DriverManager.getConnection( url );
+        }
+        return returnVal ;
+    }
+
+    // How many connections read the metadata and write the files at the same time.
+    private static int getThreads( Properties properties )
+    {
+        int returnVal = 4 ;
+        String threads = properties.getProperty( "Threads" );
+        if ( Str.usable( threads ) )
+        {
+            returnVal = Integer.parseInt( threads.trim() );
+            if ( returnVal < 1 )
+            {
+                throw new InvalidParameterException( "Threads must be at least 1" );
+            }
+        }
+        return returnVal ;
+    }
+
+    // Each table is read and written by whichever thread is free, with whichever connection is free.  There is one
+    // thread for each connection, so nobody ever waits for a connection.
+    private void processTables( List tables , final BlockingQueue connections , final Properties properties ) throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool( connections.size() );
+        try
+        {
+            List futures = new ArrayList();
+            for ( int i = 0 ; i < tables.size() ; i++ )
+            {
+                final String[] table = (String[])tables.get( i );
+                futures.add( executor.submit( new Callable()
+                {
+                    public Object call() throws Exception
+                    {
+                        Connection con = (Connection)connections.take();
+                        try
+                        {
+                            processTable( con.getMetaData() , table[ 0 ] , table[ 1 ] , properties );
+                        }
+                        finally
+                        {
+                            connections.put( con );
+                        }
+                        return null ;
+                    }
+                } ) );
+            }
+            for ( int i = 0 ; i < futures.size() ; i++ )
+            {
+                try
+                {
+                    ( (Future)futures.get( i ) ).get();
+                }
+                catch( ExecutionException e )
+                {
+                    if ( e.getCause() instanceof Exception )
+                    {
+                        throw (Exception)e.getCause();
+                    }
+                    throw e ;
+                }
+            }
+        }
+        finally
+        {
+            // after a failure, don't start any more tables, and don't close the connections until the ones that
+            // were started are done
+            executor.shutdownNow();
+            executor.awaitTermination( 10 , TimeUnit.MINUTES );
+        }
+    }
+
+    // If there are fingerprints from the last run, only the tables that changed need to be generated again.
+    // Otherwise, everything is generated from scratch.
+    private boolean loadFingerprints() throws IOException
+    {
+        boolean returnVal = false ;
+        File file = new File( destinationDirectory + fingerprintFile );
+        if ( file.isFile() )
+        {
+            InputStream in = new FileInputStream( file );
+            try
+            {
+                oldFingerprints.load( in );
+            }
+            finally
+            {
+                in.close();
+            }
+            returnVal = true ;
+        }
+        return returnVal ;
+    }
+
+    private void saveFingerprints() throws IOException
+    {
+        OutputStream out = new FileOutputStream( destinationDirectory + fingerprintFile );
+        try
+        {
+            newFingerprints.store( out , "Generated by Jenny.  Delete this file to regenerate every table." );
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    // the files for tables that were generated last time but aren't in the database any more
+    private void deleteStaleFiles()
+    {
+        Iterator it = oldFingerprints.keySet().iterator();
+        while ( it.hasNext() )
+        {
+            String className = (String)it.next();
+            if ( ! newFingerprints.containsKey( className ) )
+            {
+                System.out.println( "Deleting class " + className );
+                Files.delete( destinationDirectory + className + ".java" );
+                if ( Str.usable( mockDirectory ) )
+                {
+                    Files.delete( mockDirectory + "Mock" + className + ".java" );
                 }
             }
         }
-        con.close();
+    }
+
+    /** True if this table has to be generated:  the metadata (or the way Jenny is set up) changed since the last run,
+     *  or the generated files are gone.  Either way, the fingerprint is kept for the next run.
+     */
+    private boolean changed( String className , String metadata ) throws NoSuchAlgorithmException
+    {
+        MessageDigest md5 = MessageDigest.getInstance( "MD5" );
+        byte[] digest = md5.digest( ( settingsFingerprint + '\n' + metadata ).getBytes() );
+        StringBuffer fingerprint = new StringBuffer();
+        for ( int i = 0 ; i < digest.length ; i++ )
+        {
+            fingerprint.append( Integer.toHexString( ( digest[ i ] & 0xff ) | 0x100 ).substring( 1 ) );
+        }
+        newFingerprints.setProperty( className , fingerprint.toString() );
+
+        boolean returnVal = ( ! fingerprint.toString().equals( oldFingerprints.getProperty( className ) ) ) ||
+                            ( ! new File( destinationDirectory + className + ".java" ).isFile() ) ||
+                            ( Str.usable( mockDirectory ) && ! new File( mockDirectory + "Mock" + className + ".java" ).isFile() );
+        if ( ! returnVal )
+        {
+            tableUnchanged();
+        }
+        return returnVal ;
+    }
+
+    private synchronized void tableUnchanged()
+    {
+        unchangedTables++ ;
     }
 
     private void validateProperties( Properties properties )
@@ -661,6 +921,51 @@ public class Jenny
             "        return imp.getRows( con , columnName , searchArea );\n" +
             "    }\n";
 
+    // How the facade searches on long lists of values (see DBQuery.setSearch( column , int[] )) and its Dialect
+    private void printBrandSettings( TextFileOut out , String brand , String inListTable ) throws IOException
+    {
+        if ( "Postgres".equals( brand ) )
+        {
+            out.println( "            useArrayParameters();" );
+        }
+        if ( Str.usable( brand ) && ! "Oracle".equals( brand ) )
+        {
+            // OracleFacade sets its own
+            out.println( "            setDialect( Dialect.forBrand( \"" + brand + "\" ) );" );
+        }
+        if ( Str.usable( inListTable ) )
+        {
+            out.println( "            setInListTable( \"" + inListTable + "\" );" );
+        }
+    }
+
+    // the addReadReplica() calls for the facade constructor
+    private void printReadReplicas( TextFileOut out , String replicaURLs , String replicaJNDI ) throws IOException
+    {
+        if ( Str.usable( replicaURLs ) )
+        {
+            String[] urls = replicaURLs.split( "," );
+            for ( int i = 0 ; i < urls.length ; i++ )
+            {
+                if ( Str.usable( urls[ i ].trim() ) )
+                {
+                    out.println( "            addReadReplica( \"" + urls[ i ].trim() + "\" );" );
+                }
+            }
+        }
+        if ( Str.usable( replicaJNDI ) )
+        {
+            String[] lookups = replicaJNDI.split( "," );
+            for ( int i = 0 ; i < lookups.length ; i++ )
+            {
+                if ( Str.usable( lookups[ i ].trim() ) )
+                {
+                    out.println( "            addReadReplica( new DBFacade( \"" + lookups[ i ].trim() + "\" ) );" );
+                }
+            }
+        }
+    }
+
     private void printFacadeMethods( TextFileOut out ) throws IOException
     {
         out.println( "    /** Get a database connection." );
@@ -673,6 +978,25 @@ public class Jenny
         out.println( "        return instance.getConnection();" );
         out.println( "    }\n" );
 
+        out.println( "    /** Get a database connection for reading only." );
+        out.println( "     *" );
+        out.println( "     * Comes from a read replica if there are any, otherwise it's the same as getConnection()." );
+        out.println( "     * Of course, if you open it, you gotta close it!" );
+        out.println( "     */" );
+        out.println( "    public static Connection getReadConnection() throws Exception" );
+        out.println( "    {" );
+        out.println( "        return instance.getReadConnection();" );
+        out.println( "    }\n" );
+
+        out.println( "    /** Do several things in one transaction:  everything here without a connection (including the" );
+        out.println( "     * update() and insert() methods on table rows) uses the transaction's connection while the work" );
+        out.println( "     * runs.  One commit at the end, or nothing at all if something goes wrong." );
+        out.println( "     */" );
+        out.println( "    public static void inTransaction( UnitOfWork work ) throws SQLException" );
+        out.println( "    {" );
+        out.println( "        instance.inTransaction( work );" );
+        out.println( "    }\n" );
+
 
         out.println( "    /** Establish a connection to the database to see if any exceptions might be generated." );
         out.println( "     *" );
@@ -942,6 +1266,18 @@ public class Jenny
         out.println( "        instance.insert( table , data );" );
         out.println( "    }\n" );
 
+        out.println( "    /** Insert a row, or update the row that already has the same keyColumns - see DBFacade.upsert(). */" );
+        out.println( "    public static void upsert( Connection con , String table , String[] keyColumns , Map data ) throws SQLException" );
+        out.println( "    {" );
+        out.println( "        instance.upsert( con , table , keyColumns , data );" );
+        out.println( "    }\n" );
+
+        out.println( "    /** Insert a row, or update the row that already has the same keyColumns - see DBFacade.upsert(). */" );
+        out.println( "    public static void upsert( String table , String[] keyColumns , Map data ) throws SQLException" );
+        out.println( "    {" );
+        out.println( "        instance.upsert( table , keyColumns , data );" );
+        out.println( "    }\n" );
+
         out.println( "    public static long insertAndGetID( String table , Map data ) throws SQLException" );
         out.println( "    {" );
         out.println( "        return instance.insertAndGetID( table , data );" );
@@ -1119,7 +1455,9 @@ public class Jenny
         private List gettersAndSetters = new ArrayList();
         private StringBuffer readerColumns = new StringBuffer();
         private List readers = new ArrayList();
+        private List resultSetReaders = new ArrayList();
         private List writers = new ArrayList();
+        private List sumColumns = new ArrayList();  // String[]{ attribute , Attribute , type } for each number column
 
         private TextFileOut out ;
         private String tableID = null;
@@ -1131,6 +1469,13 @@ public class Jenny
         private String idColumnName = null;
         private int spatialColumnCount = 0 ;
         private String lastSpatialColumn = null ;
+        private Map columnReaders = new HashMap(); // upper case column name -> ColumnReader
+        Map projections = new TreeMap(); // projection name -> List of ColumnReaders.  Exposed for unit testing purposes.
+        private boolean replicated = false ;
+        private String replicatedHighWater = null ; // the column that finds changed rows, or null
+        private List replicatedIndexes = new ArrayList(); // more columns to find replicated rows by
+        private int replicatedRefreshSeconds = 60 ;
+        private String metadata ; // everything that went into the generated code, to tell if the table changed
 
 //        TableProcessor( DatabaseMetaData metaData , String tableName , String suffix , String idColumnName ) throws Exception
         TableProcessor( DatabaseMetaData metaData , String tableName , String suffix , Properties properties ) throws Exception
@@ -1145,8 +1490,10 @@ public class Jenny
             }
             fullTableName = tableIdentifier.major + suffix ;
 
+            // everything read from the metadata goes in here, to tell if the table changed since the last run
+            StringBuffer metadata = new StringBuffer( tableName + ' ' + suffix + ' ' + idColumnName );
+
             ResultSet rs = metaData.getColumns( null , null , tableName , null );
-            System.out.println( "Creating class " + fullTableName );
             while ( rs.next() )
             {
                 String columnName = rs.getString( "COLUMN_NAME" );
@@ -1166,6 +1513,7 @@ public class Jenny
                 }
 
                 int nullable = rs.getInt( "NULLABLE" );
+                metadata.append( '\n' + columnName + ' ' + dataType + ' ' + nullable + ' ' + processorKey );
 
                 ColumnProcessor processor = (ColumnProcessor)columnProcessors.get( processorKey );
                 if ( processor == null )
@@ -1174,12 +1522,48 @@ public class Jenny
                 }
                 processor.process( columnName , nullable == DatabaseMetaData.columnNullable );
             }
+            rs.close();
+
+            readProjections( properties );
+            Iterator it = projections.entrySet().iterator();
+            while ( it.hasNext() )
+            {
+                Map.Entry entry = (Map.Entry)it.next();
+                metadata.append( "\nprojection " + entry.getKey() );
+                List projectionReaders = (List)entry.getValue();
+                for ( int i = 0 ; i < projectionReaders.size() ; i++ )
+                {
+                    metadata.append( ' ' + ( (ColumnReader)projectionReaders.get( i ) ).x );
+                }
+            }
+            readReplicated( properties );
+            if ( replicated )
+            {
+                metadata.append( "\nreplicated " + replicatedHighWater + ' ' + replicatedIndexes + ' ' + replicatedRefreshSeconds );
+            }
+
+            this.metadata = metadata.toString();
+        }
+
+        // write the files for this table, unless nothing has changed since the last run
+        void generate() throws Exception
+        {
+            if ( changed( fullTableName , metadata ) )
+            {
+                System.out.println( "Creating class " + fullTableName );
+                writeFiles();
+            }
+        }
 
+        private void writeFiles() throws Exception
+        {
             out = new TextFileOut( destinationDirectory + fullTableName + ".java" );
 
             printHeader();
             printImplementationClass();
             printRowClass();
+            printProjectionRowClasses();
+            printCursorClass();
             printConvenienceMethods();
 
             out.println();
@@ -1199,6 +1583,72 @@ public class Jenny
             }
         }
 
+        // How to read one column into a Row attribute, from the ResultSet or from the strings of a DBResults.  Kept
+        // for each column so the projection Rows can read any of them, in any position.
+        private class ColumnReader
+        {
+            private String x ;
+            private String xNull ; // null unless this is a nullable primitive
+            private String defaultValue ; // null for objects
+            private String toTypeMethod ;
+            private String getter ; // the ResultSet method, or null to go through toTypeMethod
+            String attributes ;
+            String accessors ;
+
+            ColumnReader( String x , String xNull , String defaultValue , String toTypeMethod , String getter )
+            {
+                this.x = x ;
+                this.xNull = xNull ;
+                this.defaultValue = defaultValue ;
+                this.toTypeMethod = toTypeMethod ;
+                this.getter = getter ;
+            }
+
+            // column is the JDBC column number, starting at 1
+            String fromResultSet( int column )
+            {
+                // the getters give the default value for NULL, so only the null flag needs wasNull()
+                String fromResultSet = "rs." + getter + "( " + column + " )" ;
+                if ( getter == null )
+                {
+                    fromResultSet = toTypeMethod + "( rs.getString( " + column + " ) )" ;
+                }
+                String returnVal = "            this." + x + " = " + fromResultSet + ';' ;
+                if ( xNull != null )
+                {
+                    returnVal += "\n            this." + xNull + " = rs.wasNull();" ;
+                }
+                return returnVal ;
+            }
+
+            // index is the position in the String array, starting at 0
+            String fromData( int index )
+            {
+                String returnVal ;
+                if ( xNull != null )
+                {
+                    String firstLine = "                this." + xNull + " = ( data[" + index + "] == null );\n";
+                    String getValue = toTypeMethod + "( data[" + index + "] )";
+                    String secondLine = "                this." + x + " = " + xNull + " ? " + defaultValue + " : " + getValue + ';';
+                    returnVal = firstLine + secondLine ;
+                }
+                else if ( defaultValue != null )
+                {
+                    returnVal = "                this." + x + " =  " + toTypeMethod + "( data[" + index + "] );" ;
+                }
+                else
+                {
+                    String fromString = "data[" + index + ']';
+                    if ( toTypeMethod != null )
+                    {
+                        fromString = toTypeMethod + "( " + fromString + " )";
+                    }
+                    returnVal = "                this." + x + " = " + fromString + ';' ;
+                }
+                return returnVal ;
+            }
+        }
+
         private abstract class ColumnProcessor
         {
             abstract void process( String columnName , boolean nullable );
@@ -1212,7 +1662,8 @@ public class Jenny
 //                return rowVariableName + ".toString()";
 //            }
 
-            void populateLists( String columnName , boolean nullable , String type , String toTypeMethod )
+            // getter is the ResultSet method that gives this type, or null to go through toTypeMethod
+            void populateLists( String columnName , boolean nullable , String type , String toTypeMethod , String getter )
             {
                 Identifier attributeName = attributeName( columnName );
 
@@ -1230,13 +1681,14 @@ public class Jenny
                 buffy.append( "        }\n\n" );
                 gettersAndSetters.add( buffy.toString() );
 
+                ColumnReader reader = new ColumnReader( attributeName.minor , null , null , toTypeMethod , getter );
+                reader.attributes = (String)attributes.get( attributes.size() - 1 );
+                reader.accessors = buffy.toString();
+                columnReaders.put( columnName.toUpperCase() , reader );
+
                 readerColumns.append( attributeName.minor + "ColumnName , " );
-                String fromString = "data[" + readers.size() + ']';
-                if ( toTypeMethod != null )
-                {
-                    fromString = toTypeMethod + "( " + fromString + " )";
-                }
-                readers.add( "                this." + attributeName.minor + " = " + fromString + ';' );
+                resultSetReaders.add( reader.fromResultSet( readers.size() + 1 ) );
+                readers.add( reader.fromData( readers.size() ) );
 
                 String writerValue = "this." + attributeName.minor ;
                 if ( ! ( type.equals( "String" ) || type.startsWith( "SpatialPo" ) ) )
@@ -1253,7 +1705,7 @@ public class Jenny
 
             public void process( String columnName , boolean nullable )
             {
-                populateLists( columnName , nullable , "String" , null );
+                populateLists( columnName , nullable , "String" , null , "getString" );
             }
 
         };
@@ -1264,7 +1716,7 @@ public class Jenny
             {
                 importTimestamp = true;
                 //importStr = true;
-                populateLists( columnName , nullable , "Timestamp" , "Str.toTimestamp" );
+                populateLists( columnName , nullable , "Timestamp" , "Str.toTimestamp" , "getTimestamp" );
             }
         };
 
@@ -1281,7 +1733,7 @@ public class Jenny
             public void process( String columnName , boolean nullable )
             {
 //                importSpatialPoint = true;
-                populateLists( columnName , nullable , "SpatialPoint" , "(SpatialPoint)" + facadeName + ".fromXML" );
+                populateLists( columnName , nullable , "SpatialPoint" , "(SpatialPoint)" + facadeName + ".fromXML" , null );
             }
         };
 
@@ -1290,7 +1742,7 @@ public class Jenny
             public void process( String columnName , boolean nullable )
             {
 //                importSpatialPolygon = true;
-                populateLists( columnName , nullable , "SpatialPolygon" , "(SpatialPolygon)" + facadeName + ".fromXML" );
+                populateLists( columnName , nullable , "SpatialPolygon" , "(SpatialPolygon)" + facadeName + ".fromXML" , null );
             }
         };
 
@@ -1299,21 +1751,27 @@ public class Jenny
             public void process( String columnName , boolean nullable )
             {
 //                importSpatialPolygon = true;
-                populateLists( columnName , nullable , "SpatialPolygon[]" , "(SpatialPolygon[])" + facadeName + ".fromXML" );
+                populateLists( columnName , nullable , "SpatialPolygon[]" , "(SpatialPolygon[])" + facadeName + ".fromXML" , null );
             }
         };
 
         private abstract class NullablePrimitive extends ColumnProcessor
         {
 
+            // getter is the ResultSet method that gives this type, or null to go through toTypeMethod
             void populateLists( String columnName , boolean nullable , String type , String wrapper ,
-                                String defaultValue , String toTypeMethod )
+                                String defaultValue , String toTypeMethod , String getter )
             {
                 Identifier attributeName = attributeName( columnName );
                 String x = attributeName.minor ;
                 String X = attributeName.major ;
                 String xNull = x + "Null";
 
+                boolean number = type.equals( "int" ) || type.equals( "long" ) || type.equals( "double" );
+                if ( number && ! columnName.equalsIgnoreCase( tableID ) )
+                {
+                    sumColumns.add( new String[]{ x , X , type } );
+                }
                 columnNames.add( "    public static final String " + x + "ColumnName = \"" + columnName + "\";" );
                 attributes.add( "        private " + type + ' ' + x + " ;" );
                 if ( nullable )
@@ -1365,20 +1823,25 @@ public class Jenny
                 }
                 gettersAndSetters.add( buffy.toString() );
 
+                ColumnReader reader = new ColumnReader( x , nullable ? xNull : null , defaultValue , toTypeMethod , getter );
+                reader.attributes = "        private " + type + ' ' + x + " ;" ;
+                if ( nullable )
+                {
+                    reader.attributes += "\n        private boolean " + xNull + " = true ;" ;
+                }
+                reader.accessors = buffy.toString();
+                columnReaders.put( columnName.toUpperCase() , reader );
+
                 readerColumns.append( attributeName.minor + "ColumnName , " );
+                resultSetReaders.add( reader.fromResultSet( readers.size() + 1 ) );
+                readers.add( reader.fromData( readers.size() ) );
 
                 if ( nullable )
                 {
-                    String firstLine = "                this." + xNull + " = ( data[" + readers.size() + "] == null );\n";
-                    String getValue = toTypeMethod + "( data[" + readers.size() + "] )";
-                    String secondLine = "                this." + x + " = " + xNull + " ? " + defaultValue + " : " + getValue + ';';
-                    readers.add( firstLine + secondLine );
                     writers.add( "            data.put( " + attributeName.minor + "ColumnName , this." + xNull + " ? null : String.valueOf( this." + x + " ) );" );
                 }
                 else
                 {
-                    readers.add( "                this." + x + " =  " + toTypeMethod + "( data[" + readers.size() + "] );" );
-
                     String toStringPrefix = "String.valueOf( ";
                     String toStringPostfix = " )";
                     if ( type.equals( "boolean" ) )
@@ -1410,7 +1873,7 @@ public class Jenny
                     }
                 }
                 //importStr = true;
-                populateLists( columnName , nullable , "int" , "Integer" , "0" , "Str.toInt" );
+                populateLists( columnName , nullable , "int" , "Integer" , "0" , "Str.toInt" , "getInt" );
             }
         };
 
@@ -1419,7 +1882,7 @@ public class Jenny
             public void process( String columnName , boolean nullable )
             {
                 //importStr = true;
-                populateLists( columnName , nullable , "long" , "Long" , "0" , "Str.toLong" );
+                populateLists( columnName , nullable , "long" , "Long" , "0" , "Str.toLong" , "getLong" );
             }
         };
 
@@ -1428,7 +1891,7 @@ public class Jenny
             public void process( String columnName , boolean nullable )
             {
                 //importStr = true;
-                populateLists( columnName , nullable , "double" , "Double" , "0.0" , "Str.toDouble" );
+                populateLists( columnName , nullable , "double" , "Double" , "0.0" , "Str.toDouble" , "getDouble" );
             }
         };
 
@@ -1437,7 +1900,8 @@ public class Jenny
             public void process( String columnName , boolean nullable )
             {
                 //importStr = true;
-                populateLists( columnName , nullable , "boolean" , "Boolean" , "false" , "Str.toBoolean" );
+                // BIT and BINARY columns don't come back from getBoolean() the same way on every driver
+                populateLists( columnName , nullable , "boolean" , "Boolean" , "false" , "Str.toBoolean" , null );
             }
         };
 
@@ -1479,6 +1943,17 @@ public class Jenny
             out.println();
             out.println( "import java.util.Map ;" );
             out.println( "import java.util.HashMap ;" );
+            out.println( "import java.util.List ;" );
+            out.println( "import java.util.ArrayList ;" );
+            if ( getsRowsByID() )
+            {
+                out.println( "import java.util.LinkedHashMap ;" );
+            }
+            if ( tableIDAttribute != null )
+            {
+                out.println( "import java.util.concurrent.Callable ;" );
+                out.println( "import java.util.concurrent.Future ;" );
+            }
             out.println( "import java.sql.Connection ;" );
             out.println( "import java.sql.SQLException ;" );
             if ( importTimestamp )
@@ -1494,7 +1969,20 @@ public class Jenny
 //            {
 //                out.println( "import com.javaranch.db.spatial.SpatialPolygon ;" );
 //            }
+            if ( readsResultSet() )
+            {
+                out.println( "import java.sql.ResultSet ;" );
+            }
             out.println( "import com.javaranch.db.DBResults ;" );
+            out.println( "import com.javaranch.db.DBCursor ;" );
+            if ( readsResultSet() )
+            {
+                out.println( "import com.javaranch.db.RowMapper ;" );
+            }
+            if ( replicated )
+            {
+                out.println( "import com.javaranch.db.ReplicatedTable ;" );
+            }
             if ( usingSpatial )
             {
                 out.println( "import com.javaranch.db.spatial.* ;" );
@@ -1518,6 +2006,11 @@ public class Jenny
             out.println( " *" );
             out.println( " *     <b>getRow()/getRows()/getAllRows()</b><br>" );
             out.println( " *     <b>search() </b><i>like getRows(), but you can specify which columns you want back</i><br>" );
+            out.println( " *     <b>getCursor() </b><i>like getRows(), but one row at a time for really big searches</i><br>" );
+            if ( ! projections.isEmpty() )
+            {
+                out.println( " *     <b>get<i>Projection</i>Rows() </b><i>like getRows(), but only the columns of the projection</i><br>" );
+            }
             out.println( " *     <b>update()</b><br>" );
             out.println( " *     <b>delete()</b><br>" );
             out.println( " *     <b>insert()</b><br>" );
@@ -1532,7 +2025,9 @@ public class Jenny
             out.println( " * a lot of columns, and your search will return a lot of rows, you might want to consider" );
             out.println( " * using a search() method instead.  You lose some of your strong type checking, but " );
             out.println( " * you might go a lot easier on memory.  In these cases, you will want to make sure you" );
-            out.println( " * use the column name constants found at the top of this class." );
+            out.println( " * use the column name constants found at the top of this class.  Or you can keep the strong" );
+            out.println( " * type checking by declaring a projection in the Jenny properties (see jenny.properties)" );
+            out.println( " * and get Row objects that only read the columns you want." );
             out.println( " *" );
             out.println( " */" );
             out.println( "public class " + fullTableName );
@@ -1556,6 +2051,24 @@ public class Jenny
             out.println( "        " + readerColumns );
             out.println( "    };" );
             out.println();
+
+            // and for each projection
+            Iterator it = projections.entrySet().iterator();
+            while ( it.hasNext() )
+            {
+                Map.Entry entry = (Map.Entry)it.next();
+                List projectionReaders = (List)entry.getValue();
+                out.println( "    private static String[] " + attributeName( (String)entry.getKey() ).minor + "Columns =" );
+                out.println( "    {" );
+                out.print( "        " );
+                for ( int i = 0 ; i < projectionReaders.size() ; i++ )
+                {
+                    out.print( ( (ColumnReader)projectionReaders.get( i ) ).x + "ColumnName , " );
+                }
+                out.println();
+                out.println( "    };" );
+                out.println();
+            }
             out.println( "    /** You probably want to use the static methods for most of your access, but once in a while you might need to" );
             out.println( "     *  pass an instance object to a method that knows how to work with these sorts of tables." );
             out.println( "     */" );
@@ -1582,6 +2095,46 @@ public class Jenny
         // todo - add getQuery() method that would return a query pre-populated with the table/view name and a search
         // todo   for the ID column (if one is specified)
 
+        // True if the Row objects can be read straight from the ResultSet.  Spatial columns need the facade to turn
+        // them into XML first, so those tables read everything as strings.
+        private boolean readsResultSet()
+        {
+            return spatialColumnCount == 0 ;
+        }
+
+        // True if getRows( long[] ids ) and getRowMap( long[] ids ) are generated.
+        private boolean getsRowsByID()
+        {
+            return ( tableID != null ) && readsResultSet();
+        }
+
+        // the body of a getRow() method that searches with these arguments
+        private void printGetRow( String searchArguments ) throws IOException
+        {
+            if ( readsResultSet() )
+            {
+                out.println( "            return firstRow( this.search( " + searchArguments + " , mapper ) );" );
+            }
+            else
+            {
+                out.println( "            Row row = new Row( this.search( " + searchArguments + " ) );" );
+                out.println( "            return row.dataLoadedFromDatabase() ? row : null ;" );
+            }
+        }
+
+        // the body of a getRows() method that searches with these arguments
+        private void printGetRows( String searchArguments ) throws IOException
+        {
+            if ( readsResultSet() )
+            {
+                out.println( "            return rowArray( this.search( " + searchArguments + " , mapper ) );" );
+            }
+            else
+            {
+                out.println( "            return rowArray( this.search( " + searchArguments + " ) );" );
+            }
+        }
+
         private void printImplementationClass() throws Exception
         {
             out.println( "    /** Exposed for unit testing purposes only! */" );
@@ -1599,20 +2152,80 @@ public class Jenny
             out.println( "        Implementation()" );
             out.println( "        {" );
             out.println( dbFacadeLine );
+            if ( replicated )
+            {
+                // not allColumns:  imp is made before it is set
+                String columns = readerColumns.toString().trim();
+                if ( columns.endsWith( "," ) )
+                {
+                    columns = columns.substring( 0 , columns.length() - 1 ).trim();
+                }
+                out.println( "            // the whole table is kept in memory:  searches on one column that aren't given a connection" );
+                out.println( "            // don't go to the database" );
+                out.println( "            replicate( new ReplicatedTable( getDBFacade() , tableName ," );
+                out.println( "                                            new String[]{ " + columns + " } ," );
+                out.println( "                                            " + quoted( tableID ) + " ," );
+                Str indexes = new Str( "new String[]{ " );
+                for ( int i = 0 ; i < replicatedIndexes.size() ; i++ )
+                {
+                    indexes.append( quoted( (String)replicatedIndexes.get( i ) ) + " , " );
+                }
+                if ( ! replicatedIndexes.isEmpty() )
+                {
+                    indexes.deleteLast( 3 );
+                    indexes.append( ' ' );
+                }
+                indexes.append( '}' );
+                out.println( "                                            " + indexes + " , " + quoted( replicatedHighWater ) + " , " +
+                             replicatedRefreshSeconds + " * 1000L ) );" );
+            }
             out.println( "        }" );
             out.println();
-            out.println( "        // convert a DBResults object to an array of Row objects." );
-            out.println( "        // requires that all of the columns be represented in the DBResults object and in the right order" );
-            out.println( "        private static Row[] rowArray( DBResults r )" );
-            out.println( "        {" );
-            out.println( "            Row[] rows = new Row[ r.size() ];" );
-            out.println( "            for( int i = 0 ; i < rows.length ; i++ )" );
-            out.println( "            {" );
-            out.println( "                rows[ i ] = new Row( r.getRow( i ) );" );
-            out.println( "            }" );
-            out.println( "            return rows ;" );
-            out.println( "        }" );
-            out.println();
+            if ( readsResultSet() )
+            {
+                out.println( "        // makes Row objects straight from the ResultSet." );
+                out.println( "        // requires that all of the columns be in the search and in the right order" );
+                out.println( "        private static final RowMapper mapper = new RowMapper()" );
+                out.println( "        {" );
+                out.println( "            public Object map( ResultSet rs ) throws SQLException" );
+                out.println( "            {" );
+                out.println( "                return new Row( rs );" );
+                out.println( "            }" );
+                out.println();
+                out.println( "            public Object map( String[] row )" );
+                out.println( "            {" );
+                out.println( "                return new Row( row );" );
+                out.println( "            }" );
+                out.println( "        };" );
+                out.println();
+                out.println( "        // convert a List from the mapper to an array of Row objects." );
+                out.println( "        private static Row[] rowArray( List rows )" );
+                out.println( "        {" );
+                out.println( "            return (Row[])rows.toArray( new Row[ rows.size() ] );" );
+                out.println( "        }" );
+                out.println();
+                out.println( "        // the first Row from the mapper, or null if there aren't any" );
+                out.println( "        private static Row firstRow( List rows )" );
+                out.println( "        {" );
+                out.println( "            return rows.isEmpty() ? null : (Row)rows.get( 0 );" );
+                out.println( "        }" );
+                out.println();
+            }
+            else
+            {
+                out.println( "        // convert a DBResults object to an array of Row objects." );
+                out.println( "        // requires that all of the columns be represented in the DBResults object and in the right order" );
+                out.println( "        private static Row[] rowArray( DBResults r )" );
+                out.println( "        {" );
+                out.println( "            Row[] rows = new Row[ r.size() ];" );
+                out.println( "            for( int i = 0 ; i < rows.length ; i++ )" );
+                out.println( "            {" );
+                out.println( "                rows[ i ] = new Row( r.getRow( i ) );" );
+                out.println( "            }" );
+                out.println( "            return rows ;" );
+                out.println( "        }" );
+                out.println();
+            }
             out.println( "        /** Instantiate an empty Row object */" );
             out.println( "        public Row getRow()" );
             out.println( "        {" );
@@ -1633,8 +2246,7 @@ public class Jenny
                 out.println( "         */" );
                 out.println( "        public Row getRow( Connection con , int " + tableIDAttribute + " ) throws SQLException" );
                 out.println( "        {" );
-                out.println( "            Row row = new Row( this.search( con , \"" + tableID + "\" , String.valueOf( " + tableIDAttribute + " ) , allColumns ) );" );
-                out.println( "            return row.dataLoadedFromDatabase() ? row : null ;" );
+                printGetRow( "con , \"" + tableID + "\" , String.valueOf( " + tableIDAttribute + " ) , allColumns" );
                 out.println( "        }\n" );
 
                 out.println( "        /** Instantiate a Row object and fill its content based on a search for the ID." );
@@ -1643,8 +2255,20 @@ public class Jenny
                 out.println( "         */" );
                 out.println( "        public Row getRow( long " + tableIDAttribute + " ) throws SQLException" );
                 out.println( "        {" );
-                out.println( "            Row row = new Row( this.search( \"" + tableID + "\" , String.valueOf( " + tableIDAttribute + " ) , allColumns ) );" );
-                out.println( "            return row.dataLoadedFromDatabase() ? row : null ;" );
+                printGetRow( "\"" + tableID + "\" , String.valueOf( " + tableIDAttribute + " ) , allColumns" );
+                out.println( "        }\n" );
+
+                out.println( "        /** Like getRow( id ), but on another thread.  get() the Row (or null) from the Future." );
+                out.println( "         */" );
+                out.println( "        public Future getRowAsync( final long " + tableIDAttribute + " )" );
+                out.println( "        {" );
+                out.println( "            return getDBFacade().submit( new Callable()" );
+                out.println( "            {" );
+                out.println( "                public Object call() throws Exception" );
+                out.println( "                {" );
+                out.println( "                    return getRow( " + tableIDAttribute + " );" );
+                out.println( "                }" );
+                out.println( "            });" );
                 out.println( "        }\n" );
             }
 
@@ -1654,8 +2278,7 @@ public class Jenny
             out.println( "         */" );
             out.println( "        public Row getRow( Connection con , String column , String searchText ) throws SQLException" );
             out.println( "        {" );
-            out.println( "            Row row = new Row( this.search( con , column , searchText , allColumns ) );" );
-            out.println( "            return row.dataLoadedFromDatabase() ? row : null ;" );
+            printGetRow( "con , column , searchText , allColumns" );
             out.println( "        }\n" );
 
             out.println( "        /** Instantiate a Row object and fill its content based on a search" );
@@ -1664,46 +2287,55 @@ public class Jenny
             out.println( "         */" );
             out.println( "        public Row getRow( String column , String searchText ) throws SQLException" );
             out.println( "        {" );
-            out.println( "            Row row = new Row( this.search( column , searchText , allColumns ) );" );
-            out.println( "            return row.dataLoadedFromDatabase() ? row : null ;" );
+            printGetRow( "column , searchText , allColumns" );
             out.println( "        }\n" );
 
             out.println( "        /** Return an array of length zero if nothing found */" );
             out.println( "        public Row[] getRows( Connection con , String column , String searchText ) throws SQLException" );
             out.println( "        {" );
-            out.println( "            return rowArray( this.search( con , column , searchText , allColumns ) );" );
+            printGetRows( "con , column , searchText , allColumns" );
             out.println( "        }\n" );
 
             out.println( "        /** Return an array of length zero if nothing found */" );
             out.println( "        public Row[] getRows( String column , String searchText ) throws SQLException" );
             out.println( "        {" );
-            out.println( "            return rowArray( this.search( column , searchText , allColumns ) );" );
+            printGetRows( "column , searchText , allColumns" );
             out.println( "        }\n" );
 
             out.println( "        /** Return an array of length zero if nothing found */" );
             out.println( "        public Row[] getRows( Connection con , String column , String[] searchText ) throws SQLException" );
             out.println( "        {" );
-            out.println( "            return rowArray( this.search( con , column , searchText , allColumns ) );" );
+            printGetRows( "con , column , searchText , allColumns" );
             out.println( "        }\n" );
 
             out.println( "        /** Return an array of length zero if nothing found */" );
             out.println( "        public Row[] getRows( String column , String[] searchText ) throws SQLException" );
             out.println( "        {" );
-            out.println( "            return rowArray( this.search( column , searchText , allColumns ) );" );
+            printGetRows( "column , searchText , allColumns" );
             out.println( "        }\n" );
 
             out.println( "        /** Return an array of length zero if nothing found */" );
             out.println( "        public Row[] getRows( Connection con , String whereClause ) throws SQLException" );
             out.println( "        {" );
-            out.println( "            return rowArray( this.search( con , whereClause , allColumns ) );" );
+            printGetRows( "con , whereClause , allColumns" );
             out.println( "        }\n" );
 
             out.println( "        /** Return an array of length zero if nothing found */" );
             out.println( "        public Row[] getRows( String whereClause ) throws SQLException" );
             out.println( "        {" );
-            out.println( "            return rowArray( this.search( whereClause , allColumns ) );" );
+            printGetRows( "whereClause , allColumns" );
             out.println( "        }\n" );
 
+            if ( getsRowsByID() )
+            {
+                printGetRowsByID();
+            }
+
+            if ( readsResultSet() )
+            {
+                printGetPage();
+            }
+
             if ( spatialColumnCount == 1 )
             {
                 out.println( "        public Row[] getRows( SpatialPolygon searchArea ) throws SQLException" );
@@ -1735,15 +2367,91 @@ public class Jenny
             out.println( "        /** Return an array of length zero if nothing found */" );
             out.println( "        public Row[] getAllRows( Connection con ) throws SQLException" );
             out.println( "        {" );
-            out.println( "            return rowArray( this.search( con , allColumns ) );" );
+            printGetRows( "con , (String)null , allColumns" );
             out.println( "        }\n" );
 
             out.println( "        /** Return an array of length zero if nothing found */" );
             out.println( "        public Row[] getAllRows() throws SQLException" );
             out.println( "        {" );
-            out.println( "            return rowArray( this.search( allColumns ) );" );
+            printGetRows( "(String)null , allColumns" );
+            out.println( "        }\n" );
+
+            out.println( "        /** Read the rows one at a time as you need them.  Close the cursor when you are done!" );
+            out.println( "         *" );
+            out.println( "         * @param whereClause null for all rows." );
+            out.println( "         */" );
+            out.println( "        public Cursor getCursor( Connection con , String whereClause ) throws SQLException" );
+            out.println( "        {" );
+            out.println( "            return new Cursor( this.openCursor( con , whereClause , allColumns ) );" );
+            out.println( "        }\n" );
+
+            out.println( "        /** Read the rows one at a time as you need them.  Close the cursor when you are done!" );
+            out.println( "         *" );
+            out.println( "         * @param whereClause null for all rows." );
+            out.println( "         */" );
+            out.println( "        public Cursor getCursor( String whereClause ) throws SQLException" );
+            out.println( "        {" );
+            out.println( "            return new Cursor( this.openCursor( whereClause , allColumns ) );" );
             out.println( "        }\n" );
 
+            out.println( "        // the data for each row, ready for insertBatch()" );
+            out.println( "        private static List dataList( Row[] rows )" );
+            out.println( "        {" );
+            out.println( "            List data = new ArrayList( rows.length );" );
+            out.println( "            for( int i = 0 ; i < rows.length ; i++ )" );
+            out.println( "            {" );
+            out.println( "                data.add( rows[ i ].buildDataMap() );" );
+            out.println( "            }" );
+            out.println( "            return data ;" );
+            out.println( "        }\n" );
+
+            if ( tableID == null )
+            {
+                out.println( "        /** create many new rows at once */" );
+                out.println( "        public void insert( Connection con , Row[] rows ) throws SQLException" );
+                out.println( "        {" );
+                out.println( "            this.insertBatch( con , dataList( rows ) );" );
+                out.println( "        }\n" );
+
+                out.println( "        /** create many new rows at once */" );
+                out.println( "        public void insert( Row[] rows ) throws SQLException" );
+                out.println( "        {" );
+                out.println( "            this.insertBatch( dataList( rows ) );" );
+                out.println( "        }\n" );
+            }
+            else
+            {
+                String setID = "rows[ i ].set" + attributeName( tableID ).major + "( (int)ids[ i ] );" ;
+
+                out.println( "        /** create many new rows at once, each with a new ID." );
+                out.println( "         *" );
+                out.println( "         * The current ID's are ignored.  The new ID's are placed in the rows." );
+                out.println( "         */" );
+                out.println( "        public long[] insert( Connection con , Row[] rows ) throws SQLException" );
+                out.println( "        {" );
+                out.println( "            long[] ids = this.insertBatchAndGetIDs( con , dataList( rows ) , \"" + tableID + "\" );" );
+                out.println( "            for( int i = 0 ; i < rows.length ; i++ )" );
+                out.println( "            {" );
+                out.println( "                " + setID );
+                out.println( "            }" );
+                out.println( "            return ids ;" );
+                out.println( "        }\n" );
+
+                out.println( "        /** create many new rows at once, each with a new ID." );
+                out.println( "         *" );
+                out.println( "         * The current ID's are ignored.  The new ID's are placed in the rows." );
+                out.println( "         */" );
+                out.println( "        public long[] insert( Row[] rows ) throws SQLException" );
+                out.println( "        {" );
+                out.println( "            long[] ids = this.insertBatchAndGetIDs( dataList( rows ) , \"" + tableID + "\" );" );
+                out.println( "            for( int i = 0 ; i < rows.length ; i++ )" );
+                out.println( "            {" );
+                out.println( "                " + setID );
+                out.println( "            }" );
+                out.println( "            return ids ;" );
+                out.println( "        }\n" );
+            }
+
             if ( tableID != null )
             {
                 out.println( "        public void update( Connection con , int " + tableIDAttribute + " , Map data ) throws SQLException" );
@@ -1766,19 +2474,617 @@ public class Jenny
                 out.println( "            this.delete( \"" + tableID + "\" , String.valueOf( " + tableIDAttribute + " ) );" );
                 out.println( "        }\n" );
 
-                out.println( "        public long insertAndGetID( Connection con , Map data ) throws SQLException" );
+                out.println( "        public long insertAndGetID( Connection con , Map data ) throws SQLException" );
+                out.println( "        {" );
+                out.println( "            return this.insertAndGetID( con , data , \"" + tableID + "\" );" );
+                out.println( "        }\n" );
+
+                out.println( "        public long insertAndGetID( Map data ) throws SQLException" );
+                out.println( "        {" );
+                out.println( "            return this.insertAndGetID( data , \"" + tableID + "\" );" );
+                out.println( "        }\n" );
+            }
+            printProjectionImplementationMethods();
+            out.println();
+            out.println( "    }" );
+            out.println();
+        }
+
+        // "<table>.Projection.<name>=COLUMN,COLUMN" in the properties gives a Row class with just those columns
+        private void readProjections( Properties properties )
+        {
+            String prefix = rawTableName + ".Projection." ;
+            Enumeration names = properties.propertyNames();
+            while ( names.hasMoreElements() )
+            {
+                String name = (String)names.nextElement();
+                if ( name.startsWith( prefix ) )
+                {
+                    String projectionName = name.substring( prefix.length() );
+                    if ( ! Str.usable( projectionName ) )
+                    {
+                        throw new InvalidParameterException( name + " needs a name for the projection after \"Projection.\"" );
+                    }
+                    if ( ! readsResultSet() )
+                    {
+                        throw new InvalidParameterException( name + ":  projections can't be used on tables with spatial columns" );
+                    }
+                    List projectionReaders = new ArrayList();
+                    String[] columns = properties.getProperty( name ).split( "," );
+                    for ( int i = 0 ; i < columns.length ; i++ )
+                    {
+                        String column = columns[ i ].trim();
+                        ColumnReader reader = (ColumnReader)columnReaders.get( column.toUpperCase() );
+                        if ( reader == null )
+                        {
+                            throw new InvalidParameterException( name + ":  there is no column " + column + " in " + rawTableName );
+                        }
+                        projectionReaders.add( reader );
+                    }
+                    projections.put( attributeName( projectionName ).major , projectionReaders );
+                }
+            }
+        }
+
+        // "<table>.Replicated=<high water column>" (or "true" for none) keeps the whole table in memory - see
+        // ReplicatedTable.  "<table>.Replicated.Index=COLUMN,COLUMN" are more columns to find rows by, and
+        // "<table>.Replicated.RefreshSeconds" is how often to look for changes.
+        private void readReplicated( Properties properties )
+        {
+            String name = rawTableName + ".Replicated" ;
+            String highWater = properties.getProperty( name );
+            if ( Str.usable( highWater ) && ! highWater.trim().equalsIgnoreCase( "false" ) )
+            {
+                if ( ! readsResultSet() )
+                {
+                    throw new InvalidParameterException( name + ":  tables with spatial columns can't be replicated" );
+                }
+                replicated = true ;
+                if ( ! highWater.trim().equalsIgnoreCase( "true" ) )
+                {
+                    replicatedHighWater = getReplicatedColumn( name , highWater );
+                    if ( replicatedHighWater.equalsIgnoreCase( tableID ) )
+                    {
+                        System.out.println( name + ":  IDs aren't committed in order, so new rows can be missed until the" +
+                                            " next full read - a column set to the time of each change is better" );
+                    }
+                }
+                String indexes = properties.getProperty( name + ".Index" );
+                if ( Str.usable( indexes ) )
+                {
+                    String[] columns = indexes.split( "," );
+                    for ( int i = 0 ; i < columns.length ; i++ )
+                    {
+                        replicatedIndexes.add( getReplicatedColumn( name + ".Index" , columns[ i ] ) );
+                    }
+                }
+                String seconds = properties.getProperty( name + ".RefreshSeconds" );
+                if ( Str.usable( seconds ) )
+                {
+                    try
+                    {
+                        replicatedRefreshSeconds = Integer.parseInt( seconds.trim() );
+                    }
+                    catch ( NumberFormatException e )
+                    {
+                        throw new InvalidParameterException( name + ".RefreshSeconds must be a number, not " + seconds );
+                    }
+                }
+            }
+        }
+
+        // the column, if the table has it
+        private String getReplicatedColumn( String name , String column )
+        {
+            String returnVal = column.trim();
+            if ( ! columnReaders.containsKey( returnVal.toUpperCase() ) )
+            {
+                throw new InvalidParameterException( name + ":  there is no column " + returnVal + " in " + rawTableName );
+            }
+            return returnVal ;
+        }
+
+        // s as a java String literal, or "null"
+        private String quoted( String s )
+        {
+            return ( s == null ) ? "null" : '"' + s + '"' ;
+        }
+
+        // a Row class for each projection, with only the projection's columns.  There's no update() or insert() -
+        // that's what the whole Row is for.
+        private void printProjectionRowClasses() throws Exception
+        {
+            Iterator it = projections.entrySet().iterator();
+            while ( it.hasNext() )
+            {
+                Map.Entry entry = (Map.Entry)it.next();
+                String rowClass = entry.getKey() + "Row" ;
+                List projectionReaders = (List)entry.getValue();
+
+                out.print( "    /** Just the columns of the " + entry.getKey() + " projection:  " );
+                for ( int i = 0 ; i < projectionReaders.size() ; i++ )
+                {
+                    out.print( ( i == 0 ? "" : ", " ) + ( (ColumnReader)projectionReaders.get( i ) ).x );
+                }
+                out.println( "." );
+                out.println( "     *" );
+                out.println( "     *  To change a row, use update() with the column name constants or get the whole Row." );
+                out.println( "     */" );
+                out.println( "    public static class " + rowClass );
+                out.println( "    {" );
+                out.println();
+                for ( int i = 0 ; i < projectionReaders.size() ; i++ )
+                {
+                    out.println( ( (ColumnReader)projectionReaders.get( i ) ).attributes );
+                }
+                out.println();
+                out.println( "        /** for internal use only!   If you need a row object, use get" + rowClass + "s(). */" );
+                out.println( "        " + rowClass + "()" );
+                out.println( "        {" );
+                out.println( "        }" );
+                out.println();
+                out.println( "        private " + rowClass + "( String[] data )" );
+                out.println( "        {" );
+                out.println( "            if ( data != null )" );
+                out.println( "            {" );
+                for ( int i = 0 ; i < projectionReaders.size() ; i++ )
+                {
+                    out.println( ( (ColumnReader)projectionReaders.get( i ) ).fromData( i ) );
+                }
+                out.println( "            }" );
+                out.println( "        }" );
+                out.println();
+                out.println( "        private " + rowClass + "( ResultSet rs ) throws SQLException" );
+                out.println( "        {" );
+                for ( int i = 0 ; i < projectionReaders.size() ; i++ )
+                {
+                    out.println( ( (ColumnReader)projectionReaders.get( i ) ).fromResultSet( i + 1 ) );
+                }
+                out.println( "        }" );
+                out.println();
+                for ( int i = 0 ; i < projectionReaders.size() ; i++ )
+                {
+                    out.print( ( (ColumnReader)projectionReaders.get( i ) ).accessors );
+                }
+                out.println( "    }" );
+                out.println();
+            }
+        }
+
+        private void printProjectionImplementationMethods() throws Exception
+        {
+            Iterator it = projections.keySet().iterator();
+            while ( it.hasNext() )
+            {
+                String projection = (String)it.next();
+                String rowClass = projection + "Row" ;
+                String p = attributeName( projection ).minor ;
+                String columns = p + "Columns" ;
+                String mapper = p + "Mapper" ;
+
+                out.println( "        // makes " + rowClass + " objects straight from the ResultSet" );
+                out.println( "        private static final RowMapper " + mapper + " = new RowMapper()" );
+                out.println( "        {" );
+                out.println( "            public Object map( ResultSet rs ) throws SQLException" );
+                out.println( "            {" );
+                out.println( "                return new " + rowClass + "( rs );" );
+                out.println( "            }" );
+                out.println();
+                out.println( "            public Object map( String[] row )" );
+                out.println( "            {" );
+                out.println( "                return new " + rowClass + "( row );" );
+                out.println( "            }" );
+                out.println( "        };\n" );
+
+                out.println( "        private static " + rowClass + "[] " + p + "RowArray( List rows )" );
+                out.println( "        {" );
+                out.println( "            return (" + rowClass + "[])rows.toArray( new " + rowClass + "[ rows.size() ] );" );
+                out.println( "        }\n" );
+
+                if ( tableID != null )
+                {
+                    out.println( "        /** Return null if not found */" );
+                    out.println( "        public " + rowClass + " get" + rowClass + "( Connection con , long " + tableIDAttribute + " ) throws SQLException" );
+                    out.println( "        {" );
+                    out.println( "            List rows = this.search( con , \"" + tableID + "\" , String.valueOf( " + tableIDAttribute + " ) , " + columns + " , " + mapper + " );" );
+                    out.println( "            return rows.isEmpty() ? null : (" + rowClass + ")rows.get( 0 );" );
+                    out.println( "        }\n" );
+
+                    out.println( "        /** Return null if not found */" );
+                    out.println( "        public " + rowClass + " get" + rowClass + "( long " + tableIDAttribute + " ) throws SQLException" );
+                    out.println( "        {" );
+                    out.println( "            List rows = this.search( \"" + tableID + "\" , String.valueOf( " + tableIDAttribute + " ) , " + columns + " , " + mapper + " );" );
+                    out.println( "            return rows.isEmpty() ? null : (" + rowClass + ")rows.get( 0 );" );
+                    out.println( "        }\n" );
+                }
+
+                out.println( "        /** Return an array of length zero if nothing found */" );
+                out.println( "        public " + rowClass + "[] get" + rowClass + "s( Connection con , String column , String searchText ) throws SQLException" );
+                out.println( "        {" );
+                out.println( "            return " + p + "RowArray( this.search( con , column , searchText , " + columns + " , " + mapper + " ) );" );
+                out.println( "        }\n" );
+
+                out.println( "        /** Return an array of length zero if nothing found */" );
+                out.println( "        public " + rowClass + "[] get" + rowClass + "s( String column , String searchText ) throws SQLException" );
+                out.println( "        {" );
+                out.println( "            return " + p + "RowArray( this.search( column , searchText , " + columns + " , " + mapper + " ) );" );
+                out.println( "        }\n" );
+
+                out.println( "        /** Return an array of length zero if nothing found */" );
+                out.println( "        public " + rowClass + "[] get" + rowClass + "s( Connection con , String whereClause ) throws SQLException" );
+                out.println( "        {" );
+                out.println( "            return " + p + "RowArray( this.search( con , whereClause , " + columns + " , " + mapper + " ) );" );
+                out.println( "        }\n" );
+
+                out.println( "        /** Return an array of length zero if nothing found */" );
+                out.println( "        public " + rowClass + "[] get" + rowClass + "s( String whereClause ) throws SQLException" );
+                out.println( "        {" );
+                out.println( "            return " + p + "RowArray( this.search( whereClause , " + columns + " , " + mapper + " ) );" );
+                out.println( "        }\n" );
+
+                out.println( "        /** Return an array of length zero if nothing found */" );
+                out.println( "        public " + rowClass + "[] getAll" + rowClass + "s( Connection con ) throws SQLException" );
+                out.println( "        {" );
+                out.println( "            return " + p + "RowArray( this.search( con , (String)null , " + columns + " , " + mapper + " ) );" );
+                out.println( "        }\n" );
+
+                out.println( "        /** Return an array of length zero if nothing found */" );
+                out.println( "        public " + rowClass + "[] getAll" + rowClass + "s() throws SQLException" );
+                out.println( "        {" );
+                out.println( "            return " + p + "RowArray( this.search( (String)null , " + columns + " , " + mapper + " ) );" );
+                out.println( "        }\n" );
+            }
+        }
+
+        private void printProjectionConvenienceMethods() throws Exception
+        {
+            Iterator it = projections.keySet().iterator();
+            while ( it.hasNext() )
+            {
+                String rowClass = (String)it.next() + "Row" ;
+
+                if ( tableID != null )
+                {
+                    out.println( "    /** Return null if not found */" );
+                    out.println( "    public static " + rowClass + " get" + rowClass + "( Connection con , long " + tableIDAttribute + " ) throws SQLException" );
+                    out.println( "    {" );
+                    out.println( "        return imp.get" + rowClass + "( con , " + tableIDAttribute + " );" );
+                    out.println( "    }\n" );
+
+                    out.println( "    /** Return null if not found */" );
+                    out.println( "    public static " + rowClass + " get" + rowClass + "( long " + tableIDAttribute + " ) throws SQLException" );
+                    out.println( "    {" );
+                    out.println( "        return imp.get" + rowClass + "( " + tableIDAttribute + " );" );
+                    out.println( "    }\n" );
+                }
+
+                out.println( "    /** Return an array of length zero if nothing found */" );
+                out.println( "    public static " + rowClass + "[] get" + rowClass + "s( Connection con , String column , String searchText ) throws SQLException" );
+                out.println( "    {" );
+                out.println( "        return imp.get" + rowClass + "s( con , column , searchText );" );
+                out.println( "    }\n" );
+
+                out.println( "    /** Return an array of length zero if nothing found */" );
+                out.println( "    public static " + rowClass + "[] get" + rowClass + "s( String column , String searchText ) throws SQLException" );
+                out.println( "    {" );
+                out.println( "        return imp.get" + rowClass + "s( column , searchText );" );
+                out.println( "    }\n" );
+
+                out.println( "    /** Return an array of length zero if nothing found */" );
+                out.println( "    public static " + rowClass + "[] get" + rowClass + "s( Connection con , String whereClause ) throws SQLException" );
+                out.println( "    {" );
+                out.println( "        return imp.get" + rowClass + "s( con , whereClause );" );
+                out.println( "    }\n" );
+
+                out.println( "    /** Return an array of length zero if nothing found */" );
+                out.println( "    public static " + rowClass + "[] get" + rowClass + "s( String whereClause ) throws SQLException" );
+                out.println( "    {" );
+                out.println( "        return imp.get" + rowClass + "s( whereClause );" );
+                out.println( "    }\n" );
+
+                out.println( "    /** Return an array of length zero if nothing found */" );
+                out.println( "    public static " + rowClass + "[] getAll" + rowClass + "s( Connection con ) throws SQLException" );
+                out.println( "    {" );
+                out.println( "        return imp.getAll" + rowClass + "s( con );" );
+                out.println( "    }\n" );
+
+                out.println( "    /** Return an array of length zero if nothing found */" );
+                out.println( "    public static " + rowClass + "[] getAll" + rowClass + "s() throws SQLException" );
+                out.println( "    {" );
+                out.println( "        return imp.getAll" + rowClass + "s();" );
+                out.println( "    }\n" );
+            }
+        }
+
+        private void printProjectionMockMethods() throws Exception
+        {
+            Iterator it = projections.keySet().iterator();
+            while ( it.hasNext() )
+            {
+                String rowClass = (String)it.next() + "Row" ;
+                String type = fullTableName + '.' + rowClass ;
+                String getRow = "get" + rowClass ;
+                String getRows = "get" + rowClass + "s" ;
+                String getAllRows = "getAll" + rowClass + "s" ;
+
+                if ( tableID != null )
+                {
+                    out.println( "    public Connection " + getRow + "_con = null ;" );
+                    out.println( "    public long " + getRow + "_" + tableIDAttribute + " = 0 ;" );
+                    out.println( "    public int " + getRow + "_calls = 0 ;" );
+                    out.println( "    public " + type + " " + getRow + "_return = null ;" );
+                    out.println( "    public List " + getRow + "_returns = new ArrayList(); // use this instead of " + getRow + "_return for multiple calls\n" );
+
+                    out.println( "    public " + type + " " + getRow + "( Connection con , long " + tableIDAttribute + " )" );
+                    out.println( "    {" );
+                    out.println( "        " + getRow + "_con = con ;" );
+                    out.println( "        " + getRow + "_" + tableIDAttribute + " = " + tableIDAttribute + " ;" );
+                    printMockReturns( type , getRow + "_calls" , getRow + "_return" );
+                    out.println( "    }\n" );
+
+                    out.println( "    public " + type + " " + getRow + "( long " + tableIDAttribute + " )" );
+                    out.println( "    {" );
+                    out.println( "        " + getRow + "_" + tableIDAttribute + " = " + tableIDAttribute + " ;" );
+                    printMockReturns( type , getRow + "_calls" , getRow + "_return" );
+                    out.println( "    }\n" );
+                }
+
+                out.println( "    public Connection " + getRows + "_con = null ;" );
+                out.println( "    public String " + getRows + "_column = null ;" );
+                out.println( "    public String " + getRows + "_searchText = null ;" );
+                out.println( "    public String " + getRows + "_whereClause = null ;" );
+                out.println( "    public int " + getRows + "_calls = 0 ;" );
+                out.println( "    public " + type + "[] " + getRows + "_return = null ;" );
+                out.println( "    public List " + getRows + "_returns = new ArrayList(); // use this instead of " + getRows + "_return for multiple calls\n" );
+
+                out.println( "    public " + type + "[] " + getRows + "( Connection con , String column , String searchText ) throws SQLException" );
+                out.println( "    {" );
+                out.println( "        " + getRows + "_con = con ;" );
+                out.println( "        " + getRows + "_column = column ;" );
+                out.println( "        " + getRows + "_searchText = searchText ;" );
+                printMockReturns( type + "[]" , getRows + "_calls" , getRows + "_return" );
+                out.println( "    }\n" );
+
+                out.println( "    public " + type + "[] " + getRows + "( String column , String searchText ) throws SQLException" );
+                out.println( "    {" );
+                out.println( "        " + getRows + "_column = column ;" );
+                out.println( "        " + getRows + "_searchText = searchText ;" );
+                printMockReturns( type + "[]" , getRows + "_calls" , getRows + "_return" );
+                out.println( "    }\n" );
+
+                out.println( "    public " + type + "[] " + getRows + "( Connection con , String whereClause ) throws SQLException" );
+                out.println( "    {" );
+                out.println( "        " + getRows + "_con = con ;" );
+                out.println( "        " + getRows + "_whereClause = whereClause ;" );
+                printMockReturns( type + "[]" , getRows + "_calls" , getRows + "_return" );
+                out.println( "    }\n" );
+
+                out.println( "    public " + type + "[] " + getRows + "( String whereClause ) throws SQLException" );
+                out.println( "    {" );
+                out.println( "        " + getRows + "_whereClause = whereClause ;" );
+                printMockReturns( type + "[]" , getRows + "_calls" , getRows + "_return" );
+                out.println( "    }\n" );
+
+                out.println( "    public Connection " + getAllRows + "_con = null ;" );
+                out.println( "    public int " + getAllRows + "_calls = 0 ;" );
+                out.println( "    public " + type + "[] " + getAllRows + "_return = null ;" );
+                out.println( "    public List " + getAllRows + "_returns = new ArrayList(); // use this instead of " + getAllRows + "_return for multiple calls\n" );
+
+                out.println( "    public " + type + "[] " + getAllRows + "( Connection con ) throws SQLException" );
+                out.println( "    {" );
+                out.println( "        " + getAllRows + "_con = con ;" );
+                printMockReturns( type + "[]" , getAllRows + "_calls" , getAllRows + "_return" );
+                out.println( "    }\n" );
+
+                out.println( "    public " + type + "[] " + getAllRows + "() throws SQLException" );
+                out.println( "    {" );
+                printMockReturns( type + "[]" , getAllRows + "_calls" , getAllRows + "_return" );
+                out.println( "    }\n" );
+            }
+        }
+
+        // count(), exists() and sum, min and max methods for each number column, all worked out by the database
+        private void printAggregateMethods() throws Exception
+        {
+            out.println( "    /** How many rows match, counted by the database.  Pass in null to count all rows. */" );
+            out.println( "    public static long count( Connection con , String whereClause ) throws SQLException" );
+            out.println( "    {" );
+            out.println( "        return imp.count( con , whereClause );" );
+            out.println( "    }\n" );
+
+            out.println( "    /** How many rows match, counted by the database.  Pass in null to count all rows. */" );
+            out.println( "    public static long count( String whereClause ) throws SQLException" );
+            out.println( "    {" );
+            out.println( "        return imp.count( whereClause );" );
+            out.println( "    }\n" );
+
+            out.println( "    /** True if any rows match. */" );
+            out.println( "    public static boolean exists( Connection con , String whereClause ) throws SQLException" );
+            out.println( "    {" );
+            out.println( "        return imp.exists( con , whereClause );" );
+            out.println( "    }\n" );
+
+            out.println( "    /** True if any rows match. */" );
+            out.println( "    public static boolean exists( String whereClause ) throws SQLException" );
+            out.println( "    {" );
+            out.println( "        return imp.exists( whereClause );" );
+            out.println( "    }\n" );
+
+            for ( int i = 0 ; i < sumColumns.size() ; i++ )
+            {
+                String[] column = (String[])sumColumns.get( i );
+                String x = column[ 0 ];
+                String X = column[ 1 ];
+                boolean whole = ! column[ 2 ].equals( "double" );
+                String type = whole ? "long" : "double" ;
+                String method = whole ? "imp.sumLong( " : "imp.sum( " ;  // a long total doesn't go through a double
+                String sum = method + x + "ColumnName , whereClause )" ;
+                String sumOnCon = method + "con , " + x + "ColumnName , whereClause )" ;
+
+                out.println( "    /** The total of " + x + " for the rows that match, added up by the database.  Pass in null for all rows. */" );
+                out.println( "    public static " + type + " sum" + X + "( Connection con , String whereClause ) throws SQLException" );
+                out.println( "    {" );
+                out.println( "        return " + sumOnCon + " ;" );
+                out.println( "    }\n" );
+
+                out.println( "    /** The total of " + x + " for the rows that match, added up by the database.  Pass in null for all rows. */" );
+                out.println( "    public static " + type + " sum" + X + "( String whereClause ) throws SQLException" );
+                out.println( "    {" );
+                out.println( "        return " + sum + " ;" );
+                out.println( "    }\n" );
+
+                printMinOrMax( "min" , "smallest" , column );
+                printMinOrMax( "max" , "biggest" , column );
+            }
+        }
+
+        // min<Column>() or max<Column>() for one number column:  the value the database found, as the column's own type
+        private void printMinOrMax( String aggregate , String description , String[] column ) throws Exception
+        {
+            String x = column[ 0 ];
+            String X = column[ 1 ];
+            String type = column[ 2 ];
+            String[] arguments = { "con , " , "" };
+            for ( int i = 0 ; i < arguments.length ; i++ )
+            {
+                String value = "imp." + aggregate + "( " + arguments[ i ] + x + "ColumnName , whereClause )" ;
+                out.println( "    /** The " + description + " " + x + " for the rows that match, found by the database.  Zero if none do - see" );
+                out.println( "     *  exists().  Pass in null for all rows." );
+                out.println( "     */" );
+                out.println( "    public static " + type + ' ' + aggregate + X + "( " + ( ( i == 0 ) ? "Connection con , " : "" ) + "String whereClause ) throws SQLException" );
+                out.println( "    {" );
+                if ( type.equals( "double" ) )
+                {
+                    out.println( "        String " + aggregate + " = " + value + " ;" );
+                    out.println( "        return ( " + aggregate + " == null ) ? 0.0 : Str.toDouble( " + aggregate + " );" );
+                }
+                else
+                {
+                    out.println( "        return Str.to" + ( type.equals( "int" ) ? "Int" : "Long" ) + "( " + value + " );" );
+                }
+                out.println( "    }\n" );
+            }
+        }
+
+        // the name of the getPage() argument for the ID of the last row of the page before
+        private String getAfterID()
+        {
+            return "after" + attributeName( tableID ).major ;
+        }
+
+        private void printGetPage() throws Exception
+        {
+            out.println( "        /** One page of rows in the order of orderColumns, found by where the page before ended - see DBQuery.page()." );
+            out.println( "         *" );
+            out.println( "         * @param whereClause null for all rows." );
+            out.println( "         * @param afterKey The orderColumns values of the last row of the page before, or null for the first page." );
+            out.println( "         */" );
+            out.println( "        public Row[] getPage( Connection con , String whereClause , String[] orderColumns , Object[] afterKey , int limit ) throws SQLException" );
+            out.println( "        {" );
+            out.println( "            return rowArray( this.getPage( con , whereClause , allColumns , orderColumns , afterKey , limit , mapper ) );" );
+            out.println( "        }\n" );
+
+            out.println( "        /** One page of rows in the order of orderColumns, found by where the page before ended - see DBQuery.page()." );
+            out.println( "         *" );
+            out.println( "         * @param whereClause null for all rows." );
+            out.println( "         * @param afterKey The orderColumns values of the last row of the page before, or null for the first page." );
+            out.println( "         */" );
+            out.println( "        public Row[] getPage( String whereClause , String[] orderColumns , Object[] afterKey , int limit ) throws SQLException" );
+            out.println( "        {" );
+            out.println( "            return rowArray( this.getPage( whereClause , allColumns , orderColumns , afterKey , limit , mapper ) );" );
+            out.println( "        }\n" );
+
+            if ( tableID != null )
+            {
+                String afterID = getAfterID();
+
+                out.println( "        /** The next limit rows in " + tableID + " order, after " + afterID + ".  Pass zero for the first page. */" );
+                out.println( "        public Row[] getPage( Connection con , long " + afterID + " , int limit ) throws SQLException" );
                 out.println( "        {" );
-                out.println( "            return this.insertAndGetID( con , data , \"" + tableID + "\" );" );
+                out.println( "            return getPage( con , (String)null , new String[]{ \"" + tableID + "\" } , new Object[]{ new Long( " + afterID + " ) } , limit );" );
                 out.println( "        }\n" );
 
-                out.println( "        public long insertAndGetID( Map data ) throws SQLException" );
+                out.println( "        /** The next limit rows in " + tableID + " order, after " + afterID + ".  Pass zero for the first page. */" );
+                out.println( "        public Row[] getPage( long " + afterID + " , int limit ) throws SQLException" );
                 out.println( "        {" );
-                out.println( "            return this.insertAndGetID( data , \"" + tableID + "\" );" );
+                out.println( "            return getPage( (String)null , new String[]{ \"" + tableID + "\" } , new Object[]{ new Long( " + afterID + " ) } , limit );" );
                 out.println( "        }\n" );
             }
-            out.println();
-            out.println( "    }" );
-            out.println();
+        }
+
+        private void printGetRowsByID() throws Exception
+        {
+            String ids = tableIDAttribute + "s" ;
+            String getID = "get" + attributeName( tableID ).major + "()" ;
+
+            out.println( "        // the Row for each ID found, in the order of the ID's" );
+            out.println( "        private static Map rowMap( long[] " + ids + " , List rows )" );
+            out.println( "        {" );
+            out.println( "            Map found = new HashMap();" );
+            out.println( "            for( int i = 0 ; i < rows.size() ; i++ )" );
+            out.println( "            {" );
+            out.println( "                Row row = (Row)rows.get( i );" );
+            out.println( "                found.put( new Long( row." + getID + " ) , row );" );
+            out.println( "            }" );
+            out.println( "            Map returnVal = new LinkedHashMap();" );
+            out.println( "            for( int i = 0 ; i < " + ids + ".length ; i++ )" );
+            out.println( "            {" );
+            out.println( "                Long id = new Long( " + ids + "[ i ] );" );
+            out.println( "                Object row = found.get( id );" );
+            out.println( "                if ( row != null )" );
+            out.println( "                {" );
+            out.println( "                    returnVal.put( id , row );" );
+            out.println( "                }" );
+            out.println( "            }" );
+            out.println( "            return returnVal ;" );
+            out.println( "        }\n" );
+
+            out.println( "        private static Row[] rowArray( long[] " + ids + " , Map rows )" );
+            out.println( "        {" );
+            out.println( "            Row[] returnVal = new Row[ " + ids + ".length ];" );
+            out.println( "            for( int i = 0 ; i < " + ids + ".length ; i++ )" );
+            out.println( "            {" );
+            out.println( "                returnVal[ i ] = (Row)rows.get( new Long( " + ids + "[ i ] ) );" );
+            out.println( "            }" );
+            out.println( "            return returnVal ;" );
+            out.println( "        }\n" );
+
+            out.println( "        /** Find the rows for all of these ID's at once, instead of one trip to the database for each." );
+            out.println( "         *" );
+            out.println( "         * rows[ i ] is the Row for " + ids + "[ i ], or null if there isn't one." );
+            out.println( "         */" );
+            out.println( "        public Row[] getRows( Connection con , long[] " + ids + " ) throws SQLException" );
+            out.println( "        {" );
+            out.println( "            return rowArray( " + ids + " , getRowMap( con , " + ids + " ) );" );
+            out.println( "        }\n" );
+
+            out.println( "        /** Find the rows for all of these ID's at once, instead of one trip to the database for each." );
+            out.println( "         *" );
+            out.println( "         * rows[ i ] is the Row for " + ids + "[ i ], or null if there isn't one.  Big lists are split up" );
+            out.println( "         * and searched at the same time on several connections." );
+            out.println( "         */" );
+            out.println( "        public Row[] getRows( long[] " + ids + " ) throws SQLException" );
+            out.println( "        {" );
+            out.println( "            return rowArray( " + ids + " , getRowMap( " + ids + " ) );" );
+            out.println( "        }\n" );
+
+            out.println( "        /** Find the rows for all of these ID's at once." );
+            out.println( "         *" );
+            out.println( "         * @return a Map from each ID found (a Long) to its Row, in the order of the ID's." );
+            out.println( "         */" );
+            out.println( "        public Map getRowMap( Connection con , long[] " + ids + " ) throws SQLException" );
+            out.println( "        {" );
+            out.println( "            return rowMap( " + ids + " , this.search( con , \"" + tableID + "\" , " + ids + " , allColumns , mapper ) );" );
+            out.println( "        }\n" );
+
+            out.println( "        /** Find the rows for all of these ID's at once." );
+            out.println( "         *" );
+            out.println( "         * @return a Map from each ID found (a Long) to its Row, in the order of the ID's." );
+            out.println( "         */" );
+            out.println( "        public Map getRowMap( long[] " + ids + " ) throws SQLException" );
+            out.println( "        {" );
+            out.println( "            return rowMap( " + ids + " , this.search( \"" + tableID + "\" , " + ids + " , allColumns , mapper ) );" );
+            out.println( "        }\n" );
         }
 
         private void printRowClass() throws Exception
@@ -1815,11 +3121,26 @@ public class Jenny
             out.println( "        }" );
             out.println();
 
-            out.println( "        private Row( DBResults results )" );
-            out.println( "        {" );
-            out.println( "            this( results.getRow(0) );" );
-            out.println( "        }" );
-            out.println();
+            if ( readsResultSet() )
+            {
+                out.println( "        private Row( ResultSet rs ) throws SQLException" );
+                out.println( "        {" );
+                for ( int i = 0 ; i < resultSetReaders.size() ; i++ )
+                {
+                    out.println( (String)resultSetReaders.get( i ) );
+                }
+                out.println( "            dataLoadedFromDatabase = true ;" );
+                out.println( "        }" );
+                out.println();
+            }
+            else
+            {
+                out.println( "        private Row( DBResults results )" );
+                out.println( "        {" );
+                out.println( "            this( results.getRow(0) );" );
+                out.println( "        }" );
+                out.println();
+            }
 
             // write out the "Row" getters and setters
             for ( int i = 0 ; i < gettersAndSetters.size() ; i++ )
@@ -1909,6 +3230,20 @@ public class Jenny
                 out.println( "            return imp.insertAndGetID( buildDataMap() );" );
                 out.println( "        }\n" );
 
+                out.println( "        /** create a new row with the current ID, or update the row that already has it. */" );
+                out.println( "        public void upsert( Connection con ) throws SQLException" );
+                out.println( "        {" );
+                out.println( "            imp.upsert( con , new String[]{ \"" + tableID + "\" } , buildDataMap() );" );
+                out.println( "        }" );
+                out.println();
+
+                out.println( "        /** create a new row with the current ID, or update the row that already has it. */" );
+                out.println( "        public void upsert() throws SQLException" );
+                out.println( "        {" );
+                out.println( "            imp.upsert( new String[]{ \"" + tableID + "\" } , buildDataMap() );" );
+                out.println( "        }" );
+                out.println();
+
                 out.println( "        /** delete a row object based on the id */" );
                 out.println( "        public void delete( Connection con ) throws SQLException" );
                 out.println( "        {" );
@@ -1930,6 +3265,42 @@ public class Jenny
             out.println();
         }
 
+        private void printCursorClass() throws Exception
+        {
+            out.println( "    /** Walks through the rows of a search one at a time, so only one Row is in memory at a time." );
+            out.println( "     *" );
+            out.println( "     * Close it when you are done!  (It closes itself if you read all the way to the end.)" );
+            out.println( "     */" );
+            out.println( "    public static class Cursor" );
+            out.println( "    {" );
+            out.println();
+            out.println( "        private DBCursor cursor ;" );
+            out.println();
+            out.println( "        /** Exposed for unit testing purposes only! */" );
+            out.println( "        Cursor( DBCursor cursor )" );
+            out.println( "        {" );
+            out.println( "            this.cursor = cursor ;" );
+            out.println( "        }" );
+            out.println();
+            out.println( "        public boolean hasNext()" );
+            out.println( "        {" );
+            out.println( "            return cursor.hasNext();" );
+            out.println( "        }" );
+            out.println();
+            out.println( "        public Row next()" );
+            out.println( "        {" );
+            out.println( "            return new Row( (String[])cursor.next() );" );
+            out.println( "        }" );
+            out.println();
+            out.println( "        public void close() throws SQLException" );
+            out.println( "        {" );
+            out.println( "            cursor.close();" );
+            out.println( "        }" );
+            out.println();
+            out.println( "    }" );
+            out.println();
+        }
+
         private void printConvenienceMethods() throws Exception
         {
 
@@ -1958,6 +3329,15 @@ public class Jenny
                 out.println( "    {" );
                 out.println( "        return imp.getRow( " + tableIDAttribute + " );" );
                 out.println( "    }\n" );
+
+                out.println( "    /** Like getRow( id ), but on another thread, so you can do other things while you wait." );
+                out.println( "     *" );
+                out.println( "     * get() the Row (or null if not found) from the Future." );
+                out.println( "     */" );
+                out.println( "    public static Future getRowAsync( long " + tableIDAttribute + " )" );
+                out.println( "    {" );
+                out.println( "        return imp.getRowAsync( " + tableIDAttribute + " );" );
+                out.println( "    }\n" );
             }
 
             out.println( "    /** Instantiate a Row object and fill its content based on a search" );
@@ -2042,6 +3422,69 @@ public class Jenny
             out.println( "        return imp.getRows( whereClause );" );
             out.println( "    }\n" );
 
+            if ( getsRowsByID() )
+            {
+                String ids = tableIDAttribute + "s" ;
+
+                out.println( "    /** Find the rows for all of these ID's at once.  rows[ i ] is the Row for " + ids + "[ i ], or null. */" );
+                out.println( "    public static Row[] getRows( Connection con , long[] " + ids + " ) throws SQLException" );
+                out.println( "    {" );
+                out.println( "        return imp.getRows( con , " + ids + " );" );
+                out.println( "    }\n" );
+
+                out.println( "    /** Find the rows for all of these ID's at once.  rows[ i ] is the Row for " + ids + "[ i ], or null. */" );
+                out.println( "    public static Row[] getRows( long[] " + ids + " ) throws SQLException" );
+                out.println( "    {" );
+                out.println( "        return imp.getRows( " + ids + " );" );
+                out.println( "    }\n" );
+
+                out.println( "    /** Find the rows for all of these ID's at once:  a Map from each ID found (a Long) to its Row. */" );
+                out.println( "    public static Map getRowMap( Connection con , long[] " + ids + " ) throws SQLException" );
+                out.println( "    {" );
+                out.println( "        return imp.getRowMap( con , " + ids + " );" );
+                out.println( "    }\n" );
+
+                out.println( "    /** Find the rows for all of these ID's at once:  a Map from each ID found (a Long) to its Row. */" );
+                out.println( "    public static Map getRowMap( long[] " + ids + " ) throws SQLException" );
+                out.println( "    {" );
+                out.println( "        return imp.getRowMap( " + ids + " );" );
+                out.println( "    }\n" );
+            }
+
+            if ( readsResultSet() )
+            {
+                out.println( "    /** One page of rows in the order of orderColumns.  afterKey is the orderColumns values of the last row of" );
+                out.println( "     *  the page before, or null for the first page - see DBQuery.page(). */" );
+                out.println( "    public static Row[] getPage( Connection con , String whereClause , String[] orderColumns , Object[] afterKey , int limit ) throws SQLException" );
+                out.println( "    {" );
+                out.println( "        return imp.getPage( con , whereClause , orderColumns , afterKey , limit );" );
+                out.println( "    }\n" );
+
+                out.println( "    /** One page of rows in the order of orderColumns.  afterKey is the orderColumns values of the last row of" );
+                out.println( "     *  the page before, or null for the first page - see DBQuery.page(). */" );
+                out.println( "    public static Row[] getPage( String whereClause , String[] orderColumns , Object[] afterKey , int limit ) throws SQLException" );
+                out.println( "    {" );
+                out.println( "        return imp.getPage( whereClause , orderColumns , afterKey , limit );" );
+                out.println( "    }\n" );
+
+                if ( tableID != null )
+                {
+                    String afterID = getAfterID();
+
+                    out.println( "    /** The next limit rows in " + tableID + " order, after " + afterID + ".  Pass zero for the first page. */" );
+                    out.println( "    public static Row[] getPage( Connection con , long " + afterID + " , int limit ) throws SQLException" );
+                    out.println( "    {" );
+                    out.println( "        return imp.getPage( con , " + afterID + " , limit );" );
+                    out.println( "    }\n" );
+
+                    out.println( "    /** The next limit rows in " + tableID + " order, after " + afterID + ".  Pass zero for the first page. */" );
+                    out.println( "    public static Row[] getPage( long " + afterID + " , int limit ) throws SQLException" );
+                    out.println( "    {" );
+                    out.println( "        return imp.getPage( " + afterID + " , limit );" );
+                    out.println( "    }\n" );
+                }
+            }
+
             if ( spatialColumnCount == 1 )
             {
                 out.println( spatialGetRows_knownSpatialColumn );
@@ -2064,6 +3507,26 @@ public class Jenny
             out.println( "        return imp.getAllRows();" );
             out.println( "    }\n" );
 
+            printAggregateMethods();
+
+            out.println( "    /** Read the rows one at a time as you need them.  Close the cursor when you are done!" );
+            out.println( "     *" );
+            out.println( "     * @param whereClause null for all rows." );
+            out.println( "     */" );
+            out.println( "    public static Cursor getCursor( Connection con , String whereClause ) throws SQLException" );
+            out.println( "    {" );
+            out.println( "        return imp.getCursor( con , whereClause );" );
+            out.println( "    }\n" );
+
+            out.println( "    /** Read the rows one at a time as you need them.  Close the cursor when you are done!" );
+            out.println( "     *" );
+            out.println( "     * @param whereClause null for all rows." );
+            out.println( "     */" );
+            out.println( "    public static Cursor getCursor( String whereClause ) throws SQLException" );
+            out.println( "    {" );
+            out.println( "        return imp.getCursor( whereClause );" );
+            out.println( "    }\n" );
+
 
             out.println( "    public static DBResults search( Connection con , String column , String searchText , String[] dataColumns ) throws SQLException" );
             out.println( "    {" );
@@ -2171,6 +3634,16 @@ public class Jenny
                 out.println( "    {" );
                 out.println( "        imp.insert( data );" );
                 out.println( "    }\n" );
+
+                out.println( "    public static void insert( Connection con , Row[] rows ) throws SQLException" );
+                out.println( "    {" );
+                out.println( "        imp.insert( con , rows );" );
+                out.println( "    }\n" );
+
+                out.println( "    public static void insert( Row[] rows ) throws SQLException" );
+                out.println( "    {" );
+                out.println( "        imp.insert( rows );" );
+                out.println( "    }\n" );
             }
             else
             {
@@ -2183,8 +3656,19 @@ public class Jenny
                 out.println( "    {" );
                 out.println( "        return imp.insertAndGetID( data );" );
                 out.println( "    }\n" );
+
+                out.println( "    public static long[] insert( Connection con , Row[] rows ) throws SQLException" );
+                out.println( "    {" );
+                out.println( "        return imp.insert( con , rows );" );
+                out.println( "    }\n" );
+
+                out.println( "    public static long[] insert( Row[] rows ) throws SQLException" );
+                out.println( "    {" );
+                out.println( "        return imp.insert( rows );" );
+                out.println( "    }\n" );
             }
 
+            printProjectionConvenienceMethods();
 
         }
 
@@ -2258,6 +3742,20 @@ public class Jenny
                 out.println( "            insert_calls++;" );
                 out.println( "            return insert_return ;" );
                 out.println( "        }\n" );
+
+                out.println( "        public Connection upsert_con = null ;" );
+                out.println( "        public int upsert_calls = 0 ;\n" );
+
+                out.println( "        public void upsert( Connection con ) throws SQLException" );
+                out.println( "        {" );
+                out.println( "            upsert_con = con ;" );
+                out.println( "            upsert_calls++;" );
+                out.println( "        }\n" );
+
+                out.println( "        public void upsert() throws SQLException" );
+                out.println( "        {" );
+                out.println( "            upsert_calls++;" );
+                out.println( "        }\n" );
             }
             else
             {
@@ -2295,6 +3793,182 @@ public class Jenny
 
         }
 
+        private void printMockAggregates() throws Exception
+        {
+            out.println( "    public Connection count_con = null ;" );
+            out.println( "    public String count_whereClause = null ;" );
+            out.println( "    public int count_calls = 0 ;" );
+            out.println( "    public long count_return = 0 ;\n" );
+
+            out.println( "    public long count( Connection con , String whereClause ) throws SQLException" );
+            out.println( "    {" );
+            out.println( "        count_con = con ;" );
+            out.println( "        count_whereClause = whereClause ;" );
+            out.println( "        count_calls++;" );
+            out.println( "        return count_return ;" );
+            out.println( "    }\n" );
+
+            out.println( "    public long count( String whereClause ) throws SQLException" );
+            out.println( "    {" );
+            out.println( "        count_whereClause = whereClause ;" );
+            out.println( "        count_calls++;" );
+            out.println( "        return count_return ;" );
+            out.println( "    }\n" );
+
+            out.println( "    public Connection exists_con = null ;" );
+            out.println( "    public String exists_whereClause = null ;" );
+            out.println( "    public int exists_calls = 0 ;" );
+            out.println( "    public boolean exists_return = false ;\n" );
+
+            out.println( "    public boolean exists( Connection con , String whereClause ) throws SQLException" );
+            out.println( "    {" );
+            out.println( "        exists_con = con ;" );
+            out.println( "        exists_whereClause = whereClause ;" );
+            out.println( "        exists_calls++;" );
+            out.println( "        return exists_return ;" );
+            out.println( "    }\n" );
+
+            out.println( "    public boolean exists( String whereClause ) throws SQLException" );
+            out.println( "    {" );
+            out.println( "        exists_whereClause = whereClause ;" );
+            out.println( "        exists_calls++;" );
+            out.println( "        return exists_return ;" );
+            out.println( "    }\n" );
+
+            if ( sumColumns.size() > 0 )
+            {
+                out.println( "    public Connection sum_con = null ;" );
+                out.println( "    public String sum_column = null ;" );
+                out.println( "    public String sum_whereClause = null ;" );
+                out.println( "    public int sum_calls = 0 ;" );
+                out.println( "    public double sum_return = 0.0 ;\n" );
+
+                out.println( "    public double sum( Connection con , String column , String whereClause ) throws SQLException" );
+                out.println( "    {" );
+                out.println( "        sum_con = con ;" );
+                out.println( "        sum_column = column ;" );
+                out.println( "        sum_whereClause = whereClause ;" );
+                out.println( "        sum_calls++;" );
+                out.println( "        return sum_return ;" );
+                out.println( "    }\n" );
+
+                out.println( "    public double sum( String column , String whereClause ) throws SQLException" );
+                out.println( "    {" );
+                out.println( "        sum_column = column ;" );
+                out.println( "        sum_whereClause = whereClause ;" );
+                out.println( "        sum_calls++;" );
+                out.println( "        return sum_return ;" );
+                out.println( "    }\n" );
+
+                out.println( "    public Connection sumLong_con = null ;" );
+                out.println( "    public String sumLong_column = null ;" );
+                out.println( "    public String sumLong_whereClause = null ;" );
+                out.println( "    public int sumLong_calls = 0 ;" );
+                out.println( "    public long sumLong_return = 0 ;\n" );
+
+                out.println( "    public long sumLong( Connection con , String column , String whereClause ) throws SQLException" );
+                out.println( "    {" );
+                out.println( "        sumLong_con = con ;" );
+                out.println( "        sumLong_column = column ;" );
+                out.println( "        sumLong_whereClause = whereClause ;" );
+                out.println( "        sumLong_calls++;" );
+                out.println( "        return sumLong_return ;" );
+                out.println( "    }\n" );
+
+                out.println( "    public long sumLong( String column , String whereClause ) throws SQLException" );
+                out.println( "    {" );
+                out.println( "        sumLong_column = column ;" );
+                out.println( "        sumLong_whereClause = whereClause ;" );
+                out.println( "        sumLong_calls++;" );
+                out.println( "        return sumLong_return ;" );
+                out.println( "    }\n" );
+
+                printMockMinOrMax( "min" );
+                printMockMinOrMax( "max" );
+            }
+        }
+
+        private void printMockMinOrMax( String aggregate ) throws Exception
+        {
+            out.println( "    public Connection " + aggregate + "_con = null ;" );
+            out.println( "    public String " + aggregate + "_column = null ;" );
+            out.println( "    public String " + aggregate + "_whereClause = null ;" );
+            out.println( "    public int " + aggregate + "_calls = 0 ;" );
+            out.println( "    public String " + aggregate + "_return = null ;\n" );
+
+            out.println( "    public String " + aggregate + "( Connection con , String column , String whereClause ) throws SQLException" );
+            out.println( "    {" );
+            out.println( "        " + aggregate + "_con = con ;" );
+            out.println( "        " + aggregate + "_column = column ;" );
+            out.println( "        " + aggregate + "_whereClause = whereClause ;" );
+            out.println( "        " + aggregate + "_calls++;" );
+            out.println( "        return " + aggregate + "_return ;" );
+            out.println( "    }\n" );
+
+            out.println( "    public String " + aggregate + "( String column , String whereClause ) throws SQLException" );
+            out.println( "    {" );
+            out.println( "        " + aggregate + "_column = column ;" );
+            out.println( "        " + aggregate + "_whereClause = whereClause ;" );
+            out.println( "        " + aggregate + "_calls++;" );
+            out.println( "        return " + aggregate + "_return ;" );
+            out.println( "    }\n" );
+        }
+
+        private void printMockGetPage() throws Exception
+        {
+            String rows = fullTableName + ".Row[]" ;
+
+            out.println( "    public Connection getPage_con = null ;" );
+            out.println( "    public String getPage_whereClause = null ;" );
+            out.println( "    public String[] getPage_orderColumns = null ;" );
+            out.println( "    public Object[] getPage_afterKey = null ;" );
+            out.println( "    public int getPage_limit = 0 ;" );
+            out.println( "    public int getPage_calls = 0 ;" );
+            out.println( "    public " + rows + " getPage_return = null ;" );
+            out.println( "    public List getPage_returns = new ArrayList(); // use this instead of getPage_return for multiple calls\n" );
+
+            out.println( "    public " + rows + " getPage( Connection con , String whereClause , String[] orderColumns , Object[] afterKey , int limit ) throws SQLException" );
+            out.println( "    {" );
+            out.println( "        getPage_con = con ;" );
+            out.println( "        getPage_whereClause = whereClause ;" );
+            out.println( "        getPage_orderColumns = orderColumns ;" );
+            out.println( "        getPage_afterKey = afterKey ;" );
+            out.println( "        getPage_limit = limit ;" );
+            printMockReturns( rows , "getPage_calls" , "getPage_return" );
+            out.println( "    }\n" );
+
+            out.println( "    public " + rows + " getPage( String whereClause , String[] orderColumns , Object[] afterKey , int limit ) throws SQLException" );
+            out.println( "    {" );
+            out.println( "        getPage_whereClause = whereClause ;" );
+            out.println( "        getPage_orderColumns = orderColumns ;" );
+            out.println( "        getPage_afterKey = afterKey ;" );
+            out.println( "        getPage_limit = limit ;" );
+            printMockReturns( rows , "getPage_calls" , "getPage_return" );
+            out.println( "    }\n" );
+
+            if ( tableID != null )
+            {
+                String afterID = getAfterID();
+
+                out.println( "    public long getPage_" + afterID + " = 0 ;\n" );
+
+                out.println( "    public " + rows + " getPage( Connection con , long " + afterID + " , int limit ) throws SQLException" );
+                out.println( "    {" );
+                out.println( "        getPage_con = con ;" );
+                out.println( "        getPage_" + afterID + " = " + afterID + " ;" );
+                out.println( "        getPage_limit = limit ;" );
+                printMockReturns( rows , "getPage_calls" , "getPage_return" );
+                out.println( "    }\n" );
+
+                out.println( "    public " + rows + " getPage( long " + afterID + " , int limit ) throws SQLException" );
+                out.println( "    {" );
+                out.println( "        getPage_" + afterID + " = " + afterID + " ;" );
+                out.println( "        getPage_limit = limit ;" );
+                printMockReturns( rows , "getPage_calls" , "getPage_return" );
+                out.println( "    }\n" );
+            }
+        }
+
         private void printMockConvenienceMethods() throws Exception
         {
             out.println( "    public Connection getRow_con = null ;" );
@@ -2401,6 +4075,52 @@ public class Jenny
             printMockReturns( fullTableName + ".Row[]" , "getRows_calls" , "getRows_return" );
             out.println( "    }\n" );
 
+            if ( getsRowsByID() )
+            {
+                String ids = tableIDAttribute + "s" ;
+
+                out.println( "    public long[] getRows_" + ids + " = null ;\n" );
+
+                out.println( "    public " + fullTableName + ".Row[] getRows( Connection con , long[] " + ids + " ) throws SQLException" );
+                out.println( "    {" );
+                out.println( "        getRows_con = con ;" );
+                out.println( "        getRows_" + ids + " = " + ids + " ;" );
+                printMockReturns( fullTableName + ".Row[]" , "getRows_calls" , "getRows_return" );
+                out.println( "    }\n" );
+
+                out.println( "    public " + fullTableName + ".Row[] getRows( long[] " + ids + " ) throws SQLException" );
+                out.println( "    {" );
+                out.println( "        getRows_" + ids + " = " + ids + " ;" );
+                printMockReturns( fullTableName + ".Row[]" , "getRows_calls" , "getRows_return" );
+                out.println( "    }\n" );
+
+                out.println( "    public Connection getRowMap_con = null ;" );
+                out.println( "    public long[] getRowMap_" + ids + " = null ;" );
+                out.println( "    public int getRowMap_calls = 0 ;" );
+                out.println( "    public Map getRowMap_return = null ;" );
+                out.println( "    public List getRowMap_returns = new ArrayList(); // use this instead of getRowMap_return for multiple calls\n" );
+
+                out.println( "    public Map getRowMap( Connection con , long[] " + ids + " ) throws SQLException" );
+                out.println( "    {" );
+                out.println( "        getRowMap_con = con ;" );
+                out.println( "        getRowMap_" + ids + " = " + ids + " ;" );
+                printMockReturns( "Map" , "getRowMap_calls" , "getRowMap_return" );
+                out.println( "    }\n" );
+
+                out.println( "    public Map getRowMap( long[] " + ids + " ) throws SQLException" );
+                out.println( "    {" );
+                out.println( "        getRowMap_" + ids + " = " + ids + " ;" );
+                printMockReturns( "Map" , "getRowMap_calls" , "getRowMap_return" );
+                out.println( "    }\n" );
+            }
+
+            if ( readsResultSet() )
+            {
+                printMockGetPage();
+            }
+
+            printMockAggregates();
+
             out.println( "    public Connection getAllRows_con = null ;" );
             out.println( "    public int getAllRows_calls = 0 ;" );
             out.println( "    public " + fullTableName + ".Row[] getAllRows_return = null ;" );
@@ -2417,6 +4137,24 @@ public class Jenny
             printMockReturns( fullTableName + ".Row[]" , "getAllRows_calls" , "getAllRows_return" );
             out.println( "    }\n" );
 
+            out.println( "    public Connection getCursor_con = null ;" );
+            out.println( "    public String getCursor_whereClause = null ;" );
+            out.println( "    public int getCursor_calls = 0 ;" );
+            out.println( "    public DBResults getCursor_return = null ; // the rows the cursor will hand out\n" );
+
+            out.println( "    public " + fullTableName + ".Cursor getCursor( Connection con , String whereClause ) throws SQLException" );
+            out.println( "    {" );
+            out.println( "        getCursor_con = con ;" );
+            out.println( "        return getCursor( whereClause );" );
+            out.println( "    }\n" );
+
+            out.println( "    public " + fullTableName + ".Cursor getCursor( String whereClause ) throws SQLException" );
+            out.println( "    {" );
+            out.println( "        getCursor_whereClause = whereClause ;" );
+            out.println( "        getCursor_calls++;" );
+            out.println( "        return new " + fullTableName + ".Cursor( new DBCursor( ( getCursor_return == null ) ? new DBResults() : getCursor_return ) );" );
+            out.println( "    }\n" );
+
             out.println( "    public Connection search_con = null ;" );
             out.println( "    public String search_column = null ;" );
             out.println( "    public Object search_searchText = null ; // could be a String or String[]" );
@@ -2569,6 +4307,22 @@ public class Jenny
                 out.println( "        insert_data_list.add( data );" );
                 out.println( "        insert_calls++;" );
                 out.println( "    }\n" );
+
+                out.println( "    public Connection insertRows_con = null ;" );
+                out.println( "    public " + fullTableName + ".Row[] insertRows_rows = null ;" );
+                out.println( "    public int insertRows_calls = 0 ;\n" );
+
+                out.println( "    public void insert( Connection con , " + fullTableName + ".Row[] rows ) throws SQLException" );
+                out.println( "    {" );
+                out.println( "        insertRows_con = con ;" );
+                out.println( "        insert( rows );" );
+                out.println( "    }\n" );
+
+                out.println( "    public void insert( " + fullTableName + ".Row[] rows ) throws SQLException" );
+                out.println( "    {" );
+                out.println( "        insertRows_rows = rows ;" );
+                out.println( "        insertRows_calls++;" );
+                out.println( "    }\n" );
             }
             else
             {
@@ -2591,18 +4345,38 @@ public class Jenny
                 out.println( "        insertAndGetID_calls++ ;" );
                 out.println( "        return insertAndGetID_return ;" );
                 out.println( "    }\n" );
+
+                out.println( "    public Connection insertRows_con = null ;" );
+                out.println( "    public " + fullTableName + ".Row[] insertRows_rows = null ;" );
+                out.println( "    public int insertRows_calls = 0 ;" );
+                out.println( "    public long[] insertRows_return = new long[ 0 ];\n" );
+
+                out.println( "    public long[] insert( Connection con , " + fullTableName + ".Row[] rows ) throws SQLException" );
+                out.println( "    {" );
+                out.println( "        insertRows_con = con ;" );
+                out.println( "        return insert( rows );" );
+                out.println( "    }\n" );
+
+                out.println( "    public long[] insert( " + fullTableName + ".Row[] rows ) throws SQLException" );
+                out.println( "    {" );
+                out.println( "        insertRows_rows = rows ;" );
+                out.println( "        insertRows_calls++ ;" );
+                out.println( "        return insertRows_return ;" );
+                out.println( "    }\n" );
             }
 
+            printProjectionMockMethods();
+
         }
 
     }
 
     private void processTable( DatabaseMetaData metaData , String tableName , String suffix , Properties properties ) throws Exception
     {
-        new TableProcessor( metaData , tableName , suffix , properties );
+        new TableProcessor( metaData , tableName , suffix , properties ).generate();
     }
 
-    // exposed for unit testing purposes
+    // exposed for unit testing purposes.  Reads the table, but doesn't write any files.
     public TableProcessor getTableProcessor( DatabaseMetaData metaData , String tableName , String suffix , Properties properties ) throws Exception
     {
         return new TableProcessor( metaData , tableName , suffix , properties );
@@ -0,0 +1,104 @@
+package com.javaranch.db ;
+
+import java.util.concurrent.atomic.AtomicLong ;
+import java.util.concurrent.atomic.AtomicLongArray ;
+
+/** Counts how long things take, cheaply enough to do on every database call.
+ *
+ * Times are kept in microseconds, in buckets that double in size:  under 1, under 2, under 4, under 8 and so on.  So a
+ * percentile is only known to within a factor of two, which is plenty to tell a 3 ms query from a 300 ms query.
+ * Recording a time is a few atomic adds - no locks and no memory allocated.
+ */
+public class LatencyHistogram
+{
+
+    // bucket i holds times under 2^i microseconds (and at least 2^(i-1)).  The last bucket holds everything longer.
+    private static final int BUCKETS = 40 ;
+
+    private final AtomicLongArray buckets = new AtomicLongArray( BUCKETS );
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public void record( long nanos )
+    {
+        long micros = Math.max( 0 , nanos / 1000 );
+        int bucket = Math.min( BUCKETS - 1 , 64 - Long.numberOfLeadingZeros( micros ) );
+        buckets.incrementAndGet( bucket );
+        count.incrementAndGet();
+        totalMicros.addAndGet( micros );
+        long max = maxMicros.get();
+        while ( ( micros > max ) && ! maxMicros.compareAndSet( max , micros ) )
+        {
+            max = maxMicros.get();
+        }
+    }
+
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    public long getTotalMicros()
+    {
+        return totalMicros.get();
+    }
+
+    public long getMaxMicros()
+    {
+        return maxMicros.get();
+    }
+
+    public double getAverageMillis()
+    {
+        long n = count.get();
+        return ( n == 0 ) ? 0 : totalMicros.get() / 1000.0 / n ;
+    }
+
+    /** How long it took, at most, for this share of the times.  getPercentileMicros( 0.99 ) is the 99th percentile.
+     *
+     * @return the top of the bucket the percentile lands in, but never more than the longest time.
+     */
+    public long getPercentileMicros( double fraction )
+    {
+        long returnVal = 0 ;
+        long n = count.get();
+        if ( n > 0 )
+        {
+            long wanted = Math.max( 1 , (long)Math.ceil( n * fraction ) );
+            long seen = 0 ;
+            int bucket = 0 ;
+            while ( ( bucket < BUCKETS - 1 ) && ( seen + buckets.get( bucket ) < wanted ) )
+            {
+                seen += buckets.get( bucket );
+                bucket++ ;
+            }
+            returnVal = Math.min( 1L << bucket , maxMicros.get() );
+        }
+        return returnVal ;
+    }
+
+    public double getPercentileMillis( double fraction )
+    {
+        return getPercentileMicros( fraction ) / 1000.0 ;
+    }
+
+    public void reset()
+    {
+        for ( int i = 0 ; i < BUCKETS ; i++ )
+        {
+            buckets.set( i , 0 );
+        }
+        count.set( 0 );
+        totalMicros.set( 0 );
+        maxMicros.set( 0 );
+    }
+
+    public String toString()
+    {
+        return "count=" + getCount() + "|avgMs=" + getAverageMillis() + "|p50Ms=" + getPercentileMillis( 0.5 )
+               + "|p95Ms=" + getPercentileMillis( 0.95 ) + "|p99Ms=" + getPercentileMillis( 0.99 )
+               + "|maxMs=" + ( getMaxMicros() / 1000.0 );
+    }
+
+}
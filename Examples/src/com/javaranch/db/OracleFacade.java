@@ -11,16 +11,19 @@ public class OracleFacade extends DBFacade
     public OracleFacade( String jndiLookup )
     {
         super( jndiLookup );
+        setDialect( Dialect.ORACLE );
     }
 
     public OracleFacade( String databaseDriver , String databaseURL )
     {
         super( databaseDriver , databaseURL );
+        setDialect( Dialect.ORACLE );
     }
 
     public OracleFacade( String driver , String databaseURL , String databaseName , String databasePassword )
     {
         super( driver , databaseURL , databaseName , databasePassword );
+        setDialect( Dialect.ORACLE );
     }
 
     protected PreparedStatement getPreparedStatementForInsert( Connection con , String sql , String idColumnName ) throws Exception
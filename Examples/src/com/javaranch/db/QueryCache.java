@@ -0,0 +1,403 @@
+package com.javaranch.db ;
+
+import java.util.* ;
+import java.security.InvalidParameterException ;
+
+/** Keep the results of searches in memory so the same search doesn't go to the database again.
+ *
+ * Nothing is cached until a table is given a time to live.  A search across several tables is kept for the shortest
+ * time of them all, and not at all if any of them has no time to live.
+ *
+ * <pre>
+ *
+ *    QueryCache cache = new QueryCache( 10 * 1024 * 1024 );
+ *    cache.setTTL( "Country" , 60 * 60 * 1000 );
+ *    cache.setTTL( "Animal" , 30 * 1000 );
+ *    facade.setQueryCache( cache );
+ *
+ * </pre>
+ *
+ * When the cache gets bigger than maxBytes (a rough guess of how much memory the results use), the least recently used
+ * results are thrown away.
+ *
+ * Every insert, update and delete that goes through the DBFacade throws away the cached results for that table.
+ * executeUpdate() does the same when it can tell the table from the SQL, and clears the whole cache when it can't.
+ * Changes made some other way (another program, a stored procedure) are only seen once the time to live runs out.
+ * Searches inside a transaction don't use the cache at all, since they can see changes that nobody else can yet.
+ *
+ * Only search( DBQuery ) and the search() methods built on it use the cache.
+ */
+public class QueryCache
+{
+
+    // a guess at the memory for each row and each value, on top of the characters
+    private static final int ROW_OVERHEAD = 32 ;
+    private static final int VALUE_OVERHEAD = 48 ;
+
+    private final long maxBytes ;
+    private long defaultTTL = 0 ;
+
+    // lower case table name -> Long milliseconds
+    private final Map ttls = new HashMap();
+
+    // DBQuery -> Entry, least recently used first
+    private final LinkedHashMap entries = new LinkedHashMap( 16 , 0.75f , true );
+
+    // lower case table name -> Set of DBQuery
+    private final Map tableEntries = new HashMap();
+
+    private long bytes = 0 ;
+
+    // lower case table name -> Long that goes up every time the table changes
+    private final Map changeCounts = new HashMap();
+
+    // goes up every time everything is thrown away
+    private long clearCount = 0 ;
+
+    private long hits = 0 ;
+    private long misses = 0 ;
+    private long evictions = 0 ;
+    private long expirations = 0 ;
+    private long invalidations = 0 ;
+
+    private static class Entry
+    {
+        DBResults results ;
+        String[] tables ;
+        long expires ;
+        long bytes ;
+    }
+
+    /**
+     * @param maxBytes About how much memory the cached results may use.
+     */
+    public QueryCache( long maxBytes )
+    {
+        if ( maxBytes < 1 )
+        {
+            throw new InvalidParameterException( "maxBytes must be at least one" );
+        }
+        this.maxBytes = maxBytes ;
+    }
+
+    /** How long results from this table may be used.
+     *
+     * @param millis 0 to not cache this table at all.
+     */
+    public synchronized void setTTL( String table , long millis )
+    {
+        if ( millis < 0 )
+        {
+            throw new InvalidParameterException( "millis is not allowed to be negative" );
+        }
+        ttls.put( table.trim().toLowerCase() , new Long( millis ) );
+        invalidate( table );
+    }
+
+    /** How long results may be used from tables that haven't been given their own time.  Starts at 0 (not cached). */
+    public synchronized void setDefaultTTL( long millis )
+    {
+        if ( millis < 0 )
+        {
+            throw new InvalidParameterException( "millis is not allowed to be negative" );
+        }
+        defaultTTL = millis ;
+        clear();
+    }
+
+    public synchronized long getTTL( String table )
+    {
+        Long ttl = (Long)ttls.get( table.trim().toLowerCase() );
+        return ( ttl == null ) ? defaultTTL : ttl.longValue() ;
+    }
+
+    // the shortest time to live of all the tables
+    private long getTTL( String[] tables )
+    {
+        long returnVal = Long.MAX_VALUE ;
+        for ( int i = 0 ; i < tables.length ; i++ )
+        {
+            returnVal = Math.min( returnVal , getTTL( tables[ i ] ) );
+        }
+        return returnVal ;
+    }
+
+    /** True if results for this query would be kept. */
+    public synchronized boolean isCacheable( DBQuery q )
+    {
+        return getTTL( getTables( q.getTable() ) ) > 0 ;
+    }
+
+    /** The cached results for the query, or null.
+     *
+     * The DBResults is a copy, so it's yours to change.
+     */
+    public synchronized DBResults get( DBQuery q )
+    {
+        DBResults returnVal = null ;
+        Entry entry = (Entry)entries.get( q );
+        if ( ( entry != null ) && ( entry.expires <= System.currentTimeMillis() ) )
+        {
+            remove( q );
+            expirations++ ;
+            entry = null ;
+        }
+        if ( entry == null )
+        {
+            misses++ ;
+        }
+        else
+        {
+            hits++ ;
+            returnVal = copy( entry.results );
+        }
+        return returnVal ;
+    }
+
+    /** Get this before going to the database and hand it to put() after.
+     *
+     * Only changes to the query's own tables count, so a change to some other table doesn't keep the results out.
+     */
+    synchronized long getChangeCount( DBQuery q )
+    {
+        return getChangeCount( getTables( q.getTable() ) );
+    }
+
+    // The counts only ever go up, so the total is the same only if none of the tables changed.
+    private long getChangeCount( String[] tables )
+    {
+        long returnVal = clearCount ;
+        for ( int i = 0 ; i < tables.length ; i++ )
+        {
+            Long count = (Long)changeCounts.get( tables[ i ] );
+            if ( count != null )
+            {
+                returnVal += count.longValue();
+            }
+        }
+        return returnVal ;
+    }
+
+    /** Keep the results for the query.
+     *
+     * @param changeCount from getChangeCount() before the search.  If one of the query's tables was changed since then,
+     *                    the results might be old already and are not kept.
+     */
+    synchronized void put( DBQuery q , DBResults results , long changeCount )
+    {
+        String[] tables = getTables( q.getTable() );
+        long ttl = getTTL( tables );
+        if ( ( ttl > 0 ) && ( changeCount == getChangeCount( tables ) ) )
+        {
+            Entry entry = new Entry();
+            entry.results = copy( results );
+            entry.tables = tables ;
+            entry.expires = System.currentTimeMillis() + ttl ;
+            entry.bytes = estimateBytes( results );
+            if ( entry.bytes <= maxBytes )
+            {
+                DBQuery key = q.copy();
+                remove( key );
+                entries.put( key , entry );
+                bytes += entry.bytes ;
+                for ( int i = 0 ; i < tables.length ; i++ )
+                {
+                    Set keys = (Set)tableEntries.get( tables[ i ] );
+                    if ( keys == null )
+                    {
+                        keys = new HashSet();
+                        tableEntries.put( tables[ i ] , keys );
+                    }
+                    keys.add( key );
+                }
+                evict();
+            }
+        }
+    }
+
+    /** Throw away everything cached that uses this table. */
+    public synchronized void invalidate( String table )
+    {
+        String name = table.trim().toLowerCase();
+        Long count = (Long)changeCounts.get( name );
+        changeCounts.put( name , new Long( ( count == null ) ? 1 : count.longValue() + 1 ) );
+        Set keys = (Set)tableEntries.get( name );
+        if ( keys != null )
+        {
+            Iterator it = new ArrayList( keys ).iterator();
+            while ( it.hasNext() )
+            {
+                remove( it.next() );
+                invalidations++ ;
+            }
+        }
+    }
+
+    /** Throw away everything. */
+    public synchronized void clear()
+    {
+        clearCount++ ;
+        invalidations += entries.size();
+        entries.clear();
+        tableEntries.clear();
+        bytes = 0 ;
+    }
+
+    // throw away the least recently used until it all fits
+    private void evict()
+    {
+        Iterator it = entries.entrySet().iterator();
+        while ( ( bytes > maxBytes ) && it.hasNext() )
+        {
+            Map.Entry oldest = (Map.Entry)it.next();
+            it.remove();
+            forget( oldest.getKey() , (Entry)oldest.getValue() );
+            evictions++ ;
+        }
+    }
+
+    private void remove( Object key )
+    {
+        Entry entry = (Entry)entries.remove( key );
+        if ( entry != null )
+        {
+            forget( key , entry );
+        }
+    }
+
+    // the key is already out of entries - take it out of everything else
+    private void forget( Object key , Entry entry )
+    {
+        bytes -= entry.bytes ;
+        for ( int i = 0 ; i < entry.tables.length ; i++ )
+        {
+            Set keys = (Set)tableEntries.get( entry.tables[ i ] );
+            if ( keys != null )
+            {
+                keys.remove( key );
+                if ( keys.isEmpty() )
+                {
+                    tableEntries.remove( entry.tables[ i ] );
+                }
+            }
+        }
+    }
+
+    private static DBResults copy( DBResults results )
+    {
+        DBResults returnVal = new DBResults();
+        returnVal.setColumnTypes( results.getColumnTypes() );
+        for ( int i = 0 ; i < results.size() ; i++ )
+        {
+            returnVal.add( results.getRow( i ).clone() );
+        }
+        return returnVal ;
+    }
+
+    private static long estimateBytes( DBResults results )
+    {
+        long returnVal = ROW_OVERHEAD ;
+        for ( int i = 0 ; i < results.size() ; i++ )
+        {
+            String[] row = results.getRow( i );
+            returnVal += ROW_OVERHEAD ;
+            for ( int j = 0 ; j < row.length ; j++ )
+            {
+                returnVal += VALUE_OVERHEAD ;
+                if ( row[ j ] != null )
+                {
+                    returnVal += row[ j ].length() * 2 ;
+                }
+            }
+        }
+        return returnVal ;
+    }
+
+    /** The lower case names of the tables in a FROM clause like "Animal a, Farm f" or "Animal JOIN Farm ON ...". */
+    static String[] getTables( String tableList )
+    {
+        String[] parts = tableList.replaceAll( "(?i)\\sjoin\\s" , "," ).split( "," );
+        List tables = new ArrayList();
+        for ( int i = 0 ; i < parts.length ; i++ )
+        {
+            String part = parts[ i ].trim();
+            if ( part.length() > 0 )
+            {
+                tables.add( part.split( "\\s+" )[ 0 ].toLowerCase() );
+            }
+        }
+        return (String[])tables.toArray( new String[ tables.size() ] );
+    }
+
+    /** The table changed by an INSERT, UPDATE, DELETE, MERGE or TRUNCATE, or null if it can't be told from the SQL. */
+    static String getChangedTable( String sql )
+    {
+        String returnVal = null ;
+        String[] words = sql.trim().split( "[\\s(]+" );
+        if ( words.length >= 2 )
+        {
+            String verb = words[ 0 ].toLowerCase();
+            String next = words[ 1 ].toLowerCase();
+            if ( verb.equals( "update" ) )
+            {
+                returnVal = words[ 1 ];
+            }
+            else if ( ( words.length >= 3 ) && ( ( verb.equals( "insert" ) && next.equals( "into" ) )
+                                               || ( verb.equals( "delete" ) && next.equals( "from" ) )
+                                               || ( verb.equals( "merge" ) && next.equals( "into" ) )
+                                               || ( verb.equals( "truncate" ) && next.equals( "table" ) ) ) )
+            {
+                returnVal = words[ 2 ];
+            }
+        }
+        return returnVal ;
+    }
+
+    public synchronized long getHits()
+    {
+        return hits ;
+    }
+
+    public synchronized long getMisses()
+    {
+        return misses ;
+    }
+
+    /** How many results were thrown away to make room. */
+    public synchronized long getEvictions()
+    {
+        return evictions ;
+    }
+
+    /** How many results were thrown away because they were too old. */
+    public synchronized long getExpirations()
+    {
+        return expirations ;
+    }
+
+    /** How many results were thrown away because a table changed. */
+    public synchronized long getInvalidations()
+    {
+        return invalidations ;
+    }
+
+    /** How many results are cached right now. */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /** About how much memory the cached results are using. */
+    public synchronized long getBytes()
+    {
+        return bytes ;
+    }
+
+    public synchronized String toString()
+    {
+        return "size=" + entries.size() + "|bytes=" + bytes + "|maxBytes=" + maxBytes + "|hits=" + hits
+               + "|misses=" + misses + "|evictions=" + evictions + "|expirations=" + expirations
+               + "|invalidations=" + invalidations ;
+    }
+
+}
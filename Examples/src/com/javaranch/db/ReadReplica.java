@@ -0,0 +1,142 @@
+package com.javaranch.db ;
+
+import java.sql.* ;
+import java.lang.reflect.Proxy ;
+import java.lang.reflect.InvocationHandler ;
+import java.lang.reflect.InvocationTargetException ;
+import java.lang.reflect.Method ;
+import java.util.concurrent.atomic.AtomicInteger ;
+
+/** For use by DBFacade:  one copy of the database that reads can be sent to.
+ *
+ * Keeps track of how many of its connections are out, so DBFacade can pick the copy that is the least busy.  The count
+ * goes down when the connection is closed.
+ */
+class ReadReplica
+{
+
+    // how long to leave a replica alone after it fails to give a connection
+    static final long RETRY_MILLIS = 5 * 1000 ;
+
+    private final DBFacade facade ;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private volatile long downUntil = 0 ;
+
+    ReadReplica( DBFacade facade )
+    {
+        this.facade = facade ;
+    }
+
+    DBFacade getFacade()
+    {
+        return facade ;
+    }
+
+    /** How many connections from here have not been closed yet. */
+    int getOutstanding()
+    {
+        return outstanding.get();
+    }
+
+    /** False for a little while after it failed to give a connection. */
+    boolean isUp()
+    {
+        return System.currentTimeMillis() >= downUntil ;
+    }
+
+    /** A connection that counts itself out until it is closed.
+     *
+     * @return null if the replica couldn't give a connection.
+     */
+    Connection getConnection()
+    {
+        Connection returnVal = null ;
+        outstanding.incrementAndGet();
+        try
+        {
+            returnVal = wrap( facade.getConnection() );
+        }
+        catch ( Exception e )
+        {
+            outstanding.decrementAndGet();
+            downUntil = System.currentTimeMillis() + RETRY_MILLIS ;
+        }
+        return returnVal ;
+    }
+
+    /** The connection from the replica's own facade, or the connection given if it didn't come from a replica. */
+    static Connection unwrap( Connection con )
+    {
+        Connection returnVal = con ;
+        if ( ( con != null ) && Proxy.isProxyClass( con.getClass() ) )
+        {
+            InvocationHandler handler = Proxy.getInvocationHandler( con );
+            if ( handler instanceof Handler )
+            {
+                returnVal = ( (Handler)handler ).con ;
+            }
+        }
+        return returnVal ;
+    }
+
+    public String toString()
+    {
+        return "outstanding=" + outstanding.get() + "|up=" + isUp() + "|" + facade ;
+    }
+
+    // Hands everything to the connection, and counts it back in when it is closed.
+    private class Handler implements InvocationHandler
+    {
+        private final Connection con ;
+        private boolean closed = false ;
+
+        Handler( Connection con )
+        {
+            this.con = con ;
+        }
+
+        public Object invoke( Object proxy , Method method , Object[] args ) throws Throwable
+        {
+            String name = method.getName();
+            Object returnVal = null ;
+            if ( name.equals( "close" ) && ( method.getParameterTypes().length == 0 ) )
+            {
+                synchronized ( this )
+                {
+                    if ( ! closed )
+                    {
+                        closed = true ;
+                        outstanding.decrementAndGet();
+                    }
+                }
+                con.close();
+            }
+            else if ( name.equals( "equals" ) && ( args != null ) && ( args.length == 1 ) )
+            {
+                returnVal = proxy == args[ 0 ] ? Boolean.TRUE : Boolean.FALSE ;
+            }
+            else if ( name.equals( "hashCode" ) && ( args == null ) )
+            {
+                returnVal = new Integer( System.identityHashCode( proxy ) );
+            }
+            else
+            {
+                try
+                {
+                    returnVal = method.invoke( con , args );
+                }
+                catch ( InvocationTargetException e )
+                {
+                    throw e.getTargetException();
+                }
+            }
+            return returnVal ;
+        }
+    }
+
+    private Connection wrap( Connection con )
+    {
+        return (Connection)Proxy.newProxyInstance( Connection.class.getClassLoader() , new Class[]{ Connection.class } , new Handler( con ) );
+    }
+
+}
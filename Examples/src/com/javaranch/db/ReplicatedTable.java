@@ -0,0 +1,535 @@
+package com.javaranch.db ;
+
+import com.javaranch.common.* ;
+
+import java.math.BigDecimal ;
+import java.security.InvalidParameterException ;
+import java.sql.Connection ;
+import java.sql.SQLException ;
+import java.sql.Timestamp ;
+import java.util.* ;
+import java.util.concurrent.* ;
+
+/** A copy of a whole table in memory, for small tables that are read all the time (countries, statuses, codes ...).
+ *
+ * The first search reads the whole table.  After that, searches never go to the database:  the rows are found in a
+ * snapshot that never changes, through a hash index for the key column and each index column (other columns are looked
+ * at row by row).  Every so often a background thread asks the database for the rows that changed, makes a new
+ * snapshot with them, and swaps it in - so a search always sees one whole snapshot, never half of a refresh.
+ *
+ * The rows that changed are the ones where the high water column is at least the biggest value in the snapshot.  Use a
+ * column that is set to the time whenever a row changes, with a key column to tell which row to replace.  An ID column
+ * only works if the IDs are committed in the same order they go up - which they aren't with the high/low pattern and
+ * more than one program:  each program has its own block of IDs, so a row with a smaller ID can be committed after a
+ * bigger one was read, and it is missed until the next full read.  (A transaction that sets the time and commits a
+ * long time later can be missed the same way.)  Without a high water column, every refresh reads the whole table.
+ * Either way, the whole table is read again every setReloadMillis(), so missed rows show up and rows deleted by someone
+ * else go away eventually.
+ *
+ * <pre>
+ *
+ *    ReplicatedTable countries = new ReplicatedTable( facade , "Country" , new String[]{ "CountryID" , "Code" , "Name" } ,
+ *                                                     "CountryID" , new String[]{ "Code" } , "Changed" , 60 * 1000 );
+ *    DBResults canada = countries.search( "Code" , new String[]{ "CA" } , new String[]{ "Name" } );
+ *
+ * </pre>
+ *
+ * Jenny makes one of these for each table marked "Replicated" in the properties, and the TableFacade answers searches
+ * from it - see TableFacade.replicate().
+ *
+ * A change made through the same DBFacade (insert(), update(), delete() ...) makes the next search after it is committed
+ * read the whole table again first.  The table is always read on a connection of its own from the primary database -
+ * never a read replica that might be behind, and never the connection of a transaction that might not be committed -
+ * so once a change is committed, this program sees it.  Until then, the TableFacade doesn't answer searches from here
+ * inside inTransaction() (see TableFacade.replicate()).  Changes made by other programs show up with the next refresh.
+ *
+ * Values are matched exactly as the database gave them as strings:  "CA" doesn't find "ca", and "7" doesn't find "7.00".
+ */
+public class ReplicatedTable
+{
+
+    // the refreshes for all of the tables
+    private static final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor( new ThreadFactory()
+    {
+        public Thread newThread( Runnable r )
+        {
+            Thread t = new Thread( r , "ReplicatedTable refresh" );
+            t.setDaemon( true );
+            return t ;
+        }
+    });
+
+    private final DBFacade facade ;
+    private final String table ;
+    private final String[] columns ;
+    private final int key ;          // where the key column is in columns, or -1
+    private final int[] indexed ;    // where each indexed column (including the key) is in columns
+    private final int highWater ;    // where the high water column is in columns, or -1
+    private final long refreshMillis ;
+    private volatile long reloadMillis = 60 * 60 * 1000 ;
+
+    private volatile Snapshot snapshot = null ;
+
+    // true when a change through the facade means the snapshot has to be read again
+    private volatile boolean stale = false ;
+
+    private ScheduledFuture refresh = null ;
+    private volatile Exception refreshException = null ;
+
+    // Everything in here is made once and never changed, so any number of threads can read it without locking.
+    private static class Snapshot
+    {
+        final List rows ;         // a String[] for each row, in the same order as the columns
+        final Map[] indexes ;     // for each indexed column:  value -> List of rows
+        final String highWater ;  // the biggest value in the high water column, or null
+        final long loaded ;       // when the whole table was read
+
+        Snapshot( List rows , Map[] indexes , String highWater , long loaded )
+        {
+            this.rows = rows ;
+            this.indexes = indexes ;
+            this.highWater = highWater ;
+            this.loaded = loaded ;
+        }
+    }
+
+    /**
+     * @param columns The columns to keep.  Searches can only ask for these.
+     * @param keyColumn The column that is different for every row (usually the ID), or null if there isn't one.
+     * @param indexColumns More columns to find rows by quickly, or null.
+     * @param highWaterColumn The column that finds the changed rows - see above.  null to read the whole table on
+     *                        every refresh.
+     * @param refreshMillis How long between refreshes.  Zero for no refreshes, except after changes made through the
+     *                      facade.
+     */
+    public ReplicatedTable( DBFacade facade , String table , String[] columns , String keyColumn , String[] indexColumns , String highWaterColumn , long refreshMillis )
+    {
+        if ( facade == null )
+        {
+            throw new InvalidParameterException( "parameter facade is not allowed to be null" );
+        }
+        if ( ! Str.usable( table ) )
+        {
+            throw new InvalidParameterException( "table is not allowed to be empty" );
+        }
+        if ( ( columns == null ) || ( columns.length == 0 ) )
+        {
+            throw new InvalidParameterException( "there must be at least one column" );
+        }
+        if ( refreshMillis < 0 )
+        {
+            throw new InvalidParameterException( "refreshMillis can't be less than zero" );
+        }
+        this.facade = facade ;
+        this.table = table ;
+        this.columns = columns.clone();
+        this.key = ( keyColumn == null ) ? -1 : getColumn( keyColumn );
+        this.highWater = ( highWaterColumn == null ) ? -1 : getColumn( highWaterColumn );
+        this.refreshMillis = refreshMillis ;
+        List index = new ArrayList();
+        if ( key != -1 )
+        {
+            index.add( new Integer( key ) );
+        }
+        for ( int i = 0 ; ( indexColumns != null ) && ( i < indexColumns.length ) ; i++ )
+        {
+            Integer column = new Integer( getColumn( indexColumns[ i ] ) );
+            if ( ! index.contains( column ) )
+            {
+                index.add( column );
+            }
+        }
+        indexed = new int[ index.size() ];
+        for ( int i = 0 ; i < indexed.length ; i++ )
+        {
+            indexed[ i ] = ( (Integer)index.get( i ) ).intValue();
+        }
+    }
+
+    public String getTable()
+    {
+        return table ;
+    }
+
+    /** How often the whole table is read again, even if the high water column says nothing changed.  An hour to
+     *  start with.  Zero to never read it all again (after the first time).
+     */
+    public void setReloadMillis( long reloadMillis )
+    {
+        this.reloadMillis = reloadMillis ;
+    }
+
+    /** True if all of these columns are kept here, so a search for them can be answered from memory. */
+    public boolean hasColumns( String[] dataColumns )
+    {
+        boolean returnVal = dataColumns != null ;
+        for ( int i = 0 ; returnVal && ( i < dataColumns.length ) ; i++ )
+        {
+            returnVal = findColumn( dataColumns[ i ] ) != -1 ;
+        }
+        return returnVal ;
+    }
+
+    /** The rows where the column has one of these values.
+     *
+     * @param column null for all rows.
+     * @param values null in here finds NULL.
+     * @return a copy of the data columns of each row found, in the order the rows were read.
+     */
+    public DBResults search( String column , String[] values , String[] dataColumns ) throws SQLException
+    {
+        List rows = find( column , values );
+        int[] positions = getColumns( dataColumns );
+        DBResults returnVal = new DBResults();
+        for ( int i = 0 ; i < rows.size() ; i++ )
+        {
+            returnVal.add( project( (String[])rows.get( i ) , positions ) );
+        }
+        return returnVal ;
+    }
+
+    /** Like search(), but each row is turned into an object with the mapper (see RowMapper.map( String[] )). */
+    public List search( String column , String[] values , String[] dataColumns , RowMapper mapper ) throws SQLException
+    {
+        List rows = find( column , values );
+        int[] positions = getColumns( dataColumns );
+        List returnVal = new ArrayList( rows.size() );
+        for ( int i = 0 ; i < rows.size() ; i++ )
+        {
+            returnVal.add( mapper.map( project( (String[])rows.get( i ) , positions ) ) );
+        }
+        return returnVal ;
+    }
+
+    /** How many rows are in memory.  Reads the table if it hasn't been read yet. */
+    public int size() throws SQLException
+    {
+        return getSnapshot().rows.size();
+    }
+
+    /** Read the whole table now, and swap it in. */
+    public synchronized void load() throws SQLException
+    {
+        stale = false ;
+        List rows = read( null );
+        snapshot = build( rows , System.currentTimeMillis() );
+        if ( ( refresh == null ) && ( refreshMillis > 0 ) )
+        {
+            facade.addReplicatedTable( this );
+            refresh = refresher.scheduleWithFixedDelay( new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        refresh();
+                        refreshException = null ;
+                    }
+                    catch ( Exception e )
+                    {
+                        // keep the snapshot there is - the next refresh might work
+                        refreshException = e ;
+                    }
+                }
+            } , refreshMillis , refreshMillis , TimeUnit.MILLISECONDS );
+        }
+        else if ( refresh == null )
+        {
+            facade.addReplicatedTable( this );
+        }
+    }
+
+    /** Read the rows that changed (or the whole table, if it's time) and swap in a snapshot with them.
+     *
+     * The background thread does this every refreshMillis.
+     */
+    public synchronized void refresh() throws SQLException
+    {
+        Snapshot s = snapshot ;
+        if ( ( s == null ) || stale || ( highWater == -1 ) || ( s.highWater == null ) ||
+             ( ( reloadMillis > 0 ) && ( System.currentTimeMillis() - s.loaded >= reloadMillis ) ) )
+        {
+            load();
+        }
+        else
+        {
+            List changed = read( s.highWater );
+            if ( changed.size() > 0 )
+            {
+                List rows = null ;
+                if ( key == -1 )
+                {
+                    rows = new ArrayList( s.rows );
+                    rows.addAll( changed );
+                }
+                else
+                {
+                    Map byKey = new LinkedHashMap();
+                    addByKey( byKey , s.rows );
+                    addByKey( byKey , changed );
+                    rows = new ArrayList( byKey.values() );
+                }
+                snapshot = build( rows , s.loaded );
+            }
+        }
+    }
+
+    /** Stop the background refreshes.  The rows in memory stay, and the next search after a change reads them again. */
+    public synchronized void stop()
+    {
+        if ( refresh != null )
+        {
+            refresh.cancel( false );
+            refresh = null ;
+        }
+    }
+
+    /** Why the last background refresh failed, or null if it worked. */
+    public Exception getRefreshException()
+    {
+        return refreshException ;
+    }
+
+    public String toString()
+    {
+        Snapshot s = snapshot ;
+        return "table=" + table + "|rows=" + ( ( s == null ) ? "not read" : String.valueOf( s.rows.size() ) ) +
+               "|highWater=" + ( ( s == null ) ? null : s.highWater );
+    }
+
+    // For use by DBFacade:  something changed the table through the facade.
+    void changed()
+    {
+        stale = true ;
+    }
+
+    private Snapshot getSnapshot() throws SQLException
+    {
+        Snapshot returnVal = snapshot ;
+        if ( ( returnVal == null ) || stale )
+        {
+            synchronized ( this )
+            {
+                if ( ( snapshot == null ) || stale )
+                {
+                    load();
+                }
+                returnVal = snapshot ;
+            }
+        }
+        return returnVal ;
+    }
+
+    // The rows with one of the values in the column (all rows for a null column), without the same row twice.
+    private List find( String column , String[] values ) throws SQLException
+    {
+        Snapshot s = getSnapshot();
+        List returnVal = s.rows ;
+        if ( column != null )
+        {
+            int position = getColumn( column );
+            Set wanted = new LinkedHashSet( Arrays.asList( values ) );
+            returnVal = new ArrayList();
+            int index = -1 ;
+            for ( int i = 0 ; i < indexed.length ; i++ )
+            {
+                if ( indexed[ i ] == position )
+                {
+                    index = i ;
+                }
+            }
+            if ( index == -1 )
+            {
+                for ( int i = 0 ; i < s.rows.size() ; i++ )
+                {
+                    String[] row = (String[])s.rows.get( i );
+                    if ( wanted.contains( row[ position ] ) )
+                    {
+                        returnVal.add( row );
+                    }
+                }
+            }
+            else
+            {
+                Iterator it = wanted.iterator();
+                while ( it.hasNext() )
+                {
+                    List found = (List)s.indexes[ index ].get( it.next() );
+                    if ( found != null )
+                    {
+                        returnVal.addAll( found );
+                    }
+                }
+            }
+        }
+        return returnVal ;
+    }
+
+    // All of the rows, or with a highWaterMark just the rows from there up.
+    private List read( String highWaterMark ) throws SQLException
+    {
+        DBQuery q = new DBQuery( facade , table );
+        q.setDataColumns( columns );
+        if ( highWaterMark != null )
+        {
+            // With a key, ">=" reads the last rows again, in case another row with the same mark was committed after
+            // the last refresh.  They just replace themselves.  Without a key, they would be in here twice.
+            String compare = ( key == -1 ) ? " > ?" : " >= ?" ;
+            q.setWhereClause( columns[ highWater ] + compare , new Object[]{ toParameter( highWaterMark ) } );
+        }
+        if ( key != -1 )
+        {
+            q.setOrderByClause( columns[ key ] );
+        }
+        // Straight to the database on a connection of its own:  a QueryCache would give the rows from before the
+        // change, a read replica might not have it yet, and a transaction's connection would show rows that might
+        // never be committed to every thread.
+        DBResults returnVal = null ;
+        try
+        {
+            Connection con = facade.openConnection();
+            try
+            {
+                returnVal = facade.executeQuery( con , q.getSQL() , q.getParameters() );
+            }
+            finally
+            {
+                con.close();
+            }
+        }
+        catch ( SQLException e )
+        {
+            throw e ;  // this is to avoid the exception message below
+        }
+        catch ( Exception e )
+        {
+            throw new SQLException( "read() connection fail: " + e );
+        }
+        return returnVal ;
+    }
+
+    private void addByKey( Map byKey , List rows )
+    {
+        for ( int i = 0 ; i < rows.size() ; i++ )
+        {
+            String[] row = (String[])rows.get( i );
+            byKey.put( row[ key ] , row );
+        }
+    }
+
+    private Snapshot build( List rows , long loaded )
+    {
+        Map[] indexes = new Map[ indexed.length ];
+        for ( int i = 0 ; i < indexes.length ; i++ )
+        {
+            indexes[ i ] = new HashMap();
+        }
+        String mark = null ;
+        for ( int i = 0 ; i < rows.size() ; i++ )
+        {
+            String[] row = (String[])rows.get( i );
+            for ( int j = 0 ; j < indexed.length ; j++ )
+            {
+                List found = (List)indexes[ j ].get( row[ indexed[ j ] ] );
+                if ( found == null )
+                {
+                    found = new ArrayList( 1 );
+                    indexes[ j ].put( row[ indexed[ j ] ] , found );
+                }
+                found.add( row );
+            }
+            if ( ( highWater != -1 ) && ( row[ highWater ] != null ) && ( ( mark == null ) || ( compare( row[ highWater ] , mark ) > 0 ) ) )
+            {
+                mark = row[ highWater ];
+            }
+        }
+        return new Snapshot( Collections.unmodifiableList( rows ) , indexes , mark , loaded );
+    }
+
+    // where the column is in columns, or -1
+    private int findColumn( String column )
+    {
+        int returnVal = -1 ;
+        for ( int i = 0 ; ( i < columns.length ) && ( returnVal == -1 ) ; i++ )
+        {
+            if ( columns[ i ].equalsIgnoreCase( column ) )
+            {
+                returnVal = i ;
+            }
+        }
+        return returnVal ;
+    }
+
+    private int getColumn( String column )
+    {
+        int returnVal = findColumn( column );
+        if ( returnVal == -1 )
+        {
+            throw new InvalidParameterException( column + " is not one of the columns kept for " + table );
+        }
+        return returnVal ;
+    }
+
+    private int[] getColumns( String[] dataColumns )
+    {
+        if ( dataColumns == null )
+        {
+            throw new InvalidParameterException( "parameter dataColumns is not allowed to be null" );
+        }
+        int[] returnVal = new int[ dataColumns.length ];
+        for ( int i = 0 ; i < returnVal.length ; i++ )
+        {
+            returnVal[ i ] = getColumn( dataColumns[ i ] );
+        }
+        return returnVal ;
+    }
+
+    // a new array with the values at these positions - the rows in a snapshot are never handed out
+    private static String[] project( String[] row , int[] positions )
+    {
+        String[] returnVal = new String[ positions.length ];
+        for ( int i = 0 ; i < positions.length ; i++ )
+        {
+            returnVal[ i ] = row[ positions[ i ] ];
+        }
+        return returnVal ;
+    }
+
+    // numbers as numbers, anything else as text
+    private static int compare( String s1 , String s2 )
+    {
+        int returnVal = 0 ;
+        try
+        {
+            returnVal = new BigDecimal( s1.trim() ).compareTo( new BigDecimal( s2.trim() ) );
+        }
+        catch ( NumberFormatException e )
+        {
+            returnVal = s1.compareTo( s2 );
+        }
+        return returnVal ;
+    }
+
+    // The high water mark as the type the database gave it, more or less:  a number, a time or text.
+    private static Object toParameter( String s )
+    {
+        Object returnVal = s ;
+        try
+        {
+            returnVal = new BigDecimal( s.trim() );
+        }
+        catch ( NumberFormatException e )
+        {
+            try
+            {
+                returnVal = Timestamp.valueOf( s.trim() );
+            }
+            catch ( IllegalArgumentException e2 )
+            {
+                // just text
+            }
+        }
+        return returnVal ;
+    }
+
+}
@@ -0,0 +1,26 @@
+package com.javaranch.db ;
+
+import java.sql.ResultSet ;
+import java.sql.SQLException ;
+
+/** Turns each row of a search into an object of your own, straight from the ResultSet.
+ *
+ * Use this with the search() methods that take a RowMapper.  An int column can be read with getInt() instead of being
+ * turned into a String and parsed back again.  Jenny generates one for each table (see the Row classes).
+ */
+public interface RowMapper
+{
+
+    /** Make an object out of the current row.  Don't call next() - that's done for you.
+     *
+     * The columns are in the same order as the data columns of the search.
+     */
+    Object map( ResultSet rs ) throws SQLException ;
+
+    /** Make an object out of a row that is already strings - for instance, one that came from the QueryCache.
+     *
+     * @param row The data for one row, in the same order as the data columns.
+     */
+    Object map( String[] row );
+
+}
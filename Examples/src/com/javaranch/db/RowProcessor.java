@@ -0,0 +1,30 @@
+package com.javaranch.db ;
+
+/** Gets handed the rows of a search one at a time.
+ *
+ * Use this with the search() and executeQuery() methods that take a RowProcessor when there are too many rows to
+ * hold in a DBResults object.  Only one row is in memory at a time.
+ *
+ * <pre>
+ *
+ *    facade.search( q , new RowProcessor()
+ *    {
+ *        public boolean processRow( String[] row ) throws Exception
+ *        {
+ *            report.println( row[ 0 ] + ',' + row[ 1 ] );
+ *            return true ;
+ *        }
+ *    });
+ *
+ * </pre>
+ */
+public interface RowProcessor
+{
+
+    /**
+     * @param row The data for one row, in the same order as the data columns.
+     * @return false to stop - no more rows will be read and everything gets closed.
+     */
+    boolean processRow( String[] row ) throws Exception ;
+
+}
@@ -0,0 +1,140 @@
+package com.javaranch.db ;
+
+import com.javaranch.common.* ;
+
+import java.util.* ;
+import java.sql.* ;
+import java.security.InvalidParameterException ;
+
+/** Take ID's from a database sequence, many at a time.
+ *
+ * One query gets the next blockSize values from the sequence, and they are handed out here until they run out.  The
+ * ID goes into the data like any other column, so single inserts cost no extra trip to the database and batches go
+ * through DBFacade.insertBatch().
+ *
+ * The SQL gets the values:  it must have "{table}" where the table name goes and one '?' for how many values to get.
+ * There are ready-made queries for a few databases, for sequences named like "Animal_seq":
+ *
+ * <pre>
+ *
+ *    facade.setIDStrategy( new SequenceBlockIDStrategy( SequenceBlockIDStrategy.ORACLE , 100 ) );
+ *
+ * </pre>
+ *
+ * Values that have been fetched but not used when the program stops are never used, so there will be gaps.
+ */
+public class SequenceBlockIDStrategy implements IDStrategy
+{
+
+    public static final String ORACLE = "SELECT {table}_seq.nextval FROM dual CONNECT BY level <= ?" ;
+    public static final String POSTGRES = "SELECT nextval( '{table}_seq' ) FROM generate_series( 1 , ? )" ;
+    public static final String H2 = "SELECT NEXT VALUE FOR {table}_seq FROM SYSTEM_RANGE( 1 , ? )" ;
+
+    private final String sql ;
+    private final int blockSize ;
+
+    // table name -> Values
+    private final Map tables = new HashMap();
+
+    // the values fetched for one table that have not been handed out yet
+    private static class Values
+    {
+        long[] ids = new long[ 0 ];
+        int next = 0 ;
+    }
+
+    /**
+     * @param sql The query that gets the next values - see above.
+     * @param blockSize How many values to get at a time.
+     */
+    public SequenceBlockIDStrategy( String sql , int blockSize )
+    {
+        if ( ( sql == null ) || ( sql.indexOf( '?' ) == -1 ) )
+        {
+            throw new InvalidParameterException( "sql must have a '?' for the number of values" );
+        }
+        if ( blockSize < 1 )
+        {
+            throw new InvalidParameterException( "blockSize must be at least one" );
+        }
+        this.sql = sql ;
+        this.blockSize = blockSize ;
+    }
+
+    private Values getValues( String table )
+    {
+        synchronized ( tables )
+        {
+            Values values = (Values)tables.get( table );
+            if ( values == null )
+            {
+                values = new Values();
+                tables.put( table , values );
+            }
+            return values ;
+        }
+    }
+
+    /** Get the next count ID's for the table, going to the database only if there aren't enough left. */
+    public long[] getIDs( DBFacade facade , Connection con , String table , int count ) throws SQLException
+    {
+        long[] ids = new long[ count ];
+        Values values = getValues( table );
+        synchronized ( values )
+        {
+            int i = 0 ;
+            while ( i < count )
+            {
+                if ( values.next >= values.ids.length )
+                {
+                    values.ids = fetch( facade , con , table , Math.max( blockSize , count - i ) );
+                    values.next = 0 ;
+                }
+                ids[ i ] = values.ids[ values.next ];
+                values.next++ ;
+                i++ ;
+            }
+        }
+        return ids ;
+    }
+
+    private long[] fetch( DBFacade facade , Connection con , String table , int count ) throws SQLException
+    {
+        Str s = new Str( sql );
+        s.replace( "{table}" , table );
+        DBResults results = facade.executeQuery( con , s.toString() , new Object[]{ new Integer( count ) } );
+        if ( results.size() == 0 )
+        {
+            throw new SQLException( "no values from the sequence for " + table + " (" + s + ")" );
+        }
+        long[] ids = new long[ results.size() ];
+        for ( int i = 0 ; i < ids.length ; i++ )
+        {
+            ids[ i ] = Long.parseLong( results.get( i , 0 ) );
+        }
+        return ids ;
+    }
+
+    public long insertAndGetID( DBFacade facade , Connection con , String table , Map data , String idColumnName ) throws SQLException
+    {
+        long id = getIDs( facade , con , table , 1 )[ 0 ];
+        data.remove( '+' + idColumnName );
+        data.put( idColumnName , String.valueOf( id ) );
+        facade.insert( con , table , data );
+        return id ;
+    }
+
+    public long[] insertBatchAndGetIDs( DBFacade facade , Connection con , String table , List data , String idColumnName ) throws SQLException
+    {
+        long[] ids = getIDs( facade , con , table , data.size() );
+        for ( int i = 0 ; i < ids.length ; i++ )
+        {
+            Map row = (Map)data.get( i );
+            row.remove( '+' + idColumnName );
+            row.put( idColumnName , String.valueOf( ids[ i ] ) );
+        }
+        facade.insertBatch( con , table , data );
+        return ids ;
+    }
+
+}
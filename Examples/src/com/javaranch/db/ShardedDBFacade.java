@@ -0,0 +1,1070 @@
+package com.javaranch.db ;
+
+import com.javaranch.common.* ;
+
+import java.math.BigDecimal ;
+import java.security.InvalidParameterException ;
+import java.sql.* ;
+import java.util.* ;
+import java.util.concurrent.Callable ;
+
+/** Spread the rows of big tables over several databases (shards), each with a DBFacade of its own.
+ *
+ * Every sharded table has the shard key column (like "FarmID"), and the value in that column decides which shard the
+ * row lives in.  By default the shard is picked by hashing the key.  Give the constructor some splits to use ranges
+ * instead:
+ *
+ * <pre>
+ *
+ *    DBFacade[] shards = { new DBFacade( driver , url0 ) , new DBFacade( driver , url1 ) , new DBFacade( driver , url2 ) };
+ *
+ *    ShardedDBFacade facade = new ShardedDBFacade( "FarmID" , shards );
+ *
+ *    // FarmID below 1000 on the first shard, 1000 up to 5000 on the second, 5000 and up on the third
+ *    ShardedDBFacade facade = new ShardedDBFacade( "FarmID" , shards , new long[]{ 1000 , 5000 } );
+ *
+ * </pre>
+ *
+ * Where things go:
+ *
+ * <pre>
+ *
+ *    insert(), insertBatch(), upsert()     the shard for the shard key in the data - the data must have it
+ *    search(), update(), delete()          with a DBQuery that is just setSearch() on the shard key:  that shard
+ *                                          any other search:  all of the shards at once, merged (see search())
+ *                                          any other update or delete:  every shard, one after the other
+ *    count(), exists()                     all of the shards at once, added up
+ *    sum(), min(), max(), aggregate()      all of the shards at once, combined (see aggregate())
+ *    searchColumnar()                      like search()
+ *    groupBy()                             only with a DBQuery that is just setSearch() on the shard key
+ *    insertAndGetID()                      a new ID from the high/low pattern, and then insert()
+ *
+ * </pre>
+ *
+ * Everything else - anything given a connection, getConnection(), executeQuery(), inTransaction() - goes to the home
+ * shard:  the first one.  The home shard also has the "TableIDCounters" table for the whole set, so the high/low
+ * pattern never gives the same ID on two shards.  If the shard key is the ID column, the new ID picks the shard.
+ *
+ * Each shard commits on its own.  A change that goes to several shards is not one transaction, and inTransaction()
+ * only covers the home shard.  The shard key of a row can't be changed by an update - delete the row and insert it
+ * again.  All of the shards should be the same brand of database, with the same settings as this facade.
+ */
+public class ShardedDBFacade extends DBFacade
+{
+
+    private final String shardColumn ;
+    private final DBFacade[] shards ;
+
+    // null to hash the key
+    private final long[] splits ;
+
+    /** Pick the shard by hashing the shard key.  A whole number key is its own hash, so the keys go around the shards.
+     *
+     * @param shardColumn The column that every sharded table has.
+     * @param shards The databases.  The first is the home shard.
+     */
+    public ShardedDBFacade( String shardColumn , DBFacade[] shards )
+    {
+        this( shardColumn , shards , null );
+    }
+
+    /** Pick the shard by where the shard key (a whole number) falls between the splits.
+     *
+     * The first shard gets the keys below splits[ 0 ], the second gets splits[ 0 ] up to splits[ 1 ], and so on.  The
+     * last shard gets everything from the last split up.
+     *
+     * @param splits One less than the number of shards, from smallest to biggest.  null to hash the key instead.
+     */
+    public ShardedDBFacade( String shardColumn , DBFacade[] shards , long[] splits )
+    {
+        if ( ! Str.usable( shardColumn ) )
+        {
+            throw new InvalidParameterException( "shardColumn is not allowed to be empty" );
+        }
+        if ( ( shards == null ) || ( shards.length == 0 ) )
+        {
+            throw new InvalidParameterException( "there must be at least one shard" );
+        }
+        for ( int i = 0 ; i < shards.length ; i++ )
+        {
+            if ( shards[ i ] == null )
+            {
+                throw new InvalidParameterException( "shards is not allowed to have a null shard" );
+            }
+        }
+        if ( splits != null )
+        {
+            if ( splits.length != shards.length - 1 )
+            {
+                throw new InvalidParameterException( "there must be one less split than shards" );
+            }
+            for ( int i = 1 ; i < splits.length ; i++ )
+            {
+                if ( splits[ i ] <= splits[ i - 1 ] )
+                {
+                    throw new InvalidParameterException( "the splits must go from smallest to biggest" );
+                }
+            }
+        }
+        this.shardColumn = shardColumn ;
+        this.shards = shards.clone();
+        this.splits = ( splits == null ) ? null : splits.clone();
+    }
+
+    public String getShardColumn()
+    {
+        return shardColumn ;
+    }
+
+    public DBFacade[] getShards()
+    {
+        return shards.clone();
+    }
+
+    /** The shard that has the rows with this shard key. */
+    public DBFacade getShard( String key )
+    {
+        return shards[ getShardIndex( key ) ];
+    }
+
+    /** Which shard has the rows with this shard key:  zero for the first.
+     *
+     * Override this for some other way of picking.
+     */
+    protected int getShardIndex( String key )
+    {
+        if ( key == null )
+        {
+            throw new InvalidParameterException( "the shard key is not allowed to be null" );
+        }
+        int returnVal = 0 ;
+        Long number = toLong( key );
+        if ( splits == null )
+        {
+            long hash = ( number == null ) ? key.hashCode() : number.longValue();
+            returnVal = (int)( ( ( hash % shards.length ) + shards.length ) % shards.length );
+        }
+        else
+        {
+            if ( number == null )
+            {
+                throw new InvalidParameterException( "a shard key for ranges must be a whole number: " + key );
+            }
+            while ( ( returnVal < splits.length ) && ( number.longValue() >= splits[ returnVal ] ) )
+            {
+                returnVal++ ;
+            }
+        }
+        return returnVal ;
+    }
+
+    /** A connection from the home shard. */
+    protected Connection openConnection() throws Exception
+    {
+        return shards[ 0 ].getConnection();
+    }
+
+    /** ID's always come from the high/low pattern on the home shard, so they are unique across the shards. */
+    public void doNotUseHighLowPattern()
+    {
+        throw new InvalidParameterException( "a ShardedDBFacade always uses the high/low pattern" );
+    }
+
+    /** ID's always come from the high/low pattern on the home shard, so they are unique across the shards. */
+    public void setIDStrategy( IDStrategy idStrategy )
+    {
+        if ( idStrategy != null )
+        {
+            throw new InvalidParameterException( "a ShardedDBFacade always uses the high/low pattern" );
+        }
+    }
+
+    /** The searches of searchAll() are spread over the shards, so they can't go to the database as one statement. */
+    protected boolean useQueryBatches()
+    {
+        return false ;
+    }
+
+    /** A search that is just setSearch() on the shard key goes to that shard.  Anything else goes to all of the
+     *  shards at the same time (on the async threads - see submit()).
+     *
+     * The rows from all of the shards are put in order by the query's order by columns, which must be data columns,
+     * and then cut off at the query's limit (see DBQuery.page()).  A column the database says is a number is sorted
+     * as numbers, anything else as text by character code, and NULL comes after everything else (before, for DESC).
+     * Text sorted by a database collation might come out a little differently.  A query with a GROUP BY can't be
+     * merged.
+     */
+    public DBResults search( DBQuery q ) throws SQLException
+    {
+        if ( q == null )
+        {
+            throw new InvalidParameterException( "parameter q is not allowed to be null" );
+        }
+        DBResults returnVal = null ;
+        String key = q.getKey( shardColumn );
+        if ( key != null )
+        {
+            returnVal = getShard( key ).search( q );
+        }
+        else
+        {
+            Order order = getOrder( q );
+            DBResults[] results = searchShards( q );
+            List rows = new ArrayList();
+            for ( int i = 0 ; i < results.length ; i++ )
+            {
+                rows.addAll( results[ i ] );
+            }
+            if ( order != null )
+            {
+                order.findNumbers( results );
+                Collections.sort( rows , order );
+            }
+            int limit = q.getLimit();
+            returnVal = new DBResults();
+            for ( int i = 0 ; ( i < rows.size() ) && ( ( limit == 0 ) || ( i < limit ) ) ; i++ )
+            {
+                returnVal.add( rows.get( i ) );
+            }
+        }
+        return returnVal ;
+    }
+
+    /** Like search( DBQuery ).  When the search goes to more than one shard, each row is mapped from its strings (see
+     *  RowMapper.map( String[] )).
+     */
+    public List search( DBQuery q , RowMapper mapper ) throws SQLException
+    {
+        if ( q == null )
+        {
+            throw new InvalidParameterException( "parameter q is not allowed to be null" );
+        }
+        List returnVal = null ;
+        String key = q.getKey( shardColumn );
+        if ( key != null )
+        {
+            returnVal = getShard( key ).search( q , mapper );
+        }
+        else
+        {
+            DBResults results = search( q );
+            returnVal = new ArrayList( results.size() );
+            for ( int i = 0 ; i < results.size() ; i++ )
+            {
+                returnVal.add( mapper.map( results.getRow( i ) ) );
+            }
+        }
+        return returnVal ;
+    }
+
+    /** Like search( DBQuery ), but the rows are handed to the processor.
+     *
+     * A search that has to be sorted or limited across the shards is done in memory first.  Otherwise the shards are
+     * read one after the other, one row at a time.
+     */
+    public void search( DBQuery q , final RowProcessor processor ) throws SQLException
+    {
+        if ( q == null )
+        {
+            throw new InvalidParameterException( "parameter q is not allowed to be null" );
+        }
+        String key = q.getKey( shardColumn );
+        if ( key != null )
+        {
+            getShard( key ).search( q , processor );
+        }
+        else if ( ( getOrder( q ) != null ) || ( q.getLimit() > 0 ) )
+        {
+            DBResults results = search( q );
+            try
+            {
+                boolean more = true ;
+                for ( int i = 0 ; ( i < results.size() ) && more ; i++ )
+                {
+                    more = processor.processRow( results.getRow( i ) );
+                }
+            }
+            catch ( SQLException e )
+            {
+                throw e ;  // this is to avoid the exception message below
+            }
+            catch ( Exception e )
+            {
+                throw new SQLException( "search() processRow fail: " + e );
+            }
+        }
+        else
+        {
+            final boolean[] stopped = { false };
+            RowProcessor watcher = new RowProcessor()
+            {
+                public boolean processRow( String[] row ) throws Exception
+                {
+                    stopped[ 0 ] = ! processor.processRow( row );
+                    return ! stopped[ 0 ];
+                }
+            };
+            for ( int i = 0 ; ( i < shards.length ) && ! stopped[ 0 ] ; i++ )
+            {
+                shards[ i ].search( q , watcher );
+            }
+        }
+    }
+
+    public DBResults search( String table , String whereClause , String[] dataColumns ) throws SQLException
+    {
+        DBQuery q = new DBQuery( this , table );
+        q.setWhereClause( whereClause );
+        q.setDataColumns( dataColumns );
+        return search( q );
+    }
+
+    /** When the column is the shard key, each shard is asked only for its own ids. */
+    public List search( String table , final String column , long[] ids , final String[] dataColumns , final RowMapper mapper ) throws SQLException
+    {
+        List returnVal = null ;
+        if ( column.equalsIgnoreCase( shardColumn ) )
+        {
+            final String shardTable = table ;
+            long[][] shardIDs = splitIDs( ids );
+            List work = new ArrayList();
+            for ( int i = 0 ; i < shards.length ; i++ )
+            {
+                if ( shardIDs[ i ].length > 0 )
+                {
+                    final DBFacade shard = shards[ i ];
+                    final long[] these = shardIDs[ i ];
+                    work.add( new Callable()
+                    {
+                        public Object call() throws Exception
+                        {
+                            return shard.search( shardTable , column , these , dataColumns , mapper );
+                        }
+                    });
+                }
+            }
+            returnVal = new ArrayList( ids.length );
+            if ( work.size() > 0 )
+            {
+                Object[] lists = runAtOnce( (Callable[])work.toArray( new Callable[ work.size() ] ) , "search()" );
+                for ( int i = 0 ; i < lists.length ; i++ )
+                {
+                    returnVal.addAll( (List)lists[ i ] );
+                }
+            }
+        }
+        else
+        {
+            returnVal = super.search( table , column , ids , dataColumns , mapper );
+        }
+        return returnVal ;
+    }
+
+    /** Each search is spread over the shards (see search( DBQuery )), one search after the other. */
+    public DBResults[] searchAll( DBQuery[] queries ) throws SQLException
+    {
+        if ( ( queries == null ) || ( queries.length == 0 ) )
+        {
+            throw new InvalidParameterException( "parameter queries must have at least one query" );
+        }
+        DBResults[] returnVal = new DBResults[ queries.length ];
+        for ( int i = 0 ; i < queries.length ; i++ )
+        {
+            returnVal[ i ] = search( queries[ i ] );
+        }
+        return returnVal ;
+    }
+
+    /** The count from each shard, added up. */
+    public long count( final DBQuery q ) throws SQLException
+    {
+        if ( q == null )
+        {
+            throw new InvalidParameterException( "parameter q is not allowed to be null" );
+        }
+        long returnVal = 0 ;
+        String key = q.getKey( shardColumn );
+        if ( key != null )
+        {
+            returnVal = getShard( key ).count( q );
+        }
+        else
+        {
+            Callable[] work = new Callable[ shards.length ];
+            for ( int i = 0 ; i < shards.length ; i++ )
+            {
+                final DBFacade shard = shards[ i ];
+                work[ i ] = new Callable()
+                {
+                    public Object call() throws Exception
+                    {
+                        return new Long( shard.count( q ) );
+                    }
+                };
+            }
+            Object[] counts = runAtOnce( work , "count()" );
+            for ( int i = 0 ; i < counts.length ; i++ )
+            {
+                returnVal += ( (Long)counts[ i ] ).longValue();
+            }
+        }
+        return returnVal ;
+    }
+
+    /** Like search( DBQuery ), keeping number columns as numbers - see ColumnarResults. */
+    public ColumnarResults searchColumnar( final DBQuery q ) throws SQLException
+    {
+        if ( q == null )
+        {
+            throw new InvalidParameterException( "parameter q is not allowed to be null" );
+        }
+        ColumnarResults returnVal = null ;
+        String key = q.getKey( shardColumn );
+        if ( key != null )
+        {
+            returnVal = getShard( key ).searchColumnar( q );
+        }
+        else
+        {
+            final Order order = getOrder( q );
+            Callable[] work = new Callable[ shards.length ];
+            for ( int i = 0 ; i < shards.length ; i++ )
+            {
+                final DBFacade shard = shards[ i ];
+                work[ i ] = new Callable()
+                {
+                    public Object call() throws Exception
+                    {
+                        return shard.searchColumnar( q );
+                    }
+                };
+            }
+            Object[] found = runAtOnce( work , "searchColumnar()" );
+            ColumnarResults[] results = new ColumnarResults[ found.length ];
+            System.arraycopy( found , 0 , results , 0 , found.length );
+
+            // each row is { its strings (only needed to sort) , the results it's in , its row number }
+            List rows = new ArrayList();
+            for ( int i = 0 ; i < results.length ; i++ )
+            {
+                for ( int row = 0 ; row < results[ i ].size() ; row++ )
+                {
+                    String[] values = ( order == null ) ? null : results[ i ].getRow( row );
+                    rows.add( new Object[]{ values , results[ i ] , new Integer( row ) } );
+                }
+            }
+            if ( order != null )
+            {
+                order.findNumbers( results[ 0 ] );
+                Collections.sort( rows , new Comparator()
+                {
+                    public int compare( Object o1 , Object o2 )
+                    {
+                        return order.compare( ( (Object[])o1 )[ 0 ] , ( (Object[])o2 )[ 0 ] );
+                    }
+                });
+            }
+            int[] columnTypes = new int[ results[ 0 ].getColumnCount() ];
+            for ( int i = 0 ; i < columnTypes.length ; i++ )
+            {
+                columnTypes[ i ] = results[ 0 ].getColumnType( i );
+            }
+            returnVal = new ColumnarResults( columnTypes );
+            int limit = q.getLimit();
+            for ( int i = 0 ; ( i < rows.size() ) && ( ( limit == 0 ) || ( i < limit ) ) ; i++ )
+            {
+                Object[] row = (Object[])rows.get( i );
+                returnVal.addRow( (ColumnarResults)row[ 1 ] , ( (Integer)row[ 2 ] ).intValue() );
+            }
+        }
+        return returnVal ;
+    }
+
+    /** The aggregate from each shard, combined:  SUM() and COUNT() are added up, and MIN() and MAX() are the smallest
+     *  or biggest of them.  sum(), min() and max() come here too.  A search that is just setSearch() on the shard key
+     *  goes to that shard alone.
+     *
+     * Only those four can be combined.  Anything else across the shards - "AVG(price)", "COUNT(DISTINCT city)",
+     * "SUM(price) / COUNT(*)" - is an InvalidParameterException.
+     */
+    public String aggregate( String aggregate , DBQuery q ) throws SQLException
+    {
+        if ( q == null )
+        {
+            throw new InvalidParameterException( "parameter q is not allowed to be null" );
+        }
+        String returnVal = null ;
+        String key = q.getKey( shardColumn );
+        if ( key != null )
+        {
+            returnVal = getShard( key ).aggregate( aggregate , q );
+        }
+        else
+        {
+            String function = getCombinable( aggregate );
+            DBResults[] results = searchShards( q.aggregate( new String[]{ aggregate } ) );
+            if ( function.equals( "SUM" ) || function.equals( "COUNT" ) )
+            {
+                BigDecimal total = null ;
+                for ( int i = 0 ; i < results.length ; i++ )
+                {
+                    String value = firstValue( results[ i ] );
+                    if ( value != null )
+                    {
+                        BigDecimal number = new BigDecimal( value.trim() );
+                        total = ( total == null ) ? number : total.add( number );
+                    }
+                }
+                if ( total != null )
+                {
+                    returnVal = total.toPlainString();
+                }
+                else if ( function.equals( "COUNT" ) )
+                {
+                    returnVal = "0" ;
+                }
+            }
+            else
+            {
+                boolean number = isNumberColumn( results , 0 );
+                int sign = function.equals( "MIN" ) ? -1 : 1 ;
+                for ( int i = 0 ; i < results.length ; i++ )
+                {
+                    String value = firstValue( results[ i ] );
+                    if ( ( value != null ) && ( ( returnVal == null ) || ( sign * compareValues( value , returnVal , number ) > 0 ) ) )
+                    {
+                        returnVal = value ;
+                    }
+                }
+            }
+        }
+        return returnVal ;
+    }
+
+    /** The groups can't be merged across the shards, so the query must be just setSearch() on the shard key - the
+     *  groups come from that shard alone.
+     */
+    public ColumnarResults groupBy( String[] groupColumns , String[] aggregates , DBQuery q ) throws SQLException
+    {
+        if ( q == null )
+        {
+            throw new InvalidParameterException( "parameter q is not allowed to be null" );
+        }
+        String key = q.getKey( shardColumn );
+        if ( key == null )
+        {
+            throw new InvalidParameterException( "a GROUP BY can't be merged across shards - search on the shard key" );
+        }
+        return getShard( key ).groupBy( groupColumns , aggregates , q );
+    }
+
+    public void update( DBQuery q , Map data ) throws SQLException
+    {
+        int shard = getChangeShard( q , data );
+        for ( int i = 0 ; i < shards.length ; i++ )
+        {
+            if ( ( shard == -1 ) || ( shard == i ) )
+            {
+                shards[ i ].update( q , data );
+            }
+        }
+    }
+
+    /** When the column is the shard key, each shard gets only its own keys. */
+    public void update( String table , String searchColumn , String[] searchText , Map data ) throws SQLException
+    {
+        String[][] shardKeys = splitKeys( searchColumn , searchText );
+        for ( int i = 0 ; i < shards.length ; i++ )
+        {
+            if ( shardKeys[ i ].length > 0 )
+            {
+                shards[ i ].update( table , searchColumn , shardKeys[ i ] , data );
+            }
+        }
+    }
+
+    /** When the column is the shard key, each shard gets only its own ids. */
+    public void update( String table , String column , long[] ids , Map data ) throws SQLException
+    {
+        long[][] shardIDs = column.equalsIgnoreCase( shardColumn ) ? splitIDs( ids ) : null ;
+        for ( int i = 0 ; i < shards.length ; i++ )
+        {
+            if ( shardIDs == null )
+            {
+                shards[ i ].update( table , column , ids , data );
+            }
+            else if ( shardIDs[ i ].length > 0 )
+            {
+                shards[ i ].update( table , column , shardIDs[ i ] , data );
+            }
+        }
+    }
+
+    public void delete( DBQuery q ) throws SQLException
+    {
+        int shard = getChangeShard( q , null );
+        for ( int i = 0 ; i < shards.length ; i++ )
+        {
+            if ( ( shard == -1 ) || ( shard == i ) )
+            {
+                shards[ i ].delete( q );
+            }
+        }
+    }
+
+    /** When the column is the shard key, each shard gets only its own keys. */
+    public void delete( String table , String column , String[] searchText ) throws SQLException
+    {
+        String[][] shardKeys = splitKeys( column , searchText );
+        for ( int i = 0 ; i < shards.length ; i++ )
+        {
+            if ( shardKeys[ i ].length > 0 )
+            {
+                shards[ i ].delete( table , column , shardKeys[ i ] );
+            }
+        }
+    }
+
+    /** When the column is the shard key, each shard gets only its own ids. */
+    public void delete( String table , String column , long[] ids ) throws SQLException
+    {
+        long[][] shardIDs = column.equalsIgnoreCase( shardColumn ) ? splitIDs( ids ) : null ;
+        for ( int i = 0 ; i < shards.length ; i++ )
+        {
+            if ( shardIDs == null )
+            {
+                shards[ i ].delete( table , column , ids );
+            }
+            else if ( shardIDs[ i ].length > 0 )
+            {
+                shards[ i ].delete( table , column , shardIDs[ i ] );
+            }
+        }
+    }
+
+    /** @param data Must have a value for the shard key column. */
+    public void insert( String table , Map data ) throws SQLException
+    {
+        getShard( getDataKey( data ) ).insert( table , data );
+    }
+
+    /** The rows for each shard go in as a batch of their own.  Each shard commits on its own.
+     *
+     * @param data Each Map must have a value for the shard key column.
+     */
+    public void insertBatch( String table , List data ) throws SQLException
+    {
+        List[] shardData = splitRows( data );
+        for ( int i = 0 ; i < shards.length ; i++ )
+        {
+            if ( shardData[ i ].size() > 0 )
+            {
+                shards[ i ].insertBatch( table , shardData[ i ] );
+            }
+        }
+    }
+
+    /** @param data Must have a value for the shard key column. */
+    public void upsert( String table , String[] keyColumns , Map data ) throws SQLException
+    {
+        getShard( getDataKey( data ) ).upsert( table , keyColumns , data );
+    }
+
+    /** The rows for each shard go in as a batch of their own.  Each shard commits on its own.
+     *
+     * @param data Each Map must have a value for the shard key column.
+     */
+    public void upsertBatch( String table , String[] keyColumns , List data ) throws SQLException
+    {
+        List[] shardData = splitRows( data );
+        for ( int i = 0 ; i < shards.length ; i++ )
+        {
+            if ( shardData[ i ].size() > 0 )
+            {
+                shards[ i ].upsertBatch( table , keyColumns , shardData[ i ] );
+            }
+        }
+    }
+
+    public String toString()
+    {
+        return "shardColumn=" + shardColumn + "|shards=" + shards.length + ( ( splits == null ) ? "|hash" : "|splits=" + Arrays.toString( splits ) );
+    }
+
+    // the same search on every shard at once
+    private DBResults[] searchShards( final DBQuery q ) throws SQLException
+    {
+        Callable[] work = new Callable[ shards.length ];
+        for ( int i = 0 ; i < shards.length ; i++ )
+        {
+            final DBFacade shard = shards[ i ];
+            work[ i ] = new Callable()
+            {
+                public Object call() throws Exception
+                {
+                    return shard.search( q );
+                }
+            };
+        }
+        Object[] results = runAtOnce( work , "search()" );
+        DBResults[] returnVal = new DBResults[ results.length ];
+        System.arraycopy( results , 0 , returnVal , 0 , results.length );
+        return returnVal ;
+    }
+
+    // The one shard a change goes to, from the shard key of the query or the data.  -1 for all of them.
+    private int getChangeShard( DBQuery q , Map data )
+    {
+        int returnVal = -1 ;
+        String key = q.getKey( shardColumn );
+        if ( key != null )
+        {
+            returnVal = getShardIndex( key );
+        }
+        String dataKey = ( data == null ) ? null : findDataKey( data );
+        if ( dataKey != null )
+        {
+            int dataShard = getShardIndex( dataKey );
+            if ( ( returnVal != -1 ) && ( returnVal != dataShard ) )
+            {
+                throw new InvalidParameterException( "the shard key can't be changed - delete the row and insert it again" );
+            }
+            returnVal = dataShard ;
+        }
+        return returnVal ;
+    }
+
+    // the value of the shard key column in the data (">column" counts too), or null if it isn't there
+    private String findDataKey( Map data )
+    {
+        String returnVal = null ;
+        Iterator it = data.entrySet().iterator();
+        while ( it.hasNext() )
+        {
+            Map.Entry entry = (Map.Entry)it.next();
+            String column = (String)entry.getKey();
+            if ( column.startsWith( ">" ) )
+            {
+                column = column.substring( 1 );
+            }
+            if ( column.equalsIgnoreCase( shardColumn ) && ( entry.getValue() != null ) )
+            {
+                returnVal = entry.getValue().toString();
+            }
+        }
+        return returnVal ;
+    }
+
+    private String getDataKey( Map data )
+    {
+        String returnVal = findDataKey( data );
+        if ( returnVal == null )
+        {
+            throw new InvalidParameterException( "the data must have a value for the shard key column " + shardColumn );
+        }
+        return returnVal ;
+    }
+
+    // the rows (Map objects) for each shard
+    private List[] splitRows( List data )
+    {
+        List[] returnVal = new List[ shards.length ];
+        for ( int i = 0 ; i < returnVal.length ; i++ )
+        {
+            returnVal[ i ] = new ArrayList();
+        }
+        for ( int i = 0 ; i < data.size() ; i++ )
+        {
+            Map row = (Map)data.get( i );
+            returnVal[ getShardIndex( getDataKey( row ) ) ].add( row );
+        }
+        return returnVal ;
+    }
+
+    // the ids for each shard
+    private long[][] splitIDs( long[] ids )
+    {
+        if ( ids == null )
+        {
+            throw new InvalidParameterException( "parameter ids is not allowed to be null" );
+        }
+        int[] counts = new int[ shards.length ];
+        int[] shard = new int[ ids.length ];
+        for ( int i = 0 ; i < ids.length ; i++ )
+        {
+            shard[ i ] = getShardIndex( String.valueOf( ids[ i ] ) );
+            counts[ shard[ i ] ]++ ;
+        }
+        long[][] returnVal = new long[ shards.length ][];
+        for ( int i = 0 ; i < shards.length ; i++ )
+        {
+            returnVal[ i ] = new long[ counts[ i ] ];
+            counts[ i ] = 0 ;
+        }
+        for ( int i = 0 ; i < ids.length ; i++ )
+        {
+            returnVal[ shard[ i ] ][ counts[ shard[ i ] ]++ ] = ids[ i ];
+        }
+        return returnVal ;
+    }
+
+    // The keys for each shard.  If the column isn't the shard key, every shard gets all of them.
+    private String[][] splitKeys( String column , String[] keys )
+    {
+        String[][] returnVal = new String[ shards.length ][];
+        if ( column.equalsIgnoreCase( shardColumn ) )
+        {
+            List[] lists = new List[ shards.length ];
+            for ( int i = 0 ; i < lists.length ; i++ )
+            {
+                lists[ i ] = new ArrayList();
+            }
+            for ( int i = 0 ; i < keys.length ; i++ )
+            {
+                lists[ getShardIndex( keys[ i ] ) ].add( keys[ i ] );
+            }
+            for ( int i = 0 ; i < lists.length ; i++ )
+            {
+                returnVal[ i ] = (String[])lists[ i ].toArray( new String[ lists[ i ].size() ] );
+            }
+        }
+        else
+        {
+            Arrays.fill( returnVal , keys );
+        }
+        return returnVal ;
+    }
+
+    // null if the text isn't a whole number
+    private static Long toLong( String s )
+    {
+        Long returnVal = null ;
+        try
+        {
+            returnVal = new Long( Long.parseLong( s.trim() ) );
+        }
+        catch ( NumberFormatException e )
+        {
+            // not a number
+        }
+        return returnVal ;
+    }
+
+    // The function of an aggregate that can be combined across the shards, in upper case:  SUM, COUNT, MIN or MAX.
+    private static String getCombinable( String aggregate )
+    {
+        String returnVal = null ;
+        String upper = ( aggregate == null ) ? "" : aggregate.trim().toUpperCase();
+        int open = upper.indexOf( '(' );
+        if ( ( open > 0 ) && upper.endsWith( ")" ) )
+        {
+            String function = upper.substring( 0 , open ).trim();
+            String inside = upper.substring( open + 1 , upper.length() - 1 ).trim();
+
+            // the parentheses must be the function's own, not "SUM(a) / COUNT(b)"
+            int depth = 0 ;
+            for ( int i = 0 ; ( i < inside.length() ) && ( depth >= 0 ) ; i++ )
+            {
+                char c = inside.charAt( i );
+                depth += ( c == '(' ) ? 1 : ( ( c == ')' ) ? -1 : 0 );
+            }
+            boolean adds = function.equals( "SUM" ) || function.equals( "COUNT" );
+            boolean compares = function.equals( "MIN" ) || function.equals( "MAX" );
+            if ( ( depth == 0 ) && ( compares || ( adds && ! inside.matches( "DISTINCT\\b.*" ) ) ) )
+            {
+                returnVal = function ;
+            }
+        }
+        if ( returnVal == null )
+        {
+            throw new InvalidParameterException( "only SUM(), COUNT(), MIN() and MAX() can be combined across shards: " + aggregate );
+        }
+        return returnVal ;
+    }
+
+    // the first column of the first row, or null if there isn't one
+    private static String firstValue( DBResults r )
+    {
+        return ( r.size() == 0 ) ? null : r.getRow( 0 )[ 0 ];
+    }
+
+    // True if the column holds numbers, going by the java.sql.Types the database gave.  For results that don't say
+    // (they didn't come from a database), true if every value in the column is a number.
+    private static boolean isNumberColumn( DBResults[] results , int column )
+    {
+        int[] columnTypes = null ;
+        for ( int i = 0 ; ( i < results.length ) && ( columnTypes == null ) ; i++ )
+        {
+            columnTypes = results[ i ].getColumnTypes();
+        }
+        boolean returnVal = true ;
+        if ( columnTypes != null )
+        {
+            returnVal = isNumberType( columnTypes[ column ] );
+        }
+        else
+        {
+            for ( int i = 0 ; ( i < results.length ) && returnVal ; i++ )
+            {
+                for ( int row = 0 ; ( row < results[ i ].size() ) && returnVal ; row++ )
+                {
+                    String value = results[ i ].get( row , column );
+                    returnVal = ( value == null ) || isNumber( value );
+                }
+            }
+        }
+        return returnVal ;
+    }
+
+    private static boolean isNumberType( int columnType )
+    {
+        boolean returnVal = false ;
+        switch ( columnType )
+        {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                returnVal = true ;
+                break ;
+        }
+        return returnVal ;
+    }
+
+    private static boolean isNumber( String s )
+    {
+        boolean returnVal = true ;
+        try
+        {
+            new BigDecimal( s.trim() );
+        }
+        catch ( NumberFormatException e )
+        {
+            returnVal = false ;
+        }
+        return returnVal ;
+    }
+
+    // Numbers as numbers, the rest as text, NULL last.
+    private static int compareValues( String s1 , String s2 , boolean number )
+    {
+        int returnVal = 0 ;
+        if ( ( s1 == null ) || ( s2 == null ) )
+        {
+            returnVal = ( s1 == null ) ? ( ( s2 == null ) ? 0 : 1 ) : -1 ;
+        }
+        else if ( number )
+        {
+            returnVal = new BigDecimal( s1.trim() ).compareTo( new BigDecimal( s2.trim() ) );
+        }
+        else
+        {
+            returnVal = s1.compareTo( s2 );
+        }
+        return returnVal ;
+    }
+
+    // How to sort the rows from the shards:  null if the query has no order.
+    private static Order getOrder( DBQuery q )
+    {
+        if ( q.getGroupByClause().length() > 0 )
+        {
+            throw new InvalidParameterException( "a GROUP BY can't be merged across shards" );
+        }
+        Order returnVal = null ;
+        String orderBy = q.getOrderByClause();
+        if ( orderBy.length() > 0 )
+        {
+            String[] terms = orderBy.substring( " ORDER BY ".length() ).split( "," );
+            int[] columns = new int[ terms.length ];
+            boolean[] descending = new boolean[ terms.length ];
+            for ( int i = 0 ; i < terms.length ; i++ )
+            {
+                String term = terms[ i ].trim();
+                String upper = term.toUpperCase();
+                if ( upper.endsWith( " DESC" ) || upper.endsWith( " ASC" ) )
+                {
+                    descending[ i ] = upper.endsWith( " DESC" );
+                    term = term.substring( 0 , term.lastIndexOf( ' ' ) ).trim();
+                }
+                columns[ i ] = findDataColumn( q.getDataColumns() , term );
+            }
+            returnVal = new Order( columns , descending );
+        }
+        return returnVal ;
+    }
+
+    // where the order by column is in the data columns (by name, or by what it's called with AS)
+    private static int findDataColumn( String[] dataColumns , String column )
+    {
+        int returnVal = -1 ;
+        for ( int i = 0 ; ( dataColumns != null ) && ( i < dataColumns.length ) && ( returnVal == -1 ) ; i++ )
+        {
+            String name = dataColumns[ i ].trim();
+            if ( name.equalsIgnoreCase( column ) || name.toUpperCase().endsWith( ' ' + column.toUpperCase() ) )
+            {
+                returnVal = i ;
+            }
+        }
+        if ( returnVal == -1 )
+        {
+            throw new InvalidParameterException( "to merge the shards in order, " + column + " must be one of the data columns" );
+        }
+        return returnVal ;
+    }
+
+    // Sorts rows (String arrays) by some of their columns - see compareValues().  findNumbers() must be called first.
+    private static class Order implements Comparator
+    {
+        private final int[] columns ;
+        private final boolean[] descending ;
+
+        // for each of the columns, true to sort it as numbers
+        private final boolean[] numbers ;
+
+        Order( int[] columns , boolean[] descending )
+        {
+            this.columns = columns ;
+            this.descending = descending ;
+            numbers = new boolean[ columns.length ];
+        }
+
+        void findNumbers( DBResults[] results )
+        {
+            for ( int i = 0 ; i < columns.length ; i++ )
+            {
+                numbers[ i ] = isNumberColumn( results , columns[ i ] );
+            }
+        }
+
+        void findNumbers( ColumnarResults results )
+        {
+            for ( int i = 0 ; i < columns.length ; i++ )
+            {
+                numbers[ i ] = isNumberType( results.getColumnType( columns[ i ] ) );
+            }
+        }
+
+        public int compare( Object o1 , Object o2 )
+        {
+            String[] row1 = (String[])o1 ;
+            String[] row2 = (String[])o2 ;
+            int returnVal = 0 ;
+            for ( int i = 0 ; ( i < columns.length ) && ( returnVal == 0 ) ; i++ )
+            {
+                returnVal = compareValues( row1[ columns[ i ] ] , row2[ columns[ i ] ] , numbers[ i ] );
+                if ( descending[ i ] )
+                {
+                    returnVal = -returnVal ;
+                }
+            }
+            return returnVal ;
+        }
+    }
+
+}
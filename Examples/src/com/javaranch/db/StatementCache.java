@@ -0,0 +1,152 @@
+package com.javaranch.db ;
+
+import java.util.* ;
+import java.sql.* ;
+
+/** Keeps the most recently used PreparedStatements for one physical connection so the database doesn't have to
+ *  parse the same SQL over and over.
+ *
+ * Every pooled connection has one of these.  DBFacade takes a statement out, uses it and puts it back.  A statement
+ * that is taken out is not in the cache, so two users of the same SQL on the same connection (i.e. a cursor that is
+ * still open while another search runs) each get their own statement.
+ *
+ * When the cache is full, the least recently used statement is closed.
+ */
+public class StatementCache
+{
+
+    private final int maxSize ;
+
+    // sql to PreparedStatement, in least recently used order
+    private final LinkedHashMap statements = new LinkedHashMap( 16 , 0.75f , true );
+
+    private long hits = 0 ;
+    private long misses = 0 ;
+    private long evictions = 0 ;
+
+    /**
+     * @param maxSize The most statements that will be kept open.
+     */
+    public StatementCache( int maxSize )
+    {
+        this.maxSize = maxSize ;
+    }
+
+    /** Get a statement for this SQL - an old one if there is one, otherwise a new one.
+     *
+     * When you are done with it, give it back with put() or close it.
+     */
+    public PreparedStatement take( Connection con , String sql ) throws SQLException
+    {
+        return take( con , sql , null );
+    }
+
+    /** Get a statement for this SQL that will hand back the new value of keyColumn from getGeneratedKeys().
+     *
+     * When you are done with it, give it back with put( sql , keyColumn , statement ) or close it.
+     *
+     * @param keyColumn null for a plain statement.
+     */
+    public synchronized PreparedStatement take( Connection con , String sql , String keyColumn ) throws SQLException
+    {
+        PreparedStatement statement = (PreparedStatement)statements.remove( getKey( sql , keyColumn ) );
+        if ( statement == null )
+        {
+            misses++ ;
+            if ( keyColumn == null )
+            {
+                statement = con.prepareStatement( sql );
+            }
+            else
+            {
+                statement = con.prepareStatement( sql , new String[]{ keyColumn } );
+            }
+        }
+        else
+        {
+            hits++ ;
+        }
+        return statement ;
+    }
+
+    /** Put a statement back so it can be used again. */
+    public void put( String sql , PreparedStatement statement )
+    {
+        put( sql , null , statement );
+    }
+
+    /** Put a statement from take( con , sql , keyColumn ) back so it can be used again. */
+    public synchronized void put( String sql , String keyColumn , PreparedStatement statement )
+    {
+        if ( maxSize <= 0 )
+        {
+            closeQuietly( statement );
+        }
+        else
+        {
+            PreparedStatement old = (PreparedStatement)statements.put( getKey( sql , keyColumn ) , statement );
+            if ( ( old != null ) && ( old != statement ) )
+            {
+                closeQuietly( old );
+            }
+            while ( statements.size() > maxSize )
+            {
+                Iterator it = statements.values().iterator();
+                PreparedStatement eldest = (PreparedStatement)it.next();
+                it.remove();
+                closeQuietly( eldest );
+                evictions++ ;
+            }
+        }
+    }
+
+    // statements that return generated keys are kept apart from plain statements with the same SQL
+    private static String getKey( String sql , String keyColumn )
+    {
+        return ( keyColumn == null ) ? sql : ( keyColumn + " <- " + sql );
+    }
+
+    /** Close every statement in the cache. */
+    public synchronized void clear()
+    {
+        Iterator it = statements.values().iterator();
+        while ( it.hasNext() )
+        {
+            closeQuietly( (PreparedStatement)it.next() );
+        }
+        statements.clear();
+    }
+
+    private static void closeQuietly( PreparedStatement statement )
+    {
+        try
+        {
+            statement.close();
+        }
+        catch ( SQLException e )
+        {
+            // nothing more can be done with it
+        }
+    }
+
+    public synchronized int size()
+    {
+        return statements.size();
+    }
+
+    public synchronized long getHits()
+    {
+        return hits ;
+    }
+
+    public synchronized long getMisses()
+    {
+        return misses ;
+    }
+
+    public synchronized long getEvictions()
+    {
+        return evictions ;
+    }
+
+}
@@ -0,0 +1,159 @@
+package com.javaranch.db ;
+
+import com.javaranch.common.Str ;
+
+import java.util.* ;
+import java.util.concurrent.ConcurrentHashMap ;
+
+/** For use by DBFacade:  INSERT and UPDATE statements that have already been built, kept by the columns they change.
+ *
+ * When the data goes to the database as '?' parameters, the SQL only depends on the table and the columns (and the
+ * markers on them:  ">" for a stream and "+" for a raw value, which is part of the SQL).  So the SQL is built the first
+ * time a table is written with a set of columns, and after that only the values are picked out of the Map.
+ *
+ * The columns are kept in the order the Map gives them.  A Map with the same columns in a different order gets a
+ * template of its own.
+ */
+class StatementTemplates
+{
+
+    static final String INSERT = "INSERT" ;
+    static final String UPDATE = "UPDATE" ;
+
+    // There shouldn't be anywhere near this many.  If there are, the raw values are probably always different, and
+    // keeping them would just use up memory.
+    static final int MAX_TEMPLATES = 1000 ;
+
+    // what to do with each value in the Map
+    private static final int BIND = 0 ;
+    private static final int STREAM = 1 ;
+    private static final int RAW = 2 ;
+
+    // List ( INSERT or UPDATE , table , the Map keys with raw values after their keys ) -> Template
+    private final Map templates = new ConcurrentHashMap();
+
+    private static class Template
+    {
+        final String sql ;
+        final int[] kinds ;
+
+        Template( String sql , int[] kinds )
+        {
+            this.sql = sql ;
+            this.kinds = kinds ;
+        }
+    }
+
+    /** The SQL for writing this data to the table, with everything that goes to a '?' added to bindData.
+     *
+     * @param type INSERT for the whole INSERT statement, or UPDATE for "UPDATE table SET column=?,column=?" (add
+     *             your own WHERE clause).
+     */
+    String getSQL( String type , String table , Map data , List bindData )
+    {
+        int size = data.size();
+        List key = new ArrayList( size + 2 );
+        key.add( type );
+        key.add( table );
+        Object[] values = new Object[ size ];
+        int i = 0 ;
+        Iterator it = data.entrySet().iterator();
+        while ( it.hasNext() )
+        {
+            Map.Entry entry = (Map.Entry)it.next();
+            String dataColumn = (String)entry.getKey();
+            Object obj = entry.getValue();
+            String dataValue = ( obj == null ) ? null : obj.toString();
+            key.add( dataColumn );
+            if ( dataColumn.charAt( 0 ) == '+' )
+            {
+                key.add( dataValue );
+            }
+            values[ i ] = dataValue ;
+            i++ ;
+        }
+        Template template = (Template)templates.get( key );
+        if ( template == null )
+        {
+            template = build( type , table , data );
+            if ( templates.size() < MAX_TEMPLATES )
+            {
+                templates.put( key , template );
+            }
+        }
+        for ( i = 0 ; i < size ; i++ )
+        {
+            if ( template.kinds[ i ] == BIND )
+            {
+                bindData.add( values[ i ] );
+            }
+            else if ( template.kinds[ i ] == STREAM )
+            {
+                bindData.add( new DBFacade.StreamData( (String)values[ i ] ) );
+            }
+        }
+        return template.sql ;
+    }
+
+    private static Template build( String type , String table , Map data )
+    {
+        int[] kinds = new int[ data.size() ];
+        Str columns = new Str( 200 );
+        Str values = new Str( 200 );
+        int i = 0 ;
+        Iterator it = data.entrySet().iterator();
+        while ( it.hasNext() )
+        {
+            Map.Entry entry = (Map.Entry)it.next();
+            String dataColumn = (String)entry.getKey();
+            String value = "?" ;
+            if ( dataColumn.charAt( 0 ) == '>' )
+            {
+                dataColumn = dataColumn.substring( 1 );
+                kinds[ i ] = STREAM ;
+            }
+            else if ( dataColumn.charAt( 0 ) == '+' )
+            {
+                dataColumn = dataColumn.substring( 1 );
+                value = String.valueOf( entry.getValue() );
+                kinds[ i ] = RAW ;
+            }
+            else
+            {
+                kinds[ i ] = BIND ;
+            }
+            if ( type == INSERT )
+            {
+                columns.append( dataColumn );
+                columns.append( ',' );
+            }
+            else
+            {
+                values.append( dataColumn );
+                values.append( '=' );
+            }
+            values.append( value );
+            values.append( ',' );
+            i++ ;
+        }
+        columns.deleteLast( 1 );
+        values.deleteLast( 1 );
+        String sql ;
+        if ( type == INSERT )
+        {
+            sql = "INSERT INTO " + table + " (" + columns + ") VALUES (" + values + ")" ;
+        }
+        else
+        {
+            sql = "UPDATE " + table + " SET " + values ;
+        }
+        return new Template( sql , kinds );
+    }
+
+    /** How many statements are kept. */
+    int size()
+    {
+        return templates.size();
+    }
+
+}
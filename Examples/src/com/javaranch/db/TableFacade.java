@@ -2,7 +2,9 @@ package com.javaranch.db;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 public class TableFacade
 {
@@ -10,6 +12,9 @@ public class TableFacade
     private DBFacade db ;
     private String tableName ;
 
+    // where searches without a connection are answered, or null to always ask the database
+    private volatile ReplicatedTable replica = null ;
+
     public TableFacade( DBFacade db , String tableName )
     {
         this.db = db ;
@@ -36,6 +41,57 @@ public class TableFacade
         this.db = db;
     }
 
+    /** Answer searches from a copy of the table in memory instead of the database.
+     *
+     * Only the searches that aren't given a connection, and only for one column (or all rows) and columns the replica
+     * keeps.  Anything else - a where clause, a connection, a page, a count - still goes to the database.  A search
+     * given a connection is usually part of a transaction, and should see the rows as the transaction sees them.  For
+     * the same reason, nothing comes from the replica inside DBFacade.inTransaction().
+     *
+     * @param replica null to go back to the database for everything.
+     */
+    public void replicate( ReplicatedTable replica )
+    {
+        this.replica = replica ;
+    }
+
+    public ReplicatedTable getReplica()
+    {
+        return replica ;
+    }
+
+    // The replica, if it can answer a search on this column (null for all rows) for these columns and this thread
+    // isn't in a transaction.  Otherwise null.
+    private ReplicatedTable getReplica( String searchColumn , String[] dataColumns )
+    {
+        ReplicatedTable returnVal = db.isInTransaction() ? null : replica ;
+        if ( ( returnVal != null ) && ! ( returnVal.hasColumns( dataColumns ) && ( ( searchColumn == null ) || returnVal.hasColumns( new String[]{ searchColumn } ) ) ) )
+        {
+            returnVal = null ;
+        }
+        return returnVal ;
+    }
+
+    private static String[] toStrings( int[] values )
+    {
+        String[] returnVal = new String[ values.length ];
+        for ( int i = 0 ; i < values.length ; i++ )
+        {
+            returnVal[ i ] = String.valueOf( values[ i ] );
+        }
+        return returnVal ;
+    }
+
+    private static String[] toStrings( long[] values )
+    {
+        String[] returnVal = new String[ values.length ];
+        for ( int i = 0 ; i < values.length ; i++ )
+        {
+            returnVal[ i ] = String.valueOf( values[ i ] );
+        }
+        return returnVal ;
+    }
+
     public DBResults search( Connection con , String whereClause , String[] dataColumns ) throws SQLException
     {
         return db.search( con , getTableName() , whereClause , dataColumns );
@@ -43,7 +99,8 @@ public class TableFacade
 
     public DBResults search( String whereClause , String[] dataColumns ) throws SQLException
     {
-        return db.search( getTableName() , whereClause , dataColumns );
+        ReplicatedTable r = ( whereClause == null ) ? getReplica( null , dataColumns ) : null ;
+        return ( r != null ) ? r.search( null , null , dataColumns ) : db.search( getTableName() , whereClause , dataColumns );
     }
 
     public DBResults search( Connection con , String searchColumn , String searchText , String[] dataColumns ) throws SQLException
@@ -58,12 +115,14 @@ public class TableFacade
 
     public DBResults search( String searchColumn , String searchText , String[] dataColumns ) throws SQLException
     {
-        return db.search( getTableName() , searchColumn , searchText , dataColumns );
+        ReplicatedTable r = getReplica( searchColumn , dataColumns );
+        return ( r != null ) ? r.search( searchColumn , new String[]{ searchText } , dataColumns ) : db.search( getTableName() , searchColumn , searchText , dataColumns );
     }
 
     public DBResults search( String searchColumn , String[] searchText , String[] dataColumns ) throws SQLException
     {
-        return db.search( getTableName() , searchColumn , searchText , dataColumns );
+        ReplicatedTable r = getReplica( searchColumn , dataColumns );
+        return ( r != null ) ? r.search( searchColumn , searchText , dataColumns ) : db.search( getTableName() , searchColumn , searchText , dataColumns );
     }
 
     public DBResults search( Connection con , String searchColumn , int searchValue , String[] dataColumns ) throws SQLException
@@ -78,12 +137,14 @@ public class TableFacade
 
     public DBResults search( String searchColumn , int searchValue , String[] dataColumns ) throws SQLException
     {
-        return db.search( getTableName() , searchColumn , searchValue , dataColumns );
+        ReplicatedTable r = getReplica( searchColumn , dataColumns );
+        return ( r != null ) ? r.search( searchColumn , new String[]{ String.valueOf( searchValue ) } , dataColumns ) : db.search( getTableName() , searchColumn , searchValue , dataColumns );
     }
 
     public DBResults search( String searchColumn , int[] searchValues , String[] dataColumns ) throws SQLException
     {
-        return db.search( getTableName() , searchColumn , searchValues , dataColumns );
+        ReplicatedTable r = getReplica( searchColumn , dataColumns );
+        return ( r != null ) ? r.search( searchColumn , toStrings( searchValues ) , dataColumns ) : db.search( getTableName() , searchColumn , searchValues , dataColumns );
     }
 
     /** Get all rows.
@@ -97,7 +158,316 @@ public class TableFacade
      */
     public DBResults search( String[] dataColumns ) throws SQLException
     {
-        return db.search( getTableName() , null , dataColumns );
+        return search( (String)null , dataColumns );
+    }
+
+    // a query on this table for these columns.  A null where clause finds all rows.
+    private DBQuery getQuery( String whereClause , String[] dataColumns )
+    {
+        DBQuery q = new DBQuery( db , getTableName() );
+        q.setWhereClause( whereClause );
+        q.setDataColumns( dataColumns );
+        return q ;
+    }
+
+    /** Read the rows one at a time as you need them.  Close the cursor when you are done!
+     *
+     * @param whereClause null for all rows.
+     */
+    public DBCursor openCursor( Connection con , String whereClause , String[] dataColumns ) throws SQLException
+    {
+        return db.openCursor( con , getQuery( whereClause , dataColumns ) );
+    }
+
+    /** Read the rows one at a time as you need them.  Close the cursor when you are done!
+     *
+     * @param whereClause null for all rows.
+     */
+    public DBCursor openCursor( String whereClause , String[] dataColumns ) throws SQLException
+    {
+        return db.openCursor( getQuery( whereClause , dataColumns ) );
+    }
+
+    /** Hand each row to the processor as it is read, instead of keeping them all in memory.
+     *
+     * @param whereClause null for all rows.
+     */
+    public void search( Connection con , String whereClause , String[] dataColumns , RowProcessor processor ) throws SQLException
+    {
+        db.search( con , getQuery( whereClause , dataColumns ) , processor );
+    }
+
+    /** Hand each row to the processor as it is read, instead of keeping them all in memory.
+     *
+     * @param whereClause null for all rows.
+     */
+    public void search( String whereClause , String[] dataColumns , RowProcessor processor ) throws SQLException
+    {
+        db.search( getQuery( whereClause , dataColumns ) , processor );
+    }
+
+    /** Turn each row into an object with the mapper, straight from the ResultSet.
+     *
+     * @param whereClause null for all rows.
+     * @return a List of whatever the mapper made, one for each row.
+     */
+    public List search( Connection con , String whereClause , String[] dataColumns , RowMapper mapper ) throws SQLException
+    {
+        return db.search( con , getQuery( whereClause , dataColumns ) , mapper );
+    }
+
+    /** Turn each row into an object with the mapper, straight from the ResultSet.
+     *
+     * @param whereClause null for all rows.
+     * @return a List of whatever the mapper made, one for each row.
+     */
+    public List search( String whereClause , String[] dataColumns , RowMapper mapper ) throws SQLException
+    {
+        ReplicatedTable r = ( whereClause == null ) ? getReplica( null , dataColumns ) : null ;
+        return ( r != null ) ? r.search( null , null , dataColumns , mapper ) : db.search( getQuery( whereClause , dataColumns ) , mapper );
+    }
+
+    public List search( Connection con , String searchColumn , String searchText , String[] dataColumns , RowMapper mapper ) throws SQLException
+    {
+        return db.search( con , new DBQuery( db , getTableName() , searchColumn , searchText , dataColumns ) , mapper );
+    }
+
+    public List search( String searchColumn , String searchText , String[] dataColumns , RowMapper mapper ) throws SQLException
+    {
+        ReplicatedTable r = getReplica( searchColumn , dataColumns );
+        return ( r != null ) ? r.search( searchColumn , new String[]{ searchText } , dataColumns , mapper ) : db.search( new DBQuery( db , getTableName() , searchColumn , searchText , dataColumns ) , mapper );
+    }
+
+    public List search( Connection con , String searchColumn , String[] searchText , String[] dataColumns , RowMapper mapper ) throws SQLException
+    {
+        return db.search( con , new DBQuery( db , getTableName() , searchColumn , searchText , dataColumns ) , mapper );
+    }
+
+    public List search( String searchColumn , String[] searchText , String[] dataColumns , RowMapper mapper ) throws SQLException
+    {
+        ReplicatedTable r = getReplica( searchColumn , dataColumns );
+        return ( r != null ) ? r.search( searchColumn , searchText , dataColumns , mapper ) : db.search( new DBQuery( db , getTableName() , searchColumn , searchText , dataColumns ) , mapper );
+    }
+
+    /** Find the rows for all of these ids at once - see DBFacade.search( table , column , ids , dataColumns , mapper ).
+     *
+     * @return a List of whatever the mapper made, in no particular order.
+     */
+    public List search( Connection con , String column , long[] ids , String[] dataColumns , RowMapper mapper ) throws SQLException
+    {
+        return db.search( con , getTableName() , column , ids , dataColumns , mapper );
+    }
+
+    /** Find the rows for all of these ids at once - see DBFacade.search( table , column , ids , dataColumns , mapper ).
+     *
+     * @return a List of whatever the mapper made, in no particular order.
+     */
+    public List search( String column , long[] ids , String[] dataColumns , RowMapper mapper ) throws SQLException
+    {
+        ReplicatedTable r = getReplica( column , dataColumns );
+        return ( r != null ) ? r.search( column , toStrings( ids ) , dataColumns , mapper ) : db.search( getTableName() , column , ids , dataColumns , mapper );
+    }
+
+    // a query on this table for one page of rows - see DBQuery.page()
+    private DBQuery getPageQuery( String whereClause , String[] dataColumns , String[] orderColumns , Object[] afterKey , int limit )
+    {
+        DBQuery q = getQuery( whereClause , dataColumns );
+        q.page( orderColumns , afterKey , limit );
+        return q ;
+    }
+
+    /** Get the rows that come after afterKey in the order of orderColumns, at most limit of them - see DBQuery.page().
+     *
+     * @param whereClause null for all rows.
+     * @param afterKey The orderColumns values of the last row of the page before, or null for the first page.
+     */
+    public DBResults getPage( Connection con , String whereClause , String[] dataColumns , String[] orderColumns , Object[] afterKey , int limit ) throws SQLException
+    {
+        return db.search( con , getPageQuery( whereClause , dataColumns , orderColumns , afterKey , limit ) );
+    }
+
+    /** Get the rows that come after afterKey in the order of orderColumns, at most limit of them - see DBQuery.page().
+     *
+     * @param whereClause null for all rows.
+     * @param afterKey The orderColumns values of the last row of the page before, or null for the first page.
+     */
+    public DBResults getPage( String whereClause , String[] dataColumns , String[] orderColumns , Object[] afterKey , int limit ) throws SQLException
+    {
+        return db.search( getPageQuery( whereClause , dataColumns , orderColumns , afterKey , limit ) );
+    }
+
+    /** Like getPage(), but each row is turned into an object with the mapper.
+     *
+     * @return a List of whatever the mapper made, in page order.
+     */
+    public List getPage( Connection con , String whereClause , String[] dataColumns , String[] orderColumns , Object[] afterKey , int limit , RowMapper mapper ) throws SQLException
+    {
+        return db.search( con , getPageQuery( whereClause , dataColumns , orderColumns , afterKey , limit ) , mapper );
+    }
+
+    /** Like getPage(), but each row is turned into an object with the mapper.
+     *
+     * @return a List of whatever the mapper made, in page order.
+     */
+    public List getPage( String whereClause , String[] dataColumns , String[] orderColumns , Object[] afterKey , int limit , RowMapper mapper ) throws SQLException
+    {
+        return db.search( getPageQuery( whereClause , dataColumns , orderColumns , afterKey , limit ) , mapper );
+    }
+
+    /** Like search(), but on another thread - see DBFacade.submit().
+     *
+     * @param whereClause null for all rows.
+     * @return a Future for the DBResults.
+     */
+    public Future searchAsync( String whereClause , String[] dataColumns )
+    {
+        return db.searchAsync( getTableName() , whereClause , dataColumns );
+    }
+
+    /** Like search(), but number columns are kept as numbers - see ColumnarResults.
+     *
+     * @param whereClause null for all rows.
+     */
+    public ColumnarResults searchColumnar( Connection con , String whereClause , String[] dataColumns ) throws SQLException
+    {
+        return db.searchColumnar( con , getQuery( whereClause , dataColumns ) );
+    }
+
+    /** Like search(), but number columns are kept as numbers - see ColumnarResults.
+     *
+     * @param whereClause null for all rows.
+     */
+    public ColumnarResults searchColumnar( String whereClause , String[] dataColumns ) throws SQLException
+    {
+        return db.searchColumnar( getQuery( whereClause , dataColumns ) );
+    }
+
+    /** How many rows match - counted by the database, see DBFacade.count().
+     *
+     * @param whereClause null for all rows.
+     */
+    public long count( Connection con , String whereClause ) throws SQLException
+    {
+        return db.count( con , getQuery( whereClause , null ) );
+    }
+
+    /** How many rows match - counted by the database, see DBFacade.count().
+     *
+     * @param whereClause null for all rows.
+     */
+    public long count( String whereClause ) throws SQLException
+    {
+        return db.count( getQuery( whereClause , null ) );
+    }
+
+    /** True if any rows match.
+     *
+     * @param whereClause null for all rows.
+     */
+    public boolean exists( Connection con , String whereClause ) throws SQLException
+    {
+        return db.exists( con , getQuery( whereClause , null ) );
+    }
+
+    /** True if any rows match.
+     *
+     * @param whereClause null for all rows.
+     */
+    public boolean exists( String whereClause ) throws SQLException
+    {
+        return db.exists( getQuery( whereClause , null ) );
+    }
+
+    /** The total of a number column for the rows that match.
+     *
+     * @param whereClause null for all rows.
+     */
+    public double sum( Connection con , String column , String whereClause ) throws SQLException
+    {
+        return db.sum( con , column , getQuery( whereClause , null ) );
+    }
+
+    /** The total of a number column for the rows that match.
+     *
+     * @param whereClause null for all rows.
+     */
+    public double sum( String column , String whereClause ) throws SQLException
+    {
+        return db.sum( column , getQuery( whereClause , null ) );
+    }
+
+    /** The total of a whole number column for the rows that match, with no precision lost to a double.
+     *
+     * @param whereClause null for all rows.
+     */
+    public long sumLong( Connection con , String column , String whereClause ) throws SQLException
+    {
+        return db.sumLong( con , column , getQuery( whereClause , null ) );
+    }
+
+    /** The total of a whole number column for the rows that match, with no precision lost to a double.
+     *
+     * @param whereClause null for all rows.
+     */
+    public long sumLong( String column , String whereClause ) throws SQLException
+    {
+        return db.sumLong( column , getQuery( whereClause , null ) );
+    }
+
+    /** The smallest value in the column for the rows that match, or null if none do.
+     *
+     * @param whereClause null for all rows.
+     */
+    public String min( Connection con , String column , String whereClause ) throws SQLException
+    {
+        return db.min( con , column , getQuery( whereClause , null ) );
+    }
+
+    /** The smallest value in the column for the rows that match, or null if none do.
+     *
+     * @param whereClause null for all rows.
+     */
+    public String min( String column , String whereClause ) throws SQLException
+    {
+        return db.min( column , getQuery( whereClause , null ) );
+    }
+
+    /** The biggest value in the column for the rows that match, or null if none do.
+     *
+     * @param whereClause null for all rows.
+     */
+    public String max( Connection con , String column , String whereClause ) throws SQLException
+    {
+        return db.max( con , column , getQuery( whereClause , null ) );
+    }
+
+    /** The biggest value in the column for the rows that match, or null if none do.
+     *
+     * @param whereClause null for all rows.
+     */
+    public String max( String column , String whereClause ) throws SQLException
+    {
+        return db.max( column , getQuery( whereClause , null ) );
+    }
+
+    /** Values for each group of rows that match - see DBFacade.groupBy().
+     *
+     * @param whereClause null for all rows.
+     * @return one row for each group:  the group columns and then the aggregates.
+     */
+    public ColumnarResults groupBy( Connection con , String[] groupColumns , String[] aggregates , String whereClause ) throws SQLException
+    {
+        return db.groupBy( con , groupColumns , aggregates , getQuery( whereClause , null ) );
+    }
+
+    /** Values for each group of rows that match - see DBFacade.groupBy().
+     *
+     * @param whereClause null for all rows.
+     * @return one row for each group:  the group columns and then the aggregates.
+     */
+    public ColumnarResults groupBy( String[] groupColumns , String[] aggregates , String whereClause ) throws SQLException
+    {
+        return db.groupBy( groupColumns , aggregates , getQuery( whereClause , null ) );
     }
 
     public void update( Connection con , String whereClause , Map data ) throws SQLException
@@ -125,6 +495,48 @@ public class TableFacade
         db.delete( getTableName() , searchColumn , searchText );
     }
 
+    public void delete( Connection con , String column , long[] ids ) throws SQLException
+    {
+        db.delete( con , getTableName() , column , ids );
+    }
+
+    public void delete( String column , long[] ids ) throws SQLException
+    {
+        db.delete( getTableName() , column , ids );
+    }
+
+    public void delete( Connection con , String column , String[] searchText ) throws SQLException
+    {
+        db.delete( con , getTableName() , column , searchText );
+    }
+
+    public void delete( String column , String[] searchText ) throws SQLException
+    {
+        db.delete( getTableName() , column , searchText );
+    }
+
+    public void update( Connection con , String column , long[] ids , Map data ) throws SQLException
+    {
+        db.update( con , getTableName() , column , ids , data );
+    }
+
+    public void update( String column , long[] ids , Map data ) throws SQLException
+    {
+        db.update( getTableName() , column , ids , data );
+    }
+
+    /** @param rows A Map of key column values to a Map of the new data for that row. */
+    public void updateBatch( Connection con , String keyColumn , Map rows ) throws SQLException
+    {
+        db.updateBatch( con , getTableName() , keyColumn , rows );
+    }
+
+    /** @param rows A Map of key column values to a Map of the new data for that row. */
+    public void updateBatch( String keyColumn , Map rows ) throws SQLException
+    {
+        db.updateBatch( getTableName() , keyColumn , rows );
+    }
+
     public void insert( Connection con , Map data ) throws SQLException
     {
         db.insert( con , getTableName() , data );
@@ -140,6 +552,21 @@ public class TableFacade
         return db.insertAndGetID( getTableName() , data );
     }
 
+    /** Like insert(), but on another thread - see DBFacade.submit(). */
+    public Future insertAsync( Map data )
+    {
+        return db.insertAsync( getTableName() , data );
+    }
+
+    /** Like insertAndGetID(), but on another thread - see DBFacade.submit().
+     *
+     * @return a Future for the new ID as a Long.
+     */
+    public Future insertAndGetIDAsync( Map data )
+    {
+        return db.insertAndGetIDAsync( getTableName() , data );
+    }
+
     public long insertAndGetID( Connection con , Map data ) throws SQLException
     {
         return db.insertAndGetID( con , getTableName() , data );
@@ -155,6 +582,68 @@ public class TableFacade
         return db.insertAndGetID( con , getTableName() , data , idColumnName );
     }
 
+    /** Insert a row, or update the row that already has the same key - see DBFacade.upsert().
+     *
+     * @param keyColumns The columns that find the row, usually the ID.  They must be in data.
+     */
+    public void upsert( Connection con , String[] keyColumns , Map data ) throws SQLException
+    {
+        db.upsert( con , getTableName() , keyColumns , data );
+    }
+
+    /** Insert a row, or update the row that already has the same key - see DBFacade.upsert().
+     *
+     * @param keyColumns The columns that find the row, usually the ID.  They must be in data.
+     */
+    public void upsert( String[] keyColumns , Map data ) throws SQLException
+    {
+        db.upsert( getTableName() , keyColumns , data );
+    }
+
+    /** @param data A List of Map objects, one for each row. */
+    public void upsertBatch( Connection con , String[] keyColumns , List data ) throws SQLException
+    {
+        db.upsertBatch( con , getTableName() , keyColumns , data );
+    }
+
+    /** @param data A List of Map objects, one for each row. */
+    public void upsertBatch( String[] keyColumns , List data ) throws SQLException
+    {
+        db.upsertBatch( getTableName() , keyColumns , data );
+    }
+
+    /** @param data A List of Map objects, one for each row. */
+    public void insertBatch( Connection con , List data ) throws SQLException
+    {
+        db.insertBatch( con , getTableName() , data );
+    }
+
+    /** @param data A List of Map objects, one for each row. */
+    public void insertBatch( List data ) throws SQLException
+    {
+        db.insertBatch( getTableName() , data );
+    }
+
+    public long[] insertBatchAndGetIDs( List data ) throws SQLException
+    {
+        return db.insertBatchAndGetIDs( getTableName() , data );
+    }
+
+    public long[] insertBatchAndGetIDs( Connection con , List data ) throws SQLException
+    {
+        return db.insertBatchAndGetIDs( con , getTableName() , data );
+    }
+
+    public long[] insertBatchAndGetIDs( List data , String idColumnName ) throws SQLException
+    {
+        return db.insertBatchAndGetIDs( getTableName() , data , idColumnName );
+    }
+
+    public long[] insertBatchAndGetIDs( Connection con , List data , String idColumnName ) throws SQLException
+    {
+        return db.insertBatchAndGetIDs( con , getTableName() , data , idColumnName );
+    }
+
 
 
 }
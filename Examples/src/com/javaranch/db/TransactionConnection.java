@@ -0,0 +1,107 @@
+package com.javaranch.db ;
+
+import java.sql.* ;
+import java.lang.reflect.Proxy ;
+import java.lang.reflect.InvocationHandler ;
+import java.lang.reflect.InvocationTargetException ;
+import java.lang.reflect.Method ;
+
+/** For use by DBFacade:  the connection handed out during inTransaction().
+ *
+ * Everything goes to the real connection except close(), commit(), rollback() and setAutoCommit(), which would end the
+ * transaction early.  Those are left to inTransaction().  A rollback() is remembered, so the transaction is rolled back
+ * at the end instead of committed.
+ */
+class TransactionConnection
+{
+
+    /** A connection that can be closed as often as you like without closing this one. */
+    static Connection wrap( Connection con )
+    {
+        return (Connection)Proxy.newProxyInstance( Connection.class.getClassLoader() , new Class[]{ Connection.class } , new Handler( con ) );
+    }
+
+    /** The real connection, or the connection given if it didn't come from wrap(). */
+    static Connection unwrap( Connection con )
+    {
+        Connection returnVal = con ;
+        Handler handler = getHandler( con );
+        if ( handler != null )
+        {
+            returnVal = handler.con ;
+        }
+        return returnVal ;
+    }
+
+    /** True if rollback() was called on a connection from wrap(). */
+    static boolean isRollbackOnly( Connection con )
+    {
+        Handler handler = getHandler( con );
+        return ( handler != null ) && handler.rollbackOnly ;
+    }
+
+    private static Handler getHandler( Connection con )
+    {
+        Handler returnVal = null ;
+        if ( ( con != null ) && Proxy.isProxyClass( con.getClass() ) )
+        {
+            InvocationHandler handler = Proxy.getInvocationHandler( con );
+            if ( handler instanceof Handler )
+            {
+                returnVal = (Handler)handler ;
+            }
+        }
+        return returnVal ;
+    }
+
+    private static class Handler implements InvocationHandler
+    {
+        private final Connection con ;
+        private volatile boolean rollbackOnly = false ;
+
+        Handler( Connection con )
+        {
+            this.con = con ;
+        }
+
+        public Object invoke( Object proxy , Method method , Object[] args ) throws Throwable
+        {
+            String name = method.getName();
+            int argCount = method.getParameterTypes().length ;
+            Object returnVal = null ;
+            if ( ( name.equals( "close" ) || name.equals( "commit" ) ) && ( argCount == 0 ) )
+            {
+                // left for the end of the transaction
+            }
+            else if ( name.equals( "rollback" ) && ( argCount == 0 ) )
+            {
+                rollbackOnly = true ;
+            }
+            else if ( name.equals( "setAutoCommit" ) )
+            {
+                // stays off until the end of the transaction
+            }
+            else if ( name.equals( "equals" ) && ( args != null ) && ( args.length == 1 ) )
+            {
+                returnVal = proxy == args[ 0 ] ? Boolean.TRUE : Boolean.FALSE ;
+            }
+            else if ( name.equals( "hashCode" ) && ( args == null ) )
+            {
+                returnVal = new Integer( System.identityHashCode( proxy ) );
+            }
+            else
+            {
+                try
+                {
+                    returnVal = method.invoke( con , args );
+                }
+                catch ( InvocationTargetException e )
+                {
+                    throw e.getTargetException();
+                }
+            }
+            return returnVal ;
+        }
+    }
+
+}
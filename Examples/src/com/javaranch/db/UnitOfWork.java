@@ -0,0 +1,16 @@
+package com.javaranch.db ;
+
+import java.sql.Connection ;
+
+/** Database work that is all committed together, or not at all - see DBFacade.inTransaction().
+ */
+public interface UnitOfWork
+{
+
+    /**
+     * @param con The connection for the transaction.  The methods without a connection use it too, so you don't have
+     *            to pass it around.  Don't commit or close it - that is done for you.
+     */
+    void run( Connection con ) throws Exception ;
+
+}
@@ -1,11 +1,9 @@
 package com.javaranch.db.spatial;
 
-import com.javaranch.db.DBResults;
+import com.javaranch.db.DBQuery;
 import com.javaranch.db.OracleFacade;
-import com.javaranch.common.Str;
 
 import java.sql.*;
-import java.security.InvalidParameterException;
 import java.util.Map;
 import java.util.Iterator;
 import java.util.HashMap;
@@ -36,75 +34,20 @@ public abstract class OracleSpatialDBFacade extends OracleFacade
     //  return an XML reprentation
     protected abstract String getSpatialXML( Object geometryObject ) throws SQLException ;
 
-    /** Sometimes you just gotta do it in SQL.
-     *
-     * This method will at least handle the statements and result sets for you.
-     *
-     * @param con A database connection.
-     * @param sql A complete SQL statement
-     * @return contains zero objects if none are found.
+    /** Same as DBFacade, but spatial columns are turned into XML.
      */
-    public DBResults executeQuery( Connection con , String sql ) throws SQLException
+    protected String readString( ResultSet rs , int column , int columnType ) throws SQLException
     {
-        if ( con == null )
+        String value = null ;
+        if ( columnType == java.sql.Types.STRUCT )
         {
-            throw new InvalidParameterException( "parameter con is not allowed to be null" );
+            value = getSpatialXML( rs.getObject( column ) );
         }
-        if ( ! Str.usable( sql ) )
+        if ( value == null )
         {
-            throw new InvalidParameterException( "parameter sql must contain usable SQL!" );
+            value = rs.getString( column );
         }
-        DBResults data = new DBResults();
-        Statement statement = con.createStatement();
-        try
-        {
-            ResultSet rs = statement.executeQuery( sql );
-            ResultSetMetaData meta = rs.getMetaData();
-            int numberOfColumns = meta.getColumnCount();
-
-            boolean useSpatial = false ;
-            boolean[] isSpatial = new boolean[ numberOfColumns ];
-            for( int i = 0 ; i < numberOfColumns ; i++ )
-            {
-                isSpatial[ i ] = false ;
-                int dbIndex = i + 1 ;
-                if ( meta.getColumnType( dbIndex ) == java.sql.Types.STRUCT )
-                {
-                    useSpatial = true ;
-                    isSpatial[ i ] = true ;
-                }
-            }
-            while ( rs.next() )
-            {
-                String[] s = new String[ numberOfColumns ];
-                for ( int i = 0 ; i < s.length ; i++ )
-                {
-                    String value = null ;
-                    int dbIndex = i + 1 ;
-                    if ( useSpatial && isSpatial[ i ] )
-                    {
-                        value = getSpatialXML( rs.getObject( dbIndex ) );
-                    }
-                    if ( value == null )
-                    {
-                        value = rs.getString( dbIndex );
-                    }
-                    s[ i ] = value ;
-                }
-                data.add( s );
-            }
-        }
-        catch ( Exception e )
-        {
-            SQLException e2 = new SQLException( "executeQuery() execute fail [" + sql + "]: " + e );
-            e2.setStackTrace( e.getStackTrace() );
-            throw e2 ;
-        }
-        finally
-        {
-            statement.close();
-        }
-        return data ;
+        return value ;
     }
 
     String toOracleSpeak( SpatialPoint point )
@@ -235,10 +178,10 @@ public abstract class OracleSpatialDBFacade extends OracleFacade
         }
     }
 
-    public void update( Connection con , String table , String whereClause , Map data ) throws SQLException
+    public void update( Connection con , DBQuery q , Map data ) throws SQLException
     {
         toOracleSpeak( data );
-        super.update( con , table , whereClause , data );
+        super.update( con , q , data );
     }
 
     protected String insertAndPossiblyGetNewID( Connection con , String table , Map data , String idColumnName ) throws SQLException
@@ -0,0 +1,89 @@
+package com.javaranch.db ;
+
+import java.sql.Connection ;
+import java.util.HashMap ;
+import java.util.Map ;
+
+import junit.framework.TestCase ;
+
+/** Reserving ID's inside inTransaction() with a very small ConnectionPool, on an H2 in-memory database.  Needs the H2
+ *  jar on the classpath.
+ */
+public class TestIDsInTransactionOnH2 extends TestCase
+{
+
+    private static int run = 0 ;
+
+    private DBFacade facade ;
+
+    public TestIDsInTransactionOnH2( String name )
+    {
+        super( name );
+    }
+
+    protected void setUp() throws Exception
+    {
+        run++ ;
+        facade = new DBFacade( "org.h2.Driver" , "jdbc:h2:mem:ids" + run + ";DB_CLOSE_DELAY=-1" );
+        facade.executeUpdate( "CREATE TABLE tableIDCounters ( tableName VARCHAR(40) , counter BIGINT , skip BIGINT )" );
+        facade.executeUpdate( "INSERT INTO tableIDCounters VALUES ( 'Animal' , 0 , 3 )" );
+        facade.executeUpdate( "CREATE TABLE Animal ( ID BIGINT PRIMARY KEY , Name VARCHAR(20) )" );
+        facade.getConnectionPool().setMaxWait( 3000 );
+    }
+
+    private UnitOfWork insertAnimals( final int count )
+    {
+        return new UnitOfWork()
+        {
+            public void run( Connection con ) throws Exception
+            {
+                for ( int i = 0 ; i < count ; i++ )
+                {
+                    Map data = new HashMap();
+                    data.put( "Name" , "cow" );
+                    facade.insertAndGetID( "Animal" , data );
+                }
+            }
+        };
+    }
+
+    public void test_onePooledConnection() throws Exception
+    {
+        facade.getConnectionPool().setMaxSize( 1 );
+        facade.inTransaction( insertAnimals( 10 ) );
+        assertEquals( 10 , facade.count( new DBQuery( facade , "Animal" ) ) );
+    }
+
+    public void test_everyPooledConnectionInATransaction() throws Exception
+    {
+        facade.getConnectionPool().setMaxSize( 2 );
+        final Exception[] failed = new Exception[ 2 ];
+        Thread[] threads = new Thread[ 2 ];
+        for ( int i = 0 ; i < threads.length ; i++ )
+        {
+            final int which = i ;
+            threads[ i ] = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        facade.inTransaction( insertAnimals( 20 ) );
+                    }
+                    catch ( Exception e )
+                    {
+                        failed[ which ] = e ;
+                    }
+                }
+            };
+            threads[ i ].start();
+        }
+        for ( int i = 0 ; i < threads.length ; i++ )
+        {
+            threads[ i ].join();
+            assertNull( String.valueOf( failed[ i ] ) , failed[ i ] );
+        }
+        assertEquals( 40 , facade.count( new DBQuery( facade , "Animal" ) ) );
+    }
+
+}
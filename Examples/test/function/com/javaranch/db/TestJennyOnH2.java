@@ -0,0 +1,220 @@
+package com.javaranch.db ;
+
+import java.io.File ;
+import java.io.FileReader ;
+import java.io.FileWriter ;
+import java.io.IOException ;
+import java.security.InvalidParameterException ;
+import java.util.Properties ;
+
+import junit.framework.TestCase ;
+
+/** Running Jenny more than once on an H2 in-memory database:  only the tables that changed are generated again.  Needs
+ *  the H2 jar on the classpath.
+ */
+public class TestJennyOnH2 extends TestCase
+{
+
+    private static int run = 0 ;
+
+    private static final String marked = "// not generated again" ;
+
+    private DBFacade db ;
+    private File destination ;
+    private File mocks ;
+    private Properties properties ;
+
+    public TestJennyOnH2( String name )
+    {
+        super( name );
+    }
+
+    protected void setUp() throws Exception
+    {
+        run++ ;
+        String url = "jdbc:h2:mem:jenny" + run + ";DB_CLOSE_DELAY=-1" ;
+        db = new DBFacade( "org.h2.Driver" , url );
+        db.executeUpdate( "CREATE TABLE Animal ( AnimalID INT PRIMARY KEY , Species VARCHAR(40) )" );
+        db.executeUpdate( "CREATE TABLE Farm ( FarmID INT PRIMARY KEY , Name VARCHAR(40) )" );
+        db.executeUpdate( "CREATE TABLE Barn ( BarnID INT PRIMARY KEY , FarmID INT )" );
+
+        File tmp = new File( System.getProperty( "java.io.tmpdir" ) , "TestJennyOnH2_" + System.currentTimeMillis() + '_' + run );
+        destination = new File( tmp , "db" );
+        mocks = new File( tmp , "mock" );
+        properties = new Properties();
+        properties.setProperty( "Driver" , "org.h2.Driver" );
+        properties.setProperty( "URL" , url );
+        properties.setProperty( "Package" , "com.javaranch.db.jennytest" );
+        properties.setProperty( "Destination" , destination.getPath() + File.separator );
+        properties.setProperty( "MockDestination" , mocks.getPath() + File.separator );
+        properties.setProperty( "Facade" , "JennyTestFacade" );
+        properties.setProperty( "Threads" , "2" );
+    }
+
+    protected void tearDown() throws Exception
+    {
+        deleteDirectory( destination );
+        deleteDirectory( mocks );
+        destination.getParentFile().delete();
+        db.executeUpdate( "DROP ALL OBJECTS" );
+    }
+
+    private static void deleteDirectory( File directory )
+    {
+        File[] files = directory.listFiles();
+        for ( int i = 0 ; ( files != null ) && ( i < files.length ) ; i++ )
+        {
+            files[ i ].delete();
+        }
+        directory.delete();
+    }
+
+    // replace a generated file with something Jenny would never write, to see if it gets written again
+    private static void mark( File file ) throws IOException
+    {
+        FileWriter out = new FileWriter( file );
+        try
+        {
+            out.write( marked );
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private static boolean isMarked( File file ) throws IOException
+    {
+        char[] buffer = new char[ marked.length() + 1 ];
+        FileReader in = new FileReader( file );
+        try
+        {
+            return marked.equals( new String( buffer , 0 , Math.max( in.read( buffer ) , 0 ) ) );
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private File table( String name )
+    {
+        return new File( destination , name + "Table.java" );
+    }
+
+    private File mock( String name )
+    {
+        return new File( mocks , "Mock" + name + "Table.java" );
+    }
+
+    // generate everything, then mark every table so it's easy to see which ones are generated again
+    private void generateAndMark() throws Exception
+    {
+        new Jenny( properties );
+        String[] names = { "Animal" , "Farm" , "Barn" };
+        for ( int i = 0 ; i < names.length ; i++ )
+        {
+            mark( table( names[ i ] ) );
+            mark( mock( names[ i ] ) );
+        }
+    }
+
+    public void test_firstRun() throws Exception
+    {
+        new Jenny( properties );
+        assertTrue( new File( destination , "JennyTestFacade.java" ).isFile() );
+        assertTrue( new File( destination , "jenny.fingerprints" ).isFile() );
+        assertTrue( table( "Animal" ).isFile() );
+        assertTrue( table( "Farm" ).isFile() );
+        assertTrue( table( "Barn" ).isFile() );
+        assertTrue( mock( "Barn" ).isFile() );
+    }
+
+    public void test_nothingChanged() throws Exception
+    {
+        generateAndMark();
+        new Jenny( properties );
+        assertTrue( isMarked( table( "Animal" ) ) );
+        assertTrue( isMarked( table( "Farm" ) ) );
+        assertTrue( isMarked( mock( "Barn" ) ) );
+    }
+
+    public void test_metadataChanged() throws Exception
+    {
+        generateAndMark();
+        db.executeUpdate( "ALTER TABLE Farm ADD COLUMN Acres INT" );
+        new Jenny( properties );
+        assertFalse( isMarked( table( "Farm" ) ) );
+        assertFalse( isMarked( mock( "Farm" ) ) );
+        assertTrue( isMarked( table( "Animal" ) ) );
+        assertTrue( isMarked( table( "Barn" ) ) );
+    }
+
+    public void test_settingsChanged() throws Exception
+    {
+        generateAndMark();
+        properties.setProperty( "Facade" , "OtherTestFacade" );
+        new Jenny( properties );
+        assertFalse( isMarked( table( "Animal" ) ) );
+        assertFalse( isMarked( table( "Farm" ) ) );
+        assertFalse( isMarked( table( "Barn" ) ) );
+    }
+
+    public void test_missingFiles() throws Exception
+    {
+        generateAndMark();
+        assertTrue( table( "Animal" ).delete() );
+        assertTrue( mock( "Farm" ).delete() );
+        new Jenny( properties );
+        assertFalse( isMarked( table( "Animal" ) ) );
+        assertFalse( isMarked( mock( "Farm" ) ) );
+        assertTrue( isMarked( table( "Barn" ) ) );
+    }
+
+    public void test_noFingerprints() throws Exception
+    {
+        generateAndMark();
+        assertTrue( new File( destination , "jenny.fingerprints" ).delete() );
+        new Jenny( properties );
+        assertFalse( isMarked( table( "Animal" ) ) );
+        assertFalse( isMarked( mock( "Barn" ) ) );
+    }
+
+    public void test_staleFilesDeleted() throws Exception
+    {
+        generateAndMark();
+        db.executeUpdate( "DROP TABLE Barn" );
+        new Jenny( properties );
+        assertFalse( table( "Barn" ).exists() );
+        assertFalse( mock( "Barn" ).exists() );
+        assertTrue( isMarked( table( "Farm" ) ) );
+
+        // the next run doesn't remember it either
+        db.executeUpdate( "CREATE TABLE Barn ( BarnID INT PRIMARY KEY , FarmID INT )" );
+        new Jenny( properties );
+        assertTrue( table( "Barn" ).isFile() );
+        assertTrue( mock( "Barn" ).isFile() );
+    }
+
+    public void test_threads() throws Exception
+    {
+        properties.setProperty( "Threads" , "0" );
+        try
+        {
+            new Jenny( properties );
+            fail( "no threads should be an invalid parameter" );
+        }
+        catch ( InvalidParameterException e )
+        {
+            // expected
+        }
+
+        // more threads than tables
+        properties.setProperty( "Threads" , "8" );
+        new Jenny( properties );
+        assertTrue( table( "Animal" ).isFile() );
+        assertTrue( table( "Farm" ).isFile() );
+        assertTrue( table( "Barn" ).isFile() );
+    }
+
+}
@@ -0,0 +1,101 @@
+package com.javaranch.db ;
+
+import java.util.HashMap ;
+import java.util.Map ;
+
+import junit.framework.TestCase ;
+
+/** ShardedDBFacade on three H2 in-memory databases.  Needs the H2 jar on the classpath. */
+public class TestShardedDBFacadeOnH2 extends TestCase
+{
+
+    private static int run = 0 ;
+
+    private ShardedDBFacade facade ;
+
+    public TestShardedDBFacadeOnH2( String name )
+    {
+        super( name );
+    }
+
+    protected void setUp() throws Exception
+    {
+        run++ ;
+        DBFacade[] shards = new DBFacade[ 3 ];
+        for ( int i = 0 ; i < shards.length ; i++ )
+        {
+            shards[ i ] = new DBFacade( "org.h2.Driver" , "jdbc:h2:mem:shard" + run + "_" + i + ";DB_CLOSE_DELAY=-1" );
+            shards[ i ].executeUpdate( "CREATE TABLE Animal ( ID BIGINT PRIMARY KEY , FarmID INTEGER , Code VARCHAR(10) , Weight BIGINT )" );
+        }
+        facade = new ShardedDBFacade( "FarmID" , shards );
+        insert( 1 , 1 , "2" , 10 );
+        insert( 2 , 2 , "10" , 20 );
+        insert( 3 , 3 , "1a" , 30 );
+        insert( 4 , 4 , "b" , 2305843009213693952L );
+        insert( 5 , 5 , "a" , 2305843009213693952L );
+    }
+
+    private void insert( long id , int farmID , String code , long weight ) throws Exception
+    {
+        Map data = new HashMap();
+        data.put( "ID" , new Long( id ) );
+        data.put( "FarmID" , new Integer( farmID ) );
+        data.put( "Code" , code );
+        data.put( "Weight" , new Long( weight ) );
+        facade.insert( "Animal" , data );
+    }
+
+    public void test_search() throws Exception
+    {
+        assertEquals( 1 , facade.getShards()[ 1 ].count( new DBQuery( facade , "Animal" , "FarmID" , 4 , null ) ) );
+        DBResults results = facade.search( new DBQuery( facade , "Animal" , "FarmID" , 4 , new String[]{ "Code" } ) );
+        assertEquals( 1 , results.size() );
+        assertEquals( "b" , results.get( 0 , 0 ) );
+
+        DBQuery q = new DBQuery( facade , "Animal" );
+        q.setDataColumns( new String[]{ "ID" , "Code" } );
+        q.setWhereClause( "Weight < 100" );
+        assertEquals( 3 , facade.search( q ).size() );
+    }
+
+    public void test_aggregates() throws Exception
+    {
+        DBQuery q = new DBQuery( facade , "Animal" );
+        q.setWhereClause( "Weight < 100" );
+        assertEquals( 3 , facade.count( q ) );
+        assertEquals( 60 , facade.sumLong( "Weight" , q ) );
+        assertEquals( "1" , facade.min( "ID" , q ) );
+        assertEquals( "3" , facade.max( "ID" , q ) );
+        assertEquals( "5" , facade.max( "ID" , new DBQuery( facade , "Animal" ) ) );
+        assertEquals( "b" , facade.max( "Code" , new DBQuery( facade , "Animal" ) ) );
+
+        // 2^61 + 2^61 + 60 - too big for a double to hold exactly
+        assertEquals( 5 , facade.count( new DBQuery( facade , "Animal" ) ) );
+        assertEquals( 4611686018427387964L , facade.sumLong( "Weight" , new DBQuery( facade , "Animal" ) ) );
+    }
+
+    public void test_page() throws Exception
+    {
+        DBQuery q = new DBQuery( facade , "Animal" );
+        q.setDataColumns( new String[]{ "Code" , "ID" } );
+        q.page( new String[]{ "Code" } , null , 3 );
+        DBResults results = facade.search( q );
+        assertEquals( 3 , results.size() );
+        assertEquals( "10" , results.get( 0 , 0 ) );
+        assertEquals( "1a" , results.get( 1 , 0 ) );
+        assertEquals( "2" , results.get( 2 , 0 ) );
+
+        q = new DBQuery( facade , "Animal" );
+        q.setDataColumns( new String[]{ "ID" , "Code" } );
+        q.page( new String[]{ "ID" } , new String[]{ "2" } , 2 );
+        results = facade.search( q );
+        assertEquals( "3" , results.get( 0 , 0 ) );
+        assertEquals( "4" , results.get( 1 , 0 ) );
+
+        ColumnarResults columnar = facade.searchColumnar( q );
+        assertEquals( 2 , columnar.size() );
+        assertEquals( 3 , columnar.getLong( 0 , 0 ) );
+        assertEquals( 4 , columnar.getLong( 1 , 0 ) );
+    }
+
+}
@@ -34,6 +34,34 @@ public class MockDBFacade extends DBFacade
         return executeQuery_return ;
     }
 
+    public Object[] executeQuery_parameters = null ;
+    public DBResults executeQuery( String sql , Object[] parameters ) throws SQLException
+    {
+        executeQuery_parameters = parameters ;
+        return executeQuery( null , sql );
+    }
+
+    public DBResults executeQuery( Connection con , String sql , Object[] parameters ) throws SQLException
+    {
+        executeQuery_parameters = parameters ;
+        return executeQuery( con , sql );
+    }
+
+    // a connection that does nothing
+    public int openConnection_calls = 0 ;
+    protected Connection openConnection() throws Exception
+    {
+        openConnection_calls++ ;
+        InvocationHandler handler = new InvocationHandler()
+        {
+            public Object invoke( Object proxy , Method method , Object[] args )
+            {
+                return ( method.getReturnType() == boolean.class ) ? Boolean.TRUE : null ;
+            }
+        };
+        return (Connection)Proxy.newProxyInstance( Connection.class.getClassLoader() , new Class[]{ Connection.class } , handler );
+    }
+
     public Connection search_con = null ;
     public DBQuery search_q = null ;
     public String search_table = null ;
@@ -226,6 +254,49 @@ public class MockDBFacade extends DBFacade
         insert_calls++ ;
     }
 
+    public Connection upsert_con = null ;
+    public String upsert_table = null ;
+    public String[] upsert_keyColumns = null ;
+    public Map upsert_data = null ;
+    public int upsert_calls = 0 ;
+
+    public void upsert( Connection con , String table , String[] keyColumns , Map data ) throws SQLException
+    {
+        upsert_con = con ;
+        upsert_table = table ;
+        upsert_keyColumns = keyColumns ;
+        upsert_data = data ;
+        upsert_calls++ ;
+    }
+
+    public void upsert( String table , String[] keyColumns , Map data ) throws SQLException
+    {
+        upsert_table = table ;
+        upsert_keyColumns = keyColumns ;
+        upsert_data = data ;
+        upsert_calls++ ;
+    }
+
+    public Connection insertBatch_con = null ;
+    public String insertBatch_table = null ;
+    public List insertBatch_data = null ;
+    public int insertBatch_calls = 0 ;
+
+    public void insertBatch( Connection con , String table , List data ) throws SQLException
+    {
+        insertBatch_con = con ;
+        insertBatch_table = table ;
+        insertBatch_data = data ;
+        insertBatch_calls++ ;
+    }
+
+    public void insertBatch( String table , List data ) throws SQLException
+    {
+        insertBatch_table = table ;
+        insertBatch_data = data ;
+        insertBatch_calls++ ;
+    }
+
     public class MockConnection
     {
 
@@ -0,0 +1,166 @@
+package com.javaranch.db;
+
+import com.javaranch.common.* ;
+
+import java.sql.* ;
+import java.lang.reflect.Proxy ;
+import java.lang.reflect.InvocationHandler ;
+import java.lang.reflect.Method ;
+
+import junit.framework.TestCase;
+
+public class TestColumnarResults extends TestCase
+{
+
+    // a result set that walks through some rows that are already in memory
+    private static class FakeResultSet implements InvocationHandler
+    {
+        int[] types ;
+        Object[][] rows ;
+        int row = -1 ;
+        boolean wasNull = false ;
+
+        FakeResultSet( int[] types , Object[][] rows )
+        {
+            this.types = types ;
+            this.rows = rows ;
+        }
+
+        public Object invoke( Object proxy , Method method , Object[] args ) throws Throwable
+        {
+            String name = method.getName();
+            Object returnVal = null ;
+            if ( name.equals( "next" ) )
+            {
+                row++ ;
+                returnVal = Boolean.valueOf( row < rows.length );
+            }
+            else if ( name.equals( "getMetaData" ) )
+            {
+                returnVal = Proxy.newProxyInstance( ResultSetMetaData.class.getClassLoader() , new Class[]{ ResultSetMetaData.class } , this );
+            }
+            else if ( name.equals( "getColumnCount" ) )
+            {
+                returnVal = new Integer( types.length );
+            }
+            else if ( name.equals( "getColumnType" ) )
+            {
+                returnVal = new Integer( types[ ((Integer)args[ 0 ]).intValue() - 1 ] );
+            }
+            else if ( name.equals( "wasNull" ) )
+            {
+                returnVal = Boolean.valueOf( wasNull );
+            }
+            else if ( name.startsWith( "get" ) )
+            {
+                Object value = rows[ row ][ ((Integer)args[ 0 ]).intValue() - 1 ];
+                wasNull = ( value == null );
+                returnVal = value ;
+                if ( name.equals( "getInt" ) )
+                {
+                    returnVal = new Integer( wasNull ? 0 : ((Number)value).intValue() );
+                }
+                else if ( name.equals( "getLong" ) )
+                {
+                    returnVal = new Long( wasNull ? 0 : ((Number)value).longValue() );
+                }
+                else if ( name.equals( "getDouble" ) )
+                {
+                    returnVal = new Double( wasNull ? 0 : ((Number)value).doubleValue() );
+                }
+                else if ( name.equals( "getBoolean" ) )
+                {
+                    returnVal = Boolean.valueOf( ! wasNull && ((Boolean)value).booleanValue() );
+                }
+            }
+            return returnVal ;
+        }
+    }
+
+    private ColumnarResults read( int[] types , Object[][] rows ) throws SQLException
+    {
+        ResultSet rs = (ResultSet)Proxy.newProxyInstance( ResultSet.class.getClassLoader() , new Class[]{ ResultSet.class } , new FakeResultSet( types , rows ) );
+        return ColumnarResults.read( rs , new DBFacade() );
+    }
+
+    private static final int[] animalTypes = { Types.INTEGER , Types.VARCHAR , Types.DOUBLE , Types.BIGINT , Types.BOOLEAN };
+
+    public void test_typedColumns() throws Exception
+    {
+        ColumnarResults r = read( animalTypes , new Object[][]{
+            { new Integer( 1 ) , "cow" , new Double( 612.5 ) , new Long( 10000000000L ) , Boolean.TRUE } ,
+            { new Integer( 2 ) , "pig" , null , new Long( 7 ) , Boolean.FALSE } ,
+        });
+        assertEquals( 2 , r.size() );
+        assertEquals( 5 , r.getColumnCount() );
+        assertEquals( Types.DOUBLE , r.getColumnType( 2 ) );
+        assertEquals( 2 , r.getInt( 1 , 0 ) );
+        assertEquals( "cow" , r.get( 0 , 1 ) );
+        assertEquals( 612.5 , r.getDouble( 0 , 2 ) , 0.0 );
+        assertEquals( 10000000000L , r.getLong( 0 , 3 ) );
+        assertTrue( r.getBoolean( 0 , 4 ) );
+        assertFalse( r.getBoolean( 1 , 4 ) );
+        assertTrue( r.isNull( 1 , 2 ) );
+        assertFalse( r.isNull( 0 , 2 ) );
+        assertNull( r.get( 1 , 2 ) );
+        assertEquals( 0.0 , r.getDouble( 1 , 2 ) , 0.0 );
+        assertEquals( "612.5" , r.get( 0 , 2 ) );
+        assertEquals( "true" , r.get( 0 , 4 ) );
+    }
+
+    public void test_manyRows() throws Exception
+    {
+        Object[][] rows = new Object[ 100 ][];
+        for ( int i = 0 ; i < rows.length ; i++ )
+        {
+            rows[ i ] = new Object[]{ new Integer( i ) , "animal" + i };
+        }
+        ColumnarResults r = read( new int[]{ Types.INTEGER , Types.VARCHAR } , rows );
+        assertEquals( 100 , r.size() );
+        int[] ids = r.toIntArray();
+        assertEquals( 100 , ids.length );
+        assertEquals( 99 , ids[ 99 ] );
+        assertEquals( "animal57" , r.get( 57 , 1 ) );
+        assertEquals( "57" , r.getRow( 57 )[ 0 ] );
+        assertNull( r.getRow( 100 ) );
+    }
+
+    public void test_conversions() throws Exception
+    {
+        ColumnarResults r = read( new int[]{ Types.VARCHAR , Types.INTEGER } , new Object[][]{
+            { "moo" , new Integer( 5 ) } ,
+            { "oink" , new Integer( 6 ) } ,
+        });
+        NameIDPair[] pairs = r.toNameIDPairArray();
+        assertEquals( "oink" , pairs[ 1 ].getName() );
+        assertEquals( 6 , pairs[ 1 ].getID() );
+        assertEquals( "moo" , r.toStringArray()[ 0 ] );
+        DBResults d = r.toDBResults();
+        assertEquals( 2 , d.size() );
+        assertEquals( "6" , d.get( 1 , 1 ) );
+        assertEquals( 6.0 , r.toDoubleArray( 1 )[ 1 ] , 0.0 );
+    }
+
+    public void test_empty() throws Exception
+    {
+        ColumnarResults r = read( animalTypes , new Object[ 0 ][] );
+        assertEquals( 0 , r.size() );
+        assertEquals( 0 , r.toIntArray().length );
+        assertEquals( 0 , r.toDBResults().size() );
+    }
+
+    public void test_badRow() throws Exception
+    {
+        ColumnarResults r = read( animalTypes , new Object[ 0 ][] );
+        try
+        {
+            r.getInt( 0 , 0 );
+            fail( "there is no row zero" );
+        }
+        catch ( java.security.InvalidParameterException e )
+        {
+            // expected
+        }
+    }
+
+}
@@ -0,0 +1,126 @@
+package com.javaranch.db;
+
+import java.sql.* ;
+import java.lang.reflect.Proxy ;
+import java.lang.reflect.InvocationHandler ;
+import java.lang.reflect.Method ;
+
+import junit.framework.TestCase;
+
+public class TestConnectionPool extends TestCase
+{
+
+    // a connection that only knows how to be opened, validated and closed
+    private static class FakeConnection implements InvocationHandler
+    {
+        boolean closed = false ;
+        boolean valid = true ;
+
+        public Object invoke( Object proxy , Method method , Object[] args ) throws Throwable
+        {
+            String name = method.getName();
+            Object returnVal = null ;
+            if ( name.equals( "close" ) )
+            {
+                closed = true ;
+            }
+            else if ( name.equals( "isClosed" ) )
+            {
+                returnVal = Boolean.valueOf( closed );
+            }
+            else if ( name.equals( "isValid" ) )
+            {
+                returnVal = Boolean.valueOf( valid && ! closed );
+            }
+            else if ( name.equals( "getAutoCommit" ) )
+            {
+                returnVal = Boolean.TRUE ;
+            }
+            return returnVal ;
+        }
+    }
+
+    private static class FakePool extends ConnectionPool
+    {
+        int opened = 0 ;
+        FakeConnection last ;
+
+        Connection openConnection()
+        {
+            opened++ ;
+            last = new FakeConnection();
+            return (Connection)Proxy.newProxyInstance( Connection.class.getClassLoader() , new Class[]{ Connection.class } , last );
+        }
+    }
+
+    public void test_reuse() throws Exception
+    {
+        FakePool pool = new FakePool();
+        Connection con = pool.getConnection();
+        con.close();
+        assertTrue( con.isClosed() );
+        assertFalse( pool.last.closed );
+        con = pool.getConnection();
+        con.close();
+        assertEquals( 1 , pool.opened );
+        assertEquals( 2 , pool.getBorrowCount() );
+        assertEquals( 1 , pool.getIdleCount() );
+    }
+
+    public void test_invalidConnectionReplaced() throws Exception
+    {
+        FakePool pool = new FakePool();
+        pool.getConnection().close();
+        FakeConnection first = pool.last ;
+        first.valid = false ;
+        pool.getConnection().close();
+        assertEquals( 2 , pool.opened );
+        assertTrue( first.closed );
+        assertEquals( 1 , pool.getOpenCount() );
+    }
+
+    public void test_exhausted() throws Exception
+    {
+        FakePool pool = new FakePool();
+        pool.setMaxSize( 1 );
+        pool.setMaxWait( 10 );
+        Connection con = pool.getConnection();
+        try
+        {
+            pool.getConnection();
+            fail( "pool should be exhausted" );
+        }
+        catch ( SQLException e )
+        {
+            // expected
+        }
+        assertEquals( 1 , pool.getExhaustedCount() );
+        assertEquals( 1 , pool.getTimeoutCount() );
+        con.close();
+        pool.getConnection().close();
+        assertEquals( 1 , pool.opened );
+    }
+
+    public void test_maxLifetime() throws Exception
+    {
+        FakePool pool = new FakePool();
+        pool.setMaxLifetime( 1 );
+        Connection con = pool.getConnection();
+        Thread.sleep( 5 );
+        con.close();
+        assertTrue( pool.last.closed );
+        assertEquals( 0 , pool.getOpenCount() );
+    }
+
+    public void test_fill() throws Exception
+    {
+        FakePool pool = new FakePool();
+        pool.setMinSize( 3 );
+        pool.fill();
+        assertEquals( 3 , pool.opened );
+        assertEquals( 3 , pool.getIdleCount() );
+        pool.closeIdle();
+        assertEquals( 0 , pool.getOpenCount() );
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.javaranch.db;
+
+import junit.framework.TestCase;
+
+public class TestDBCursor extends TestCase
+{
+
+    private DBResults threeRows()
+    {
+        DBResults r = new DBResults();
+        r.add( new String[]{ "1" , "moo" } );
+        r.add( new String[]{ "2" , "oink" } );
+        r.add( new String[]{ "3" , "baa" } );
+        return r ;
+    }
+
+    public void test_iterate() throws Exception
+    {
+        DBCursor cursor = new DBCursor( threeRows() );
+        assertTrue( cursor.hasNext() );
+        assertEquals( "moo" , ((String[])cursor.next())[ 1 ] );
+        assertEquals( "oink" , ((String[])cursor.next())[ 1 ] );
+        assertEquals( "baa" , ((String[])cursor.next())[ 1 ] );
+        assertFalse( cursor.hasNext() );
+        assertTrue( cursor.isClosed() );
+        assertEquals( 3 , cursor.getRowCount() );
+    }
+
+    public void test_processStopsEarly() throws Exception
+    {
+        DBCursor cursor = new DBCursor( threeRows() );
+        final int[] calls = { 0 };
+        cursor.process( new RowProcessor()
+        {
+            public boolean processRow( String[] row )
+            {
+                calls[ 0 ]++ ;
+                return ! row[ 1 ].equals( "oink" );
+            }
+        });
+        assertEquals( 2 , calls[ 0 ] );
+        assertTrue( cursor.isClosed() );
+        assertFalse( cursor.hasNext() );
+    }
+
+    public void test_processorException() throws Exception
+    {
+        DBCursor cursor = new DBCursor( threeRows() );
+        try
+        {
+            cursor.process( new RowProcessor()
+            {
+                public boolean processRow( String[] row ) throws Exception
+                {
+                    throw new Exception( "sheep not allowed" );
+                }
+            });
+            fail( "processor exception should be passed along" );
+        }
+        catch ( java.sql.SQLException e )
+        {
+            assertTrue( e.getMessage().indexOf( "sheep not allowed" ) != -1 );
+        }
+        assertTrue( cursor.isClosed() );
+    }
+
+}
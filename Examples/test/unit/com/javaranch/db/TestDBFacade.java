@@ -1,5 +1,23 @@
 package com.javaranch.db;
 
+import java.sql.Connection ;
+import java.sql.PreparedStatement ;
+import java.sql.ResultSet ;
+import java.sql.SQLException ;
+import java.util.List ;
+import java.util.ArrayList ;
+import java.util.Map ;
+import java.util.HashMap ;
+import java.util.Set ;
+import java.util.HashSet ;
+import java.util.LinkedHashMap ;
+import java.util.Collections ;
+import com.javaranch.common.ErrorLog ;
+import java.util.concurrent.Future ;
+import java.lang.reflect.InvocationHandler ;
+import java.lang.reflect.Method ;
+import java.lang.reflect.Proxy ;
+
 import junit.framework.TestCase;
 
 public class TestDBFacade extends TestCase
@@ -13,4 +31,656 @@ public class TestDBFacade extends TestCase
         assertEquals( "'''cant'''" , DBFacade.normalizeSearchText( "'cant'" ) );
     }
 
+    // hands out connections that do nothing and counts them
+    private static class CountingFacade extends DBFacade
+    {
+        int connections = 0 ;
+        final List calls = Collections.synchronizedList( new ArrayList() );
+
+        protected Connection openConnection() throws Exception
+        {
+            connections++ ;
+            InvocationHandler handler = new InvocationHandler()
+            {
+                public Object invoke( Object proxy , Method method , Object[] args )
+                {
+                    calls.add( method.getName() );
+                    return ( method.getReturnType() == boolean.class ) ? Boolean.TRUE : null ;
+                }
+            };
+            return (Connection)Proxy.newProxyInstance( Connection.class.getClassLoader() , new Class[]{ Connection.class } , handler );
+        }
+    }
+
+    public void test_readReplicas() throws Exception
+    {
+        CountingFacade primary = new CountingFacade();
+        CountingFacade one = new CountingFacade();
+        CountingFacade two = new CountingFacade();
+        primary.addReadReplica( one );
+        primary.addReadReplica( two );
+
+        Connection first = primary.getReadConnection();
+        CountingFacade firstReplica = ( one.connections == 1 ) ? one : two ;
+        primary.getReadConnection();
+        assertEquals( 1 , one.connections );
+        assertEquals( 1 , two.connections );
+
+        // the least busy replica gets the next read
+        first.close();
+        primary.getReadConnection();
+        assertEquals( 2 , firstReplica.connections );
+        assertEquals( 0 , primary.connections );
+
+        // after a change, this thread reads from the primary for a while
+        primary.tableChanged( "Animal" );
+        primary.getReadConnection();
+        assertEquals( 1 , primary.connections );
+        primary.setReadYourWritesMillis( 0 );
+        primary.getReadConnection();
+        assertEquals( 1 , primary.connections );
+    }
+
+    public void test_inListTableReadsFromPrimary() throws Exception
+    {
+        CountingFacade primary = new CountingFacade();
+        CountingFacade replica = new CountingFacade();
+        primary.addReadReplica( replica );
+        Object[] values = { new Long( 7 ) , new Long( 3 ) };
+        try
+        {
+            primary.executeQuery( "SELECT name FROM Animal WHERE id IN (SELECT NUM_VALUE FROM InList WHERE LIST_ID = ?)" ,
+                                  new Object[]{ new DBFacade.InListData( "InList" , values ) } );
+        }
+        catch ( Exception e )
+        {
+            // the connection does nothing, so there are no results
+        }
+        assertEquals( 1 , primary.connections );
+        assertEquals( 0 , replica.connections );
+
+        try
+        {
+            primary.executeQuery( "SELECT name FROM Animal WHERE id = ?" , values );
+        }
+        catch ( Exception e )
+        {
+            // the connection does nothing, so there are no results
+        }
+        assertEquals( 1 , primary.connections );
+        assertEquals( 1 , replica.connections );
+    }
+
+    public void test_searchAsync() throws Exception
+    {
+        MockDBFacade facade = new MockDBFacade();
+        facade.search_return = new DBResults();
+        facade.setAsyncLimit( 2 );
+        Future results = facade.searchAsync( new DBQuery( facade , "Animal" ) );
+        assertSame( facade.search_return , results.get() );
+        assertEquals( 1 , facade.search_calls );
+    }
+
+    public void test_sumLong() throws Exception
+    {
+        MockDBFacade facade = new MockDBFacade();
+        facade.search_return = new DBResults();
+        facade.search_return.add( new String[]{ "9007199254740993" } );  // 2^53 + 1 - a double can't hold it
+        assertEquals( 9007199254740993L , facade.sumLong( "weight" , new DBQuery( facade , "Animal" ) ) );
+        assertTrue( 9007199254740993L != Math.round( facade.sum( "weight" , new DBQuery( facade , "Animal" ) ) ) );
+
+        facade.search_return = new DBResults();
+        assertEquals( 0 , facade.sumLong( "weight" , new DBQuery( facade , "Animal" ) ) );
+    }
+
+    public void test_searchAll() throws Exception
+    {
+        MockDBFacade facade = new MockDBFacade();
+        facade.search_return = new DBResults();
+        facade.setAsyncLimit( 2 );
+        DBQuery[] queries = { new DBQuery( facade , "Animal" ) , new DBQuery( facade , "Farm" ) , new DBQuery( facade , "Barn" ) };
+        DBResults[] results = facade.searchAll( queries );
+        assertEquals( 3 , results.length );
+        for ( int i = 0 ; i < results.length ; i++ )
+        {
+            assertSame( facade.search_return , results[ i ] );
+        }
+        try
+        {
+            facade.searchAll( new DBQuery[ 0 ] );
+            fail( "no queries should be an invalid parameter" );
+        }
+        catch ( java.security.InvalidParameterException e )
+        {
+            // expected
+        }
+    }
+
+    public void test_inTransaction() throws Exception
+    {
+        final CountingFacade facade = new CountingFacade();
+        CountingFacade replica = new CountingFacade();
+        facade.addReadReplica( replica );
+        facade.inTransaction( new UnitOfWork()
+        {
+            public void run( Connection con ) throws Exception
+            {
+                assertTrue( facade.isInTransaction() );
+                assertSame( con , facade.getConnection() );
+                assertSame( con , facade.getReadConnection() );
+                con.commit();
+                con.close();
+            }
+        });
+        assertFalse( facade.isInTransaction() );
+        assertEquals( 1 , facade.connections );
+        assertEquals( 0 , replica.connections );
+        assertEquals( "[getAutoCommit, setAutoCommit, commit, setAutoCommit, close]" , facade.calls.toString() );
+    }
+
+    public void test_inTransactionRollback() throws Exception
+    {
+        CountingFacade facade = new CountingFacade();
+        try
+        {
+            facade.inTransaction( new UnitOfWork()
+            {
+                public void run( Connection con ) throws Exception
+                {
+                    con.rollback();
+                }
+            });
+            fail( "rollback() inside the work should fail the transaction" );
+        }
+        catch ( SQLException e )
+        {
+            // expected
+        }
+        assertFalse( facade.isInTransaction() );
+        assertEquals( "[getAutoCommit, setAutoCommit, rollback, setAutoCommit, close]" , facade.calls.toString() );
+    }
+
+    public void test_tableChangedWaitsForCommit() throws Exception
+    {
+        final CountingFacade facade = new CountingFacade();
+        final QueryCache cache = new QueryCache( 100000 );
+        cache.setTTL( "Animal" , 60 * 1000 );
+        facade.setQueryCache( cache );
+        DBQuery q = new DBQuery( facade , "Animal" );
+        cache.put( q , new DBResults() , cache.getChangeCount( q ) );
+        facade.inTransaction( new UnitOfWork()
+        {
+            public void run( Connection con ) throws Exception
+            {
+                facade.tableChanged( "Animal" );
+                assertEquals( 1 , cache.size() );
+            }
+        });
+        assertEquals( 0 , cache.size() );
+
+        // rolled back, so nothing changed
+        cache.put( q , new DBResults() , cache.getChangeCount( q ) );
+        try
+        {
+            facade.inTransaction( new UnitOfWork()
+            {
+                public void run( Connection con ) throws Exception
+                {
+                    facade.tableChanged( "Animal" );
+                    throw new Exception( "moo" );
+                }
+            });
+            fail( "the work failed" );
+        }
+        catch ( SQLException e )
+        {
+            // expected
+        }
+        assertEquals( 1 , cache.size() );
+    }
+
+    public void test_searchMapperFromCache() throws Exception
+    {
+        MockDBFacade facade = new MockDBFacade();
+        QueryCache cache = new QueryCache( 100000 );
+        cache.setTTL( "Animal" , 60 * 1000 );
+        facade.setQueryCache( cache );
+        facade.search_return = new DBResults();
+        facade.search_return.add( new String[]{ "cow" } );
+        facade.search_return.add( new String[]{ "pig" } );
+        List animals = facade.search( new CountingFacade().getConnection() , new DBQuery( facade , "Animal" ) , new RowMapper()
+        {
+            public Object map( ResultSet rs ) throws SQLException
+            {
+                throw new SQLException( "cached results should not need the ResultSet" );
+            }
+
+            public Object map( String[] row )
+            {
+                return row[ 0 ].toUpperCase();
+            }
+        });
+        assertEquals( 2 , animals.size() );
+        assertEquals( "COW" , animals.get( 0 ) );
+        assertEquals( "PIG" , animals.get( 1 ) );
+    }
+
+    public void test_getIDQueries() throws Exception
+    {
+        DBFacade facade = new CountingFacade()
+        {
+            protected int getMaxInListSize()
+            {
+                return 2 ;
+            }
+        };
+        DBQuery[] queries = facade.getIDQueries( "Animal" , "id" , new long[]{ 7 , 3 , 7 , 9 , 1 } , new String[]{ "name" } );
+        assertEquals( 2 , queries.length );
+        assertEquals( "SELECT name FROM Animal WHERE id IN (?,?)" , queries[ 0 ].getSQL() );
+        assertEquals( "[1, 3]" , java.util.Arrays.asList( queries[ 0 ].getParameters() ).toString() );
+        assertEquals( "[7, 9]" , java.util.Arrays.asList( queries[ 1 ].getParameters() ).toString() );
+        assertEquals( 0 , facade.getIDQueries( "Animal" , "id" , new long[ 0 ] , null ).length );
+    }
+
+    // prepared statements that do nothing but remember what was done with them
+    private static class StatementFacade extends CountingFacade
+    {
+        final List statements = Collections.synchronizedList( new ArrayList() );
+        final List values = Collections.synchronizedList( new ArrayList() );  // everything bound to a '?'
+
+        StatementFacade()
+        {
+            useParameters();  // so single inserts come here too
+        }
+
+        protected PreparedStatement prepareStatement( Connection con , String sql , String keyColumn ) throws SQLException
+        {
+            statements.add( sql );
+            InvocationHandler handler = new InvocationHandler()
+            {
+                public Object invoke( Object proxy , Method method , Object[] args )
+                {
+                    Object returnVal = null ;
+                    String name = method.getName();
+                    if ( name.equals( "addBatch" ) || name.equals( "executeBatch" ) || name.equals( "executeUpdate" ) )
+                    {
+                        statements.add( name );
+                    }
+                    else if ( name.equals( "setString" ) || name.equals( "setObject" ) )
+                    {
+                        values.add( args[ 1 ] );
+                    }
+                    if ( name.equals( "executeBatch" ) )
+                    {
+                        returnVal = new int[ 0 ];
+                    }
+                    else if ( name.equals( "executeUpdate" ) )
+                    {
+                        returnVal = new Integer( 1 );
+                    }
+                    return returnVal ;
+                }
+            };
+            return (PreparedStatement)Proxy.newProxyInstance( PreparedStatement.class.getClassLoader() , new Class[]{ PreparedStatement.class } , handler );
+        }
+
+        int count( String what )
+        {
+            return Collections.frequency( statements , what );
+        }
+    }
+
+    // keeps the tableIDCounters row in memory and remembers how many blocks each trip to it reserved
+    private static class IDFacade extends StatementFacade
+    {
+        long skip = 10 ;
+        long counter = 0 ;
+        int failures = 0 ;  // this many reservations fail before they work again
+        final List reservations = new ArrayList();
+        private final ThreadLocal row = new ThreadLocal();
+
+        protected PreparedStatement prepareStatement( Connection con , String sql , String keyColumn ) throws SQLException
+        {
+            if ( sql.indexOf( "tableIDCounters" ) < 0 )
+            {
+                return super.prepareStatement( con , sql , keyColumn );
+            }
+            final long[] blocks = new long[ 1 ];
+            InvocationHandler handler = new InvocationHandler()
+            {
+                public Object invoke( Object proxy , Method method , Object[] args ) throws Throwable
+                {
+                    Object returnVal = null ;
+                    if ( method.getName().equals( "setLong" ) )
+                    {
+                        blocks[ 0 ] = ( (Long)args[ 1 ] ).longValue();
+                    }
+                    else if ( method.getName().equals( "executeUpdate" ) )
+                    {
+                        reserve( blocks[ 0 ] );
+                        returnVal = new Integer( 1 );
+                    }
+                    return returnVal ;
+                }
+            };
+            return (PreparedStatement)Proxy.newProxyInstance( PreparedStatement.class.getClassLoader() , new Class[]{ PreparedStatement.class } , handler );
+        }
+
+        private synchronized void reserve( long blocks ) throws SQLException
+        {
+            if ( failures > 0 )
+            {
+                failures-- ;
+                throw new SQLException( "the database is down" );
+            }
+            counter += blocks ;
+            reservations.add( new Long( blocks ) );
+            row.set( new String[]{ String.valueOf( counter ) , String.valueOf( skip ) } );
+        }
+
+        synchronized String getReservations()
+        {
+            return reservations.toString();
+        }
+
+        public DBResults executeQuery( Connection con , String sql , Object[] parameters )
+        {
+            DBResults returnVal = new DBResults();
+            returnVal.add( (String[])row.get() );
+            return returnVal ;
+        }
+    }
+
+    private static List rows( int count )
+    {
+        List returnVal = new ArrayList();
+        for ( int i = 0 ; i < count ; i++ )
+        {
+            returnVal.add( new HashMap() );
+        }
+        return returnVal ;
+    }
+
+    public void test_idsAcrossBlocks() throws Exception
+    {
+        IDFacade facade = new IDFacade();
+        facade.setIDPrefetchWatermark( 1.0 );  // never prefetch
+        for ( long expected = 10 ; expected < 35 ; expected++ )
+        {
+            assertEquals( expected , facade.insertAndGetID( "Animal" , new HashMap() ) );
+        }
+        assertEquals( "[1, 1, 1]" , facade.getReservations() );
+
+        long[] ids = facade.insertBatchAndGetIDs( "Animal" , rows( 10 ) );
+        assertEquals( 35 , ids[ 0 ] );
+        assertEquals( 44 , ids[ 9 ] );
+        assertEquals( "[1, 1, 1, 1]" , facade.getReservations() );
+    }
+
+    public void test_bigRequestKeepsLeftover() throws Exception
+    {
+        IDFacade facade = new IDFacade();
+        facade.setIDPrefetchWatermark( 1.0 );
+        assertEquals( 10 , facade.insertAndGetID( "Animal" , new HashMap() ) );
+
+        // 11 through 19 from the current block, then 16 more with one trip for two blocks: 20 through 35
+        long[] ids = facade.insertBatchAndGetIDs( "Animal" , rows( 25 ) );
+        for ( int i = 0 ; i < ids.length ; i++ )
+        {
+            assertEquals( 11 + i , ids[ i ] );
+        }
+        assertEquals( "[1, 2]" , facade.getReservations() );
+
+        // 36 through 39 are left over
+        for ( long expected = 36 ; expected < 40 ; expected++ )
+        {
+            assertEquals( expected , facade.insertAndGetID( "Animal" , new HashMap() ) );
+        }
+        assertEquals( "[1, 2]" , facade.getReservations() );
+        assertEquals( 40 , facade.insertAndGetID( "Animal" , new HashMap() ) );
+        assertEquals( "[1, 2, 1]" , facade.getReservations() );
+    }
+
+    public void test_prefetchOnceAtWatermark() throws Exception
+    {
+        IDFacade facade = new IDFacade();
+        for ( long expected = 10 ; expected < 15 ; expected++ )
+        {
+            assertEquals( expected , facade.insertAndGetID( "Animal" , new HashMap() ) );
+        }
+        Thread.sleep( 100 );
+        assertEquals( "[1]" , facade.getReservations() );
+
+        // 15 is the watermark
+        assertEquals( 15 , facade.insertAndGetID( "Animal" , new HashMap() ) );
+        for ( int i = 0 ; ( i < 50 ) && facade.getReservations().equals( "[1]" ) ; i++ )
+        {
+            Thread.sleep( 100 );
+        }
+        assertEquals( "[1, 1]" , facade.getReservations() );
+
+        // the rest of the block and the start of the prefetched one don't go to the database
+        long[] ids = facade.insertBatchAndGetIDs( "Animal" , rows( 9 ) );
+        assertEquals( 16 , ids[ 0 ] );
+        assertEquals( 24 , ids[ 8 ] );
+        Thread.sleep( 100 );
+        assertEquals( "[1, 1]" , facade.getReservations() );
+    }
+
+    public void test_prefetchFailure() throws Exception
+    {
+        IDFacade facade = new IDFacade();
+        ErrorLog log = new ErrorLog();
+        log.setConsole( false );
+        log.setInternalLog( true );
+        facade.setErrorLog( log );
+        assertEquals( 10 , facade.insertAndGetID( "Animal" , new HashMap() ) );
+        synchronized( facade )
+        {
+            facade.failures = 1 ;
+        }
+
+        // the prefetch at 15 fails, so 20 is reserved when it's needed
+        long[] ids = facade.insertBatchAndGetIDs( "Animal" , rows( 10 ) );
+        assertEquals( 11 , ids[ 0 ] );
+        assertEquals( 20 , ids[ 9 ] );
+        assertEquals( "[1, 1]" , facade.getReservations() );
+        assertEquals( 1 , log.numErrors() );
+    }
+
+    public void test_idsUniqueAcrossThreads() throws Exception
+    {
+        final IDFacade facade = new IDFacade();
+        facade.skip = 7 ;
+        final Set ids = new HashSet();
+        final Exception[] failed = new Exception[ 8 ];
+        Thread[] threads = new Thread[ failed.length ];
+        for ( int i = 0 ; i < threads.length ; i++ )
+        {
+            final int which = i ;
+            threads[ i ] = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        for ( int j = 0 ; j < 200 ; j++ )
+                        {
+                            long[] newIDs = ( j % 2 == 0 ) ? new long[]{ facade.insertAndGetID( "Animal" , new HashMap() ) }
+                                                            : facade.insertBatchAndGetIDs( "Animal" , rows( j % 13 ) );
+                            synchronized( ids )
+                            {
+                                for ( int k = 0 ; k < newIDs.length ; k++ )
+                                {
+                                    assertTrue( "ID handed out twice: " + newIDs[ k ] , ids.add( new Long( newIDs[ k ] ) ) );
+                                }
+                            }
+                        }
+                    }
+                    catch ( Exception e )
+                    {
+                        failed[ which ] = e ;
+                    }
+                }
+            };
+            threads[ i ].start();
+        }
+        int expected = 0 ;
+        for ( int j = 0 ; j < 200 ; j++ )
+        {
+            expected += ( j % 2 == 0 ) ? 1 : j % 13 ;
+        }
+        for ( int i = 0 ; i < threads.length ; i++ )
+        {
+            threads[ i ].join();
+            assertNull( String.valueOf( failed[ i ] ) , failed[ i ] );
+        }
+        assertEquals( expected * threads.length , ids.size() );
+    }
+
+    private static Map animal( String name , String weight )
+    {
+        Map returnVal = new LinkedHashMap();
+        returnVal.put( "name" , name );
+        if ( weight != null )
+        {
+            returnVal.put( "weight" , weight );
+        }
+        return returnVal ;
+    }
+
+    public void test_insertBatch() throws Exception
+    {
+        StatementFacade facade = new StatementFacade();
+        facade.setBatchSize( 2 );
+        List data = new ArrayList();
+        data.add( animal( "cow" , null ) );
+        data.add( animal( "pig" , "200" ) );
+        data.add( animal( "hen" , null ) );
+        data.add( animal( "cat" , null ) );
+        data.add( animal( "dog" , "30" ) );
+        facade.insertBatch( "Animal" , data );
+
+        // one statement for each set of columns, sent two rows at a time, all in one transaction
+        assertEquals( "[INSERT INTO Animal (name) VALUES (?), addBatch, addBatch, executeBatch, addBatch, executeBatch, "
+                      + "INSERT INTO Animal (name,weight) VALUES (?,?), addBatch, addBatch, executeBatch]" ,
+                      facade.statements.toString() );
+        assertEquals( 1 , facade.connections );
+        assertEquals( 1 , Collections.frequency( facade.calls , "commit" ) );
+    }
+
+    public void test_insertBatchAndGetIDs() throws Exception
+    {
+        IDFacade facade = new IDFacade();
+        facade.setIDPrefetchWatermark( 1.0 );
+        facade.setBatchSize( 10 );
+        assertEquals( 10 , facade.insertAndGetID( "Animal" , animal( "cow" , null ) ) );
+
+        // what a generated table's insert( Row[] ) does
+        List data = new ArrayList();
+        for ( int i = 0 ; i < 25 ; i++ )
+        {
+            data.add( animal( "pig" , null ) );
+        }
+        long[] ids = new TableFacade( facade , "Animal" ).insertBatchAndGetIDs( data , "ID" );
+        for ( int i = 0 ; i < ids.length ; i++ )
+        {
+            assertEquals( 11 + i , ids[ i ] );
+            assertEquals( String.valueOf( ids[ i ] ) , ( (Map)data.get( i ) ).get( "ID" ) );
+        }
+
+        // the rest of the current block, then two blocks in one trip, and the rest of those are kept
+        assertEquals( "[1, 2]" , facade.getReservations() );
+        assertEquals( 25 , facade.count( "addBatch" ) );
+        assertEquals( 3 , facade.count( "executeBatch" ) );
+        assertEquals( 36 , facade.insertAndGetID( "Animal" , animal( "hen" , null ) ) );
+        assertEquals( "[1, 2]" , facade.getReservations() );
+    }
+
+    // two values to an IN list
+    private static class SmallInListFacade extends StatementFacade
+    {
+        protected int getMaxInListSize()
+        {
+            return 2 ;
+        }
+    }
+
+    public void test_maxInListSizeFromDialect() throws Exception
+    {
+        DBFacade facade = new DBFacade();
+        assertEquals( 1000 , facade.getMaxInListSize() );
+        facade.setDialect( Dialect.SQL_SERVER );
+        assertEquals( 2000 , facade.getMaxInListSize() );
+        facade.setDialect( Dialect.H2 );
+        assertEquals( 10000 , facade.getMaxInListSize() );
+    }
+
+    public void test_updateBatch() throws Exception
+    {
+        StatementFacade facade = new StatementFacade();
+        Map rows = new LinkedHashMap();
+        rows.put( "7" , animal( "cow" , null ) );
+        rows.put( "3" , animal( "pig" , "200" ) );
+        rows.put( "9" , animal( "hen" , null ) );
+        facade.updateBatch( "Animal" , "ID" , rows );
+
+        // each row gets its own data, and rows that change the same columns share a statement
+        assertEquals( "[UPDATE Animal SET name=? WHERE ID=?, addBatch, addBatch, executeBatch, "
+                      + "UPDATE Animal SET name=?,weight=? WHERE ID=?, addBatch, executeBatch]" ,
+                      facade.statements.toString() );
+        assertEquals( "[cow, 7, hen, 9, pig, 200, 3]" , facade.values.toString() );
+        assertEquals( 1 , facade.connections );
+        assertEquals( 1 , Collections.frequency( facade.calls , "commit" ) );
+    }
+
+    public void test_deleteAndUpdateInLists() throws Exception
+    {
+        StatementFacade facade = new SmallInListFacade();
+        facade.delete( "Animal" , "ID" , new long[]{ 7 , 3 , 9 , 1 , 5 } );
+        assertEquals( "[DELETE FROM Animal WHERE ID IN (?,?), addBatch, addBatch, executeBatch, "
+                      + "DELETE FROM Animal WHERE ID IN (?), addBatch, executeBatch]" ,
+                      facade.statements.toString() );
+        assertEquals( "[7, 3, 9, 1, 5]" , facade.values.toString() );
+
+        facade.statements.clear();
+        facade.values.clear();
+        facade.update( "Animal" , "ID" , new long[]{ 7 , 3 , 9 } , animal( "cow" , null ) );
+        assertEquals( "[UPDATE Animal SET name=? WHERE ID IN (?,?), addBatch, executeBatch, "
+                      + "UPDATE Animal SET name=? WHERE ID IN (?), addBatch, executeBatch]" ,
+                      facade.statements.toString() );
+        assertEquals( "[cow, 7, 3, cow, 9]" , facade.values.toString() );
+
+        facade.statements.clear();
+        facade.values.clear();
+        facade.delete( "Animal" , "name" , new String[]{ "cow" , "pig" , "hen" , "cat" } );
+        assertEquals( "[DELETE FROM Animal WHERE name IN (?,?), addBatch, addBatch, executeBatch]" ,
+                      facade.statements.toString() );
+        assertEquals( "[cow, pig, hen, cat]" , facade.values.toString() );
+
+        // each one has its own connection and transaction
+        assertEquals( 3 , facade.connections );
+        assertEquals( 3 , Collections.frequency( facade.calls , "commit" ) );
+    }
+
+    public void test_deleteAndUpdateInListsInTransaction() throws Exception
+    {
+        final StatementFacade facade = new SmallInListFacade();
+        facade.inTransaction( new UnitOfWork()
+        {
+            public void run( Connection con ) throws Exception
+            {
+                facade.delete( "Animal" , "ID" , new long[]{ 7 , 3 , 9 } );
+                facade.update( "Animal" , "name" , new String[]{ "cow" , "pig" , "hen" } , animal( "hen" , null ) );
+            }
+        });
+        assertEquals( "[DELETE FROM Animal WHERE ID IN (?,?), addBatch, executeBatch, "
+                      + "DELETE FROM Animal WHERE ID IN (?), addBatch, executeBatch, "
+                      + "UPDATE Animal SET name=? WHERE name IN (?,?), addBatch, executeBatch, "
+                      + "UPDATE Animal SET name=? WHERE name IN (?), addBatch, executeBatch]" ,
+                      facade.statements.toString() );
+        assertEquals( 1 , facade.connections );
+        assertEquals( 1 , Collections.frequency( facade.calls , "commit" ) );
+    }
+
 }
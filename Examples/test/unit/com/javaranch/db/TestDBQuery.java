@@ -92,6 +92,151 @@ public class TestDBQuery extends TestCase
         assertEquals( q.getWhereClause() , " WHERE Flavor sounds like sweet, crunchy goodness" );
     }
 
+    public void test_parameterized() throws Exception
+    {
+        DBFacade parameterFacade = new DBFacade();
+        parameterFacade.useParameters();
+        DBQuery q = new DBQuery( parameterFacade , "FrootLoopCollection" );
+        assertTrue( q.isParameterized() );
+        q.setSearch( "Color" , "O'Green" );
+        assertEquals( q.getWhereClause() , " WHERE Color=?" );
+        assertEquals( 1 , q.getParameters().length );
+        assertEquals( "O'Green" , q.getParameters()[ 0 ] );
+        q.addSearch( "Loops" , 7 );
+        q.addSearch( "Smell" , new String[]{ "Tangy" , "Funky" } );
+        assertEquals( q.getWhereClause() , " WHERE Color=? AND Loops=? AND Smell IN (? , ?)" );
+        assertEquals( 4 , q.getParameters().length );
+        assertEquals( new Integer( 7 ) , q.getParameters()[ 1 ] );
+        q.setStartsWithSearch( "Color" , "Gr" );
+        assertEquals( q.getWhereClause() , " WHERE Color LIKE ?" );
+        assertEquals( "Gr%" , q.getParameters()[ 0 ] );
+        q.setSearch( "Color" , (String)null );
+        assertEquals( q.getWhereClause() , " WHERE Color IS NULL" );
+        assertEquals( 0 , q.getParameters().length );
+    }
+
+    // a facade that takes two values to an IN list
+    private static DBFacade smallInListFacade()
+    {
+        return new DBFacade()
+        {
+            protected int getMaxInListSize()
+            {
+                return 2 ;
+            }
+        };
+    }
+
+    public void test_longInList() throws Exception
+    {
+        DBFacade small = smallInListFacade();
+        DBQuery q = new DBQuery( small , "FrootLoopCollection" , "Loops" , new int[]{ 1 , 2 } );
+        assertEquals( q.getWhereClause() , " WHERE Loops IN ('1' , '2')" );
+        q.setSearch( "Loops" , new int[]{ 1 , 2 , 3 } );
+        assertEquals( q.getWhereClause() , " WHERE ( Loops IN ('1' , '2') OR Loops IN ('3') )" );
+
+        small.useParameters();
+        q = new DBQuery( small , "FrootLoopCollection" , "Color" , new String[]{ "Green" , null , "Red" } );
+        assertEquals( q.getWhereClause() , " WHERE ( Color IN (? , NULL) OR Color IN (?) )" );
+        assertEquals( 2 , q.getParameters().length );
+
+        small.setInListTable( "InList" );
+        q.setSearch( "Loops" , new int[]{ 1 , 2 , 3 } );
+        assertEquals( q.getWhereClause() , " WHERE Loops IN (SELECT NUM_VALUE FROM InList WHERE LIST_ID = ?)" );
+        assertTrue( q.getParameters()[ 0 ] instanceof DBFacade.InListData );
+        q.setSearch( "Loops" , new int[]{ 1 , 2 } );
+        assertEquals( q.getWhereClause() , " WHERE Loops IN (? , ?)" );
+
+        small.useArrayParameters();
+        q.setSearch( "Loops" , new int[]{ 1 , 2 , 3 } );
+        assertEquals( q.getWhereClause() , " WHERE Loops = ANY(?)" );
+        assertEquals( new DBFacade.ArrayData( new Object[]{ new Integer( 1 ) , new Integer( 2 ) , new Integer( 3 ) } ) , q.getParameters()[ 0 ] );
+        assertEquals( "integer" , ( (DBFacade.ArrayData)q.getParameters()[ 0 ] ).getTypeName() );
+        q.setSearch( "Loops" , new int[]{ 1 } );
+        assertEquals( q.getWhereClause() , " WHERE Loops IN (?)" );
+    }
+
+    public void test_page() throws Exception
+    {
+        DBFacade pageFacade = new DBFacade();
+        DBQuery q = new DBQuery( pageFacade , "FrootLoopCollection" , "Color" , "Green" , new String[]{ "Loops" , "Color" } );
+        q.page( new String[]{ "Size DESC" , "Loops" } , null , 10 );
+        assertEquals( "SELECT Loops,Color FROM FrootLoopCollection WHERE Color='Green' ORDER BY Size DESC , Loops LIMIT 10" , q.getSQL() );
+        q.page( new String[]{ "Size DESC" , "Loops" } , new Object[]{ "9" , new Integer( 5 ) } , 10 );
+        assertEquals( q.getWhereClause() , " WHERE ( Color='Green' ) AND ( ( Size < '9' ) OR ( Size='9' AND Loops > '5' ) )" );
+        assertEquals( 10 , q.getLimit() );
+
+        pageFacade.setLimitStyle( DBFacade.TOP );
+        assertEquals( "SELECT TOP 10 Loops,Color FROM FrootLoopCollection" + q.getWhereClause() + " ORDER BY Size DESC , Loops" , q.getSQL() );
+        pageFacade.setLimitStyle( DBFacade.ROWNUM );
+        assertTrue( q.getSQL().endsWith( ") WHERE ROWNUM <= 10" ) );
+
+        pageFacade.useParameters();
+        q = new DBQuery( pageFacade , "FrootLoopCollection" , "Color" , "Green" , new String[]{ "Loops" } );
+        q.page( new String[]{ "Size" , "Loops" } , new Object[]{ "9" , new Integer( 5 ) } , 10 );
+        assertEquals( q.getWhereClause() , " WHERE ( Color=? ) AND ( ( Size > ? ) OR ( Size=? AND Loops > ? ) )" );
+        assertEquals( 4 , q.getParameters().length );
+        assertEquals( new Integer( 5 ) , q.getParameters()[ 3 ] );
+
+        DBQuery next = q.copy();
+        assertEquals( q , next );
+        next.page( new String[]{ "Size" , "Loops" } , new Object[]{ "9" , new Integer( 15 ) } , 10 );
+        assertFalse( q.equals( next ) );
+
+        try
+        {
+            q.page( new String[]{ "Size" } , new Object[]{ "9" , "10" } , 10 );
+            fail( "afterKey doesn't match the order columns" );
+        }
+        catch ( java.security.InvalidParameterException e )
+        {
+        }
+    }
+
+    public void test_aggregate() throws Exception
+    {
+        DBQuery q = new DBQuery( facade , "FrootLoopCollection" , "Color" , "Green" , new String[]{ "Loops" } );
+        q.setOrderByClause( "Loops" );
+        q.page( new String[]{ "Loops" } , null , 10 );
+        DBQuery count = q.aggregate( new String[]{ "COUNT(*)" } );
+        assertEquals( "SELECT COUNT(*) FROM FrootLoopCollection WHERE Color='Green'" , count.getSQL() );
+        assertEquals( "SELECT Loops FROM FrootLoopCollection WHERE Color='Green' ORDER BY Loops LIMIT 10" , q.getSQL() );
+
+        count.setDataColumns( new String[]{ "Size" , "COUNT(*)" } );
+        count.setGroupByClause( "Size" );
+        assertEquals( "SELECT Size,COUNT(*) FROM FrootLoopCollection WHERE Color='Green' GROUP BY Size" , count.getSQL() );
+        assertFalse( count.equals( q.aggregate( new String[]{ "Size" , "COUNT(*)" } ) ) );
+        assertEquals( count , count.copy() );
+    }
+
+    public void test_parameterizedEquals() throws Exception
+    {
+        DBFacade parameterFacade = new DBFacade();
+        parameterFacade.useParameters();
+        String[] columns = { "Texture" };
+        DBQuery green = new DBQuery( parameterFacade , "FrootLoopCollection" , "Color" , "Green" , columns );
+        DBQuery orange = new DBQuery( parameterFacade , "FrootLoopCollection" , "Color" , "Orange" , columns );
+        assertEquals( green.getSQL() , "SELECT Texture FROM FrootLoopCollection WHERE Color=?" );
+        assertEquals( green.getSQL() , orange.getSQL() );
+        assertFalse( green.equals( orange ) );
+        assertTrue( green.equals( new DBQuery( parameterFacade , "FrootLoopCollection" , "Color" , "Green" , columns ) ) );
+    }
+
+    public void test_hashCode() throws Exception
+    {
+        String[] columns = { "Texture" };
+        DBQuery all = new DBQuery( facade , "FrootLoopCollection" );
+        all.setDataColumns( columns );
+        DBQuery another = new DBQuery( facade , "FrootLoopCollection" );
+        another.setDataColumns( columns );
+        assertEquals( all , another );
+        assertEquals( all.hashCode() , another.hashCode() );
+        DBQuery copy = all.copy();
+        assertEquals( all , copy );
+        all.setSearch( "Color" , "Green" );
+        assertFalse( all.equals( copy ) );
+    }
+
 
 
 
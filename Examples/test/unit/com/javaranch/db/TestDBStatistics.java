@@ -0,0 +1,92 @@
+package com.javaranch.db;
+
+import com.javaranch.common.* ;
+
+import junit.framework.TestCase;
+
+public class TestDBStatistics extends TestCase
+{
+
+    public void test_getTemplate() throws Exception
+    {
+        assertEquals( "SELECT Name FROM Animal2 WHERE ID=? AND Species=?" ,
+                      DBStatistics.getTemplate( "SELECT Name FROM Animal2 WHERE ID=12 AND Species='cow''s'" ) );
+        assertEquals( "DELETE FROM Animal WHERE ID IN (?...)" ,
+                      DBStatistics.getTemplate( "DELETE FROM Animal WHERE ID IN (1 , 2,3)" ) );
+        assertEquals( "UPDATE Animal SET Weight=? WHERE ID=?" ,
+                      DBStatistics.getTemplate( "UPDATE Animal  SET Weight=-1.5\n WHERE ID=?" ) );
+    }
+
+    public void test_histogram() throws Exception
+    {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals( 0 , h.getPercentileMicros( 0.5 ) );
+        for ( int i = 0 ; i < 99 ; i++ )
+        {
+            h.record( 100 * 1000 );  // 100 micros
+        }
+        h.record( 50 * 1000 * 1000 );  // 50 millis
+        assertEquals( 100 , h.getCount() );
+        assertEquals( 128 , h.getPercentileMicros( 0.5 ) );
+        assertEquals( 128 , h.getPercentileMicros( 0.99 ) );
+        assertEquals( 50000 , h.getPercentileMicros( 1.0 ) );
+        assertEquals( 50000 , h.getMaxMicros() );
+        h.reset();
+        assertEquals( 0 , h.getCount() );
+    }
+
+    public void test_timer() throws Exception
+    {
+        DBStatistics statistics = new DBStatistics();
+        DBStatistics.Timer timer = statistics.start( "SELECT Name FROM Animal WHERE ID=12" );
+        timer.executed();
+        timer.finished( 1 );
+        statistics.start( "SELECT Name FROM Animal WHERE ID=13" ).failed();
+        DBStatistics.SQLStatistics[] all = statistics.getSQLStatistics();
+        assertEquals( 1 , all.length );
+        assertEquals( "SELECT Name FROM Animal WHERE ID=?" , all[ 0 ].getSQL() );
+        assertEquals( 2 , all[ 0 ].getCalls() );
+        assertEquals( 1 , all[ 0 ].getErrors() );
+        assertEquals( 1 , all[ 0 ].getRows() );
+        assertEquals( 1 , all[ 0 ].getFetchTimes().getCount() );
+        assertEquals( 2 , statistics.getStatementCount() );
+    }
+
+    public void test_maxStatements() throws Exception
+    {
+        DBStatistics statistics = new DBStatistics();
+        statistics.setMaxStatements( 2 );
+        statistics.start( "SELECT Name FROM Animal WHERE ID=?" ).finished( 1 );
+        statistics.start( "SELECT Name FROM Animal WHERE ID=?" ).finished( 1 );
+        statistics.start( "SELECT Name FROM Farm WHERE ID=?" ).finished( 1 );
+        statistics.start( "SELECT Name FROM Barn WHERE ID=?" ).finished( 1 );
+        statistics.start( "SELECT Name FROM Pond WHERE ID=?" ).finished( 1 );
+        DBStatistics.SQLStatistics[] all = statistics.getSQLStatistics();
+        assertEquals( 3 , all.length );
+        assertEquals( 5 , statistics.getStatementCount() );
+        long other = 0 ;
+        for ( int i = 0 ; i < all.length ; i++ )
+        {
+            if ( all[ i ].getSQL().equals( "(other)" ) )
+            {
+                other = all[ i ].getCalls();
+            }
+        }
+        assertEquals( 2 , other );
+    }
+
+    public void test_slowQueryLog() throws Exception
+    {
+        DBStatistics statistics = new DBStatistics();
+        ErrorLog log = new ErrorLog();
+        log.setConsole( false );
+        log.setInternalLog( true );
+        statistics.setSlowQueryLog( log );
+        statistics.setSlowQueryMillis( 0 );
+        statistics.start( "DELETE FROM Animal" ).finished( 3 );
+        assertEquals( 1 , statistics.getSlowQueryCount() );
+        assertEquals( 1 , log.numErrors() );
+        assertTrue( log.getList()[ 0 ].indexOf( "3 rows" ) > 0 );
+    }
+
+}
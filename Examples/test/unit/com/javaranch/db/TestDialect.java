@@ -0,0 +1,61 @@
+package com.javaranch.db;
+
+import junit.framework.TestCase;
+
+public class TestDialect extends TestCase
+{
+
+    private static final String[] keys = { "LoopID" };
+    private static final String[] columns = { "LoopID" , "Color" , "Made" };
+    private static final String[] values = { "?" , "?" , "CURRENT_TIMESTAMP" };
+
+    public void test_forBrand() throws Exception
+    {
+        assertSame( Dialect.ORACLE , Dialect.forBrand( "Oracle" ) );
+        assertSame( Dialect.SQL_SERVER , Dialect.forBrand( "sqlserver" ) );
+        assertSame( Dialect.GENERIC , Dialect.forBrand( "Informix" ) );
+        assertSame( Dialect.GENERIC , Dialect.forBrand( null ) );
+        assertEquals( DBFacade.TOP , Dialect.SYBASE.getLimitStyle() );
+        assertNull( Dialect.SYBASE.getUpsertSQL( "FrootLoop" , keys , columns , values ) );
+        assertTrue( Dialect.SYBASE.canBatchQueries() );
+        assertFalse( Dialect.MYSQL.canBatchQueries() );
+    }
+
+    public void test_upsertSQL() throws Exception
+    {
+        assertEquals( "INSERT INTO FrootLoop (LoopID,Color,Made) VALUES (?,?,CURRENT_TIMESTAMP) ON CONFLICT (LoopID) DO UPDATE SET Color=EXCLUDED.Color,Made=EXCLUDED.Made" ,
+                      Dialect.POSTGRES.getUpsertSQL( "FrootLoop" , keys , columns , values ) );
+        assertEquals( "INSERT INTO FrootLoop (LoopID,Color,Made) VALUES (?,?,CURRENT_TIMESTAMP) ON DUPLICATE KEY UPDATE Color=VALUES(Color),Made=VALUES(Made)" ,
+                      Dialect.MYSQL.getUpsertSQL( "FrootLoop" , keys , columns , values ) );
+        assertEquals( "MERGE INTO FrootLoop t USING (SELECT ? LoopID,? Color,CURRENT_TIMESTAMP Made FROM DUAL) s ON (t.LoopID=s.LoopID)" +
+                      " WHEN MATCHED THEN UPDATE SET t.Color=s.Color,t.Made=s.Made" +
+                      " WHEN NOT MATCHED THEN INSERT (LoopID,Color,Made) VALUES (s.LoopID,s.Color,s.Made)" ,
+                      Dialect.ORACLE.getUpsertSQL( "FrootLoop" , keys , columns , values ) );
+        assertTrue( Dialect.SQL_SERVER.getUpsertSQL( "FrootLoop" , keys , columns , values ).startsWith( "MERGE INTO FrootLoop WITH (HOLDLOCK) AS t USING (SELECT ? AS LoopID," ) );
+        assertEquals( "MERGE INTO FrootLoop (LoopID,Color,Made) KEY (LoopID) VALUES (?,?,CURRENT_TIMESTAMP)" ,
+                      Dialect.H2.getUpsertSQL( "FrootLoop" , keys , columns , values ) );
+    }
+
+    public void test_onlyKeyColumns() throws Exception
+    {
+        String[] onlyKeys = { "LoopID" };
+        String[] oneValue = { "?" };
+        assertEquals( "INSERT INTO FrootLoop (LoopID) VALUES (?) ON CONFLICT (LoopID) DO NOTHING" ,
+                      Dialect.POSTGRES.getUpsertSQL( "FrootLoop" , keys , onlyKeys , oneValue ) );
+        assertEquals( "INSERT INTO FrootLoop (LoopID) VALUES (?) ON DUPLICATE KEY UPDATE LoopID=LoopID" ,
+                      Dialect.MYSQL.getUpsertSQL( "FrootLoop" , keys , onlyKeys , oneValue ) );
+        assertEquals( -1 , Dialect.ORACLE.getUpsertSQL( "FrootLoop" , keys , onlyKeys , oneValue ).indexOf( "WHEN MATCHED" ) );
+    }
+
+    public void test_facadeDialect() throws Exception
+    {
+        DBFacade facade = new DBFacade();
+        assertSame( Dialect.GENERIC , facade.getDialect() );
+        facade.setDialect( Dialect.SQL_SERVER );
+        assertEquals( DBFacade.TOP , facade.getLimitStyle() );
+        facade.setDialect( null );
+        assertSame( Dialect.GENERIC , facade.getDialect() );
+        assertEquals( DBFacade.LIMIT , facade.getLimitStyle() );
+    }
+
+}
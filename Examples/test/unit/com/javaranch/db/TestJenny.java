@@ -1,6 +1,15 @@
 package com.javaranch.db ;
 
 //import java.util.Properties;
+import java.lang.reflect.InvocationHandler ;
+import java.lang.reflect.Method ;
+import java.lang.reflect.Proxy ;
+import java.security.InvalidParameterException ;
+import java.sql.DatabaseMetaData ;
+import java.sql.ResultSet ;
+import java.sql.Types ;
+import java.util.List ;
+import java.util.Properties ;
 
 import junit.framework.TestCase ;
 
@@ -87,4 +96,105 @@ public class TestJenny extends TestCase
         assertEquals( "A" , Jenny.attributeName( "a" ).major );
     }
 
+    // metadata for one table, with these columns:  { name , JDBC type }
+    private static DatabaseMetaData metaData( final Object[][] columns )
+    {
+        InvocationHandler handler = new InvocationHandler()
+        {
+            public Object invoke( Object proxy , Method method , Object[] args )
+            {
+                return ( method.getName().equals( "getColumns" ) ) ? columns( columns ) : null ;
+            }
+        };
+        return (DatabaseMetaData)Proxy.newProxyInstance( DatabaseMetaData.class.getClassLoader() , new Class[]{ DatabaseMetaData.class } , handler );
+    }
+
+    private static ResultSet columns( final Object[][] columns )
+    {
+        InvocationHandler handler = new InvocationHandler()
+        {
+            private int row = -1 ;
+
+            public Object invoke( Object proxy , Method method , Object[] args )
+            {
+                Object returnVal = null ;
+                String name = method.getName();
+                if ( name.equals( "next" ) )
+                {
+                    row++ ;
+                    returnVal = Boolean.valueOf( row < columns.length );
+                }
+                else if ( name.equals( "getString" ) )
+                {
+                    returnVal = columns[ row ][ 0 ];
+                }
+                else if ( name.equals( "getInt" ) )
+                {
+                    returnVal = new Integer( args[ 0 ].equals( "DATA_TYPE" ) ? ( (Integer)columns[ row ][ 1 ] ).intValue() : DatabaseMetaData.columnNullable );
+                }
+                return returnVal ;
+            }
+        };
+        return (ResultSet)Proxy.newProxyInstance( ResultSet.class.getClassLoader() , new Class[]{ ResultSet.class } , handler );
+    }
+
+    private static final Object[][] animalColumns = { { "ANIMAL_ID" , new Integer( Types.INTEGER ) } ,
+                                                      { "SPECIES" , new Integer( Types.VARCHAR ) } ,
+                                                      { "QUANTITY" , new Integer( Types.INTEGER ) } ,
+                                                      { "SHAPE" , new Integer( Types.OTHER ) } };
+
+    private static Jenny.TableProcessor readAnimal( Properties properties ) throws Exception
+    {
+        return new Jenny().getTableProcessor( metaData( animalColumns ) , "ANIMAL" , "Table" , properties );
+    }
+
+    public void testProjections() throws Exception
+    {
+        Properties properties = new Properties();
+        properties.setProperty( "ANIMAL.Projection.Summary" , "species , Quantity" );
+        properties.setProperty( "ANIMAL.Projection.ID_ONLY" , "ANIMAL_ID" );
+        properties.setProperty( "FARM.Projection.Summary" , "acres" );  // some other table
+        Jenny.TableProcessor animal = readAnimal( properties );
+        assertEquals( "[IdOnly, Summary]" , animal.projections.keySet().toString() );
+        assertEquals( 1 , ( (List)animal.projections.get( "IdOnly" ) ).size() );
+        assertEquals( 2 , ( (List)animal.projections.get( "Summary" ) ).size() );
+
+        assertEquals( 0 , readAnimal( new Properties() ).projections.size() );
+    }
+
+    private static void assertBadProjection( String name , String columns , String message ) throws Exception
+    {
+        Properties properties = new Properties();
+        properties.setProperty( name , columns );
+        try
+        {
+            readAnimal( properties );
+            fail( name + "=" + columns + " should be an invalid parameter" );
+        }
+        catch ( InvalidParameterException e )
+        {
+            assertTrue( e.getMessage() , e.getMessage().indexOf( message ) >= 0 );
+        }
+    }
+
+    public void testBadProjections() throws Exception
+    {
+        assertBadProjection( "ANIMAL.Projection." , "SPECIES" , "needs a name" );
+        assertBadProjection( "ANIMAL.Projection.Summary" , "SPECIES,WEIGHT" , "there is no column WEIGHT in ANIMAL" );
+
+        // a table with a spatial column reads everything as strings, so it can't have projections
+        Properties properties = new Properties();
+        properties.setProperty( "ANIMAL.SHAPE" , "point" );
+        properties.setProperty( "ANIMAL.Projection.Summary" , "SPECIES" );
+        try
+        {
+            readAnimal( properties );
+            fail( "projections on a spatial table should be an invalid parameter" );
+        }
+        catch ( InvalidParameterException e )
+        {
+            assertTrue( e.getMessage() , e.getMessage().indexOf( "spatial" ) >= 0 );
+        }
+    }
+
 }
@@ -0,0 +1,119 @@
+package com.javaranch.db;
+
+import junit.framework.TestCase;
+
+public class TestQueryCache extends TestCase
+{
+
+    private static DBQuery query( String table , String color )
+    {
+        DBQuery q = new DBQuery( null , table , "Color" , color );
+        q.setDataColumns( new String[]{ "Texture" } );
+        return q ;
+    }
+
+    private static DBResults results( int rows )
+    {
+        DBResults r = new DBResults();
+        for ( int i = 0 ; i < rows ; i++ )
+        {
+            r.add( new String[]{ "crunchy" + i } );
+        }
+        return r ;
+    }
+
+    public void test_notCachedWithoutTTL() throws Exception
+    {
+        QueryCache cache = new QueryCache( 100000 );
+        DBQuery q = query( "FrootLoop" , "Green" );
+        assertFalse( cache.isCacheable( q ) );
+        cache.put( q , results( 1 ) , cache.getChangeCount( q ) );
+        assertEquals( 0 , cache.size() );
+    }
+
+    public void test_hitAndMiss() throws Exception
+    {
+        QueryCache cache = new QueryCache( 100000 );
+        cache.setTTL( "FrootLoop" , 60000 );
+        DBQuery q = query( "FrootLoop" , "Green" );
+        assertNull( cache.get( q ) );
+        cache.put( q , results( 2 ) , cache.getChangeCount( q ) );
+        DBResults r = cache.get( query( "FrootLoop" , "Green" ) );
+        assertEquals( 2 , r.size() );
+        assertEquals( "crunchy1" , r.get( 1 , 0 ) );
+        r.clear();
+        assertEquals( 2 , cache.get( q ).size() );
+        assertNull( cache.get( query( "FrootLoop" , "Orange" ) ) );
+        assertEquals( 2 , cache.getHits() );
+        assertEquals( 2 , cache.getMisses() );
+    }
+
+    public void test_invalidate() throws Exception
+    {
+        QueryCache cache = new QueryCache( 100000 );
+        cache.setTTL( "FrootLoop" , 60000 );
+        cache.setTTL( "Bowl" , 60000 );
+        DBQuery loops = query( "FrootLoop" , "Green" );
+        DBQuery bowls = query( "Bowl" , "Green" );
+        DBQuery both = query( "FrootLoop f, Bowl b" , "Green" );
+        long changeCount = cache.getChangeCount( loops );
+        cache.put( loops , results( 1 ) , changeCount );
+        cache.put( bowls , results( 1 ) , cache.getChangeCount( bowls ) );
+        cache.put( both , results( 1 ) , cache.getChangeCount( both ) );
+        assertEquals( 3 , cache.size() );
+        cache.invalidate( "frootloop" );
+        assertEquals( 1 , cache.size() );
+        assertNotNull( cache.get( bowls ) );
+        assertEquals( 2 , cache.getInvalidations() );
+
+        // results read before the change are not kept
+        cache.put( loops , results( 1 ) , changeCount );
+        assertEquals( 1 , cache.size() );
+
+        // a change to another table doesn't matter
+        changeCount = cache.getChangeCount( loops );
+        cache.invalidate( "Bowl" );
+        cache.put( loops , results( 1 ) , changeCount );
+        assertEquals( 1 , cache.size() );
+        assertNotNull( cache.get( loops ) );
+    }
+
+    public void test_expire() throws Exception
+    {
+        QueryCache cache = new QueryCache( 100000 );
+        cache.setTTL( "FrootLoop" , 1 );
+        DBQuery q = query( "FrootLoop" , "Green" );
+        cache.put( q , results( 1 ) , cache.getChangeCount( q ) );
+        Thread.sleep( 20 );
+        assertNull( cache.get( q ) );
+        assertEquals( 1 , cache.getExpirations() );
+        assertEquals( 0 , cache.size() );
+    }
+
+    public void test_evict() throws Exception
+    {
+        QueryCache cache = new QueryCache( 2000 );
+        cache.setDefaultTTL( 60000 );
+        DBQuery green = query( "FrootLoop" , "Green" );
+        DBQuery orange = query( "FrootLoop" , "Orange" );
+        DBQuery red = query( "FrootLoop" , "Red" );
+        cache.put( green , results( 8 ) , cache.getChangeCount( green ) );
+        cache.put( orange , results( 8 ) , cache.getChangeCount( orange ) );
+        cache.get( green );
+        cache.put( red , results( 8 ) , cache.getChangeCount( red ) );
+        assertNotNull( cache.get( green ) );
+        assertNull( cache.get( orange ) );
+        assertEquals( 1 , cache.getEvictions() );
+        assertTrue( cache.getBytes() <= 2000 );
+    }
+
+    public void test_getChangedTable() throws Exception
+    {
+        assertEquals( "Bowl" , QueryCache.getChangedTable( "UPDATE Bowl SET Milk=1" ) );
+        assertEquals( "Bowl" , QueryCache.getChangedTable( " insert into Bowl(Milk) values (1)" ) );
+        assertEquals( "Bowl" , QueryCache.getChangedTable( "DELETE FROM Bowl WHERE Milk=0" ) );
+        assertNull( QueryCache.getChangedTable( "DELETE Bowl" ) );
+        assertNull( QueryCache.getChangedTable( "CALL pour()" ) );
+    }
+
+}
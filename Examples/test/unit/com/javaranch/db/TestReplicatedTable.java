@@ -0,0 +1,133 @@
+package com.javaranch.db;
+
+import java.math.BigDecimal ;
+import java.security.InvalidParameterException ;
+
+import junit.framework.TestCase;
+
+public class TestReplicatedTable extends TestCase
+{
+
+    private static final String[] columns = { "CountryID" , "Code" , "Name" , "Changed" };
+
+    private MockDBFacade facade ;
+    private ReplicatedTable countries ;
+
+    protected void setUp() throws Exception
+    {
+        facade = new MockDBFacade();
+        facade.executeQuery_return = rows( new String[][]{ { "1" , "CA" , "Canada" , "5" } ,
+                                                            { "2" , "US" , "United States" , "7" } ,
+                                                            { "3" , "MX" , "Mexico" , "7" } } );
+        countries = new ReplicatedTable( facade , "Country" , columns , "CountryID" , new String[]{ "Code" } , "Changed" , 0 );
+    }
+
+    private static DBResults rows( String[][] data )
+    {
+        DBResults returnVal = new DBResults();
+        for ( int i = 0 ; i < data.length ; i++ )
+        {
+            returnVal.add( data[ i ] );
+        }
+        return returnVal ;
+    }
+
+    public void test_search() throws Exception
+    {
+        DBResults results = countries.search( "Code" , new String[]{ "US" , "CA" , "US" } , new String[]{ "Name" } );
+        assertEquals( 2 , results.size() );
+        assertEquals( "United States" , results.get( 0 , 0 ) );
+        assertEquals( "Canada" , results.get( 1 , 0 ) );
+
+        // no index on Name:  every row is looked at
+        results = countries.search( "name" , new String[]{ "Mexico" } , new String[]{ "CountryID" } );
+        assertEquals( "3" , results.get( 0 , 0 ) );
+
+        assertEquals( 3 , countries.search( null , null , columns ).size() );
+        assertEquals( 0 , countries.search( "CountryID" , new String[]{ "4" } , columns ).size() );
+        assertEquals( 1 , facade.executeQuery_calls );
+        assertEquals( 1 , facade.openConnection_calls );
+
+        // what comes back is a copy
+        countries.search( "CountryID" , new String[]{ "1" } , new String[]{ "Name" } ).getRow( 0 )[ 0 ] = "Narnia" ;
+        assertEquals( "Canada" , countries.search( "CountryID" , new String[]{ "1" } , new String[]{ "Name" } ).get( 0 , 0 ) );
+
+        assertFalse( countries.hasColumns( new String[]{ "Name" , "Population" } ) );
+        try
+        {
+            countries.search( "Population" , new String[]{ "1" } , new String[]{ "Name" } );
+            fail( "the column isn't kept" );
+        }
+        catch ( InvalidParameterException e )
+        {
+            // expected
+        }
+    }
+
+    public void test_refresh() throws Exception
+    {
+        assertEquals( 3 , countries.size() );
+
+        // Mexico changed and Brazil is new
+        facade.executeQuery_return = rows( new String[][]{ { "2" , "US" , "United States" , "7" } ,
+                                                            { "3" , "MX" , "Estados Unidos Mexicanos" , "8" } ,
+                                                            { "4" , "BR" , "Brazil" , "8" } } );
+        countries.refresh();
+        assertTrue( facade.executeQuery_sql.indexOf( "Changed >= ?" ) != -1 );
+        assertEquals( new BigDecimal( "7" ) , facade.executeQuery_parameters[ 0 ] );
+        assertEquals( 4 , countries.size() );
+        assertEquals( "Estados Unidos Mexicanos" , countries.search( "Code" , new String[]{ "MX" } , new String[]{ "Name" } ).get( 0 , 0 ) );
+        assertEquals( "Brazil" , countries.search( "Code" , new String[]{ "BR" } , new String[]{ "Name" } ).get( 0 , 0 ) );
+
+        // nothing new
+        facade.executeQuery_return = rows( new String[][]{ { "3" , "MX" , "Estados Unidos Mexicanos" , "8" } ,
+                                                            { "4" , "BR" , "Brazil" , "8" } } );
+        countries.refresh();
+        assertEquals( new BigDecimal( "8" ) , facade.executeQuery_parameters[ 0 ] );
+        assertEquals( 4 , countries.size() );
+    }
+
+    public void test_changeThroughFacade() throws Exception
+    {
+        assertEquals( 3 , countries.size() );
+        facade.executeQuery_return = rows( new String[][]{ { "1" , "CA" , "Canada" , "5" } } );
+        facade.tableChanged( "Country" );
+
+        // the whole table is read again
+        assertEquals( 1 , countries.size() );
+        assertEquals( -1 , facade.executeQuery_sql.indexOf( "WHERE" ) );
+        assertEquals( 2 , facade.executeQuery_calls );
+
+        assertEquals( 2 , facade.openConnection_calls );
+
+        // another table doesn't matter
+        facade.tableChanged( "City" );
+        assertEquals( 1 , countries.size() );
+        assertEquals( 2 , facade.executeQuery_calls );
+    }
+
+    public void test_notInTransaction() throws Exception
+    {
+        final boolean[] inTransaction = { false };
+        MockDBFacade db = new MockDBFacade()
+        {
+            public boolean isInTransaction()
+            {
+                return inTransaction[ 0 ];
+            }
+        };
+        db.executeQuery_return = facade.executeQuery_return ;
+        db.search_return = new DBResults();
+        TableFacade t = new TableFacade( db , "Country" );
+        t.replicate( new ReplicatedTable( db , "Country" , columns , "CountryID" , null , null , 0 ) );
+        assertEquals( 3 , t.search( (String)null , columns ).size() );
+        assertEquals( 0 , db.search_calls );
+
+        // the transaction might have changed the table, so it goes to the database
+        inTransaction[ 0 ] = true ;
+        assertSame( db.search_return , t.search( (String)null , columns ) );
+        assertEquals( 1 , db.search_calls );
+        assertEquals( 1 , db.executeQuery_calls );
+    }
+
+}
@@ -0,0 +1,57 @@
+package com.javaranch.db;
+
+import java.sql.* ;
+
+import junit.framework.TestCase;
+
+public class TestSequenceBlockIDStrategy extends TestCase
+{
+
+    // a sequence that starts at 100 and counts the trips to the database
+    private static class SequenceFacade extends DBFacade
+    {
+        long next = 100 ;
+        int calls = 0 ;
+        String sql = null ;
+
+        public DBResults executeQuery( Connection con , String sql , Object[] parameters ) throws SQLException
+        {
+            this.sql = sql ;
+            calls++ ;
+            DBResults r = new DBResults();
+            int count = ((Integer)parameters[ 0 ]).intValue();
+            for ( int i = 0 ; i < count ; i++ )
+            {
+                r.add( new String[]{ String.valueOf( next++ ) } );
+            }
+            return r ;
+        }
+    }
+
+    public void test_block() throws Exception
+    {
+        SequenceFacade facade = new SequenceFacade();
+        SequenceBlockIDStrategy strategy = new SequenceBlockIDStrategy( SequenceBlockIDStrategy.ORACLE , 10 );
+        long[] ids = strategy.getIDs( facade , null , "Animal" , 3 );
+        assertEquals( 100 , ids[ 0 ] );
+        assertEquals( 102 , ids[ 2 ] );
+        assertEquals( "SELECT Animal_seq.nextval FROM dual CONNECT BY level <= ?" , facade.sql );
+        ids = strategy.getIDs( facade , null , "Animal" , 7 );
+        assertEquals( 109 , ids[ 6 ] );
+        assertEquals( 1 , facade.calls );
+        ids = strategy.getIDs( facade , null , "Animal" , 1 );
+        assertEquals( 110 , ids[ 0 ] );
+        assertEquals( 2 , facade.calls );
+    }
+
+    public void test_bigRequest() throws Exception
+    {
+        SequenceFacade facade = new SequenceFacade();
+        SequenceBlockIDStrategy strategy = new SequenceBlockIDStrategy( SequenceBlockIDStrategy.ORACLE , 10 );
+        long[] ids = strategy.getIDs( facade , null , "Animal" , 25 );
+        assertEquals( 25 , ids.length );
+        assertEquals( 124 , ids[ 24 ] );
+        assertEquals( 1 , facade.calls );
+    }
+
+}
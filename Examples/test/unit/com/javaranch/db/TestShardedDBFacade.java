@@ -0,0 +1,201 @@
+package com.javaranch.db;
+
+import java.security.InvalidParameterException ;
+import java.sql.Types ;
+import java.util.ArrayList ;
+import java.util.HashMap ;
+import java.util.List ;
+import java.util.Map ;
+
+import junit.framework.TestCase;
+
+public class TestShardedDBFacade extends TestCase
+{
+
+    private MockDBFacade[] shards ;
+    private ShardedDBFacade facade ;
+
+    protected void setUp() throws Exception
+    {
+        shards = new MockDBFacade[]{ new MockDBFacade() , new MockDBFacade() , new MockDBFacade() };
+        for ( int i = 0 ; i < shards.length ; i++ )
+        {
+            shards[ i ].search_return = new DBResults();
+        }
+        facade = new ShardedDBFacade( "FarmID" , shards );
+    }
+
+    private static Map row( String farmID )
+    {
+        Map data = new HashMap();
+        data.put( "FarmID" , farmID );
+        data.put( "Name" , "cow" );
+        return data ;
+    }
+
+    public void test_getShardIndex() throws Exception
+    {
+        assertEquals( 1 , facade.getShardIndex( "7" ) );
+        assertEquals( 2 , facade.getShardIndex( "-1" ) );
+        assertEquals( facade.getShardIndex( "Hilltop" ) , facade.getShardIndex( "Hilltop" ) );
+
+        ShardedDBFacade ranges = new ShardedDBFacade( "FarmID" , shards , new long[]{ 1000 , 5000 } );
+        assertEquals( 0 , ranges.getShardIndex( "999" ) );
+        assertEquals( 1 , ranges.getShardIndex( "1000" ) );
+        assertEquals( 2 , ranges.getShardIndex( "5000" ) );
+        try
+        {
+            ranges.getShardIndex( "Hilltop" );
+            fail( "a range needs a number" );
+        }
+        catch ( InvalidParameterException e )
+        {
+            // expected
+        }
+    }
+
+    public void test_keySearchGoesToOneShard() throws Exception
+    {
+        DBQuery q = new DBQuery( facade , "Animal" , "FarmID" , 4 , new String[]{ "Name" } );
+        assertSame( shards[ 1 ].search_return , facade.search( q ) );
+        assertEquals( 0 , shards[ 0 ].search_calls );
+        assertEquals( 1 , shards[ 1 ].search_calls );
+        assertEquals( 0 , shards[ 2 ].search_calls );
+
+        // one more condition and it could be anywhere
+        q.addSearch( "Name" , "cow" );
+        facade.search( q );
+        assertEquals( 1 , shards[ 0 ].search_calls );
+        assertEquals( 2 , shards[ 1 ].search_calls );
+        assertEquals( 1 , shards[ 2 ].search_calls );
+    }
+
+    public void test_mergeInOrder() throws Exception
+    {
+        shards[ 0 ].search_return.add( new String[]{ "3" , "pig" } );
+        shards[ 0 ].search_return.add( new String[]{ "10" , "hen" } );
+        shards[ 1 ].search_return.add( new String[]{ "1" , "cow" } );
+        shards[ 1 ].search_return.add( new String[]{ "9" , "dog" } );
+        shards[ 2 ].search_return.add( new String[]{ "4" , "cat" } );
+        DBQuery q = new DBQuery( facade , "Animal" );
+        q.setDataColumns( new String[]{ "ID" , "Name" } );
+        q.page( new String[]{ "ID" } , null , 4 );
+        DBResults results = facade.search( q );
+        assertEquals( 4 , results.size() );
+        assertEquals( "cow" , results.get( 0 , 1 ) );
+        assertEquals( "pig" , results.get( 1 , 1 ) );
+        assertEquals( "cat" , results.get( 2 , 1 ) );
+        assertEquals( "dog" , results.get( 3 , 1 ) );
+
+        q.setOrderByClause( "Name DESC" );
+        results = facade.search( q );
+        assertEquals( "pig" , results.get( 0 , 1 ) );
+
+        q.setOrderByClause( "Color" );
+        try
+        {
+            facade.search( q );
+            fail( "the order can't be merged without the column" );
+        }
+        catch ( InvalidParameterException e )
+        {
+            // expected
+        }
+    }
+
+    public void test_mergeTextThatLooksLikeNumbers() throws Exception
+    {
+        shards[ 0 ].search_return.add( new String[]{ "2" } );
+        shards[ 1 ].search_return.add( new String[]{ "10" } );
+        shards[ 2 ].search_return.add( new String[]{ "1a" } );
+        for ( int i = 0 ; i < shards.length ; i++ )
+        {
+            shards[ i ].search_return.setColumnTypes( new int[]{ Types.VARCHAR } );
+        }
+        DBQuery q = new DBQuery( facade , "Animal" );
+        q.setDataColumns( new String[]{ "Code" } );
+        q.page( new String[]{ "Code" } , null , 3 );
+        DBResults results = facade.search( q );
+        assertEquals( "10" , results.get( 0 , 0 ) );
+        assertEquals( "1a" , results.get( 1 , 0 ) );
+        assertEquals( "2" , results.get( 2 , 0 ) );
+
+        // the same values in a number column
+        for ( int i = 0 ; i < 2 ; i++ )
+        {
+            shards[ i ].search_return.setColumnTypes( new int[]{ Types.INTEGER } );
+        }
+        shards[ 2 ].search_return.clear();
+        results = facade.search( q );
+        assertEquals( "2" , results.get( 0 , 0 ) );
+        assertEquals( "10" , results.get( 1 , 0 ) );
+    }
+
+    public void test_aggregate() throws Exception
+    {
+        String[] values = { "20" , "10" , "30" };
+        for ( int i = 0 ; i < shards.length ; i++ )
+        {
+            shards[ i ].search_return.add( new String[]{ values[ i ] } );
+            shards[ i ].search_return.setColumnTypes( new int[]{ Types.INTEGER } );
+        }
+        DBQuery q = new DBQuery( facade , "Animal" );
+        assertEquals( 60.0 , facade.sum( "Weight" , q ) , 0.0 );
+        assertEquals( 60 , facade.sumLong( "Weight" , q ) );
+        assertEquals( "10" , facade.min( "Weight" , q ) );
+        assertEquals( "30" , facade.max( "Weight" , q ) );
+        assertEquals( "60" , facade.aggregate( "count( * )" , q ) );
+
+        // only the shard for the key
+        assertEquals( "10" , facade.aggregate( "AVG(Weight)" , new DBQuery( facade , "Animal" , "FarmID" , 4 , null ) ) );
+
+        String[] cantCombine = { "AVG(Weight)" , "COUNT(DISTINCT Name)" , "SUM(Weight) / COUNT(*)" , "Weight" };
+        for ( int i = 0 ; i < cantCombine.length ; i++ )
+        {
+            try
+            {
+                facade.aggregate( cantCombine[ i ] , q );
+                fail( cantCombine[ i ] + " can't be combined" );
+            }
+            catch ( InvalidParameterException e )
+            {
+                // expected
+            }
+        }
+        try
+        {
+            facade.groupBy( new String[]{ "Name" } , new String[]{ "COUNT(*)" } , q );
+            fail( "the groups can't be merged" );
+        }
+        catch ( InvalidParameterException e )
+        {
+            // expected
+        }
+    }
+
+    public void test_insert() throws Exception
+    {
+        facade.insert( "Animal" , row( "5" ) );
+        assertEquals( 1 , shards[ 2 ].insert_calls );
+        assertEquals( 0 , shards[ 0 ].insert_calls + shards[ 1 ].insert_calls );
+        try
+        {
+            facade.insert( "Animal" , new HashMap() );
+            fail( "the data needs the shard key" );
+        }
+        catch ( InvalidParameterException e )
+        {
+            // expected
+        }
+
+        List batch = new ArrayList();
+        batch.add( row( "0" ) );
+        batch.add( row( "1" ) );
+        batch.add( row( "3" ) );
+        facade.insertBatch( "Animal" , batch );
+        assertEquals( 2 , shards[ 0 ].insertBatch_data.size() );
+        assertEquals( 1 , shards[ 1 ].insertBatch_data.size() );
+        assertEquals( 0 , shards[ 2 ].insertBatch_calls );
+    }
+
+}
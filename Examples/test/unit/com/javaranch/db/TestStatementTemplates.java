@@ -0,0 +1,59 @@
+package com.javaranch.db;
+
+import java.util.ArrayList ;
+import java.util.LinkedHashMap ;
+import java.util.List ;
+import java.util.Map ;
+
+import junit.framework.TestCase;
+
+public class TestStatementTemplates extends TestCase
+{
+
+    private static Map row( String color , String notes )
+    {
+        Map data = new LinkedHashMap();
+        data.put( "Color" , color );
+        data.put( ">Notes" , notes );
+        data.put( "+Made" , "CURRENT_TIMESTAMP" );
+        return data ;
+    }
+
+    public void test_insert() throws Exception
+    {
+        StatementTemplates templates = new StatementTemplates();
+        List bindData = new ArrayList();
+        String sql = templates.getSQL( StatementTemplates.INSERT , "FrootLoop" , row( "Green" , "crunchy" ) , bindData );
+        assertEquals( "INSERT INTO FrootLoop (Color,Notes,Made) VALUES (?,?,CURRENT_TIMESTAMP)" , sql );
+        assertEquals( 2 , bindData.size() );
+        assertEquals( "Green" , bindData.get( 0 ) );
+        assertEquals( "crunchy" , ( (DBFacade.StreamData)bindData.get( 1 ) ).s );
+    }
+
+    public void test_update() throws Exception
+    {
+        StatementTemplates templates = new StatementTemplates();
+        List bindData = new ArrayList();
+        String sql = templates.getSQL( StatementTemplates.UPDATE , "FrootLoop" , row( null , "soggy" ) , bindData );
+        assertEquals( "UPDATE FrootLoop SET Color=?,Notes=?,Made=CURRENT_TIMESTAMP" , sql );
+        assertEquals( 2 , bindData.size() );
+        assertNull( bindData.get( 0 ) );
+    }
+
+    public void test_sameColumnsSameSQL() throws Exception
+    {
+        StatementTemplates templates = new StatementTemplates();
+        String first = templates.getSQL( StatementTemplates.INSERT , "FrootLoop" , row( "Green" , "a" ) , new ArrayList() );
+        String second = templates.getSQL( StatementTemplates.INSERT , "FrootLoop" , row( "Red" , "b" ) , new ArrayList() );
+        assertSame( first , second );
+        assertEquals( 1 , templates.size() );
+
+        // a different raw value is different SQL
+        Map data = row( "Red" , "b" );
+        data.put( "+Made" , "NOW()" );
+        String third = templates.getSQL( StatementTemplates.INSERT , "FrootLoop" , data , new ArrayList() );
+        assertEquals( "INSERT INTO FrootLoop (Color,Notes,Made) VALUES (?,?,NOW())" , third );
+        assertEquals( 2 , templates.size() );
+    }
+
+}